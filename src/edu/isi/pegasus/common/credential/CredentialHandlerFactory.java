@@ -75,7 +75,7 @@ public class CredentialHandlerFactory {
      * @return a Map indexed by Pegasus styles, and values as names of implementing
      *         classes.
      */
-    private static Map<CredentialHandler.TYPE, String> implementingClassNameTable(){
+    private static synchronized Map<CredentialHandler.TYPE, String> implementingClassNameTable(){
         if( mImplementingClassNameTable == null ){
             mImplementingClassNameTable = new HashMap(3);
             mImplementingClassNameTable.put( CredentialHandler.TYPE.x509, X509_IMPLEMENTING_CLASS);
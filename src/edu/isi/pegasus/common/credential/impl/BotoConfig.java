@@ -25,6 +25,7 @@ import java.util.Map;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.namespace.Namespace;
+import edu.isi.pegasus.common.util.Environment;
 
 
 
@@ -137,7 +138,7 @@ public class BotoConfig  extends Abstract implements CredentialHandler {
         
         if( cred == null){
             //check if BOTO_CONFIG is specified in the environment
-            Map<String,String> envs = System.getenv();
+            Map<String,String> envs = Environment.getenv();
             if( envs.containsKey( BotoConfig.BOTO_CONFIG_FILE_VARIABLE ) ){
                 cred = envs.get( BotoConfig.BOTO_CONFIG_FILE_VARIABLE  );
             }
@@ -26,6 +26,7 @@ import java.util.Map;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.namespace.Namespace;
+import edu.isi.pegasus.common.util.Environment;
 
 
 
@@ -140,7 +141,7 @@ public class GoogleP12  extends Abstract implements CredentialHandler {
         
         if( cred == null){
             //check if GOOGLE_PKCS12 is specified in the environment
-            Map<String,String> envs = System.getenv();
+            Map<String,String> envs = Environment.getenv();
             if( envs.containsKey( GoogleP12.GOOGLEP12_FILE_VARIABLE ) ){
                 cred = envs.get( GoogleP12.GOOGLEP12_FILE_VARIABLE  );
             }
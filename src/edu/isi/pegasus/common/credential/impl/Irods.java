@@ -25,6 +25,7 @@ import java.util.Map;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.namespace.Namespace;
+import edu.isi.pegasus.common.util.Environment;
 
 
 /**
@@ -84,7 +85,7 @@ public class Irods extends Abstract implements CredentialHandler{
     public  String getPath( String site ){
 
         SiteCatalogEntry siteEntry = mSiteStore.lookup( site );
-        Map<String,String> envs = System.getenv();
+        Map<String,String> envs = Environment.getenv();
         
         //check if one is specified in site catalog entry
         String path = ( siteEntry == null )? null :
@@ -136,7 +137,7 @@ public class Irods extends Abstract implements CredentialHandler{
         //load from the environment
         if( cred == null){
             //check if X509_USER_PROXY is specified in the environment
-            Map<String,String> envs = System.getenv();
+            Map<String,String> envs = Environment.getenv();
             if( envs.containsKey( Irods.IRODSENVFILE  ) ){
                 cred = envs.get( Irods.IRODSENVFILE  );
             }
@@ -21,6 +21,7 @@ import edu.isi.pegasus.planner.catalog.classes.Profiles;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.namespace.Namespace;
+import edu.isi.pegasus.common.util.Environment;
 
 import org.globus.common.CoGProperties;
 
@@ -136,7 +137,7 @@ public class Proxy  extends Abstract implements CredentialHandler{
         
         if( proxy == null){
             //check if X509_USER_PROXY is specified in the environment
-            Map<String,String> envs = System.getenv();
+            Map<String,String> envs = Environment.getenv();
             if( envs.containsKey( Proxy.X509_USER_PROXY_KEY ) ){
                 proxy = envs.get( Proxy.X509_USER_PROXY_KEY );
             }
@@ -25,6 +25,7 @@ import java.util.Map;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.namespace.Namespace;
+import edu.isi.pegasus.common.util.Environment;
 
 
 
@@ -139,7 +140,7 @@ public class S3CFG  extends Abstract implements CredentialHandler {
         
         if( cred == null){
             //check if S3CFG is specified in the environment
-            Map<String,String> envs = System.getenv();
+            Map<String,String> envs = Environment.getenv();
             if( envs.containsKey( S3CFG.S3CFG_FILE_VARIABLE ) ){
                 cred = envs.get( S3CFG.S3CFG_FILE_VARIABLE  );
             }
@@ -24,6 +24,7 @@ import edu.isi.pegasus.planner.catalog.classes.Profiles;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.namespace.Namespace;
+import edu.isi.pegasus.common.util.Environment;
 
 
 
@@ -140,7 +141,7 @@ public class Ssh extends Abstract implements CredentialHandler {
         //try from environment
         if( cred == null){
             //check if X509_USER_PROXY is specified in the environment
-            Map<String,String> envs = System.getenv();
+            Map<String,String> envs = Environment.getenv();
             if( envs.containsKey( Ssh.SSH_PRIVATE_KEY_VARIABLE ) ){
                 cred = envs.get( Ssh.SSH_PRIVATE_KEY_VARIABLE  );
             }
@@ -20,6 +20,7 @@ package edu.isi.pegasus.common.logging;
 
 
 import edu.isi.pegasus.common.util.DynamicLoader;
+import edu.isi.pegasus.common.util.ThreadScope;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 
 
@@ -48,7 +49,71 @@ public class LogManagerFactory {
      * method.
      */
     private static LogManager mSingletonInstance;
+
+    /**
+     * Holds the singleton instance for the threads of a request, when a
+     * single JVM plans more than one workflow at a time. The tasks wrapped
+     * with ThreadScope.propagate() share the instance of the scope.
+     */
+    private static final ThreadLocal<LogManager[]> mScopedInstance = ThreadScope.newLocal();
   
+    /**
+     * Clears the singleton instance, so that the next call to
+     * loadSingletonInstance() loads a new instance. Used when a single JVM
+     * plans more than one workflow.
+     */
+    public static void clearSingletonInstance( ){
+        setSingletonInstance( null );
+    }
+
+    /**
+     * Starts a scope for the calling thread, in which loadSingletonInstance()
+     * returns an instance of its own, that is not shared with the rest of
+     * the JVM.
+     *
+     * @see #endScope()
+     */
+    public static void beginScope( ){
+        mScopedInstance.set( new LogManager[1] );
+    }
+
+    /**
+     * Ends the scope started by beginScope() for the calling thread.
+     */
+    public static void endScope( ){
+        mScopedInstance.remove();
+    }
+
+    /**
+     * Returns the singleton instance for the scope of the calling thread, or
+     * the JVM wide instance if the thread is not in a scope.
+     *
+     * @return the instance, else null if not loaded
+     */
+    private static LogManager getSingletonInstance( ){
+        LogManager[] scoped = mScopedInstance.get();
+        return ( scoped == null ) ? mSingletonInstance : scoped[0];
+    }
+
+    /**
+     * Sets the singleton instance for the scope of the calling thread, or
+     * the JVM wide instance if the thread is not in a scope.
+     *
+     * @param instance  the instance
+     *
+     * @return the instance
+     */
+    private static LogManager setSingletonInstance( LogManager instance ){
+        LogManager[] scoped = mScopedInstance.get();
+        if( scoped == null ){
+            mSingletonInstance = instance;
+        }
+        else{
+            scoped[0] = instance;
+        }
+        return instance;
+    }
+
     /**
      * Loads the appropriate LogManager class as specified by properties.
      * 
@@ -63,10 +128,10 @@ public class LogManagerFactory {
    public static LogManager loadSingletonInstance( ) throws
         LogManagerFactoryException {
         
-        return ( mSingletonInstance = ( mSingletonInstance == null )?
-                                        loadSingletonInstance( PegasusProperties.getInstance() ):  
-                                        mSingletonInstance 
-                );
+        LogManager instance = getSingletonInstance();
+        return ( instance == null )?
+                loadSingletonInstance( PegasusProperties.getInstance() ):
+                instance;
             
   
     }
@@ -86,10 +151,10 @@ public class LogManagerFactory {
    public static LogManager loadSingletonInstance( PegasusProperties properties ) throws
         LogManagerFactoryException {
         
-        return ( mSingletonInstance = ( mSingletonInstance == null )?
-                                        loadInstance( properties ):  
-                                        mSingletonInstance 
-                );
+        LogManager instance = getSingletonInstance();
+        return ( instance == null )?
+                loadInstance( properties ):
+                instance;
             
   
     }
@@ -177,9 +242,7 @@ public class LogManagerFactory {
         }
         
         /* store reference for singleton return */
-        mSingletonInstance = result;
-        
-        return result;
+        return setSingletonInstance( result );
     }
 
 }
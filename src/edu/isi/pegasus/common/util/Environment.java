@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.common.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The environment the planner is invoked with. Use instead of
+ * System.getenv(), as the pegasus-plan-server plans each request with the
+ * environment of the client that sent it, while System.getenv() returns the
+ * environment the server was started with.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ * @see ThreadScope
+ */
+public class Environment {
+
+    /**
+     * The environment of the scope of a thread.
+     */
+    private static final ThreadLocal<Map<String,String>> mScoped = ThreadScope.newLocal();
+
+    /**
+     * Starts a scope for the calling thread, in which the environment passed
+     * replaces the environment of the JVM.
+     *
+     * @param environment  the environment of the scope
+     *
+     * @see #endScope()
+     */
+    public static void beginScope( Map<String,String> environment ){
+        mScoped.set( Collections.unmodifiableMap( new HashMap<String,String>( environment ) ) );
+    }
+
+    /**
+     * Ends the scope started by beginScope() for the calling thread.
+     */
+    public static void endScope( ){
+        mScoped.remove();
+    }
+
+    /**
+     * Returns the environment for the scope of the calling thread, or the
+     * environment of the JVM if the thread is not in a scope.
+     *
+     * @return unmodifiable map of the environment variables
+     */
+    public static Map<String,String> getenv( ){
+        Map<String,String> scoped = mScoped.get();
+        return ( scoped == null ) ? System.getenv() : scoped;
+    }
+
+    /**
+     * Returns the value of an environment variable for the scope of the
+     * calling thread, or from the environment of the JVM if the thread is
+     * not in a scope.
+     *
+     * @param name  the name of the environment variable
+     *
+     * @return the value, else null if not set
+     */
+    public static String getenv( String name ){
+        Map<String,String> scoped = mScoped.get();
+        return ( scoped == null ) ? System.getenv( name ) : scoped.get( name );
+    }
+}
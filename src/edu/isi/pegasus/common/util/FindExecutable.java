@@ -60,7 +60,7 @@ public class FindExecutable {
             return null;
         }
 
-        String path = System.getenv("PATH");
+        String path = Environment.getenv("PATH");
         
         if( directory != null ){
             path = (path == null )? directory : directory + ":" + path;
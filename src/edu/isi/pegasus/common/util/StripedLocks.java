@@ -0,0 +1,100 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.common.util;
+
+/**
+ * A fixed set of lock objects, that are handed out on the basis of the hash
+ * of a key. Allows callers to synchronize updates for the same key, without
+ * a single global lock for all the keys.
+ *
+ * <pre>
+ *   synchronized( locks.get( lfn ) ){
+ *       ...
+ *   }
+ * </pre>
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class StripedLocks {
+
+    /**
+     * The default number of stripes.
+     */
+    public static final int DEFAULT_STRIPES = 64;
+
+    /**
+     * The lock objects.
+     */
+    private final Object[] mLocks;
+
+    /**
+     * The mask to apply to the spread hash. The number of stripes is always
+     * a power of two.
+     */
+    private final int mMask;
+
+    /**
+     * The default constructor.
+     */
+    public StripedLocks(){
+        this( StripedLocks.DEFAULT_STRIPES );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param stripes  the minimum number of stripes. Rounded up to the next
+     *                 power of two.
+     */
+    public StripedLocks( int stripes ){
+        int size = 1;
+        while( size < stripes ){
+            size <<= 1;
+        }
+        mLocks = new Object[ size ];
+        for( int i = 0; i < size; i++ ){
+            mLocks[i] = new Object();
+        }
+        mMask = size - 1;
+    }
+
+    /**
+     * Returns the lock object for a key. The same key always gets the same
+     * lock object.
+     *
+     * @param key  the key
+     *
+     * @return  the lock object
+     */
+    public Object get( Object key ){
+        int h = ( key == null ) ? 0 : key.hashCode();
+        //spread the higher bits, as done in java.util.HashMap
+        h ^= ( h >>> 16 );
+        return mLocks[ h & mMask ];
+    }
+
+    /**
+     * Returns the number of stripes.
+     *
+     * @return the number of stripes
+     */
+    public int size(){
+        return mLocks.length;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.common.util;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps track of the thread local state that makes up the scope of a
+ * request, when a single JVM plans more than one workflow at a time.
+ *
+ * <p>
+ * The scope is not inherited by the threads that a thread in a scope starts,
+ * as threads of a pool outlive the request that created them. A task that
+ * needs the scope of the thread that submits it has to be wrapped with
+ * propagate() before it is submitted.
+ *
+ * <pre>
+ *   executor.submit( ThreadScope.propagate( task ) );
+ * </pre>
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class ThreadScope {
+
+    /**
+     * The thread locals that make up the scope.
+     */
+    private static final List<ThreadLocal<?>> mLocals = new CopyOnWriteArrayList<ThreadLocal<?>>();
+
+    /**
+     * Creates a thread local that is part of the scope, and is propagated
+     * to the tasks wrapped by propagate().
+     *
+     * @return the thread local
+     */
+    public static <T> ThreadLocal<T> newLocal( ){
+        ThreadLocal<T> local = new ThreadLocal<T>();
+        mLocals.add( local );
+        return local;
+    }
+
+    /**
+     * Wraps a task, so that it runs in the scope of the calling thread,
+     * whichever thread it runs on. The thread running the task gets its
+     * own scope back once the task is done.
+     *
+     * @param task  the task
+     *
+     * @return the wrapped task
+     */
+    public static Runnable propagate( final Runnable task ){
+        final Object[] scope = capture();
+        return new Runnable(){
+            public void run(){
+                Object[] previous = install( scope );
+                try{
+                    task.run();
+                }
+                finally{
+                    install( previous );
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps a task, so that it runs in the scope of the calling thread,
+     * whichever thread it runs on. The thread running the task gets its
+     * own scope back once the task is done.
+     *
+     * @param task  the task
+     *
+     * @return the wrapped task
+     */
+    public static <V> Callable<V> propagate( final Callable<V> task ){
+        final Object[] scope = capture();
+        return new Callable<V>(){
+            public V call() throws Exception{
+                Object[] previous = install( scope );
+                try{
+                    return task.call();
+                }
+                finally{
+                    install( previous );
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the values of the thread locals for the calling thread.
+     *
+     * @return the values, in the order of the thread locals
+     */
+    private static Object[] capture( ){
+        Object[] values = new Object[ mLocals.size() ];
+        for( int i = 0; i < values.length; i++ ){
+            values[i] = mLocals.get( i ).get();
+        }
+        return values;
+    }
+
+    /**
+     * Sets the values of the thread locals for the calling thread.
+     *
+     * @param values  the values, in the order of the thread locals
+     *
+     * @return the values the thread locals had before
+     */
+    @SuppressWarnings( "unchecked" )
+    private static Object[] install( Object[] values ){
+        Object[] previous = new Object[ values.length ];
+        for( int i = 0; i < values.length; i++ ){
+            ThreadLocal<Object> local = (ThreadLocal<Object>) mLocals.get( i );
+            previous[i] = local.get();
+            if( values[i] == null ){
+                local.remove();
+            }
+            else{
+                local.set( values[i] );
+            }
+        }
+        return previous;
+    }
+}
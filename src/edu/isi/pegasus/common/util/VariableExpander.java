@@ -50,7 +50,7 @@ public class VariableExpander {
      *                       case sensitive or not.
      */
     public VariableExpander( boolean caseSensitive ){
-        mValuesMap = new HashMap(System.getenv());
+        mValuesMap = new HashMap(Environment.getenv());
         mExpander = new StrSubstitutor( mValuesMap, "${", "}", '\\' );
         mExpander.setVariableResolver( new CaseSensitiveStrLookup( this.mValuesMap, caseSensitive ));
         
@@ -0,0 +1,201 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A cache of the parsed contents of file based catalogs, that is enabled
+ * when a single JVM plans more than one workflow, as in the
+ * pegasus-plan-server. The contents are cached against the path and a digest
+ * of the catalog file, so that a catalog file that is edited between two
+ * plans is parsed again.
+ *
+ * <p>
+ * The cache hands back the objects that were put in it. The planner modifies
+ * the catalog contents while planning, hence the callers put in and get out
+ * copies of the objects they cache.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class CatalogCache {
+
+    /**
+     * The size of the buffer used to compute the digest.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The instance that is enabled, else null.
+     */
+    private static volatile CatalogCache mInstance;
+
+    /**
+     * The cached objects, indexed by the type of the contents and the path to
+     * the catalog file.
+     */
+    private final Map<String,Cached> mCache;
+
+    /**
+     * Enables the cache for the JVM.
+     *
+     * @return the cache
+     */
+    public static synchronized CatalogCache enable(){
+        if( mInstance == null ){
+            mInstance = new CatalogCache();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Disables the cache for the JVM, and drops the cached contents.
+     */
+    public static synchronized void disable(){
+        mInstance = null;
+    }
+
+    /**
+     * Returns the cache, if enabled.
+     *
+     * @return the cache, else null
+     */
+    public static CatalogCache getInstance(){
+        return mInstance;
+    }
+
+    /**
+     * Computes the digest of the contents of a catalog file.
+     *
+     * @param file  the catalog file
+     *
+     * @return the digest
+     *
+     * @throws IOException in case of error while reading the file
+     */
+    public static String digest( File file ) throws IOException{
+        MessageDigest md;
+        try{
+            md = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch( NoSuchAlgorithmException e ){
+            throw new RuntimeException( "SHA-256 is not supported by the JVM", e );
+        }
+        InputStream in = new FileInputStream( file );
+        try{
+            byte[] buffer = new byte[ BUFFER_SIZE ];
+            int read;
+            while( (read = in.read( buffer )) != -1 ){
+                md.update( buffer, 0, read );
+            }
+        }
+        finally{
+            in.close();
+        }
+        StringBuilder sb = new StringBuilder();
+        for( byte b : md.digest() ){
+            sb.append( String.format( "%02x", b ) );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The default constructor.
+     */
+    private CatalogCache(){
+        mCache = new HashMap<String,Cached>();
+    }
+
+    /**
+     * Returns the contents cached for a catalog file.
+     *
+     * @param type    the type of the contents
+     * @param file    the catalog file
+     * @param digest  the digest of the catalog file, as computed before
+     *                parsing it.
+     *
+     * @return the cached contents, else null if none are cached for the
+     *         digest
+     */
+    public synchronized Object get( String type, File file, String digest ){
+        Cached cached = mCache.get( key( type, file ) );
+        return ( cached == null || !cached.mDigest.equals( digest ) ) ?
+                null :
+                cached.mContents;
+    }
+
+    /**
+     * Caches the contents of a catalog file, replacing the contents cached
+     * earlier for the file.
+     *
+     * @param type      the type of the contents
+     * @param file      the catalog file
+     * @param digest    the digest of the catalog file, as computed before
+     *                  parsing it.
+     * @param contents  the contents
+     */
+    public synchronized void put( String type, File file, String digest, Object contents ){
+        mCache.put( key( type, file ), new Cached( digest, contents ) );
+    }
+
+    /**
+     * Returns the key for the contents of a catalog file.
+     *
+     * @param type  the type of the contents
+     * @param file  the catalog file
+     *
+     * @return the key
+     */
+    private String key( String type, File file ){
+        return type + " " + file.getAbsolutePath();
+    }
+
+    /**
+     * The contents cached for a catalog file.
+     */
+    private static class Cached{
+
+        /**
+         * The digest of the catalog file.
+         */
+        private final String mDigest;
+
+        /**
+         * The contents.
+         */
+        private final Object mContents;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param digest    the digest of the catalog file
+         * @param contents  the contents
+         */
+        private Cached( String digest, Object contents ){
+            mDigest   = digest;
+            mContents = contents;
+        }
+    }
+}
@@ -47,7 +47,7 @@ public class VDSSysInfo2NMI {
      *
      * @return Map mapping VDS Arch to NMI architecture
      */
-    private static Map<Arch,SysInfo.Architecture> vdsArchToNMIArchMap(){
+    private static synchronized Map<Arch,SysInfo.Architecture> vdsArchToNMIArchMap(){
         //singleton access
         if( mVDSArchToNMIArch == null ){
             mVDSArchToNMIArch = new HashMap();
@@ -72,7 +72,7 @@ public class VDSSysInfo2NMI {
      *
      * @return Map mapping VDS Os to NMI OS
      */
-    private static Map<Os,SysInfo.OS> vdsOsToNMIOSMap(){
+    private static synchronized Map<Os,SysInfo.OS> vdsOsToNMIOSMap(){
         //singleton access
         if( mVDSOSToNMIOS == null ){
             mVDSOSToNMIOS = new HashMap();
@@ -25,6 +25,12 @@ import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogException;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaFactory;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Pattern;
 
 /**
@@ -55,6 +61,23 @@ import java.util.regex.Pattern;
  *     pegasus.catalog.replica.directory.flat.lfn
  * </pre>
  *
+ * The directory is only crawled when the whole catalog is required. A lookup
+ * for a set of LFN's with deep LFN's checks the corresponding paths directly,
+ * and with flat LFN's stops crawling once all the LFN's have been found.
+ * The crawl is done in parallel, with the number of threads determined by
+ * <pre>
+ *     pegasus.catalog.replica.directory.threads
+ * </pre>
+ *
+ * If the following property is set to a directory, the mappings found by a
+ * crawl are saved in an index file in that directory, along with the
+ * modification times of all the directories crawled. Later connections
+ * read the index instead of crawling, if none of the directories have been
+ * modified since.
+ * <pre>
+ *     pegasus.catalog.replica.directory.index.dir
+ * </pre>
+ *
  *
  * @author Karan Vahi
  * @version $Revision$
@@ -102,6 +125,28 @@ public class Directory implements ReplicaCatalog {
      */
     public static final String FLAT_LFN_PROPERTY_KEY = "directory.flat.lfn";
 
+    /**
+     * The name of the key that specifies the number of threads to use for
+     * crawling the directory.
+     */
+    public static final String THREADS_PROPERTY_KEY = "directory.threads";
+
+    /**
+     * The name of the key that specifies the directory in which to save
+     * the index files.
+     */
+    public static final String INDEX_DIRECTORY_PROPERTY_KEY = "directory.index.dir";
+
+    /**
+     * The version of the index file format.
+     */
+    private static final String INDEX_VERSION = "1";
+
+    /**
+     * The separator for the fields in the index file.
+     */
+    private static final char INDEX_SEPARATOR = '\t';
+
     /**
      * Records the name of the on-disk representation.
      */
@@ -110,7 +155,7 @@ public class Directory implements ReplicaCatalog {
     /**
      * Maintains a memory slurp of the file representation.
      */
-    protected Map mLFNMap = null;
+    protected Map<String,Collection<ReplicaCatalogEntry>> mLFNMap = null;
 
     /**
      * A boolean indicating whether the catalog is read only or not.
@@ -133,6 +178,22 @@ public class Directory implements ReplicaCatalog {
      */
     protected String mURLPrefix;
 
+    /**
+     * The directory in which to save the index files. null means no index.
+     */
+    protected String mIndexDirectory;
+
+    /**
+     * The number of threads to use for crawling the directory.
+     */
+    protected int mThreads;
+
+    /**
+     * A boolean indicating whether the directory has been crawled into
+     * the in-memory mappings.
+     */
+    private boolean mLoaded;
+
     /**
      * Default empty constructor creates an object that is not yet connected
      * to any database. You must use support methods to connect before this
@@ -148,6 +209,9 @@ public class Directory implements ReplicaCatalog {
         mConstructFlatLFN = false;
         mSiteHandle = Directory.DEFAULT_SITE_HANDLE;
         mURLPrefix  = Directory.DEFAULT_URL_PREFIX;
+        mIndexDirectory = null;
+        mThreads    = Runtime.getRuntime().availableProcessors();
+        mLoaded     = false;
     }
 
 
@@ -182,6 +246,22 @@ public class Directory implements ReplicaCatalog {
             this.mURLPrefix = value;
         }
 
+        value = props.getProperty( Directory.INDEX_DIRECTORY_PROPERTY_KEY  );
+        if ( value != null ) {
+            this.mIndexDirectory = value;
+        }
+
+        value = props.getProperty( Directory.THREADS_PROPERTY_KEY  );
+        if ( value != null ) {
+            try{
+                this.mThreads = Math.max( 1, Integer.parseInt( value ) );
+            }
+            catch( NumberFormatException e ){
+                throw new ReplicaCatalogException( "Invalid value for property " +
+                                                   Directory.THREADS_PROPERTY_KEY + " " + value );
+            }
+        }
+
         if (props.containsKey( Directory.DIRECTORY_PROPERTY_KEY  )) {
             return connect(props.getProperty("directory"));
         }
@@ -190,7 +270,9 @@ public class Directory implements ReplicaCatalog {
 
 
     /**
-     * Does the file listing on the directory to create the mappings in memory.
+     * Connects to the directory. The directory listing to create the mappings
+     * in memory is done when the mappings are first required, unless an index
+     * directory is specified, in which case the mappings are loaded right away.
      *
      * @param directory is the name of the file to read.
      * @return true, if the in-memory data structures appear sound.
@@ -201,68 +283,532 @@ public class Directory implements ReplicaCatalog {
         if (directory == null) {
             return false;
         }
+        File f = new File(directory);
+        if ( !( f.exists() && f.isDirectory() ) ) {
+            return false;
+        }
         mDirectory = directory;
-        mLFNMap = new LinkedHashMap();
-
-        try {
-            File f = new File(directory);
-            if (f.exists() && f.isDirectory()) {
-                traverse( f , null );
+        mLFNMap = new LinkedHashMap<String,Collection<ReplicaCatalogEntry>>();
+        mLoaded = false;
+
+        if( mIndexDirectory != null ){
+            try {
+                this.map();
+            } catch (Exception e) {
+                mLFNMap = null;
+                mDirectory = null;
+                throw new RuntimeException(e); // re-throw
             }
-            else{
-                return false;
-            }
-        } catch (Exception ioe) {
-            mLFNMap = null;
-            mDirectory = null;
-            throw new RuntimeException(ioe); // re-throw
         }
 
         return true;
     }
 
+    /**
+     * Returns the in-memory mappings, populating them from the index file
+     * or by crawling the directory, the first time it is called.
+     *
+     * @return the map indexed by lfn
+     */
+    protected synchronized Map<String,Collection<ReplicaCatalogEntry>> map() {
+        if( mLoaded ){
+            return mLFNMap;
+        }
+        //set before inserting, as insert accesses the map
+        mLoaded = true;
+
+        File index = this.getIndexFile();
+        List<String[]> files = ( index == null ) ? null : this.readIndex( index );
+        if( files == null ){
+            Crawler crawler = new Crawler( null );
+            crawler.crawl();
+            files = crawler.getFiles();
+            if( index != null ){
+                this.writeIndex( index, crawler.getDirectories(), files );
+            }
+        }
 
+        for( String[] file : files ){
+            insert( file[0], new ReplicaCatalogEntry( this.mURLPrefix + file[1], mSiteHandle ) );
+        }
+        return mLFNMap;
+    }
 
     /**
-     * Traverses a directory and populates the mappings in memory
+     * Looks up a set of LFN's without loading all the mappings in memory.
+     * For deep LFN's the path corresponding to each LFN is checked directly.
+     * For flat LFN's the whole directory has to be crawled, as a file with
+     * the same name deeper in the directory is an error. Hence, if an index
+     * is configured, the mappings are loaded through the index, else only
+     * the files for the LFN's are retained from the crawl.
+     *
+     * @param lfns  the LFN's to look up
      *
-     * @param directory     the directory to traverse.
-     * @param prefix        the LFN prefix to be applied
+     * @return map indexed by lfn, with the lfn's that were found.
      */
-    private void traverse( File directory , String prefix) {
-         //sanity check, if we can read it
-        if( !directory.canRead() ){
-            //warn and return
-            System.err.println( "Ignoring. Unable to read directory " + directory );
-            return;
+    private Map<String,Collection<ReplicaCatalogEntry>> lookupWithoutLoading( Set<?> lfns ){
+        Map<String,Collection<ReplicaCatalogEntry>> result = new HashMap<String,Collection<ReplicaCatalogEntry>>();
+        List<String[]> files;
+        if( mConstructFlatLFN ){
+            if( this.getIndexFile() != null ){
+                return this.map();
+            }
+            Crawler crawler = new Crawler( lfns );
+            crawler.crawl();
+            files = crawler.getFiles();
+        }
+        else{
+            Resolver resolver = new Resolver( lfns.toArray( new String[ lfns.size() ] ), 0, lfns.size() );
+            ForkJoinPool pool = new ForkJoinPool( mThreads );
+            try{
+                pool.invoke( resolver );
+            }
+            finally{
+                pool.shutdown();
+            }
+            files = new ArrayList<String[]>( resolver.mFiles );
+        }
+
+        for( String[] file : files ){
+            ReplicaCatalogEntry rce = new ReplicaCatalogEntry( this.mURLPrefix + file[1], mSiteHandle );
+            Collection<ReplicaCatalogEntry> c = result.get( file[0] );
+            if( c == null ){
+                c = new ArrayList<ReplicaCatalogEntry>();
+                result.put( file[0], c );
+            }
+            else if( mConstructFlatLFN ){
+                //same error as insert
+                StringBuffer error = new StringBuffer();
+                error.append( "Entry for lfn ").append( file[0] ).
+                      append( "already exists " ).append( c );
+                throw new ReplicaCatalogException( error.toString() );
+            }
+            c.add( rce );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the path to the index file for the directory.
+     *
+     * @return the index file, or null if no index directory is specified.
+     */
+    private File getIndexFile(){
+        if( mIndexDirectory == null ){
+            return null;
+        }
+        String root = new File( mDirectory ).getAbsolutePath();
+        StringBuffer name = new StringBuffer();
+        name.append( "directory-" ).append( Integer.toHexString( root.hashCode() ) );
+        if( mConstructFlatLFN ){
+            name.append( "-flat" );
+        }
+        name.append( ".index" );
+        return new File( mIndexDirectory, name.toString() );
+    }
+
+    /**
+     * Reads the mappings from an index file. The index is used only if
+     * none of the directories recorded in it have been modified since the
+     * index was written.
+     *
+     * @param index  the index file
+     *
+     * @return list of lfn and absolute path pairs, or null if the index
+     *         does not exist or is stale.
+     */
+    private List<String[]> readIndex( File index ){
+        if( !index.canRead() ){
+            return null;
+        }
+        List<String[]> files = new ArrayList<String[]>();
+        BufferedReader reader = null;
+        try{
+            reader = new BufferedReader( new FileReader( index ) );
+            String line = reader.readLine();
+            String header = "version" + INDEX_SEPARATOR + INDEX_VERSION + INDEX_SEPARATOR +
+                            new File( mDirectory ).getAbsolutePath() + INDEX_SEPARATOR +
+                            mConstructFlatLFN;
+            if( line == null || !line.equals( header ) ){
+                return null;
+            }
+            while( (line = reader.readLine()) != null ){
+                String[] fields = split( line );
+                if( fields == null ){
+                    return null;
+                }
+                if( fields[0].equals( "D" ) ){
+                    //directory entry. check the modification time
+                    if( new File( fields[2] ).lastModified() != Long.parseLong( fields[1] ) ){
+                        return null;
+                    }
+                }
+                else if( fields[0].equals( "F" ) ){
+                    files.add( new String[] { fields[1], fields[2] } );
+                }
+                else{
+                    return null;
+                }
+            }
+        }
+        catch( IOException | NumberFormatException e ){
+            System.err.println( "Ignoring. Unable to read index file " + index + " " + e.getMessage() );
+            return null;
+        }
+        finally{
+            if( reader != null ){
+                try{ reader.close(); } catch( IOException e ){}
+            }
         }
+        return files;
+    }
 
-        for( File f: directory.listFiles() ){
-            StringBuffer lfn = new StringBuffer();
-            String name = f.getName();
-            if( mConstructFlatLFN || prefix == null || prefix.isEmpty() ){
-                lfn.append( name );
+    /**
+     * Writes out the index file. The index is written to a temporary file
+     * first and then moved into place. Failure to write the index is not
+     * fatal.
+     *
+     * @param index        the index file
+     * @param directories  list of directory and modification time pairs
+     * @param files        list of lfn and absolute path pairs
+     */
+    private void writeIndex( File index, List<String[]> directories, List<String[]> files ){
+        File temp = new File( index.getPath() + ".tmp" );
+        PrintWriter writer = null;
+        try{
+            writer = new PrintWriter( new BufferedWriter( new FileWriter( temp ) ) );
+            writer.print( "version" + INDEX_SEPARATOR + INDEX_VERSION + INDEX_SEPARATOR +
+                          new File( mDirectory ).getAbsolutePath() + INDEX_SEPARATOR +
+                          mConstructFlatLFN + "\n" );
+            for( String[] d : directories ){
+                if( !writeIndexEntry( writer, "D", d[1], d[0] ) ){
+                    return;
+                }
             }
-            else{
-                lfn.append( prefix ).append( File.separator ).append( name );
+            for( String[] f : files ){
+                if( !writeIndexEntry( writer, "F", f[0], f[1] ) ){
+                    return;
+                }
+            }
+            writer.close();
+            writer = null;
+            if( temp.length() == 0 ){
+                return;
+            }
+            Files.move( temp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch( IOException e ){
+            System.err.println( "Ignoring. Unable to write index file " + index + " " + e.getMessage() );
+        }
+        finally{
+            if( writer != null ){
+                writer.close();
             }
+            temp.delete();
+        }
+    }
+
+    /**
+     * Writes out a single entry to the index file.
+     *
+     * @param writer  the writer to the index file
+     * @param type    the type of the entry
+     * @param first   the first field
+     * @param second  the second field
+     *
+     * @return false if the entry cannot be represented in the index
+     */
+    private boolean writeIndexEntry( PrintWriter writer, String type, String first, String second ){
+        if( first.indexOf( INDEX_SEPARATOR ) != -1 || first.indexOf( '\n' ) != -1 ||
+            second.indexOf( INDEX_SEPARATOR ) != -1 || second.indexOf( '\n' ) != -1 ){
+            System.err.println( "Ignoring. Unable to index directory with file " + second );
+            return false;
+        }
+        writer.print( type + INDEX_SEPARATOR + first + INDEX_SEPARATOR + second + "\n" );
+        return !writer.checkError();
+    }
 
-            if( f.isDirectory() ){
-                //the lfn is the prefix now
-                traverse( f, lfn.toString() );
+    /**
+     * Splits a line from the index file into its three fields.
+     *
+     * @param line  the line
+     *
+     * @return the fields, or null if the line is malformed
+     */
+    private static String[] split( String line ){
+        int first = line.indexOf( INDEX_SEPARATOR );
+        int second = ( first == -1 ) ? -1 : line.indexOf( INDEX_SEPARATOR, first + 1 );
+        if( second == -1 ){
+            return null;
+        }
+        return new String[] { line.substring( 0, first ),
+                              line.substring( first + 1, second ),
+                              line.substring( second + 1 ) };
+    }
+
+    /**
+     * Returns the LFN for a file in a directory.
+     *
+     * @param prefix  the LFN prefix of the directory, can be null
+     * @param name    the name of the file
+     *
+     * @return  the LFN
+     */
+    private String getLFN( String prefix, String name ){
+        if( mConstructFlatLFN || prefix == null || prefix.isEmpty() ){
+            return name;
+        }
+        return new StringBuffer().append( prefix ).append( File.separator ).append( name ).toString();
+    }
+
+    /**
+     * Crawls the directory in parallel on a fork join pool, with a task per
+     * directory. If a set of LFN's to look for is given, only the files for
+     * them are retained. The whole directory is always crawled, so that
+     * all the files for an LFN are found.
+     */
+    private class Crawler {
+
+        /**
+         * The LFN's to look for, or null to crawl the whole directory.
+         */
+        private final Set<?> mTargets;
+
+        /**
+         * List of lfn and absolute path pairs.
+         */
+        private final Queue<String[]> mFiles;
+
+        /**
+         * List of absolute path and modification time pairs for directories.
+         */
+        private final Queue<String[]> mDirectories;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param targets  the LFN's to look for, or null
+         */
+        Crawler( Set<?> targets ){
+            mTargets = targets;
+            mFiles = new ConcurrentLinkedQueue<String[]>();
+            mDirectories = new ConcurrentLinkedQueue<String[]>();
+        }
+
+        /**
+         * Crawls the directory.
+         */
+        void crawl(){
+            ForkJoinPool pool = new ForkJoinPool( mThreads );
+            try{
+                pool.invoke( new Task( new File( mDirectory ), null ) );
             }
-            else{
-                //we have a mapping to populate
-                String pfn = this.mURLPrefix + f.getAbsolutePath();
-                //System.out.println( lfn + " => " + pfn );
-                insert( lfn.toString(), new ReplicaCatalogEntry( pfn, mSiteHandle ) );
+            finally{
+                pool.shutdown();
+            }
+        }
+
+        /**
+         * Returns the files found, sorted by lfn.
+         *
+         * @return list of lfn and absolute path pairs
+         */
+        List<String[]> getFiles(){
+            List<String[]> files = new ArrayList<String[]>( mFiles );
+            Collections.sort( files, new Comparator<String[]>(){
+                public int compare( String[] a, String[] b ){
+                    int result = a[0].compareTo( b[0] );
+                    return ( result == 0 ) ? a[1].compareTo( b[1] ) : result;
+                }
+            });
+            return files;
+        }
+
+        /**
+         * Returns the directories crawled.
+         *
+         * @return list of absolute path and modification time pairs
+         */
+        List<String[]> getDirectories(){
+            return new ArrayList<String[]>( mDirectories );
+        }
+
+        /**
+         * Records a file found during the crawl.
+         *
+         * @param lfn   the lfn
+         * @param file  the file
+         */
+        private void found( String lfn, File file ){
+            if( mTargets != null && !mTargets.contains( lfn ) ){
+                return;
             }
+            mFiles.add( new String[] { lfn, file.getAbsolutePath() } );
         }
 
-        return;
+        /**
+         * The task to list a single directory.
+         */
+        private class Task extends RecursiveAction {
+
+            /**
+             * The directory to list.
+             */
+            private final File mDir;
+
+            /**
+             * The LFN prefix to be applied.
+             */
+            private final String mPrefix;
+
+            /**
+             * The overloaded constructor.
+             *
+             * @param directory     the directory to traverse.
+             * @param prefix        the LFN prefix to be applied
+             */
+            Task( File directory, String prefix ){
+                mDir = directory;
+                mPrefix = prefix;
+            }
+
+            /**
+             * Lists the directory, and forks a task for each sub directory.
+             */
+            protected void compute(){
+                //sanity check, if we can read it
+                if( !mDir.canRead() ){
+                    //warn and return
+                    System.err.println( "Ignoring. Unable to read directory " + mDir );
+                    return;
+                }
+
+                //get the modification time before the listing, so that
+                //any changes during the listing make the index stale
+                long modified = mDir.lastModified();
+                File[] files = mDir.listFiles();
+                if( files == null ){
+                    System.err.println( "Ignoring. Unable to list directory " + mDir );
+                    return;
+                }
+                mDirectories.add( new String[] { mDir.getAbsolutePath(), Long.toString( modified ) } );
+
+                List<Task> tasks = new ArrayList<Task>();
+                for( File f: files ){
+                    String lfn = getLFN( mPrefix, f.getName() );
+                    if( f.isDirectory() ){
+                        //the lfn is the prefix now
+                        tasks.add( new Task( f, lfn ) );
+                    }
+                    else{
+                        found( lfn, f );
+                    }
+                }
+                invokeAll( tasks );
+            }
+        }
     }
 
+    /**
+     * Resolves deep LFN's to paths in the directory, checking in parallel
+     * whether each path is a file.
+     */
+    private class Resolver extends RecursiveAction {
+
+        /**
+         * The number of LFN's below which the task is not split further.
+         */
+        private static final int THRESHOLD = 64;
+
+        /**
+         * The LFN's to resolve.
+         */
+        private final String[] mLFNs;
+
+        /**
+         * The start index, inclusive.
+         */
+        private final int mStart;
+
+        /**
+         * The end index, exclusive.
+         */
+        private final int mEnd;
+
+        /**
+         * List of lfn and absolute path pairs, shared by all the tasks.
+         */
+        private final Queue<String[]> mFiles;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param lfns   the LFN's to resolve
+         * @param start  the start index, inclusive
+         * @param end    the end index, exclusive
+         */
+        Resolver( String[] lfns, int start, int end ){
+            this( lfns, start, end, new ConcurrentLinkedQueue<String[]>() );
+        }
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param lfns   the LFN's to resolve
+         * @param start  the start index, inclusive
+         * @param end    the end index, exclusive
+         * @param files  the queue to which the files found are added
+         */
+        private Resolver( String[] lfns, int start, int end, Queue<String[]> files ){
+            mLFNs = lfns;
+            mStart = start;
+            mEnd = end;
+            mFiles = files;
+        }
+
+        /**
+         * Resolves the LFN's, splitting the range if it is too large.
+         */
+        protected void compute(){
+            if( mEnd - mStart > THRESHOLD ){
+                int mid = ( mStart + mEnd ) >>> 1;
+                invokeAll( new Resolver( mLFNs, mStart, mid, mFiles ),
+                           new Resolver( mLFNs, mid, mEnd, mFiles ) );
+                return;
+            }
+            File root = new File( mDirectory );
+            for( int i = mStart; i < mEnd; i++ ){
+                String lfn = mLFNs[i];
+                if( !isRelativePath( lfn ) ){
+                    continue;
+                }
+                File f = new File( root, lfn );
+                if( f.isFile() ){
+                    mFiles.add( new String[] { lfn, f.getAbsolutePath() } );
+                }
+            }
+        }
 
+        /**
+         * Returns whether a LFN is a relative path, that the crawl could
+         * have constructed.
+         *
+         * @param lfn  the lfn
+         *
+         * @return boolean
+         */
+        private boolean isRelativePath( String lfn ){
+            if( lfn == null || lfn.isEmpty() ){
+                return false;
+            }
+            for( String component : lfn.split( Pattern.quote( File.separator ), -1 ) ){
+                if( component.isEmpty() || component.equals( "." ) || component.equals( ".." ) ){
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 
     /**
      * This operation will dump the in-memory representation back onto
@@ -275,6 +821,7 @@ public class Directory implements ReplicaCatalog {
         mLFNMap.clear();
         mLFNMap = null;
         mDirectory = null;
+        mLoaded = false;
     }
 
     /**
@@ -299,13 +846,13 @@ public class Directory implements ReplicaCatalog {
      * <code>null</code> if no match was found.
      */
     public String lookup(String lfn, String handle) {
-        Collection c = (Collection) mLFNMap.get(lfn);
+        Collection<ReplicaCatalogEntry> c = map().get(lfn);
         if (c == null) {
             return null;
         }
 
-        for (Iterator i = c.iterator(); i.hasNext();) {
-            ReplicaCatalogEntry rce = (ReplicaCatalogEntry) i.next();
+        for (Iterator<ReplicaCatalogEntry> i = c.iterator(); i.hasNext();) {
+            ReplicaCatalogEntry rce = i.next();
             String pool = rce.getResourceHandle();
             if (pool == null && handle == null ||
                     pool != null && handle != null && pool.equals(handle)) {
@@ -324,12 +871,12 @@ public class Directory implements ReplicaCatalog {
      * @return a collection of replica catalog entries
      * @see ReplicaCatalogEntry
      */
-    public Collection lookup(String lfn) {
-        Collection c = (Collection) mLFNMap.get(lfn);
+    public Collection<ReplicaCatalogEntry> lookup(String lfn) {
+        Collection<ReplicaCatalogEntry> c = map().get(lfn);
         if (c == null) {
-            return new ArrayList();
+            return new ArrayList<ReplicaCatalogEntry>();
         } else {
-            return new ArrayList(c);
+            return new ArrayList<ReplicaCatalogEntry>(c);
         }
     }
 
@@ -341,13 +888,13 @@ public class Directory implements ReplicaCatalog {
      * @param lfn is the logical directory to obtain information for.
      * @return a set of PFN strings
      */
-    public Set lookupNoAttributes(String lfn) {
-        Set result = new TreeSet();
-        Collection c = (Collection) mLFNMap.get(lfn);
+    public Set<String> lookupNoAttributes(String lfn) {
+        Set<String> result = new TreeSet<String>();
+        Collection<ReplicaCatalogEntry> c = map().get(lfn);
 
         if (c != null) {
-            for (Iterator i = c.iterator(); i.hasNext();) {
-                result.add(((ReplicaCatalogEntry) i.next()).getPFN());
+            for (Iterator<ReplicaCatalogEntry> i = c.iterator(); i.hasNext();) {
+                result.add(i.next().getPFN());
             }
         }
 
@@ -365,19 +912,22 @@ public class Directory implements ReplicaCatalog {
      * of replica catalog entries for the LFN.
      * @see edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry
      */
-    public Map lookup(Set lfns) {
-        Map result = new HashMap();
+    public Map<String,Collection<ReplicaCatalogEntry>> lookup(Set lfns) {
+        Map<String,Collection<ReplicaCatalogEntry>> result = new HashMap<String,Collection<ReplicaCatalogEntry>>();
         if (lfns == null || lfns.size() == 0) {
             return result;
         }
 
-        for (Iterator i = lfns.iterator(); i.hasNext();) {
-            String lfn = (String) i.next();
-            Collection c = (Collection) mLFNMap.get(lfn);
+        // look up only the lfns requested, unless the directory has
+        // been crawled already
+        Map<String,Collection<ReplicaCatalogEntry>> mappings = mLoaded ? map() : lookupWithoutLoading(lfns);
+        for (Object o : lfns) {
+            String lfn = (String) o;
+            Collection<ReplicaCatalogEntry> c = mappings.get(lfn);
             if (c == null) {
-                result.put(lfn, new ArrayList());
+                result.put(lfn, new ArrayList<ReplicaCatalogEntry>());
             } else {
-                result.put(lfn, new ArrayList(c));
+                result.put(lfn, new ArrayList<ReplicaCatalogEntry>(c));
             }
         }
 
@@ -394,19 +944,19 @@ public class Directory implements ReplicaCatalog {
      * @return a map indexed by the LFN. Each value is a set
      * of PFN strings.
      */
-    public Map lookupNoAttributes(Set lfns) {
-        Map result = new HashMap();
+    public Map<String,Set<String>> lookupNoAttributes(Set lfns) {
+        Map<String,Set<String>> result = new HashMap<String,Set<String>>();
         if (lfns == null || lfns.size() == 0) {
             return result;
         }
 
-        for (Iterator i = lfns.iterator(); i.hasNext();) {
-            Set value = new TreeSet();
-            String lfn = (String) i.next();
-            Collection c = (Collection) mLFNMap.get(lfn);
+        for (Object o : lfns) {
+            Set<String> value = new TreeSet<String>();
+            String lfn = (String) o;
+            Collection<ReplicaCatalogEntry> c = map().get(lfn);
             if (c != null) {
-                for (Iterator j = c.iterator(); j.hasNext();) {
-                    value.add(((ReplicaCatalogEntry) j.next()).getPFN());
+                for (Iterator<ReplicaCatalogEntry> j = c.iterator(); j.hasNext();) {
+                    value.add(j.next().getPFN());
                 }
             }
             result.put(lfn, value);
@@ -427,20 +977,20 @@ public class Directory implements ReplicaCatalog {
      * of replica catalog entries (all attributes).
      * @see ReplicaCatalogEntry
      */
-    public Map lookup(Set lfns, String handle) {
-        Map result = new HashMap();
+    public Map<String,List<ReplicaCatalogEntry>> lookup(Set lfns, String handle) {
+        Map<String,List<ReplicaCatalogEntry>> result = new HashMap<String,List<ReplicaCatalogEntry>>();
         if (lfns == null || lfns.size() == 0) {
             return result;
         }
 
-        for (Iterator i = lfns.iterator(); i.hasNext();) {
-            String lfn = (String) i.next();
-            Collection c = (Collection) mLFNMap.get(lfn);
+        for (Object o : lfns) {
+            String lfn = (String) o;
+            Collection<ReplicaCatalogEntry> c = map().get(lfn);
             if (c != null) {
-                List value = new ArrayList();
+                List<ReplicaCatalogEntry> value = new ArrayList<ReplicaCatalogEntry>();
 
-                for (Iterator j = c.iterator(); j.hasNext();) {
-                    ReplicaCatalogEntry rce = (ReplicaCatalogEntry) j.next();
+                for (Iterator<ReplicaCatalogEntry> j = c.iterator(); j.hasNext();) {
+                    ReplicaCatalogEntry rce = j.next();
                     String pool = rce.getResourceHandle();
                     if (pool == null && handle == null ||
                             pool != null && handle != null && pool.equals(handle)) {
@@ -467,20 +1017,20 @@ public class Directory implements ReplicaCatalog {
      * @return a map indexed by the LFN. Each value is a set of
      * physical filenames.
      */
-    public Map lookupNoAttributes(Set lfns, String handle) {
-        Map result = new HashMap();
+    public Map<String,List<String>> lookupNoAttributes(Set lfns, String handle) {
+        Map<String,List<String>> result = new HashMap<String,List<String>>();
         if (lfns == null || lfns.size() == 0) {
             return result;
         }
 
-        for (Iterator i = lfns.iterator(); i.hasNext();) {
-            String lfn = (String) i.next();
-            Collection c = (Collection) mLFNMap.get(lfn);
+        for (Object o : lfns) {
+            String lfn = (String) o;
+            Collection<ReplicaCatalogEntry> c = map().get(lfn);
             if (c != null) {
-                List value = new ArrayList();
+                List<String> value = new ArrayList<String>();
 
-                for (Iterator j = c.iterator(); j.hasNext();) {
-                    ReplicaCatalogEntry rce = (ReplicaCatalogEntry) j.next();
+                for (Iterator<ReplicaCatalogEntry> j = c.iterator(); j.hasNext();) {
+                    ReplicaCatalogEntry rce = j.next();
                     String pool = rce.getResourceHandle();
                     if (pool == null && handle == null ||
                             pool != null && handle != null && pool.equals(handle)) {
@@ -512,18 +1062,17 @@ public class Directory implements ReplicaCatalog {
      * of replica catalog entries.
      * @see ReplicaCatalogEntry
      */
-    public Map lookup(Map constraints) {
+    public Map<String,Collection<ReplicaCatalogEntry>> lookup(Map constraints) {
         if (constraints == null || constraints.size() == 0) {
             // return everything
-            return Collections.unmodifiableMap(mLFNMap);
+            return Collections.unmodifiableMap(map());
 
         } else if (constraints.size() == 1 && constraints.containsKey("lfn")) {
             // return matching LFNs
             Pattern p = Pattern.compile((String) constraints.get("lfn"));
-            Map result = new HashMap();
-            for (Iterator i = mLFNMap.entrySet().iterator(); i.hasNext();) {
-                Map.Entry e = (Map.Entry) i.next();
-                String lfn = (String) e.getKey();
+            Map<String,Collection<ReplicaCatalogEntry>> result = new HashMap<String,Collection<ReplicaCatalogEntry>>();
+            for (Map.Entry<String,Collection<ReplicaCatalogEntry>> e : map().entrySet()) {
+                String lfn = e.getKey();
                 if (p.matcher(lfn).matches()) {
                     result.put(lfn, e.getValue());
                 }
@@ -541,8 +1090,8 @@ public class Directory implements ReplicaCatalog {
      *
      * @return A set of all logical filenames known to the catalog.
      */
-    public Set list() {
-        return new TreeSet(mLFNMap.keySet());
+    public Set<String> list() {
+        return new TreeSet<String>(map().keySet());
     }
 
     /**
@@ -554,12 +1103,11 @@ public class Directory implements ReplicaCatalog {
      * Java-based memory collections.
      * @return A set of logical filenames that match. The set may be empty
      */
-    public Set list(String constraint) {
-        Set result = new TreeSet();
+    public Set<String> list(String constraint) {
+        Set<String> result = new TreeSet<String>();
         Pattern p = Pattern.compile(constraint);
 
-        for (Iterator i = mLFNMap.keySet().iterator(); i.hasNext();) {
-            String lfn = (String) i.next();
+        for (String lfn : map().keySet()) {
             if (p.matcher(lfn).matches()) {
                 result.add(lfn);
             }
@@ -585,24 +1133,24 @@ public class Directory implements ReplicaCatalog {
             throw new NullPointerException();
         }
 
-        Collection c = null;
-        if (mLFNMap.containsKey(lfn)) {
+        Collection<ReplicaCatalogEntry> c = null;
+        if (map().containsKey(lfn)) {
 
             if ( this.mConstructFlatLFN ){
                 //for flat LFN's we need to throw error if two files of the same
                 //name exist
                 StringBuffer error = new StringBuffer();
                 error.append( "Entry for lfn ").append( lfn ).
-                      append( "already exists " ).append( mLFNMap.get(lfn) );
+                      append( "already exists " ).append( map().get(lfn) );
                 throw new ReplicaCatalogException( error.toString() );
             }
 
             boolean seen = false;
             String pfn = tuple.getPFN();
             String handle = tuple.getResourceHandle();
-            c = (Collection) mLFNMap.get(lfn);
-            for (Iterator i = c.iterator(); i.hasNext() && !seen;) {
-                ReplicaCatalogEntry rce = (ReplicaCatalogEntry) i.next();
+            c = map().get(lfn);
+            for (Iterator<ReplicaCatalogEntry> i = c.iterator(); i.hasNext() && !seen;) {
+                ReplicaCatalogEntry rce = i.next();
                 if ((seen = pfn.equals(rce.getPFN())) && handle.equals(rce.getResourceHandle())) {
                     try {
                         i.remove();
@@ -612,8 +1160,8 @@ public class Directory implements ReplicaCatalog {
                 }
             }
         } else {
-            c = new ArrayList();
-            mLFNMap.put(lfn, c);
+            c = new ArrayList<ReplicaCatalogEntry>();
+            map().put(lfn, c);
         }
         c.add(tuple);
 
@@ -660,16 +1208,16 @@ public class Directory implements ReplicaCatalog {
             return result;
         }
 
-        for (Iterator i = x.keySet().iterator(); i.hasNext();) {
-            String lfn = (String) i.next();
+        for (Object key : x.keySet()) {
+            String lfn = (String) key;
             Object val = x.get(lfn);
             if (val instanceof ReplicaCatalogEntry) {
                 // permit misconfigured clients
                 result += insert(lfn, (ReplicaCatalogEntry) val);
             } else {
                 // this is how it should have been
-                for (Iterator j = ((Collection) val).iterator(); j.hasNext();) {
-                    ReplicaCatalogEntry rce = (ReplicaCatalogEntry) j.next();
+                for (Object o : (Collection<?>) val) {
+                    ReplicaCatalogEntry rce = (ReplicaCatalogEntry) o;
                     result += insert(lfn, rce);
                 }
             }
@@ -708,7 +1256,7 @@ public class Directory implements ReplicaCatalog {
      * @return the number of deletions.
      * @see ReplicaCatalogEntry
      */
-    public int delete(Map x, boolean matchAttributes) {
+    public int delete(Map<String,Collection<ReplicaCatalogEntry>> x, boolean matchAttributes) {
         throw new java.lang.UnsupportedOperationException("delete(Map,boolean) not implemented as yet");
     }
 
@@ -722,7 +1270,7 @@ public class Directory implements ReplicaCatalog {
      */
     private boolean matchMe(ReplicaCatalogEntry full, ReplicaCatalogEntry part) {
         if (full.getPFN().equals(part.getPFN())) {
-            for (Iterator i = part.getAttributeIterator(); i.hasNext();) {
+            for (Iterator<?> i = part.getAttributeIterator(); i.hasNext();) {
                 if (!full.hasAttribute((String) i.next())) {
                     return false;
                 }
@@ -750,14 +1298,14 @@ public class Directory implements ReplicaCatalog {
             return result;
         }
 
-        Collection c = (Collection) mLFNMap.get(lfn);
+        Collection<ReplicaCatalogEntry> c = map().get(lfn);
         if (c == null) {
             return result;
         }
 
-        List l = new ArrayList();
-        for (Iterator i = c.iterator(); i.hasNext();) {
-            ReplicaCatalogEntry rce = (ReplicaCatalogEntry) i.next();
+        List<ReplicaCatalogEntry> l = new ArrayList<ReplicaCatalogEntry>();
+        for (Iterator<ReplicaCatalogEntry> i = c.iterator(); i.hasNext();) {
+            ReplicaCatalogEntry rce = i.next();
             if (!matchMe(rce, tuple)) {
                 l.add(rce);
             }
@@ -766,7 +1314,7 @@ public class Directory implements ReplicaCatalog {
         // anything removed?
         if (l.size() != c.size()) {
             result = c.size() - l.size();
-            mLFNMap.put(lfn, l);
+            map().put(lfn, l);
         }
 
         // done
@@ -830,7 +1378,7 @@ public class Directory implements ReplicaCatalog {
      * @return the number of removed entries.
      */
     public int remove(String lfn) {
-        Collection c = (Collection) mLFNMap.remove(lfn);
+        Collection<ReplicaCatalogEntry> c = map().remove(lfn);
         if (c == null) {
             return 0;
         } else {
@@ -853,8 +1401,8 @@ public class Directory implements ReplicaCatalog {
             return result;
         }
 
-        for (Iterator i = lfns.iterator(); i.hasNext();) {
-            String lfn = (String) i.next();
+        for (Object o : lfns) {
+            String lfn = (String) o;
             result += remove(lfn);
         }
 
@@ -873,20 +1421,19 @@ public class Directory implements ReplicaCatalog {
     public int removeByAttribute(String name, Object value) {
         int result = 0;
 
-        for (Iterator i = mLFNMap.keySet().iterator(); i.hasNext();) {
-            String lfn = (String) i.next();
-            Collection c = (Collection) mLFNMap.get(lfn);
+        for (String lfn : map().keySet()) {
+            Collection<ReplicaCatalogEntry> c = map().get(lfn);
             if (c != null) {
-                List l = new ArrayList();
-                for (Iterator j = c.iterator(); j.hasNext();) {
-                    ReplicaCatalogEntry rce = (ReplicaCatalogEntry) j.next();
+                List<ReplicaCatalogEntry> l = new ArrayList<ReplicaCatalogEntry>();
+                for (Iterator<ReplicaCatalogEntry> j = c.iterator(); j.hasNext();) {
+                    ReplicaCatalogEntry rce = j.next();
                     if (!hasMatchingAttr(rce, name, value)) {
                         l.add(rce);
                     }
                 }
                 if (l.size() != c.size()) {
                     result += (c.size() - l.size());
-                    mLFNMap.put(lfn, l);
+                    map().put(lfn, l);
                 }
             }
         }
@@ -914,8 +1461,8 @@ public class Directory implements ReplicaCatalog {
      * @return the number of removed entries.
      */
     public int clear() {
-        int result = mLFNMap.size();
-        mLFNMap.clear();
+        int result = map().size();
+        map().clear();
         return result;
     }
 
@@ -116,6 +116,12 @@ public class JDBCRC implements ReplicaCatalog
   private static final String c_error =
     "The database connection is not established";
 
+  /**
+   * The maximum number of lfns looked up in a single query by the bulk
+   * lookups. Kept below the default limit of 999 host parameters in SQLite.
+   */
+  private static final int c_lookup_batch = 500;
+
   /**
    * Maintains the connection to the database over the lifetime of
    * this instance.
@@ -727,30 +733,25 @@ public class JDBCRC implements ReplicaCatalog
   public Map lookup( Set lfns, String handle )
   {
       Map result = new HashMap();
-      int which = ( handle == null ? 1 : 2 );
-      String query = mCStatements[which];
+      String query = "[no query]";
 
       // sanity check
       if ( lfns == null || lfns.size() == 0 ) return result;
       if ( mConnection == null ) throw new RuntimeException( c_error );
 
+      // the lfns are looked up in batches, with one query for the
+      // mappings and one for the attributes of each batch, instead of
+      // a query per lfn and per mapping
+      List<String> batch = new ArrayList<String>( Math.min( lfns.size(), c_lookup_batch ) );
       try {
-          ResultSet rs = null;
-          PreparedStatement ps = getStatement(which);
-          if ( handle != null ) ps.setString( 2, quote(handle) );
-
           for ( Iterator i = lfns.iterator(); i.hasNext(); ) {
-              List value = new ArrayList();
               String lfn = (String) i.next();
-              ps.setString( 1, quote(lfn) );
-              rs = ps.executeQuery();
-              while ( rs.next() ) {
-                  value.add( new ReplicaCatalogEntry( rs.getString("pfn"),
-                          attributes(rs.getString("lfn_id"),
-                          rs.getString("site")) ) );
+              result.put( lfn, new ArrayList() );
+              batch.add( lfn );
+              if ( batch.size() == c_lookup_batch || !i.hasNext() ) {
+                  query = lookup( batch, handle, result );
+                  batch.clear();
               }
-              rs.close();
-              result.put( lfn, value );
           }
       } catch ( SQLException e ) {
           throw new RuntimeException( "Unable to query database with " +
@@ -759,6 +760,85 @@ public class JDBCRC implements ReplicaCatalog
       return result;
   }
 
+  /**
+   * Looks up a batch of lfns, and adds the replica catalog entries to the
+   * lists in the result map.
+   *
+   * @param lfns is the batch of logical filenames to look up.
+   * @param handle is the resource handle, restricting the LFNs.
+   * @param result is a map indexed by the LFN, with a list for each LFN
+   * in the batch.
+   * @return the last query executed, for error messages.
+   * @throws SQLException in case of errors while querying.
+   */
+  private String lookup( List<String> lfns, String handle, Map result )
+    throws SQLException
+  {
+      StringBuilder in = new StringBuilder( lfns.size() * 2 );
+      for ( int i = 0; i < lfns.size(); i++ ) {
+          in.append( i == 0 ? "?" : ",?" );
+      }
+
+      // the mappings, in the order the single lookup returns them
+      String query = "SELECT l.lfn_id,l.lfn,p.pfn,p.site FROM rc_lfn l " +
+          "LEFT JOIN rc_pfn p ON l.lfn_id=p.lfn_id WHERE l.lfn IN (" + in + ")" +
+          ( handle == null ? "" : " AND p.site=?" );
+      // the lfns are stored quoted
+      Map<String,String> quoted = new HashMap<String,String>();
+      List<String[]> rows = new ArrayList<String[]>();
+      Map<String,Map> attributes = new HashMap<String,Map>();
+      PreparedStatement ps = mConnection.prepareStatement( query );
+      try {
+          int index = 1;
+          for ( String lfn : lfns ) {
+              quoted.put( quote(lfn), lfn );
+              ps.setString( index++, quote(lfn) );
+          }
+          if ( handle != null ) ps.setString( index, quote(handle) );
+
+          ResultSet rs = ps.executeQuery();
+          while ( rs.next() ) {
+              String id = rs.getString("lfn_id");
+              rows.add( new String[]{ id, rs.getString("lfn"),
+                                      rs.getString("pfn"), rs.getString("site") } );
+              attributes.put( id, new TreeMap() );
+          }
+          rs.close();
+      } finally {
+          ps.close();
+      }
+      if ( rows.isEmpty() ) return query;
+
+      // slurp the attributes for all the lfn_ids in one go
+      in.setLength( 0 );
+      for ( int i = 0; i < attributes.size(); i++ ) {
+          in.append( i == 0 ? "?" : ",?" );
+      }
+      query = "SELECT m.lfn_id,m.key,m.value FROM rc_meta m WHERE m.lfn_id IN (" + in + ")";
+      ps = mConnection.prepareStatement( query );
+      try {
+          int index = 1;
+          for ( String id : attributes.keySet() ) ps.setString( index++, id );
+          ResultSet rs = ps.executeQuery();
+          while ( rs.next() ) {
+              attributes.get( rs.getString(1) ).put( rs.getString(2), rs.getString(3) );
+          }
+          rs.close();
+      } finally {
+          ps.close();
+      }
+
+      for ( String[] row : rows ) {
+          Map attrs = new TreeMap();
+          if ( row[3] != null && !row[3].equals("NULL") ) {
+              attrs.put( ReplicaCatalogEntry.RESOURCE_HANDLE, row[3] );
+          }
+          attrs.putAll( attributes.get( row[0] ) );
+          ((List) result.get( quoted.get( row[1] ) )).add( new ReplicaCatalogEntry( row[2], attrs ) );
+      }
+      return query;
+  }
+
   /**
    * Retrieves multiple entries for a given logical filename, up to the
    * complete catalog. Retrieving full catalogs should be harmful, but
@@ -1141,6 +1221,15 @@ public class JDBCRC implements ReplicaCatalog
    * map indexed by the LFN. The value for each LFN key is a collection
    * of replica catalog entries.
    *
+   * The whole map is inserted in a single transaction, in chunks of lfns.
+   * For each chunk, the existing mappings and attributes are looked up with
+   * one query each, the previous mappings that the single insert would
+   * delete are deleted, and the missing lfns are inserted and their lfn_id's
+   * resolved with one more query. The rows for the rc_pfn and rc_meta tables
+   * of the chunk are then sent to the database as one JDBC batch each.
+   * Drivers that support it ( for example MySQL with
+   * rewriteBatchedStatements=true ) send the batches as multi-row inserts.
+   *
    * @param x is a map from logical filename string to list of replica
    * catalog entries.
    * @return the number of insertions.
@@ -1154,23 +1243,278 @@ public class JDBCRC implements ReplicaCatalog
     if ( x == null || x.size() == 0 ) return result;
     if ( mConnection == null ) throw new RuntimeException( c_error );
 
-    // FIXME: Create a true bulk mode. This is inefficient, but will
-    // get the job done (for now).
-    Set lfns = x.keySet();
-    for ( Iterator i=lfns.iterator(); i.hasNext(); ) {
-        String lfn = (String) i.next();
-        List value = (List) x.get(lfn);
-        if ( value != null && value.size() > 0 ) {
+    String query = "[no query]";
+    boolean autoCommitWasOn = false;
+    boolean committed = false;
+
+    try {
+        if ( (autoCommitWasOn = mConnection.getAutoCommit()) )
+            mConnection.setAutoCommit(false);
+
+        Map<String,List<ReplicaCatalogEntry>> chunk =
+            new LinkedHashMap<String,List<ReplicaCatalogEntry>>();
+        for ( Iterator i=x.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) i.next();
+            String lfn = (String) entry.getKey();
+            Collection value = (Collection) entry.getValue();
+            if ( lfn == null || value == null || value.isEmpty() ) continue;
+
+            // drop duplicates in the input, as the single insert would
+            List<ReplicaCatalogEntry> tuples = new ArrayList<ReplicaCatalogEntry>( value.size() );
             for ( Iterator j=value.iterator(); j.hasNext(); ) {
-                result += insert( lfn, (ReplicaCatalogEntry) j.next() );
+                ReplicaCatalogEntry tuple = (ReplicaCatalogEntry) j.next();
+                if ( tuple == null || tuples.contains( tuple ) ) continue;
+                tuples.add( tuple );
+            }
+            if ( tuples.isEmpty() ) continue;
+
+            chunk.put( lfn, tuples );
+            result += tuples.size();
+            if ( chunk.size() == c_lookup_batch ) {
+                query = insertChunk( chunk );
+                chunk.clear();
             }
         }
+        if ( !chunk.isEmpty() ) {
+            query = insertChunk( chunk );
+        }
+
+        mConnection.commit();
+        committed = true;
+        mLogger.log( "Inserted " + result + " entries in a single transaction",
+                     LogManager.DEBUG_MESSAGE_LEVEL );
+
+    } catch ( SQLException e ) {
+        throw new RuntimeException( "Unable to tell database " +
+                query + ": " + e.getMessage() );
+
+    } finally {
+        try {
+            if ( !committed ) mConnection.rollback();
+        } catch ( SQLException e ) {
+            // ignore rollback problems
+        }
+        // restore original auto-commit state
+        try {
+            if ( autoCommitWasOn ) mConnection.setAutoCommit(true);
+        } catch ( SQLException e ) {
+            // ignore
+        }
     }
-    
+
     // done
     return result;
   }
 
+  /**
+   * Inserts a chunk of lfns with their mappings, as part of the transaction
+   * of the bulk insert.
+   *
+   * @param chunk is a map from logical filename to the list of distinct
+   * replica catalog entries for it.
+   * @return the last query executed, for error messages.
+   * @throws SQLException in case of errors while inserting.
+   */
+  private String insertChunk( Map<String,List<ReplicaCatalogEntry>> chunk )
+    throws SQLException
+  {
+      // the lfns are stored quoted
+      List<String> lfns = new ArrayList<String>( chunk.size() );
+      for ( String lfn : chunk.keySet() ) lfns.add( quote(lfn) );
+
+      // the existing lfn_id's and mappings for the lfns
+      String query = "SELECT l.lfn_id,l.lfn,p.pfn,p.site FROM rc_lfn l " +
+          "LEFT JOIN rc_pfn p ON l.lfn_id=p.lfn_id WHERE l.lfn IN (" + placeholders( lfns.size() ) + ")";
+      Map<String,String> ids = new HashMap<String,String>();
+      Map<String,List<String[]>> mappings = new HashMap<String,List<String[]>>();
+      PreparedStatement ps = mConnection.prepareStatement( query );
+      int index = 1;
+      for ( String lfn : lfns ) ps.setString( index++, lfn );
+      ResultSet rs = ps.executeQuery();
+      while ( rs.next() ) {
+          String id = rs.getString("lfn_id");
+          ids.put( rs.getString("lfn"), id );
+          List<String[]> pfns = mappings.get( id );
+          if ( pfns == null ) {
+              pfns = new ArrayList<String[]>();
+              mappings.put( id, pfns );
+          }
+          if ( rs.getString("pfn") != null ) {
+              pfns.add( new String[]{ rs.getString("pfn"), rs.getString("site") } );
+          }
+      }
+      rs.close();
+      ps.close();
+
+      // the attributes of the existing lfns
+      Map<String,Map<String,String>> attributes = new HashMap<String,Map<String,String>>();
+      if ( !mappings.isEmpty() ) {
+          query = "SELECT m.lfn_id,m.key,m.value FROM rc_meta m WHERE m.lfn_id IN (" +
+              placeholders( mappings.size() ) + ")";
+          ps = mConnection.prepareStatement( query );
+          index = 1;
+          for ( String id : mappings.keySet() ) {
+              ps.setString( index++, id );
+              attributes.put( id, new HashMap<String,String>() );
+          }
+          rs = ps.executeQuery();
+          while ( rs.next() ) {
+              attributes.get( rs.getString(1) ).put( rs.getString(2), rs.getString(3) );
+          }
+          rs.close();
+          ps.close();
+      }
+
+      // delete the lfns the single insert would delete, as determined
+      // by lookupAndDelete
+      query = "DELETE FROM rc_lfn WHERE lfn_id=?";
+      ps = null;
+      for ( Map.Entry<String,List<ReplicaCatalogEntry>> entry : chunk.entrySet() ) {
+          String lfn = quote( entry.getKey() );
+          String id = ids.get( lfn );
+          if ( id == null ) continue;
+          for ( ReplicaCatalogEntry tuple : entry.getValue() ) {
+              if ( replaces( tuple, mappings.get( id ), attributes.get( id ) ) ) {
+                  if ( ps == null ) ps = mConnection.prepareStatement( query );
+                  ps.setString( 1, id );
+                  ps.addBatch();
+                  ids.remove( lfn );
+                  break;
+              }
+          }
+      }
+      if ( ps != null ) {
+          ps.executeBatch();
+          ps.close();
+      }
+
+      // insert the missing lfns, and resolve their lfn_id's
+      List<String> missing = new ArrayList<String>();
+      for ( String lfn : lfns ) {
+          if ( !ids.containsKey( lfn ) ) missing.add( lfn );
+      }
+      if ( !missing.isEmpty() ) {
+          query = mCStatements[12];
+          ps = mConnection.prepareStatement( query );
+          for ( String lfn : missing ) {
+              ps.setString( 1, lfn );
+              ps.addBatch();
+          }
+          ps.executeBatch();
+          ps.close();
+
+          query = "SELECT lfn_id,lfn FROM rc_lfn WHERE lfn IN (" + placeholders( missing.size() ) + ")";
+          ps = mConnection.prepareStatement( query );
+          index = 1;
+          for ( String lfn : missing ) ps.setString( index++, lfn );
+          rs = ps.executeQuery();
+          while ( rs.next() ) {
+              ids.put( rs.getString("lfn"), rs.getString("lfn_id") );
+          }
+          rs.close();
+          ps.close();
+      }
+
+      // the mappings and attributes of the chunk
+      PreparedStatement pfns = getStatement(16);
+      PreparedStatement meta = getStatement(17);
+      // drop anything left over from a failed bulk insert
+      pfns.clearBatch();
+      meta.clearBatch();
+      for ( Map.Entry<String,List<ReplicaCatalogEntry>> entry : chunk.entrySet() ) {
+          String id = ids.get( quote( entry.getKey() ) );
+          if ( id == null ) {
+              throw new SQLException( "Unable to access lfn_id for lfn " + entry.getKey() );
+          }
+          for ( ReplicaCatalogEntry tuple : entry.getValue() ) {
+              String resourceHandle = tuple.getResourceHandle();
+              pfns.setString(1, id);
+              pfns.setString(2, quote(tuple.getPFN()));
+              if (resourceHandle == null) {
+                  pfns.setNull(3, Types.VARCHAR);
+              } else {
+                  pfns.setString(3, resourceHandle);
+              }
+              pfns.addBatch();
+
+              for ( Iterator k=tuple.getAttributeIterator(); k.hasNext(); ) {
+                  String name = (String) k.next();
+                  if (name.equals(ReplicaCatalogEntry.RESOURCE_HANDLE)) {
+                      continue;
+                  }
+                  Object attr = tuple.getAttribute(name);
+                  meta.setLong( 1, Long.parseLong(id) );
+                  meta.setString( 2, name );
+                  if ( attr == null ) {
+                      meta.setNull( 3, Types.VARCHAR );
+                  } else {
+                      meta.setString( 3, attr instanceof String ? (String) attr : attr.toString() );
+                  }
+                  meta.addBatch();
+              }
+          }
+      }
+      query = mCStatements[16];
+      pfns.executeBatch();
+      query = mCStatements[17];
+      meta.executeBatch();
+      return query;
+  }
+
+  /**
+   * Determines whether inserting an entry replaces an existing lfn, in the
+   * same way as lookupAndDelete does. That is the case if the lfn has a
+   * mapping with the same pfn and site, and each of its attributes is also
+   * an attribute of the entry with the same value.
+   *
+   * @param tuple is the entry to be inserted.
+   * @param mappings are the pfn and site pairs of the existing lfn.
+   * @param attributes are the attributes of the existing lfn.
+   * @return true if the existing lfn is to be deleted.
+   * @see #lookupAndDelete( String, ReplicaCatalogEntry )
+   */
+  private boolean replaces( ReplicaCatalogEntry tuple,
+                            List<String[]> mappings,
+                            Map<String,String> attributes )
+  {
+      String pfn = quote( tuple.getPFN() );
+      String site = tuple.getResourceHandle();
+      boolean found = false;
+      for ( String[] mapping : mappings ) {
+          if ( pfn.equals( mapping[0] ) &&
+               ( site == null ? mapping[1] == null : site.equals( mapping[1] ) ) ) {
+              found = true;
+              break;
+          }
+      }
+      if ( !found ) return false;
+
+      for ( Map.Entry<String,String> attribute : attributes.entrySet() ) {
+          String key = attribute.getKey();
+          String value = attribute.getValue();
+          if ( key != null && ( !tuple.hasAttribute(key) ||
+                                ( value != null && !tuple.getAttribute(key).equals(value) ) ) ) {
+              return false;
+          }
+      }
+      return true;
+  }
+
+  /**
+   * Returns the placeholders for the values of an IN clause.
+   *
+   * @param count is the number of values.
+   * @return the comma separated placeholders.
+   */
+  private static String placeholders( int count )
+  {
+      StringBuilder in = new StringBuilder( count * 2 );
+      for ( int i = 0; i < count; i++ ) {
+          in.append( i == 0 ? "?" : ",?" );
+      }
+      return in.toString();
+  }
+
   /**
    * Deletes multiple mappings into the replica catalog. The input is a
    * map indexed by the LFN. The value for each LFN key is a collection
@@ -18,12 +18,17 @@ package edu.isi.pegasus.planner.catalog.replica.impl;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -74,7 +79,17 @@ import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
  * <p/>
  * The class is strict when producing (storing) results. The LFN and PFN
  * are only quoted and escaped, if necessary. The attribute values are
- * always quoted and escaped.
+ * always quoted and escaped.<p>
+ * <p/>
+ * By default, the whole file is rewritten when the catalog is closed. If the
+ * property "journal" is set to true, the catalog is instead maintained as an
+ * append-only journal. Each insert is appended to the file as it happens, and
+ * when the file is read back, later lines replace earlier lines for the same
+ * LFN, PFN and site. The file is compacted ( rewritten with only the live
+ * entries ) when more than half of the records in it are obsolete, or on
+ * close if entries were deleted in the session. The journal uses the same
+ * format as the regular file, and can be read by catalogs not in journal
+ * mode.
  *
  * @author Jens-S. Vöckler
  * @version $Revision$
@@ -86,8 +101,28 @@ public class SimpleFile implements ReplicaCatalog {
      * Designates a static file. i.e. read only
      */
     public static final String READ_ONLY_KEY = "read.only";
-    
-    private static final String DEFAULT_REPLICA_CATALOG_BASENAME = "rc.txt";
+
+    /**
+     * The name of the key that turns on the append-only journal mode.
+     */
+    public static final String JOURNAL_KEY = "journal";
+
+    /**
+     * The minimum number of obsolete records in the journal, before a
+     * compaction is triggered.
+     */
+    public static final int JOURNAL_COMPACTION_MIN_OBSOLETE = 10000;
+
+    /**
+     * The size of the regions in which the file is memory mapped for reading.
+     */
+    private static final long MAP_REGION_SIZE = 1L << 30;
+
+    /**
+     * The basename of the file in the current directory that is used, if
+     * no file is specified in the properties.
+     */
+    public static final String DEFAULT_REPLICA_CATALOG_BASENAME = "rc.txt";
 
     /**
      * Records the quoting mode for LFNs and PFNs. If false, only quote as
@@ -115,6 +150,39 @@ public class SimpleFile implements ReplicaCatalog {
      */
     boolean m_readonly;
 
+    /**
+     * A boolean indicating whether the catalog is maintained as an append-only
+     * journal.
+     */
+    protected boolean m_journal;
+
+    /**
+     * The writer to the journal, if in journal mode.
+     */
+    private Writer m_journal_out;
+
+    /**
+     * A boolean indicating whether the file is being read in.
+     */
+    private boolean m_loading;
+
+    /**
+     * A boolean indicating whether entries were deleted, requiring the
+     * journal to be compacted.
+     */
+    private boolean m_dirty;
+
+    /**
+     * The number of records in the file.
+     */
+    private long m_records;
+
+    /**
+     * The number of records in the file, that have been replaced by
+     * later records.
+     */
+    private long m_obsolete;
+
     /**
      * Default empty constructor creates an object that is not yet connected
      * to any database. You must use support methods to connect before this
@@ -127,6 +195,8 @@ public class SimpleFile implements ReplicaCatalog {
         m_lfn = null;
         m_filename = null;
         m_readonly = false;
+        m_journal = false;
+        m_journal_out = null;
         mVariableExpander = new VariableExpander();
     }
 
@@ -318,6 +388,7 @@ public class SimpleFile implements ReplicaCatalog {
             if (state == 16){
                 ReplicaCatalogEntry rce = new ReplicaCatalogEntry(pfn, attr);
                 insert(lfn, rce );
+                m_records++;
             }
             return true;
         }
@@ -334,28 +405,30 @@ public class SimpleFile implements ReplicaCatalog {
         if (filename == null) return false;
         m_filename = filename;
         m_lfn = new LinkedHashMap();
+        m_records = 0;
+        m_obsolete = 0;
+        m_dirty = false;
 
         try {
             File f = new File(filename);
+            boolean newline = true;
             if (f.exists()) {
-                LineNumberReader lnr = new LineNumberReader(new FileReader(f));
-                String line;
-                while ((line = lnr.readLine()) != null) {
-                    if (line.length() == 0 || line.charAt(0) == '#'){
-                        continue;
-                    }
-                    //PM-831 expand the line before parsing
-                    try{
-                        line = mVariableExpander.expand(line);
-                    }
-                    catch( RuntimeException e ){
-                        //rethrow again
-                        throw new RuntimeException( "Error while expanding contents of file based rc at line number " + lnr.getLineNumber() , e );
-                    }
-                    parse(line, lnr.getLineNumber());
+                m_loading = true;
+                try{
+                    newline = read( f );
                 }
+                finally{
+                    m_loading = false;
+                }
+            }
 
-                lnr.close();
+            if( m_journal && !m_readonly ){
+                if( this.needsCompaction() ){
+                    this.compact();
+                }
+                else{
+                    this.openJournal( !newline );
+                }
             }
         } catch (IOException ioe) {
             m_lfn = null;
@@ -366,6 +439,85 @@ public class SimpleFile implements ReplicaCatalog {
         return true;
     }
 
+    /**
+     * Reads the file sequentially by memory mapping it, and parses each line
+     * into the in-memory map.
+     *
+     * @param f  the file to read
+     *
+     * @return boolean indicating whether the file is empty or ends with a newline
+     *
+     * @throws IOException in case of error while reading
+     */
+    private boolean read( File f ) throws IOException{
+        Charset charset = Charset.defaultCharset();
+        byte[] line = new byte[ 256 ];
+        int length = 0;
+        int lineno = 0;
+        byte last = '\n';
+
+        FileInputStream fis = new FileInputStream( f );
+        try{
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            for( long position = 0; position < size; position += MAP_REGION_SIZE ){
+                MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY,
+                                                       position,
+                                                       Math.min( MAP_REGION_SIZE, size - position ) );
+                while( buffer.hasRemaining() ){
+                    byte b = buffer.get();
+                    last = b;
+                    if( b == '\n' ){
+                        //strip any carriage return
+                        int end = ( length > 0 && line[ length - 1 ] == '\r' ) ? length - 1 : length;
+                        parseLine( new String( line, 0, end, charset ), ++lineno );
+                        length = 0;
+                    }
+                    else{
+                        if( length == line.length ){
+                            line = Arrays.copyOf( line, length * 2 );
+                        }
+                        line[ length++ ] = b;
+                    }
+                }
+            }
+            if( length > 0 ){
+                //last line without a newline
+                int end = ( line[ length - 1 ] == '\r' ) ? length - 1 : length;
+                parseLine( new String( line, 0, end, charset ), ++lineno );
+            }
+        }
+        finally{
+            fis.close();
+        }
+        return last == '\n';
+    }
+
+    /**
+     * Expands and parses a single line read from the file. Empty lines and
+     * comments are ignored.
+     *
+     * @param line   is the line to parse
+     * @param lineno is the line number of this line
+     */
+    private void parseLine( String line, int lineno ){
+        if (line.length() == 0 || line.charAt(0) == '#'){
+            return;
+        }
+        //PM-831 expand the line before parsing
+        //only lines with variables need to go through the expander
+        if( line.indexOf( "${" ) != -1 ){
+            try{
+                line = mVariableExpander.expand(line);
+            }
+            catch( RuntimeException e ){
+                //rethrow again
+                throw new RuntimeException( "Error while expanding contents of file based rc at line number " + lineno , e );
+            }
+        }
+        parse(line, lineno);
+    }
+
     /**
      * Establishes a connection to the database from the properties.
      * You will need to specify a "file" property to point to the
@@ -388,6 +540,12 @@ public class SimpleFile implements ReplicaCatalog {
                     false);
         }
 
+        //update the journal mode if specified
+        if (props.containsKey(SimpleFile.JOURNAL_KEY)) {
+            m_journal = Boolean.parse(props.getProperty(SimpleFile.JOURNAL_KEY),
+                    false);
+        }
+
         if (props.containsKey("file"))
             return connect(props.getProperty("file"));
         else{
@@ -445,9 +603,6 @@ public class SimpleFile implements ReplicaCatalog {
      * quoted and thus quote-escaped.
      */
     public void close() {
-        String newline = System.getProperty("line.separator", "\r\n");
-        Escape e = new Escape("\"\\", '\\');
-
         // sanity check
         if (m_lfn == null) return;
 
@@ -461,11 +616,43 @@ public class SimpleFile implements ReplicaCatalog {
         }
 
         try {
+            if( m_journal ){
+                //only rewrite if there are deletions to be
+                //recorded or too many obsolete records
+                if( m_dirty || this.needsCompaction() ){
+                    this.compact();
+                }
+                this.closeJournal();
+            }
+            else{
+                this.write( new File( m_filename ) );
+            }
+        } catch (IOException ioe) {
+            // FIXME: blurt message somewhere sane
+            System.err.println(ioe.getMessage());
+        } finally {
+            m_lfn.clear();
+            m_lfn = null;
+            m_filename = null;
+            m_journal_out = null;
+        }
+    }
 
+    /**
+     * Writes out the in-memory representation to a file.
+     *
+     * @param file  the file to write to
+     *
+     * @throws IOException in case of error while writing
+     */
+    private void write( File file ) throws IOException{
+        String newline = System.getProperty("line.separator", "\r\n");
+        Escape e = new Escape("\"\\", '\\');
 
-            // open
-            Writer out = new BufferedWriter(new FileWriter(m_filename));
+        // open
+        Writer out = new BufferedWriter(new FileWriter(file));
 
+        try{
             // write header
             out.write("# file-based replica catalog: " +
                     Currently.iso8601(false, true, true, new Date()));
@@ -478,37 +665,137 @@ public class SimpleFile implements ReplicaCatalog {
                 if (c != null) {
                     for (Iterator j = c.iterator(); j.hasNext(); ) {
                         ReplicaCatalogEntry rce = (ReplicaCatalogEntry) j.next();
-                        out.write(quote(e, lfn));
-                        out.write(' ');
-                        out.write(quote(e, rce.getPFN()));
-                        for (Iterator k = rce.getAttributeIterator(); k.hasNext(); ) {
-                            String key = (String) k.next();
-                            String value = (String) rce.getAttribute(key);
-                            out.write(' ');
-                            out.write(key);
-                            out.write("=\"");
-                            out.write(e.escape(value));
-                            out.write('"');
-                        }
+                        write( out, e, lfn, rce );
 
                         // finalize record/line
                         out.write(newline);
                     }
                 }
             }
-
+        }
+        finally{
             // close
             out.close();
-        } catch (IOException ioe) {
-            // FIXME: blurt message somewhere sane
-            System.err.println(ioe.getMessage());
-        } finally {
-            m_lfn.clear();
-            m_lfn = null;
-            m_filename = null;
         }
     }
 
+    /**
+     * Writes out a single entry, without the trailing newline.
+     *
+     * @param out  the writer to write to
+     * @param e    the escape instance to use
+     * @param lfn  the lfn
+     * @param rce  the replica catalog entry
+     *
+     * @throws IOException in case of error while writing
+     */
+    private void write( Writer out, Escape e, String lfn, ReplicaCatalogEntry rce ) throws IOException{
+        out.write(quote(e, lfn));
+        out.write(' ');
+        out.write(quote(e, rce.getPFN()));
+        for (Iterator k = rce.getAttributeIterator(); k.hasNext(); ) {
+            String key = (String) k.next();
+            String value = (String) rce.getAttribute(key);
+            out.write(' ');
+            out.write(key);
+            out.write("=\"");
+            out.write(e.escape(value));
+            out.write('"');
+        }
+    }
+
+    /**
+     * Opens the journal for appending records.
+     *
+     * @param newline  whether a newline needs to be written first, as the
+     *                 existing file does not end with one.
+     *
+     * @throws IOException in case of error while opening
+     */
+    private void openJournal( boolean newline ) throws IOException{
+        File f = new File( m_filename );
+        boolean exists = f.exists() && f.length() > 0;
+        m_journal_out = new BufferedWriter( new FileWriter( f, true ) );
+        if( !exists ){
+            m_journal_out.write( "# file-based replica catalog journal: " +
+                    Currently.iso8601(false, true, true, new Date()));
+            m_journal_out.write( System.getProperty("line.separator", "\r\n") );
+        }
+        else if( newline ){
+            m_journal_out.write( System.getProperty("line.separator", "\r\n") );
+        }
+    }
+
+    /**
+     * Flushes and closes the journal.
+     *
+     * @throws IOException in case of error while closing
+     */
+    private void closeJournal() throws IOException{
+        if( m_journal_out != null ){
+            m_journal_out.close();
+            m_journal_out = null;
+        }
+    }
+
+    /**
+     * Appends a single record to the journal, compacting the journal if
+     * required.
+     *
+     * @param lfn   the lfn
+     * @param rce   the replica catalog entry
+     */
+    private void journal( String lfn, ReplicaCatalogEntry rce ){
+        try{
+            write( m_journal_out, new Escape("\"\\", '\\'), lfn, rce );
+            m_journal_out.write( System.getProperty("line.separator", "\r\n") );
+            m_records++;
+            if( this.needsCompaction() ){
+                this.compact();
+            }
+        }
+        catch( IOException ioe ){
+            throw new RuntimeException( "Unable to append to the replica catalog journal " + m_filename, ioe );
+        }
+    }
+
+    /**
+     * Returns whether the journal has enough obsolete records to warrant
+     * a compaction.
+     *
+     * @return boolean
+     */
+    private boolean needsCompaction(){
+        return m_obsolete >= SimpleFile.JOURNAL_COMPACTION_MIN_OBSOLETE &&
+               2 * m_obsolete > m_records;
+    }
+
+    /**
+     * Compacts the journal by writing out only the live entries to a temporary
+     * file, that is then moved in place of the journal. The journal is
+     * reopened for appends afterwards.
+     *
+     * @throws IOException in case of error while compacting
+     */
+    private void compact() throws IOException{
+        this.closeJournal();
+
+        File file = new File( m_filename );
+        File temp = new File( m_filename + ".compact" );
+        this.write( temp );
+        Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+
+        long live = 0;
+        for( Collection c : m_lfn.values() ){
+            live += c.size();
+        }
+        m_records = live;
+        m_obsolete = 0;
+        m_dirty = false;
+
+        this.openJournal( false );
+    }
+
     /**
      * Predicate to check, if the connection with the catalog's
      * implementation is still active. This helps determining, if it makes
@@ -789,6 +1076,25 @@ public class SimpleFile implements ReplicaCatalog {
      * throw an exception, don't use zero.
      */
     public int insert( String lfn, ReplicaCatalogEntry tuple ) {
+        int result = this.insertInMemory( lfn, tuple );
+
+        //in journal mode, record the insert
+        //unless we are reading in the journal
+        if( result > 0 && m_journal_out != null && !m_loading ){
+            this.journal( lfn, tuple );
+        }
+        return result;
+    }
+
+    /**
+     * Inserts a new mapping into the in-memory representation. Any existing
+     * mapping of the same LFN, PFN, and HANDLE will be replaced.
+     *
+     * @param lfn   is the logical filename under which to book the entry.
+     * @param tuple is the physical filename and associated PFN attributes.
+     * @return number of insertions
+     */
+    private int insertInMemory( String lfn, ReplicaCatalogEntry tuple ) {
         if (lfn == null || tuple == null)
             throw new NullPointerException();
 
@@ -806,6 +1112,7 @@ public class SimpleFile implements ReplicaCatalog {
                         (handle != null && handle.equals(rce.getResourceHandle())))) {
                     try {
                         i.remove();
+                        m_obsolete++;
                         break;
                     } catch (UnsupportedOperationException uoe) {
                         return 0;
@@ -904,6 +1211,7 @@ public class SimpleFile implements ReplicaCatalog {
         if (l.size() != c.size()) {
             result = c.size() - l.size();
             m_lfn.put(lfn, l);
+            m_dirty = true;
         }
 
         // done
@@ -993,6 +1301,7 @@ public class SimpleFile implements ReplicaCatalog {
         if (l.size() != c.size()) {
             result = c.size() - l.size();
             m_lfn.put(lfn, l);
+            m_dirty = true;
         }
 
         // done
@@ -1045,6 +1354,7 @@ public class SimpleFile implements ReplicaCatalog {
         if (l.size() != c.size()) {
             result = c.size() - l.size();
             m_lfn.put(lfn, l);
+            m_dirty = true;
         }
 
         // done
@@ -1076,7 +1386,8 @@ public class SimpleFile implements ReplicaCatalog {
     public int remove( String lfn ) {
         Collection c = (Collection) m_lfn.remove(lfn);
         if (c == null) return 0;
-        else return c.size();
+        m_dirty = true;
+        return c.size();
     }
 
     /**
@@ -1124,6 +1435,7 @@ public class SimpleFile implements ReplicaCatalog {
                 if (l.size() != c.size()) {
                     result += (c.size() - l.size());
                     m_lfn.put(lfn, l);
+                    m_dirty = true;
                 }
             }
         }
@@ -1153,6 +1465,7 @@ public class SimpleFile implements ReplicaCatalog {
     public int clear() {
         int result = m_lfn.size();
         m_lfn.clear();
+        m_dirty = true;
         return result;
     }
 
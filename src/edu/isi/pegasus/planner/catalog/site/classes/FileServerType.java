@@ -63,7 +63,7 @@ public abstract class FileServerType extends AbstractSiteData {
          *
          * @return Collection consisting of get and all
          */
-        public static Collection<OPERATION> operationsForGET(){
+        public static synchronized Collection<OPERATION> operationsForGET(){
             if( mGetOperations == null ){
                 mGetOperations = new LinkedList<OPERATION>();
                 mGetOperations.add( get );
@@ -77,7 +77,7 @@ public abstract class FileServerType extends AbstractSiteData {
          *
          * @return Collection consisting of put and all
          */
-        public static Collection<OPERATION> operationsForPUT(){
+        public static synchronized Collection<OPERATION> operationsForPUT(){
             if( mPutOperations == null ){
                 mPutOperations = new LinkedList<OPERATION>();
                 mPutOperations.add( put );
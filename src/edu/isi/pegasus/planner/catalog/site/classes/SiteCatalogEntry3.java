@@ -33,6 +33,7 @@ import edu.isi.pegasus.planner.common.PegRandom;
 
 import edu.isi.pegasus.planner.namespace.Namespace;
 import edu.isi.pegasus.planner.namespace.Pegasus;
+import edu.isi.pegasus.common.util.Environment;
 
 import java.util.List;
 import java.util.LinkedList;
@@ -476,7 +477,7 @@ public class SiteCatalogEntry3 extends AbstractSiteData{
             if( handle != null && handle.equals( "local" ) ){
                 //try to retrieve value from environment
                 //for local site.
-                value = System.getenv( variable );
+                value = Environment.getenv( variable );
             }
         }
 
@@ -0,0 +1,281 @@
+/*
+ *
+ *   Copyright 2007-2008 University Of Southern California
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package edu.isi.pegasus.planner.catalog.site.classes;
+
+import edu.isi.pegasus.planner.common.PegRandom;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The directory and file server layout of a site, compiled once from a
+ * <code>SiteCatalogEntry</code> by the <code>SiteStore</code>. It holds the
+ * file servers of the shared scratch and the storage directory for each
+ * operation, with the fallback to the servers for all operations already
+ * applied, and the internal and external work directories of the workflow on
+ * the site.
+ *
+ * <p>
+ * An instance is immutable and can be shared between threads. Selecting a
+ * file server picks one at random, if more than one server is associated
+ * with an operation, as <code>DirectoryLayout.selectFileServer</code> does.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public final class SiteLayout {
+
+    /**
+     * An empty list of file servers.
+     */
+    private static final FileServer[] NO_SERVERS = new FileServer[0];
+
+    /**
+     * The handle of the site.
+     */
+    private final String mSiteHandle;
+
+    /**
+     * The random directory name with which the layout was compiled.
+     */
+    private final String mRandomDir;
+
+    /**
+     * The file servers for the shared scratch directory, indexed by the
+     * ordinal of the operation.
+     */
+    private final FileServer[][] mScratchServers;
+
+    /**
+     * The file servers for the storage directory, indexed by the ordinal of
+     * the operation.
+     */
+    private final FileServer[][] mStorageServers;
+
+    /**
+     * The internal work directory of the workflow on the site.
+     */
+    private final String mInternalWorkDirectory;
+
+    /**
+     * The error encountered while computing the internal work directory, that
+     * is thrown when the directory is asked for.
+     */
+    private final RuntimeException mInternalWorkDirectoryError;
+
+    /**
+     * The work directory as seen externally for each of the shared scratch
+     * file servers.
+     */
+    private final Map<FileServer,String> mExternalWorkDirectories;
+
+    /**
+     * The URL to the work directory as seen externally for each of the shared
+     * scratch file servers.
+     */
+    private final Map<FileServer,String> mExternalWorkDirectoryURLs;
+
+    /**
+     * Compiles the layout of a site.
+     *
+     * @param store      the site store that the site belongs to, set for planner use.
+     * @param entry      the site catalog entry.
+     * @param randomDir  the random directory name for the workflow, can be null.
+     */
+    SiteLayout( SiteStore store, SiteCatalogEntry entry, String randomDir ){
+        mSiteHandle = entry.getSiteHandle();
+        mRandomDir  = randomDir;
+
+        mScratchServers = compile( entry.getDirectory( Directory.TYPE.shared_scratch ) );
+        mStorageServers = compile( entry.getHeadNodeStorageDirectory() );
+
+        String directory = null;
+        RuntimeException error = null;
+        try{
+            directory = store.computeInternalWorkDirectory( entry );
+        }
+        catch( RuntimeException e ){
+            error = e;
+        }
+        mInternalWorkDirectory      = directory;
+        mInternalWorkDirectoryError = error;
+
+        mExternalWorkDirectories   = new IdentityHashMap<FileServer,String>();
+        mExternalWorkDirectoryURLs = new IdentityHashMap<FileServer,String>();
+        for( FileServer[] servers : mScratchServers ){
+            for( FileServer server : servers ){
+                if( mExternalWorkDirectories.containsKey( server ) ){
+                    continue;
+                }
+                try{
+                    directory = store.getExternalWorkDirectory( server, mSiteHandle );
+                }
+                catch( RuntimeException e ){
+                    //incomplete file server. the error is thrown
+                    //when the directory is asked for
+                    continue;
+                }
+                mExternalWorkDirectories.put( server, directory );
+                mExternalWorkDirectoryURLs.put( server, server.getURLPrefix() + directory );
+            }
+        }
+    }
+
+    /**
+     * Returns the handle of the site.
+     *
+     * @return the site handle
+     */
+    public String getSiteHandle(){
+        return mSiteHandle;
+    }
+
+    /**
+     * Returns whether the layout was compiled for a random directory name.
+     *
+     * @param randomDir  the random directory name, can be null
+     *
+     * @return boolean
+     */
+    boolean compiledFor( String randomDir ){
+        return ( mRandomDir == null ) ? randomDir == null : mRandomDir.equals( randomDir );
+    }
+
+    /**
+     * Selects a file server for the shared scratch directory.
+     *
+     * @param operation  the operation for which the file server is required
+     *
+     * @return FileServer else null
+     */
+    public FileServer selectScratchFileServer( FileServer.OPERATION operation ){
+        return select( mScratchServers[ operation.ordinal() ] );
+    }
+
+    /**
+     * Selects a file server for the storage directory, to which the outputs are
+     * staged out.
+     *
+     * @param operation  the operation for which the file server is required
+     *
+     * @return FileServer else null
+     */
+    public FileServer selectStorageFileServer( FileServer.OPERATION operation ){
+        return select( mStorageServers[ operation.ordinal() ] );
+    }
+
+    /**
+     * Returns the internal work directory of the workflow on the site.
+     *
+     * @return the directory
+     * @throws RuntimeException if the directory could not be computed from the
+     *         site catalog entry.
+     */
+    public String getInternalWorkDirectory(){
+        if( mInternalWorkDirectoryError != null ){
+            throw mInternalWorkDirectoryError;
+        }
+        return mInternalWorkDirectory;
+    }
+
+    /**
+     * Returns the work directory as seen externally through a shared scratch
+     * file server of the site.
+     *
+     * @param server  the file server
+     *
+     * @return the directory, else null if the server is not a shared scratch
+     *         file server of the site.
+     */
+    public String getExternalWorkDirectory( FileServer server ){
+        return mExternalWorkDirectories.get( server );
+    }
+
+    /**
+     * Returns the URL to the work directory as seen externally through a shared
+     * scratch file server of the site.
+     *
+     * @param server  the file server
+     *
+     * @return the url, else null if the server is not a shared scratch file
+     *         server of the site.
+     */
+    public String getExternalWorkDirectoryURL( FileServer server ){
+        return mExternalWorkDirectoryURLs.get( server );
+    }
+
+    /**
+     * Resolves the file servers of a directory for each operation, falling back
+     * to the servers for all operations.
+     *
+     * @param directory  the directory, can be null
+     *
+     * @return the servers indexed by the ordinal of the operation
+     */
+    private static FileServer[][] compile( DirectoryLayout directory ){
+        FileServer.OPERATION[] operations = FileServer.OPERATION.values();
+        FileServer[][] result = new FileServer[ operations.length ][];
+        for( FileServer.OPERATION operation : operations ){
+            List<FileServer> servers = null;
+            if( directory != null ){
+                servers = directory.getFileServers( operation );
+                if( servers == null || servers.isEmpty() ){
+                    servers = directory.getFileServers( FileServer.OPERATION.all );
+                }
+            }
+            result[ operation.ordinal() ] = ( servers == null || servers.isEmpty() )?
+                                            NO_SERVERS:
+                                            servers.toArray( new FileServer[ servers.size() ] );
+        }
+        return result;
+    }
+
+    /**
+     * Selects a server at random.
+     *
+     * @param servers  the servers
+     *
+     * @return the server, else null if there are none
+     */
+    private static FileServer select( FileServer[] servers ){
+        switch( servers.length ){
+            case 0:
+                return null;
+
+            case 1:
+                return servers[0];
+
+            default:
+                return servers[ PegRandom.getInteger( servers.length - 1 ) ];
+        }
+    }
+
+    /**
+     * Returns a textual description of the layout.
+     *
+     * @return String
+     */
+    public String toString(){
+        StringBuffer sb = new StringBuffer();
+        sb.append( mSiteHandle ).append( " -> " ).append( mInternalWorkDirectory ).
+           append( " " ).append( mExternalWorkDirectoryURLs.values() );
+        return sb.toString();
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.isi.pegasus.planner.catalog.classes.SysInfo;
 import edu.isi.pegasus.planner.catalog.transformation.classes.VDSSysInfo;
@@ -35,6 +36,7 @@ import edu.isi.pegasus.planner.classes.PlannerOptions;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.namespace.Pegasus;
 import edu.isi.pegasus.planner.mapper.OutputMapperFactory;
+import edu.isi.pegasus.common.util.Environment;
 
 /**
  * The site store contains the collection of sites backed by a HashMap.
@@ -70,6 +72,12 @@ public class SiteStore extends AbstractSiteData{
      * the storage directory or not.
      */
     protected boolean mDeepStorageStructure;
+
+    /**
+     * The compiled layouts of the sites, indexed by the site handle. The
+     * layouts are compiled on first use, once the store is set for planner use.
+     */
+    private Map<String, SiteLayout> mLayouts;
     
     /**
      * The default constructor.
@@ -83,6 +91,7 @@ public class SiteStore extends AbstractSiteData{
      */
     public void initialize() {        
         mStore = new HashMap<String, SiteCatalogEntry>( );
+        mLayouts = new ConcurrentHashMap<String, SiteLayout>();
     }
     
     /**
@@ -96,7 +105,44 @@ public class SiteStore extends AbstractSiteData{
         mWorkDir              = properties.getExecDirectory();  
         mDeepStorageStructure = properties.useDeepStorageDirectoryStructure() ;
                                 //||hashedOutputMapperUsed( properties );
-                                  
+        mLayouts.clear();
+    }
+
+    /**
+     * Discards the compiled layouts of the sites. To be called if the
+     * directories or file servers of an entry in the store are modified after
+     * the layouts have been compiled.
+     */
+    public void clearLayouts(){
+        mLayouts.clear();
+    }
+
+    /**
+     * Returns the compiled directory and file server layout of a site. The
+     * layout is compiled on first use, and compiled again if the random
+     * directory for the workflow changes.
+     *
+     * @param handle  the site handle
+     *
+     * @return the layout, else null if the site is not in the store.
+     * @throws RuntimeException if the store is not set for planner use.
+     */
+    public SiteLayout getLayout( String handle ){
+        if( mPlannerOptions == null ){
+            throw new RuntimeException(
+                    "The setForPlannerUse() was not called before calling getLayout");
+        }
+        String randomDir  = mPlannerOptions.getRandomDirName();
+        SiteLayout layout = mLayouts.get( handle );
+        if( layout == null || !layout.compiledFor( randomDir ) ){
+            SiteCatalogEntry entry = this.lookup( handle );
+            if( entry == null ){
+                return null;
+            }
+            layout = new SiteLayout( this, entry, randomDir );
+            mLayouts.put( handle, layout );
+        }
+        return layout;
     }
     
     /**
@@ -108,6 +154,7 @@ public class SiteStore extends AbstractSiteData{
      *         if there was no mapping for key
      */
     public SiteCatalogEntry addEntry( SiteCatalogEntry entry ){
+        this.mLayouts.remove( entry.getSiteHandle() );
         return this.mStore.put( entry.getSiteHandle() , entry );
     }
     
@@ -287,7 +334,7 @@ public class SiteStore extends AbstractSiteData{
             if( handle != null && handle.equals( "local" ) ){
                 //try to retrieve value from environment
                 //for local site.
-                value = System.getenv( variable );
+                value = Environment.getenv( variable );
             }
         }
          */
@@ -346,17 +393,19 @@ public class SiteStore extends AbstractSiteData{
      * @return the url
      */
     public String getExternalWorkDirectoryURL( String siteHandle,  FileServer.OPERATION operation ){
-        String url = null;
-
-        SiteCatalogEntry site = this.lookup( siteHandle );
-        if( site == null ){
-            return url;
+        SiteLayout layout = this.getLayout( siteHandle );
+        if( layout == null ){
+            return null;
         }
 
         //select a file server
-        FileServer fs = site.selectHeadNodeScratchSharedFileServer( operation );
+        FileServer fs = layout.selectScratchFileServer( operation );
+        if( fs == null ){
+            return null;
+        }
+        String url = layout.getExternalWorkDirectoryURL( fs );
 
-        return this.getExternalWorkDirectoryURL( fs, siteHandle );
+        return ( url == null )? this.getExternalWorkDirectoryURL( fs, siteHandle ) : url;
     }
 
     /**
@@ -375,6 +424,15 @@ public class SiteStore extends AbstractSiteData{
             return null;
         }
 
+        //the url is precomputed for the shared scratch file servers
+        SiteLayout layout = ( mPlannerOptions == null )? null : this.mLayouts.get( siteHandle );
+        if( layout != null && layout.compiledFor( mPlannerOptions.getRandomDirName() ) ){
+            url = layout.getExternalWorkDirectoryURL( server );
+            if( url != null ){
+                return url;
+            }
+        }
+
         url = server.getURLPrefix() + this.getExternalWorkDirectory( server, siteHandle );
 
         return url;
@@ -625,18 +683,39 @@ public class SiteStore extends AbstractSiteData{
             return File.separator + "tmp";
         }
 
-        SiteCatalogEntry execPool = this.lookup( handle );
-        if(execPool == null){
+        SiteLayout layout = this.getLayout( handle );
+        if( layout == null ){
             throw new RuntimeException("Entry for " + handle +
                                        " does not exist in the Site Catalog");
         }
 
+        String execPoolDir = layout.getInternalWorkDirectory();
 
+        //path takes precedence over random dir
+        if ( path != null ) {
+            //well i can do nesting conditional return but wont
+            return ( path.length() == 0 || path.charAt( 0 ) != '/' ) ?
+                //append the path
+                new File( execPoolDir, path ).getAbsolutePath()
+                : //else absolute path specified
+                path;
+        }
 
-        String execPoolDir = mWorkDir;
-
-
+        return execPoolDir;
+         
+    }
 
+    /**
+     * Computes the working directory of the workflow on a site, on the basis
+     * of whether an absolute path is specified in the pegasus.dir.exec
+     * directory or a relative path. Called when compiling the layout of a site.
+     *
+     * @param execPool  the site catalog entry for the site.
+     *
+     * @return the path to the pool work dir.
+     */
+    String computeInternalWorkDirectory( SiteCatalogEntry execPool ) {
+        String execPoolDir = mWorkDir;
 
         if ( mWorkDir.length() == 0 || mWorkDir.charAt( 0 ) != '/' ) {
             //means you have to append the
@@ -654,18 +733,45 @@ public class SiteStore extends AbstractSiteData{
             execPoolDir = f.getAbsolutePath();
         }
 
-        //path takes precedence over random dir
-        if ( path != null ) {
-            //well i can do nesting conditional return but wont
-            return ( path.length() == 0 || path.charAt( 0 ) != '/' ) ?
-                //append the path
-                new File( execPoolDir, path ).getAbsolutePath()
-                : //else absolute path specified
-                path;
+        return execPoolDir;
+    }
+
+    /**
+     * Selects a FileServer for the shared scratch space on the HeadNode of a
+     * site, from the compiled layout of the site. The selection is the same as
+     * <code>SiteCatalogEntry.selectHeadNodeScratchSharedFileServer</code>.
+     *
+     * @param handle     the site handle
+     * @param operation  the operation for which the file server is required
+     *
+     * @return  FileServer for the shared scratch space , else null
+     */
+    public FileServer selectHeadNodeScratchSharedFileServer( String handle, FileServer.OPERATION operation ){
+        if( mPlannerOptions == null ){
+            SiteCatalogEntry entry = this.lookup( handle );
+            return ( entry == null )? null : entry.selectHeadNodeScratchSharedFileServer( operation );
         }
+        SiteLayout layout = this.getLayout( handle );
+        return ( layout == null )? null : layout.selectScratchFileServer( operation );
+    }
 
-        return execPoolDir;
-         
+    /**
+     * Selects a FileServer for staging the data out to a site, from the
+     * compiled layout of the site. The selection is the same as
+     * <code>SiteCatalogEntry.selectStorageFileServerForStageout</code>.
+     *
+     * @param handle     the site handle
+     * @param operation  the operation for which the file server is required
+     *
+     * @return the <code>FileServer</code> else null.
+     */
+    public FileServer selectStorageFileServerForStageout( String handle, FileServer.OPERATION operation ){
+        if( mPlannerOptions == null ){
+            SiteCatalogEntry entry = this.lookup( handle );
+            return ( entry == null )? null : entry.selectStorageFileServerForStageout( operation );
+        }
+        SiteLayout layout = this.getLayout( handle );
+        return ( layout == null )? null : layout.selectStorageFileServer( operation );
     }
 
     
@@ -103,8 +103,7 @@ public abstract class Mapper {
             argList[ 0 ] = bag;
             ss = ( Mapper ) dl.instantiate( argList );
         } catch ( Exception e ) {
-            System.err.println( dl.convertException( e ) );
-            System.exit( 1 );
+            throw new RuntimeException( dl.convertException( e ), e );
         }
 
         return ss;
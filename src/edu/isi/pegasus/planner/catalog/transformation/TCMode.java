@@ -17,8 +17,6 @@
 
 package edu.isi.pegasus.planner.catalog.transformation;
 
-import edu.isi.pegasus.common.logging.LogManagerFactory;
-import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.catalog.TransformationCatalog;
 import edu.isi.pegasus.common.util.DynamicLoader;
@@ -51,8 +49,6 @@ public class TCMode {
     public static final String PACKAGE_NAME =
         "org.griphyn.common.catalog.transformation.";
 
-    private static LogManager mLogger =  LogManagerFactory.loadSingletonInstance();
-
     //add your constants here.
 
     /**
@@ -90,9 +86,7 @@ public class TCMode {
         String[] args = new String[0 ];
         tc=loadInstance( tcClass, args );
         if(tc==null) {
-            mLogger.log(
-                "Unable to load TC",LogManager.FATAL_MESSAGE_LEVEL);
-                System.exit(1);
+            throw new RuntimeException( "Unable to load TC" );
         }
    return tc;
         //  }
@@ -125,8 +119,7 @@ public class TCMode {
             //the method
 
         } catch ( Exception e ) {
-            mLogger.log( d.convertException( e ), LogManager.FATAL_MESSAGE_LEVEL);
-            System.exit( 1 );
+            throw new RuntimeException( d.convertException( e ), e );
         }
         return tc;
 
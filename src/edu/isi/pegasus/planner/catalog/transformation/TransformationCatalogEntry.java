@@ -207,15 +207,14 @@ public class TransformationCatalogEntry
 
     /**
      * creates a new instance of this object and returns
-     * you it. A shallow clone.
-     * TO DO : Gaurang correct the clone method.
+     * you it. The profiles and the container are cloned, the rest is shared.
      *
      * @return Object
      */
     public Object clone() {
         TransformationCatalogEntry entry = new TransformationCatalogEntry( mNamespace, mName, mVersion,
             mResourceID, mPFN,
-            type, mProfiles, this.getSysInfo() );
+            type, ( mProfiles == null ) ? null : (Profiles)mProfiles.clone(), this.getSysInfo() );
         entry.addNotifications( this.getNotifications() );
         entry.setContainer( this.mContainer == null ? null : (Container)mContainer.clone() );
         return entry;
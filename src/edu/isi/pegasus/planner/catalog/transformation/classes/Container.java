@@ -46,7 +46,7 @@ public class Container implements Cloneable {
      */
     protected static  Set<String> mSupportedSingularityExtensions = null;
     
-    protected static Set<String> getsupportedSingularityExtensions(){
+    protected static synchronized Set<String> getsupportedSingularityExtensions(){
         if( mSupportedSingularityExtensions == null ){
             //from http://singularity.lbl.gov/user-guide#other-container-formats-supported 
             mSupportedSingularityExtensions = new HashSet<String>();
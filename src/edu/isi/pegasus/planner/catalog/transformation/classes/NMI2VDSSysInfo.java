@@ -46,7 +46,7 @@ public class NMI2VDSSysInfo {
      *
      * @return Map mapping NMI Architecture to VDS Arch object.
      */
-    public static Map<SysInfo.Architecture, Arch> NMIArchToVDSArchMap(){
+    public static synchronized Map<SysInfo.Architecture, Arch> NMIArchToVDSArchMap(){
         //singleton access
         if( mNMIArchToVDSArchMap == null ){
             mNMIArchToVDSArchMap = new HashMap< SysInfo.Architecture,Arch >();
@@ -76,7 +76,7 @@ public class NMI2VDSSysInfo {
      *
      * @return Map mapping NMI OS to VDS Os object.
      */
-    public static Map<SysInfo.OS,Os> NMIOSToVDSOSMap(){
+    public static synchronized Map<SysInfo.OS,Os> NMIOSToVDSOSMap(){
         //singleton access
         if( mNMIOSToVDSOSMap == null ){
             mNMIOSToVDSOSMap = new HashMap<SysInfo.OS,Os>();
@@ -382,6 +382,23 @@ public class TransformationStore {
         return this.mContainers.get( name );
     }
 
+    /**
+     * Returns a copy of the store, that contains clones of the entries and
+     * the containers.
+     *
+     * @return the copy
+     */
+    public Object clone(){
+        TransformationStore result = new TransformationStore();
+        for( TransformationCatalogEntry entry : this.getAllEntries() ){
+            result.addEntry( (TransformationCatalogEntry) entry.clone() );
+        }
+        for( Container container : this.mContainers.values() ){
+            result.addContainer( (Container) container.clone() );
+        }
+        return result;
+    }
+
 
 
 }
@@ -59,7 +59,7 @@ public class Database
      * used to log all the messages.
      * It's values are set in the CPlanner class.
      */
-    protected static LogManager mLogger =  LogManagerFactory.loadSingletonInstance();
+    protected LogManager mLogger;
 
     //   private static final String TC_MODE = "Database TC Mode";
 
@@ -92,7 +92,7 @@ public class Database
             return mDatabaseTC;
         }
         catch (Exception e) {
-            mLogger.log(
+            LogManagerFactory.loadSingletonInstance().log(
                 "Unable to create Database TC Instance", e,
                 LogManager.ERROR_MESSAGE_LEVEL);
             return null;
@@ -21,6 +21,7 @@ import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.common.util.Boolean;
 import edu.isi.pegasus.common.util.Separator;
 
+import edu.isi.pegasus.planner.catalog.CatalogCache;
 import edu.isi.pegasus.planner.catalog.TransformationCatalog;
 import edu.isi.pegasus.planner.catalog.classes.SysInfo;
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
@@ -40,6 +41,7 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -116,6 +118,21 @@ public class Text extends Abstract
      */
     public  static final String DESCRIPTION = "Multiline Textual TC";
 
+    /**
+     * The property key to enable the lazily indexed reading of the file.
+     */
+    public static final String INDEX_KEY = "pegasus.catalog.transformation.file.index";
+
+    /**
+     * The type of the index in the catalog cache.
+     */
+    private static final String CACHED_INDEX = "text-tc-index";
+
+    /**
+     * The prefix for the type of the parsed store in the catalog cache.
+     */
+    private static final String CACHED_STORE = "text-tc-store-";
+
   
     /**
      * The LogManager object which is used to log all the messages.
@@ -156,6 +173,18 @@ public class Text extends Abstract
      *
      */
     private boolean modifyFileURL = true;
+
+    /**
+     * The index of the transformation catalog file, if the transformations
+     * are parsed on demand. Is null once the whole file has been parsed.
+     */
+    private TextIndex mIndex;
+
+    /**
+     * The complete names of the transformations that have been parsed from
+     * the index into the store.
+     */
+    private Set<String> mParsed;
     
     /**
      * Default constructor.
@@ -191,11 +220,47 @@ public class Text extends Abstract
 
         try{
             java.io.File f = new java.io.File(  mTCFile );
+
+            //reuse the contents parsed by an earlier plan in the same jvm
+            CatalogCache cache = CatalogCache.getInstance();
+            String digest = ( cache != null && f.exists() ) ? CatalogCache.digest( f ) : null;
             
-            if( f.exists() ){
-                mTextParser = new TransformationCatalogTextParser ( new FileReader( f ),
-                                                                    mLogger );
-                mTCStore = mTextParser.parse(modifyFileURL);
+            if( f.exists() && Boolean.parse( mProps.getProperty( INDEX_KEY ), false ) ){
+                if( digest != null ){
+                    mIndex = (TextIndex) cache.get( CACHED_INDEX, f, digest );
+                }
+                if( mIndex == null ){
+                    mIndex = TextIndex.load( f, mLogger );
+                    if( digest != null && mIndex != null ){
+                        cache.put( CACHED_INDEX, f, digest, mIndex );
+                    }
+                }
+            }
+
+            if( mIndex != null ){
+                //the containers are parsed upfront, the transformations
+                //only when a lookup asks for them
+                mParsed  = new HashSet<String>();
+                mTCStore = this.parseText( mIndex.getContainers() );
+            }
+            else if( f.exists() ){
+                String type = CACHED_STORE + modifyFileURL;
+                TransformationStore cached = ( digest == null ) ?
+                                               null :
+                                               (TransformationStore) cache.get( type, f, digest );
+                if( cached == null ){
+                    mTextParser = new TransformationCatalogTextParser ( new FileReader( f ),
+                                                                        mLogger );
+                    mTCStore = mTextParser.parse(modifyFileURL);
+                    if( digest != null ){
+                        cache.put( type, f, digest, mTCStore.clone() );
+                    }
+                }
+                else{
+                    mLogger.log( "Reusing the parsed transformation catalog " + mTCFile,
+                                 LogManager.DEBUG_MESSAGE_LEVEL );
+                    mTCStore = (TransformationStore) cached.clone();
+                }
             }
             else{
                 //empty TCStore
@@ -241,6 +306,7 @@ public class Text extends Abstract
      */
     public void close() {
         if( mFlushOnClose ){
+            this.parseAll();
             //we flush back the contents of the internal store to the file.
             String newline = System.getProperty("line.separator", "\r\n");
             String indent = "";
@@ -263,6 +329,65 @@ public class Text extends Abstract
         }
     }
     
+    /**
+     * Parses the blocks for a transformation from the index into the store,
+     * if not already done.
+     *
+     * @param completeName  the complete name of the transformation
+     */
+    private void parse( String completeName ){
+        if( mIndex == null || !mParsed.add( completeName ) ){
+            return;
+        }
+        String blocks = mIndex.getTransformation( completeName );
+        if( blocks == null ){
+            return;
+        }
+        //the containers are parsed again, so that the container
+        //references of the transformation can be resolved
+        for( TransformationCatalogEntry entry :
+                 this.parseText( mIndex.getContainers() + blocks ).getAllEntries() ){
+            mTCStore.addEntry( entry );
+        }
+    }
+
+    /**
+     * Parses all the remaining transformations from the index into the store,
+     * and drops the index.
+     */
+    private void parseAll(){
+        if( mIndex == null ){
+            return;
+        }
+        StringBuilder blocks = new StringBuilder( mIndex.getContainers() );
+        for( String completeName : mIndex.getTransformations() ){
+            if( mParsed.add( completeName ) ){
+                blocks.append( mIndex.getTransformation( completeName ) );
+            }
+        }
+        mIndex = null;
+        for( TransformationCatalogEntry entry : this.parseText( blocks.toString() ).getAllEntries() ){
+            mTCStore.addEntry( entry );
+        }
+    }
+
+    /**
+     * Parses a part of the transformation catalog file.
+     *
+     * @param text  the text to parse
+     *
+     * @return the store containing the parsed entries and containers
+     */
+    private TransformationStore parseText( String text ){
+        try{
+            mTextParser = new TransformationCatalogTextParser( new StringReader( text ), mLogger );
+            return mTextParser.parse( modifyFileURL );
+        }
+        catch( IOException ioe ){
+            throw new RuntimeException( "IOException while parsing transformation catalog " + mTCFile, ioe );
+        }
+    }
+
     /**
      * Returns a textual description of the transformation mode.
      *
@@ -359,6 +484,8 @@ public class Text extends Abstract
                     ( (type == null) ? "ALL" : type.toString()),
                     LogManager.DEBUG_MESSAGE_LEVEL);
         
+        this.parse( lfn );
+
         //always returns a list , empty in case of no results
         result = mTCStore.getEntries( Separator.combine(namespace, name, version), resourceid, type );
         
@@ -464,6 +591,7 @@ public class Text extends Abstract
         logMessage("List getTCLogicalNames(String resourceid, TCType type)");
         logMessage("\t getTCLogicalNames(" + resourceid + "," + type + ")");
 
+        this.parseAll();
         List<TransformationCatalogEntry> entries = mTCStore.getEntries( resourceid, type ); 
                 
 
@@ -531,6 +659,7 @@ public class Text extends Abstract
 
         //retrieve all the transformations corresponding to resource id and type
         //first
+        this.parseAll();
         List<TransformationCatalogEntry> entries = mTCStore.getEntries( resourceid, type );
 
         //traverse through the list
@@ -554,6 +683,7 @@ public class Text extends Abstract
      * @throws Exception
      */
     public List<TransformationCatalogEntry> getContents() throws Exception {
+        this.parseAll();
         return mTCStore.getEntries( (String)null, (TCType)null );
     }
 
@@ -885,6 +1015,7 @@ public class Text extends Abstract
      * @throws Exception
      */
     public int clear() throws Exception {
+        this.parseAll();
     	int length = (mTCStore.getEntries(null,(TCType)null)).size();
         mTCStore.clear();
         mFlushOnClose = true;
@@ -0,0 +1,582 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.transformation.impl;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.util.Separator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An index of the blocks in a multiline textual transformation catalog file.
+ * The file is memory mapped and scanned once for the top level <code>tr</code>
+ * and <code>cont</code> blocks, recording the byte range of each block. The
+ * text of a block is only decoded when a lookup asks for it, so that the
+ * transformations can be parsed on demand.
+ *
+ * <p>
+ * The index is persisted in a file next to the transformation catalog, and
+ * reused on later runs as long as the size and the modification time of the
+ * catalog are unchanged. If the index cannot be written, the catalog is
+ * simply scanned again on the next run.
+ *
+ * <p>
+ * The scan only understands the block structure of the format. A file that
+ * does not follow it, or whose transformation names need variable expansion,
+ * is not indexed, and has to be parsed completely.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class TextIndex {
+
+    /**
+     * The suffix of the file in which the index is persisted.
+     */
+    public static final String INDEX_FILE_SUFFIX = ".index";
+
+    /**
+     * The magic number at the start of the index file.
+     */
+    private static final int MAGIC = 0x50544349;
+
+    /**
+     * The version of the format of the index file.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * No ranges.
+     */
+    private static final int[] NO_RANGES = new int[0];
+
+    /**
+     * The charset with which the transformation catalog is read.
+     */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /**
+     * The transformation catalog file.
+     */
+    private final File mFile;
+
+    /**
+     * The contents of the transformation catalog, memory mapped.
+     */
+    private final MappedByteBuffer mBuffer;
+
+    /**
+     * The start and end offsets of the container blocks.
+     */
+    private final int[] mContainers;
+
+    /**
+     * The start and end offsets of the transformation blocks, indexed by the
+     * complete name of the transformation.
+     */
+    private final Map<String,int[]> mTransformations;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param file             the transformation catalog file
+     * @param buffer           the mapped contents of the file
+     * @param containers       the ranges of the container blocks
+     * @param transformations  the ranges of the transformation blocks
+     */
+    private TextIndex( File file, MappedByteBuffer buffer,
+                       int[] containers, Map<String,int[]> transformations ){
+        mFile            = file;
+        mBuffer          = buffer;
+        mContainers      = containers;
+        mTransformations = transformations;
+    }
+
+    /**
+     * Loads the index for a transformation catalog file, either from the
+     * persisted index, or by scanning the file. A scanned index is persisted
+     * for later runs.
+     *
+     * @param file    the transformation catalog file
+     * @param logger  the logger to use
+     *
+     * @return the index, else null if the file cannot be indexed.
+     */
+    public static TextIndex load( File file, LogManager logger ){
+        MappedByteBuffer buffer;
+        try{
+            buffer = map( file );
+        }
+        catch( IOException e ){
+            logger.log( "Unable to memory map transformation catalog " + file + " " + e.getMessage(),
+                        LogManager.DEBUG_MESSAGE_LEVEL );
+            return null;
+        }
+
+        File indexFile = indexFile( file );
+        TextIndex index = read( file, buffer, indexFile );
+        if( index != null ){
+            logger.log( "Reusing transformation catalog index " + indexFile,
+                        LogManager.DEBUG_MESSAGE_LEVEL );
+            return index;
+        }
+
+        index = scan( file, buffer );
+        if( index == null ){
+            logger.log( "Transformation catalog " + file + " cannot be indexed",
+                        LogManager.DEBUG_MESSAGE_LEVEL );
+            return null;
+        }
+        logger.log( "Indexed " + index.mTransformations.size() + " transformations in " + file,
+                    LogManager.DEBUG_MESSAGE_LEVEL );
+        try{
+            index.write( indexFile );
+        }
+        catch( IOException e ){
+            logger.log( "Unable to write transformation catalog index " + indexFile + " " + e.getMessage(),
+                        LogManager.DEBUG_MESSAGE_LEVEL );
+        }
+        return index;
+    }
+
+    /**
+     * Returns the file in which the index of a transformation catalog is
+     * persisted.
+     *
+     * @param file  the transformation catalog file
+     *
+     * @return the index file
+     */
+    public static File indexFile( File file ){
+        return new File( file.getPath() + INDEX_FILE_SUFFIX );
+    }
+
+    /**
+     * Returns the complete names of the transformations in the catalog.
+     *
+     * @return the names
+     */
+    public Collection<String> getTransformations(){
+        return mTransformations.keySet();
+    }
+
+    /**
+     * Returns whether the catalog has blocks for a transformation.
+     *
+     * @param completeName  the complete name of the transformation
+     *
+     * @return boolean
+     */
+    public boolean containsTransformation( String completeName ){
+        return mTransformations.containsKey( completeName );
+    }
+
+    /**
+     * Returns the text of all the container blocks in the catalog.
+     *
+     * @return the text, empty if there are no containers
+     */
+    public String getContainers(){
+        return text( mContainers );
+    }
+
+    /**
+     * Returns the text of the blocks for a transformation.
+     *
+     * @param completeName  the complete name of the transformation
+     *
+     * @return the text, else null if there are no blocks for the transformation
+     */
+    public String getTransformation( String completeName ){
+        int[] ranges = mTransformations.get( completeName );
+        return ( ranges == null ) ? null : text( ranges );
+    }
+
+    /**
+     * Returns the text of a set of blocks, each on its own line.
+     *
+     * @param ranges  the start and end offsets of the blocks
+     *
+     * @return the text
+     */
+    private String text( int[] ranges ){
+        StringBuilder sb = new StringBuilder();
+        ByteBuffer buffer = mBuffer.duplicate();
+        for( int i = 0; i < ranges.length; i += 2 ){
+            byte[] bytes = new byte[ ranges[i+1] - ranges[i] ];
+            buffer.position( ranges[i] );
+            buffer.get( bytes );
+            sb.append( new String( bytes, CHARSET ) ).append( '\n' );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Memory maps a file.
+     *
+     * @param file  the file
+     *
+     * @return the mapped buffer
+     *
+     * @throws IOException if the file cannot be mapped
+     */
+    private static MappedByteBuffer map( File file ) throws IOException{
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try{
+            FileChannel channel = raf.getChannel();
+            if( channel.size() > Integer.MAX_VALUE ){
+                throw new IOException( "File is too large to be mapped" );
+            }
+            //the mapping remains valid after the channel is closed
+            return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        finally{
+            raf.close();
+        }
+    }
+
+    /**
+     * Scans the mapped contents of a transformation catalog for the top level
+     * blocks.
+     *
+     * @param file    the transformation catalog file
+     * @param buffer  the mapped contents
+     *
+     * @return the index, else null if the contents cannot be indexed
+     */
+    static TextIndex scan( File file, MappedByteBuffer buffer ){
+        int[] containers = NO_RANGES;
+        Map<String,int[]> transformations = new LinkedHashMap<String,int[]>();
+
+        int length = buffer.limit();
+        int pos = 0;
+        while( true ){
+            pos = skipWhitespace( buffer, pos, length );
+            if( pos >= length ){
+                break;
+            }
+
+            //a reserved word followed by the name of the block
+            int start = pos;
+            while( pos < length && Character.isJavaIdentifierPart( (char)( buffer.get( pos ) & 0xff ) ) ){
+                pos++;
+            }
+            String reserved = ascii( buffer, start, pos ).toLowerCase();
+            boolean isTransformation = reserved.equals( "tr" );
+            if( !isTransformation && !reserved.equals( "cont" ) ){
+                return null;
+            }
+            pos = skipWhitespace( buffer, pos, length );
+            int nameStart = pos;
+            while( pos < length && buffer.get( pos ) != '{' && buffer.get( pos ) != '#'
+                   && !Character.isWhitespace( (char)( buffer.get( pos ) & 0xff ) ) ){
+                pos++;
+            }
+            String name = ascii( buffer, nameStart, pos );
+            pos = skipWhitespace( buffer, pos, length );
+            if( name.isEmpty() || pos >= length || buffer.get( pos ) != '{' ){
+                return null;
+            }
+
+            //the body of the block upto the matching closing brace
+            int depth = 0;
+            do{
+                if( pos >= length ){
+                    return null;
+                }
+                byte b = buffer.get( pos );
+                if( b == '"' ){
+                    pos = skipQuotedString( buffer, pos, length );
+                    if( pos < 0 ){
+                        return null;
+                    }
+                    continue;
+                }
+                if( b == '#' ){
+                    pos = skipLine( buffer, pos, length );
+                    continue;
+                }
+                if( b == '{' ){
+                    depth++;
+                }
+                else if( b == '}' ){
+                    depth--;
+                }
+                pos++;
+            }
+            while( depth > 0 );
+
+            if( isTransformation ){
+                if( name.indexOf( '$' ) != -1 ){
+                    //name subject to variable expansion
+                    return null;
+                }
+                String completeName;
+                try{
+                    String[] lfn = Separator.split( name );
+                    completeName = Separator.combine( lfn[0], lfn[1], lfn[2] );
+                }
+                catch( RuntimeException e ){
+                    return null;
+                }
+                int[] ranges = transformations.get( completeName );
+                transformations.put( completeName, append( ranges == null ? NO_RANGES : ranges, start, pos ) );
+            }
+            else{
+                containers = append( containers, start, pos );
+            }
+        }
+        return new TextIndex( file, buffer, containers, transformations );
+    }
+
+    /**
+     * Reads the persisted index of a transformation catalog.
+     *
+     * @param file       the transformation catalog file
+     * @param buffer     the mapped contents of the file
+     * @param indexFile  the index file
+     *
+     * @return the index, else null if it does not exist or is stale or corrupt
+     */
+    static TextIndex read( File file, MappedByteBuffer buffer, File indexFile ){
+        if( !indexFile.exists() ){
+            return null;
+        }
+        DataInputStream in = null;
+        try{
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) );
+            if( in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION ||
+                in.readLong() != file.length() || in.readLong() != file.lastModified() ){
+                return null;
+            }
+            int[] containers = readRanges( in, buffer.limit() );
+            int count = in.readInt();
+            Map<String,int[]> transformations = new LinkedHashMap<String,int[]>();
+            for( int i = 0; i < count; i++ ){
+                String name = in.readUTF();
+                transformations.put( name, readRanges( in, buffer.limit() ) );
+            }
+            return new TextIndex( file, buffer, containers, transformations );
+        }
+        catch( IOException e ){
+            return null;
+        }
+        finally{
+            if( in != null ){
+                try{
+                    in.close();
+                }
+                catch( IOException e ){
+                    //ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Persists the index, by writing to a temporary file that is then moved
+     * in place.
+     *
+     * @param indexFile  the index file
+     *
+     * @throws IOException
+     */
+    void write( File indexFile ) throws IOException{
+        File temp = new File( indexFile.getPath() + ".tmp" );
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) );
+        try{
+            out.writeInt( MAGIC );
+            out.writeInt( FORMAT_VERSION );
+            out.writeLong( mFile.length() );
+            out.writeLong( mFile.lastModified() );
+            writeRanges( out, mContainers );
+            out.writeInt( mTransformations.size() );
+            for( Map.Entry<String,int[]> entry : mTransformations.entrySet() ){
+                out.writeUTF( entry.getKey() );
+                writeRanges( out, entry.getValue() );
+            }
+        }
+        finally{
+            out.close();
+        }
+        Files.move( temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+    }
+
+    /**
+     * Reads a set of ranges, checking them against the size of the file.
+     *
+     * @param in      the stream to read from
+     * @param length  the size of the file
+     *
+     * @return the ranges
+     *
+     * @throws IOException if the ranges are corrupt
+     */
+    private static int[] readRanges( DataInputStream in, int length ) throws IOException{
+        int count = in.readInt();
+        if( count < 0 || count > length ){
+            throw new IOException( "Invalid number of ranges " + count );
+        }
+        int[] ranges = new int[ 2 * count ];
+        for( int i = 0; i < ranges.length; i += 2 ){
+            ranges[i]   = in.readInt();
+            ranges[i+1] = in.readInt();
+            if( ranges[i] < 0 || ranges[i] > ranges[i+1] || ranges[i+1] > length ){
+                throw new IOException( "Invalid range " + ranges[i] + "-" + ranges[i+1] );
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Writes out a set of ranges.
+     *
+     * @param out     the stream to write to
+     * @param ranges  the ranges
+     *
+     * @throws IOException
+     */
+    private static void writeRanges( DataOutputStream out, int[] ranges ) throws IOException{
+        out.writeInt( ranges.length / 2 );
+        for( int offset : ranges ){
+            out.writeInt( offset );
+        }
+    }
+
+    /**
+     * Appends a range to a set of ranges.
+     *
+     * @param ranges  the existing ranges
+     * @param start   the start offset of the range
+     * @param end     the end offset of the range
+     *
+     * @return the new ranges
+     */
+    private static int[] append( int[] ranges, int start, int end ){
+        int[] result = Arrays.copyOf( ranges, ranges.length + 2 );
+        result[ ranges.length ]     = start;
+        result[ ranges.length + 1 ] = end;
+        return result;
+    }
+
+    /**
+     * Skips any whitespace and comments.
+     *
+     * @param buffer  the contents
+     * @param pos     the current position
+     * @param length  the length of the contents
+     *
+     * @return the position of the next non whitespace character
+     */
+    private static int skipWhitespace( ByteBuffer buffer, int pos, int length ){
+        while( pos < length ){
+            byte b = buffer.get( pos );
+            if( b == '#' ){
+                pos = skipLine( buffer, pos, length );
+            }
+            else if( Character.isWhitespace( (char)( b & 0xff ) ) ){
+                pos++;
+            }
+            else{
+                break;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Skips to the start of the next line.
+     *
+     * @param buffer  the contents
+     * @param pos     the current position
+     * @param length  the length of the contents
+     *
+     * @return the position after the end of the line
+     */
+    private static int skipLine( ByteBuffer buffer, int pos, int length ){
+        while( pos < length && buffer.get( pos ) != '\n' ){
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Skips over a quoted string, honoring backslash escapes.
+     *
+     * @param buffer  the contents
+     * @param pos     the position of the opening quote
+     * @param length  the length of the contents
+     *
+     * @return the position after the closing quote, else -1 for an
+     *         unterminated string
+     */
+    private static int skipQuotedString( ByteBuffer buffer, int pos, int length ){
+        pos++;
+        while( pos < length ){
+            byte b = buffer.get( pos );
+            if( b == '\\' ){
+                pos += 2;
+                continue;
+            }
+            if( b == '\n' || b == '\r' ){
+                return -1;
+            }
+            pos++;
+            if( b == '"' ){
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes a range of the contents as ASCII.
+     *
+     * @param buffer  the contents
+     * @param start   the start offset
+     * @param end     the end offset
+     *
+     * @return the string
+     */
+    private static String ascii( ByteBuffer buffer, int start, int end ){
+        StringBuilder sb = new StringBuilder( end - start );
+        for( int i = start; i < end; i++ ){
+            sb.append( (char)( buffer.get( i ) & 0xff ) );
+        }
+        return sb.toString();
+    }
+}
@@ -136,11 +136,9 @@ public class All
                 } //outside inner for loop
             } //outside outer for loop
         } else {
-            mLogger.log(
+            throw new RuntimeException(
                 "There are no entries in the site catalog for site" +
-                siteids.toString(),
-                LogManager.FATAL_MESSAGE_LEVEL );
-            System.exit( 1 );
+                siteids.toString() );
         }
 
         return mTCMap.getSitesTCEntries( lfn, siteids );
@@ -0,0 +1,284 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dictionary that assigns an integer ID to each LFN in a workflow. The
+ * IDs are assigned in the order in which the LFNs are first added, starting
+ * from 0.
+ *
+ * The files of a job can be indexed into a {@link Files} object, that holds
+ * the files sorted by their IDs. This allows the refiners to intersect the
+ * files of two jobs with a linear merge of two integer arrays, instead of
+ * hashing and comparing the LFN strings.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class FileIndex {
+
+    /**
+     * The IDs indexed by the LFNs.
+     */
+    private final Map<String,Integer> mIDs;
+
+    /**
+     * The LFNs indexed by the IDs.
+     */
+    private final List<String> mLFNs;
+
+    /**
+     * The default constructor.
+     */
+    public FileIndex(){
+        mIDs  = new HashMap<String,Integer>();
+        mLFNs = new ArrayList<String>();
+    }
+
+    /**
+     * The overloaded constructor, that assigns IDs to all the input and
+     * output files of the jobs in the workflow.
+     *
+     * @param workflow  the workflow
+     */
+    public FileIndex( Graph workflow ){
+        this();
+        for( Iterator<GraphNode> it = workflow.nodeIterator(); it.hasNext(); ){
+            Job job = (Job)it.next().getContent();
+            for( PegasusFile pf : job.getInputFiles() ){
+                this.add( pf.getLFN() );
+            }
+            for( PegasusFile pf : job.getOutputFiles() ){
+                this.add( pf.getLFN() );
+            }
+        }
+    }
+
+    /**
+     * Adds a LFN to the index if not already present.
+     *
+     * @param lfn  the lfn
+     *
+     * @return the ID of the lfn
+     */
+    public int add( String lfn ){
+        Integer id = mIDs.get( lfn );
+        if( id == null ){
+            id = mLFNs.size();
+            mIDs.put( lfn, id );
+            mLFNs.add( lfn );
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of a LFN.
+     *
+     * @param lfn  the lfn
+     *
+     * @return the ID, else -1 if the lfn is not in the index
+     */
+    public int getID( String lfn ){
+        Integer id = mIDs.get( lfn );
+        return ( id == null ) ? -1 : id;
+    }
+
+    /**
+     * Returns the LFN for an ID.
+     *
+     * @param id  the ID
+     *
+     * @return the lfn
+     */
+    public String getLFN( int id ){
+        return mLFNs.get( id );
+    }
+
+    /**
+     * Returns the number of LFNs in the index.
+     *
+     * @return the number of LFNs
+     */
+    public int size(){
+        return mLFNs.size();
+    }
+
+    /**
+     * Indexes a collection of files. The LFNs not already in the index are
+     * added to it. If more than one file has the same LFN, only the first
+     * one is retained.
+     *
+     * @param files  the files to index
+     *
+     * @return the files sorted by their IDs
+     */
+    public Files index( Collection<PegasusFile> files ){
+        PegasusFile[] in = files.toArray( new PegasusFile[ files.size() ] );
+
+        //sort the positions by the ID, the ID in the upper half and
+        //the position in the lower half of a long
+        long[] keys = new long[ in.length ];
+        for( int i = 0; i < in.length; i++ ){
+            keys[i] = ( ( (long)this.add( in[i].getLFN() ) ) << 32 ) | i;
+        }
+        Arrays.sort( keys );
+
+        int[] ids = new int[ in.length ];
+        PegasusFile[] out = new PegasusFile[ in.length ];
+        int size = 0;
+        for( long key : keys ){
+            int id = (int)( key >>> 32 );
+            if( size > 0 && ids[ size - 1 ] == id ){
+                //a duplicate lfn that is at a later position
+                continue;
+            }
+            ids[ size ] = id;
+            out[ size ] = in[ (int)key ];
+            size++;
+        }
+        return new Files( Arrays.copyOf( ids, size ), Arrays.copyOf( out, size ) );
+    }
+
+    /**
+     * An immutable set of files, sorted by their IDs in a {@link FileIndex}.
+     * Files indexed by different indices should not be compared with each
+     * other.
+     */
+    public static class Files {
+
+        /**
+         * The sorted IDs of the files.
+         */
+        private final int[] mIDs;
+
+        /**
+         * The files in the same order as the IDs.
+         */
+        private final PegasusFile[] mFiles;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param ids    the sorted IDs.
+         * @param files  the files in the same order as the IDs.
+         */
+        private Files( int[] ids, PegasusFile[] files ){
+            mIDs   = ids;
+            mFiles = files;
+        }
+
+        /**
+         * Returns the number of files.
+         *
+         * @return the number of files
+         */
+        public int size(){
+            return mIDs.length;
+        }
+
+        /**
+         * Returns the ID of the file at a position.
+         *
+         * @param i  the position
+         *
+         * @return the ID
+         */
+        public int getID( int i ){
+            return mIDs[i];
+        }
+
+        /**
+         * Returns the file at a position.
+         *
+         * @param i  the position
+         *
+         * @return the file
+         */
+        public PegasusFile getFile( int i ){
+            return mFiles[i];
+        }
+
+        /**
+         * Returns whether a file with the ID is in the set.
+         *
+         * @param id  the ID
+         *
+         * @return boolean
+         */
+        public boolean contains( int id ){
+            return Arrays.binarySearch( mIDs, id ) >= 0;
+        }
+
+        /**
+         * Returns the files in this set that have a LFN in the other set.
+         *
+         * @param other  the other set of files
+         *
+         * @return the common files from this set, in the order of the IDs
+         */
+        public List<PegasusFile> getCommonFiles( Files other ){
+            List<PegasusFile> result = new ArrayList<PegasusFile>();
+            for( int i = 0, j = 0; i < mIDs.length && j < other.mIDs.length; ){
+                if( mIDs[i] < other.mIDs[j] ){
+                    i++;
+                }
+                else if( mIDs[i] > other.mIDs[j] ){
+                    j++;
+                }
+                else{
+                    result.add( mFiles[i] );
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Marks the positions of the files in this set that have a LFN in the
+         * other set.
+         *
+         * @param other  the other set of files
+         * @param marks  the marks, one per file in this set
+         */
+        public void markCommonFiles( Files other, boolean[] marks ){
+            for( int i = 0, j = 0; i < mIDs.length && j < other.mIDs.length; ){
+                if( mIDs[i] < other.mIDs[j] ){
+                    i++;
+                }
+                else if( mIDs[i] > other.mIDs[j] ){
+                    j++;
+                }
+                else{
+                    marks[i] = true;
+                    i++;
+                    j++;
+                }
+            }
+        }
+    }
+}
@@ -54,7 +54,7 @@ public class PegasusBag
         "pegasus-properties", "planner-options", "replica-catalog", "site-catalog",
         "transformation-catalog", "transformation-mapper", "pegasus-logger", "site-store",
         "planner-cache", "worker-package-map", "uses-pmc" , "planner-metrics", 
-        "submit-mapper", "staging-mapper"
+        "submit-mapper", "staging-mapper", "planner-profile"
     };
 
 
@@ -147,6 +147,12 @@ public class PegasusBag
      */
     public static final Integer PEGASUS_STAGING_MAPPER = new Integer( 13 );
 
+    /**
+     * The constant to be passed to the accessor functions to get or set the
+     * the profile of the planner phases.
+     */
+    public static final Integer PLANNER_PROFILE = new Integer( 14 );
+
     /**
      * The handle to the <code>PegasusProperties</code>.
      */
@@ -219,6 +225,11 @@ public class PegasusBag
      * The handle to the staging mapper
      */
     private StagingMapper mStagingMapper;
+
+    /**
+     * The profile of the planner phases.
+     */
+    private PlannerProfile mPlannerProfile;
     
     /**
      * The default constructor.
@@ -339,6 +350,13 @@ public class PegasusBag
                     valid = false;
                 break;
 
+            case 14: //Planner profile
+                if ( value != null && value instanceof PlannerProfile )
+                    mPlannerProfile = (PlannerProfile) value;
+                else
+                    valid = false;
+                break;
+
 
             default:
                 throw new RuntimeException(
@@ -428,6 +446,9 @@ public class PegasusBag
                 
             case 13://Staging Mapper
                 return this.mStagingMapper;
+
+            case 14://Planner Profile
+                return this.mPlannerProfile;
                 
             default:
                 throw new RuntimeException(
@@ -491,6 +512,16 @@ public class PegasusBag
     public PlannerCache getHandleToPlannerCache(){
         return ( PlannerCache )get( PegasusBag.PLANNER_CACHE );
     }
+
+    /**
+     * A convenience method to get the handle to the planner profile
+     *
+     * @return  the handle to the planner profile, else null if the planner
+     *          is not being profiled
+     */
+    public PlannerProfile getPlannerProfile(){
+        return ( PlannerProfile )get( PegasusBag.PLANNER_PROFILE );
+    }
     
     /**
      * A convenience method to get the handle to the transformation catalog.
@@ -15,31 +15,33 @@
  */
 package edu.isi.pegasus.planner.classes;
 
-import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
-
-import edu.isi.pegasus.planner.common.PegasusProperties;
-
 import edu.isi.pegasus.common.logging.LogManager;
 
+import edu.isi.pegasus.common.util.StripedLocks;
+
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
-import edu.isi.pegasus.planner.catalog.replica.ReplicaFactory;
-import edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile;
 import edu.isi.pegasus.planner.catalog.site.classes.FileServerType.OPERATION;
 
-import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A data class that is used to track the various files placed by the mapper on
  * the staging sites for the workflow.
  *
- * The url's are stored into a memory based Replica Catalog instance, dependant
- * upon type ( get | put URL ).
+ * The url's are stored into in memory caches, dependant upon type
+ * ( get | put URL ). The caches are never written out to the submit directory
+ * (PM-677).
+ *
+ * The cache is safe for use by multiple threads. The entries are stored in
+ * concurrent maps indexed by LFN, and insertions for the same LFN are
+ * serialized on a lock striped by LFN. Lookups do not take any locks.
  *
  * @author Karan Vahi
  * @version $Revision$
@@ -47,40 +49,16 @@ import java.util.Set;
 public class PlannerCache extends Data
        implements Cloneable{
 
-
-
-    /**
-     * The name of the source key for Replica Catalog Implementer that serves as
-     * cache
-     */
-    public static final String PLANNER_CACHE_REPLICA_CATALOG_KEY = "file";
-
-    /**
-     * The name of the Replica Catalog Implementer that serves as the source for
-     * cache files.
-     */
-    public static final String PLANNER_CACHE_REPLICA_CATALOG_IMPLEMENTER = "SimpleFile";
-
     /**
      * The cache storing the GET urls for the files in the workflow
      */
-    private ReplicaCatalog mGetRCCache;
+    private URLCache mGetCache;
     
     
     /**
      * The cache storing the PUT urls for the files in the workflow
      */
-    private ReplicaCatalog mPutRCCache;
-    
-    /**
-     * The planner options
-     */
-    private PlannerOptions mPOptions;
-    
-    /**
-     * The PegasusProperties 
-     */
-    private PegasusProperties mProps;
+    private URLCache mPutCache;
 
     /**
      *
@@ -99,18 +77,18 @@ public class PlannerCache extends Data
 
 
     /**
-     * Initialize the replica catalog instances that make up the cache.
+     * Initialize the caches for the get and put URL's.
      * 
      * @param bag
      * @param dag
      */
     public void initialize( PegasusBag bag, ADag dag ){
-        mProps = bag.getPegasusProperties();
         mLogger = bag.getLogger();
-        mPOptions = bag.getPlannerOptions();
 
-        mGetRCCache = this.intializeRCAsCache( dag, OPERATION.get );
-        mPutRCCache = this.intializeRCAsCache( dag, OPERATION.put );
+        mLogger.log("Initialising the Planner Cache for workflow " + dag.getLabel(),
+                    LogManager.DEBUG_MESSAGE_LEVEL );
+        mGetCache = new URLCache();
+        mPutCache = new URLCache();
     }
 
 
@@ -128,21 +106,15 @@ public class PlannerCache extends Data
      *
      */
     public int insert( String lfn, String pfn, String handle, OPERATION type ){
-
-        if( type == OPERATION.get ){
-            return mGetRCCache.insert( lfn, pfn, handle);
+        if (lfn == null || pfn == null || handle == null){
+            throw new NullPointerException();
         }
-        else if( type == OPERATION.put ){
-            return mPutRCCache.insert( lfn, pfn, handle);
-        }
-        else{
-            throw new RuntimeException( "Unsupported operation type for planner cache " + type );
-        }
-
+        return this.insert( lfn, new ReplicaCatalogEntry( pfn, handle ), type );
     }
     
     /**
-     * Inserts a new entry into the cache.
+     * Inserts a new entry into the cache. Any existing entry with the same
+     * LFN, PFN and handle is replaced.
      *
      * @param lfn is the logical filename under which to book the entry
      * @param rce  ReplicaCatalogEntry
@@ -153,21 +125,11 @@ public class PlannerCache extends Data
      *
      */
     public int insert( String lfn, ReplicaCatalogEntry rce, OPERATION type ){
-
-        if( type == OPERATION.get ){
-            return mGetRCCache.insert( lfn, rce);
-        }
-        else if( type == OPERATION.put ){
-            return mPutRCCache.insert( lfn, rce);
-        }
-        else{
-            throw new RuntimeException( "Unsupported operation type for planner cache " + type );
-        }
-
+        return this.getCache( type ).insert( lfn, rce );
     }
 
     /**
-     * Retrieves a single entry for a given LFN from the replica catalog.
+     * Retrieves a single entry for a given LFN from the cache.
      * Each entry in the result set is a tuple of a PFN and all its
      * attributes.
      *
@@ -179,28 +141,14 @@ public class PlannerCache extends Data
      * @see ReplicaCatalogEntry
      */
     public ReplicaCatalogEntry lookup(String lfn , OPERATION type ){
-        Collection<ReplicaCatalogEntry> results = null;
-        ReplicaCatalogEntry result = null;
-        if( type == OPERATION.get ){
-            results = mGetRCCache.lookup( lfn );
-        }
-        else if( type == OPERATION.put ){
-            results = mPutRCCache.lookup( lfn);
-        }
-        else{
-            throw new RuntimeException( "Unsupported operation type for planner cache " + type );
-        }
+        Collection<ReplicaCatalogEntry> results = this.getCache( type ).lookup( lfn );
         
         //we return the first entry
-        for( ReplicaCatalogEntry entry: results ){
-            result = entry;
-            break;
-        }
-        return result;
+        return ( results == null || results.isEmpty() ) ? null : results.iterator().next();
     }
 
     /**
-     * Retrieves all entries for a given LFN from the replica catalog.
+     * Retrieves all entries for a given LFN from the cache.
      * Each entry in the result set is a tuple of a PFN and all its
      * attributes.
      *
@@ -213,28 +161,22 @@ public class PlannerCache extends Data
      * @see Collection<ReplicaCatalogEntry> 
      */
     public Collection<ReplicaCatalogEntry> lookupAllEntries(String lfn , String handle, OPERATION type ){
-        Map<Set<String>,Collection<ReplicaCatalogEntry>> results = null;
-        Set<String> lfns = new HashSet();
-        lfns.add(lfn);
-        
-        if( type == OPERATION.get ){
-            results = mGetRCCache.lookup(lfns, handle);
-        }
-        else if( type == OPERATION.put ){
-            results = mPutRCCache.lookup(lfns, handle);
-        }
-        else{
-            throw new RuntimeException( "Unsupported operation type for planner cache " + type );
+        Collection<ReplicaCatalogEntry> result = new LinkedList();
+        Collection<ReplicaCatalogEntry> entries = this.getCache( type ).lookup( lfn );
+        if( entries != null ){
+            for( ReplicaCatalogEntry rce : entries ){
+                if( matches( rce, handle ) ){
+                    result.add( rce );
+                }
+            }
         }
-        
-        Collection<ReplicaCatalogEntry> result = results.get(lfn);
-        return (result == null )? new LinkedList():result;
+        return result;
     }
 
 
     /**
      * Retrieves the entry for a given filename and resource handle from
-     * the replica catalog.
+     * the cache.
      *
      * @param lfn is the logical filename to obtain information for.
      * @param handle is the resource handle to obtain entries for.
@@ -244,101 +186,137 @@ public class PlannerCache extends Data
      * <code>null</code> if no match was found.
      */
     public String lookup(String lfn, String handle, OPERATION type ){
-
-        if( type == OPERATION.get ){
-            return mGetRCCache.lookup( lfn, handle);
-        }
-        else if( type == OPERATION.put ){
-            return mPutRCCache.lookup( lfn, handle);
-        }
-        else{
-            throw new RuntimeException( "Unsupported operation type for planner cache " + type );
+        Collection<ReplicaCatalogEntry> entries = this.getCache( type ).lookup( lfn );
+        if( entries != null ){
+            for( ReplicaCatalogEntry rce : entries ){
+                if( matches( rce, handle ) ){
+                    return rce.getPFN();
+                }
+            }
         }
+        return null;
     }
 
     /**
      * Explicitely free resources before the garbage collection hits.
      */
     public void close(){
-        if( mGetRCCache != null ){
-            mGetRCCache.close();
+        if( mGetCache != null ){
+            mGetCache.clear();
         }
-        if( mPutRCCache != null ){
-            mPutRCCache.close();
+        if( mPutCache != null ){
+            mPutCache.clear();
         }
     }
 
     /**
-     * Initializes the transient replica catalog and returns a handle to it.
+     * Returns the cache for a particular type of URL.
      *
-     * @param dag       the workflow being planned
-     * @param type the url type that will be stored
+     * @param type  the type of URL
      *
-     * @return handle to transient catalog
+     * @return the cache
      */
-    private ReplicaCatalog intializeRCAsCache( ADag dag, OPERATION type ){
-        ReplicaCatalog rc = null;
-        mLogger.log("Initialising  Replica Catalog for Planner Cache",
-                    LogManager.DEBUG_MESSAGE_LEVEL );
-
-
-        Properties cacheProps = mProps.getVDSProperties().matchingSubset(
-                                                              ReplicaCatalog.c_prefix,
-                                                              false );
-        String file = mPOptions.getSubmitDirectory() + File.separatorChar +
-                          getCacheFileName( dag , type);
-
-        //set the appropriate property to designate path to file
-        cacheProps.setProperty( PlannerCache.PLANNER_CACHE_REPLICA_CATALOG_KEY, file );
-
-        //the planner cache is to be never written out
-        //PM-677
-        cacheProps.setProperty( SimpleFile.READ_ONLY_KEY, "true" );
-        try{
-            rc = ReplicaFactory.loadInstance(
-                                          PLANNER_CACHE_REPLICA_CATALOG_IMPLEMENTER,
-                                          cacheProps);
+    private URLCache getCache( OPERATION type ){
+        if( type == OPERATION.get ){
+            return mGetCache;
         }
-        catch( Exception e ){
-            throw new RuntimeException( "Unable to initialize the replica catalog that acts as planner cache" + file,
-                                         e );
-
+        else if( type == OPERATION.put ){
+            return mPutCache;
+        }
+        else{
+            throw new RuntimeException( "Unsupported operation type for planner cache " + type );
         }
-        return rc;
     }
 
     /**
-     * Constructs the basename to the cache file that is to be used
-     * to log the transient files. The basename is dependant on whether the
-     * basename prefix has been specified at runtime or not.
+     * Returns whether a replica catalog entry is associated with a site handle
      *
-     * @param adag  the ADag object containing the workflow that is being
-     *              concretized.
+     * @param rce     the replica catalog entry
+     * @param handle  the site handle, can be null
      *
-     * @return the name of the cache file
+     * @return boolean
      */
-    private String getCacheFileName(ADag adag, OPERATION operation){
-        StringBuffer sb = new StringBuffer();
-        String bprefix = mPOptions.getBasenamePrefix();
+    private static boolean matches( ReplicaCatalogEntry rce, String handle ){
+        String site = rce.getResourceHandle();
+        return ( site == null && handle == null ) ||
+               ( site != null && handle != null && site.equals( handle ) );
+    }
 
-        if(bprefix != null){
-            //the prefix is not null using it
-            sb.append(bprefix);
-        }
-        else{
-            //generate the prefix from the name of the dag
-            sb.append(adag.getLabel()).append("-").
-           append(adag.getIndex());
+    /**
+     * An in memory cache of URL's indexed by LFN. The entries for an LFN are
+     * stored in an immutable list, that is replaced on every insertion while
+     * holding the lock for the LFN. This allows for lookups without any locks.
+     */
+    private static class URLCache{
+
+        /**
+         * Map indexed by LFN
+         */
+        private final Map<String,List<ReplicaCatalogEntry>> mEntries;
+
+        /**
+         * The locks striped by LFN.
+         */
+        private final StripedLocks mLocks;
+
+        /**
+         * The default constructor.
+         */
+        public URLCache(){
+            mEntries = new ConcurrentHashMap();
+            mLocks   = new StripedLocks();
         }
 
-        //PM-677 deliberately a put cache to make sure it is never
-        //it does not overwrite the workflow cache written out in
-        //Transfer Engine. We do explicilty set read only flag to true
-        //This is a failsafe.
-        sb.append(".").append( operation).append( "cache");
+        /**
+         * Inserts an entry. Any existing entry with the same PFN and handle is
+         * replaced.
+         *
+         * @param lfn  the lfn
+         * @param rce  the entry
+         *
+         * @return 1
+         */
+        public int insert( String lfn, ReplicaCatalogEntry rce ){
+            if (lfn == null || rce == null){
+                throw new NullPointerException();
+            }
+            String pfn = rce.getPFN();
+            String handle = rce.getResourceHandle();
+
+            synchronized( mLocks.get( lfn ) ){
+                List<ReplicaCatalogEntry> existing = mEntries.get( lfn );
+                List<ReplicaCatalogEntry> updated = new ArrayList( existing == null ? 1 : existing.size() + 1 );
+                if( existing != null ){
+                    for( Iterator<ReplicaCatalogEntry> it = existing.iterator(); it.hasNext(); ){
+                        ReplicaCatalogEntry entry = it.next();
+                        if( !( pfn.equals( entry.getPFN() ) && matches( entry, handle ) ) ){
+                            updated.add( entry );
+                        }
+                    }
+                }
+                updated.add( rce );
+                mEntries.put( lfn, Collections.unmodifiableList( updated ) );
+            }
+            return 1;
+        }
 
-        return sb.toString();
+        /**
+         * Returns the entries for an LFN.
+         *
+         * @param lfn  the lfn
+         *
+         * @return the entries, or null if none exist.
+         */
+        public Collection<ReplicaCatalogEntry> lookup( String lfn ){
+            return mEntries.get( lfn );
+        }
 
+        /**
+         * Clears the cache.
+         */
+        public void clear(){
+            mEntries.clear();
+        }
     }
 
 }
@@ -0,0 +1,467 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.classes;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+
+import edu.isi.pegasus.common.util.Version;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A Data class that records a profile of a planning instance. For each phase
+ * of the planner, it records the wall time, the CPU time and the bytes
+ * allocated by the planning thread, the garbage collections during the phase,
+ * and the heap usage at the end of the phase.
+ *
+ * <p>
+ * The profile is written out in JSON to the submit directory, next to the
+ * planner metrics file, if the property pegasus.log.profile is set to true.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class PlannerProfile extends Data{
+
+    /**
+     * The suffix to use while constructing the name of the profile file
+     */
+    public static final String PROFILE_FILE_SUFFIX = ".profile";
+
+    /**
+     * The phase for parsing the DAX.
+     */
+    public static final String PARSE_PHASE = "parse";
+
+    /**
+     * The phase for the data reuse.
+     */
+    public static final String REDUCE_PHASE = "reduce";
+
+    /**
+     * The phase for site selection.
+     */
+    public static final String SITE_SELECTION_PHASE = "site_selection";
+
+    /**
+     * The phase for job clustering.
+     */
+    public static final String CLUSTER_PHASE = "cluster";
+
+    /**
+     * The phase for adding the transfer nodes.
+     */
+    public static final String TRANSFER_PHASE = "transfer";
+
+    /**
+     * The phase for adding the create dir nodes.
+     */
+    public static final String CREATE_DIR_PHASE = "createdir";
+
+    /**
+     * The phase for adding the cleanup nodes.
+     */
+    public static final String CLEANUP_PHASE = "cleanup";
+
+    /**
+     * The phase for adding the leaf cleanup nodes.
+     */
+    public static final String LEAF_CLEANUP_PHASE = "leaf_cleanup";
+
+    /**
+     * The phase for generating the code for the executable workflow.
+     */
+    public static final String CODE_GENERATION_PHASE = "code_generation";
+
+    /**
+     * The name of the client
+     */
+    @Expose @SerializedName( "client" ) private  final String mClient = "pegasus-plan";
+
+    /**
+     * The version of the client
+     */
+    @Expose @SerializedName( "version" ) private  final String mVersion = new Version().getVersion();
+
+    /**
+     * The UUID associated with the workflow
+     */
+    @Expose @SerializedName( "wf_uuid" ) private String mWorkflowUUID;
+
+    /**
+     * The phases that have completed.
+     */
+    @Expose @SerializedName( "phases" ) private List<Phase> mPhases;
+
+    /**
+     * The phase that is currently being profiled.
+     */
+    private transient Phase mCurrent;
+
+    /**
+     * The file to which the profile should be written out in the submit directory
+     */
+    private transient File mProfileFile;
+
+    /**
+     * The default constructor.
+     */
+    public PlannerProfile() {
+        mPhases = new LinkedList<Phase>();
+    }
+
+    /**
+     * Sets the workflow uuid
+     *
+     * @param uuid  the uuid
+     */
+    public void setWorkflowUUID( String uuid ) {
+        this.mWorkflowUUID = uuid;
+    }
+
+    /**
+     * Sets the file to which the profile should be written out.
+     *
+     * @param f  the file in the submit directory
+     */
+    public void setProfileFileLocationInSubmitDirectory( File f ){
+        this.mProfileFile = f;
+    }
+
+    /**
+     * Returns the file to which the profile should be written out.
+     *
+     * @return  the file in the submit directory, else null if not set
+     */
+    public File getProfileFileLocationInSubmitDirectory(   ){
+        return this.mProfileFile;
+    }
+
+    /**
+     * Starts profiling a phase. A phase that is still being profiled is
+     * ended first.
+     *
+     * @param name  the name of the phase
+     */
+    public void startPhase( String name ){
+        if( mCurrent != null ){
+            this.endPhase();
+        }
+        mCurrent = new Phase( name );
+        mCurrent.start();
+    }
+
+    /**
+     * Ends profiling the current phase, if any.
+     */
+    public void endPhase(){
+        if( mCurrent == null ){
+            return;
+        }
+        mCurrent.end();
+        mPhases.add( mCurrent );
+        mCurrent = null;
+    }
+
+    /**
+     * Returns the phases that have been profiled.
+     *
+     * @return the list of phases
+     */
+    public List<Phase> getPhases(){
+        return mPhases;
+    }
+
+    /**
+     * Writes out the profile to the file in the submit directory.
+     *
+     * @return the file written out
+     *
+     * @throws IOException in case of error while writing out file.
+     */
+    public File writeOut() throws IOException{
+        if( mProfileFile == null ){
+            throw new IOException( "The profile file location is not yet initialized" );
+        }
+        this.endPhase();
+
+        PrintWriter writer =
+                  new PrintWriter( new BufferedWriter( new FileWriter( mProfileFile ) ) );
+        writer.println( this.toPrettyJson() );
+        writer.close();
+        return mProfileFile;
+    }
+
+    /**
+     * Converts the profile to JSON
+     *
+     * @return  the profile in JSON
+     */
+    public String toJson(){
+        Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+        return gson.toJson( this );
+    }
+
+    /**
+     * Converts the profile to JSON
+     *
+     * @return  the profile in JSON
+     */
+    public String toPrettyJson(){
+        Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().setPrettyPrinting().create();
+        return gson.toJson( this );
+    }
+
+    /**
+     * Returns a textual description of the object.
+     *
+     * @return String
+     */
+    public String toString(){
+        StringBuffer sb = new StringBuffer();
+        for( Phase p : mPhases ){
+            sb.append( p ).append( "\n" );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The measurements for a single phase of the planner. Times are in
+     * seconds, and memory in bytes. Values that the JVM does not support
+     * are reported as -1.
+     */
+    public static class Phase{
+
+        /**
+         * The name of the phase.
+         */
+        @Expose @SerializedName( "name" ) private String mName;
+
+        /**
+         * The wall time taken.
+         */
+        @Expose @SerializedName( "wall_time" ) private double mWallTime;
+
+        /**
+         * The CPU time taken by the planning thread.
+         */
+        @Expose @SerializedName( "cpu_time" ) private double mCPUTime;
+
+        /**
+         * The bytes allocated by the planning thread.
+         */
+        @Expose @SerializedName( "allocated_bytes" ) private long mAllocatedBytes;
+
+        /**
+         * The number of garbage collections.
+         */
+        @Expose @SerializedName( "gc_count" ) private long mGCCount;
+
+        /**
+         * The time spent in garbage collection.
+         */
+        @Expose @SerializedName( "gc_time" ) private double mGCTime;
+
+        /**
+         * The heap used at the end of the phase.
+         */
+        @Expose @SerializedName( "heap_used" ) private long mHeapUsed;
+
+        /**
+         * The heap used after the last garbage collection at the end of the
+         * phase, which approximates the live heap.
+         */
+        @Expose @SerializedName( "heap_live" ) private long mHeapLive;
+
+        /**
+         * The wall clock at the start, in nanoseconds.
+         */
+        private transient long mStartWall;
+
+        /**
+         * The CPU time at the start, in nanoseconds.
+         */
+        private transient long mStartCPU;
+
+        /**
+         * The bytes allocated at the start.
+         */
+        private transient long mStartAllocated;
+
+        /**
+         * The garbage collection count at the start.
+         */
+        private transient long mStartGCCount;
+
+        /**
+         * The garbage collection time at the start, in milliseconds.
+         */
+        private transient long mStartGCTime;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param name  the name of the phase
+         */
+        public Phase( String name ){
+            mName = name;
+        }
+
+        /**
+         * Returns the name of the phase.
+         *
+         * @return the name
+         */
+        public String getName(){
+            return mName;
+        }
+
+        /**
+         * Returns the wall time of the phase in seconds.
+         *
+         * @return the wall time
+         */
+        public double getWallTime(){
+            return mWallTime;
+        }
+
+        /**
+         * Returns the bytes allocated by the planning thread during the phase.
+         *
+         * @return the bytes allocated, else -1 if not supported by the JVM
+         */
+        public long getAllocatedBytes(){
+            return mAllocatedBytes;
+        }
+
+        /**
+         * Takes the measurements at the start of the phase.
+         */
+        void start(){
+            mStartGCCount   = gcCount();
+            mStartGCTime    = gcTime();
+            mStartAllocated = allocatedBytes();
+            mStartCPU       = cpuTime();
+            mStartWall      = System.nanoTime();
+        }
+
+        /**
+         * Takes the measurements at the end of the phase.
+         */
+        void end(){
+            long wall = System.nanoTime();
+            long cpu  = cpuTime();
+            long allocated = allocatedBytes();
+
+            mWallTime  = ( wall - mStartWall ) / 1e9;
+            mCPUTime   = ( cpu < 0 || mStartCPU < 0 ) ? -1 : ( cpu - mStartCPU ) / 1e9;
+            mAllocatedBytes = ( allocated < 0 || mStartAllocated < 0 ) ? -1 : allocated - mStartAllocated;
+            mGCCount   = gcCount() - mStartGCCount;
+            mGCTime    = ( gcTime() - mStartGCTime ) / 1e3;
+
+            mHeapUsed  = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            mHeapLive  = 0;
+            for( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ){
+                MemoryUsage usage = pool.getCollectionUsage();
+                if( pool.getType() == MemoryType.HEAP && usage != null ){
+                    mHeapLive += usage.getUsed();
+                }
+            }
+        }
+
+        /**
+         * Returns a textual description of the phase.
+         *
+         * @return String
+         */
+        public String toString(){
+            return String.format( "%s: wall %.3f s, cpu %.3f s, allocated %d bytes, gc %d in %.3f s, heap used %d bytes, heap live %d bytes",
+                                  mName, mWallTime, mCPUTime, mAllocatedBytes, mGCCount, mGCTime, mHeapUsed, mHeapLive );
+        }
+
+        /**
+         * Returns the CPU time of the current thread.
+         *
+         * @return nanoseconds, else -1 if not supported
+         */
+        private static long cpuTime(){
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            return bean.isCurrentThreadCpuTimeSupported() ? bean.getCurrentThreadCpuTime() : -1;
+        }
+
+        /**
+         * Returns the bytes allocated by the current thread.
+         *
+         * @return bytes, else -1 if not supported
+         */
+        private static long allocatedBytes(){
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if( bean instanceof com.sun.management.ThreadMXBean ){
+                com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+                if( sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled() ){
+                    return sun.getThreadAllocatedBytes( Thread.currentThread().getId() );
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the total number of garbage collections.
+         *
+         * @return the count
+         */
+        private static long gcCount(){
+            long count = 0;
+            for( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() ){
+                count += Math.max( 0, gc.getCollectionCount() );
+            }
+            return count;
+        }
+
+        /**
+         * Returns the total time spent in garbage collections.
+         *
+         * @return milliseconds
+         */
+        private static long gcTime(){
+            long time = 0;
+            for( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() ){
+                time += Math.max( 0, gc.getCollectionTime() );
+            }
+            return time;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import edu.isi.pegasus.planner.catalog.classes.Profiles;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Namespace;
+
+/**
+ * The profiles that a site, a transformation catalog entry and the
+ * properties contribute to the jobs mapped to the site with that entry.
+ * The sources are shared by all such jobs, and are flattened once into the
+ * profiles of an empty job, in the same order and with the same checks as
+ * when they are incorporated into each job individually.
+ *
+ * A job namespace that is empty when the layer is applied receives the
+ * flattened profiles directly, without the profiles being checked again.
+ * The Condor and ENV namespaces then read through to the flattened profiles
+ * shared by all the jobs, and only store the profiles that are set or
+ * removed for the job later on. The other namespaces are changed per job
+ * throughout the planning, and receive a copy. A namespace that already has
+ * profiles, for example ones from the DAX, has the sources incorporated one
+ * by one as before, as the outcome then depends on the existing profiles.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class ProfileLayer {
+
+    /**
+     * The site the layer is for.
+     */
+    private final String mSite;
+
+    /**
+     * The profiles associated with the site in the site catalog.
+     */
+    private final Profiles mSiteProfiles;
+
+    /**
+     * The transformation catalog entry for the jobs.
+     */
+    private final TransformationCatalogEntry mEntry;
+
+    /**
+     * The properties.
+     */
+    private final PegasusProperties mProps;
+
+    /**
+     * An empty job with the profiles from all the sources incorporated.
+     * Computed on first use.
+     */
+    private Job mFlattened;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param site          the site the layer is for
+     * @param siteProfiles  the profiles associated with the site, can be null
+     * @param entry         the transformation catalog entry for the jobs
+     * @param properties    the properties
+     */
+    public ProfileLayer( String site,
+                         Profiles siteProfiles,
+                         TransformationCatalogEntry entry,
+                         PegasusProperties properties ){
+        mSite         = site;
+        mSiteProfiles = siteProfiles;
+        mEntry        = entry;
+        mProps        = properties;
+        mFlattened    = null;
+    }
+
+    /**
+     * Incorporates the profiles from the layer into a job. The site profiles
+     * override the existing ones, the transformation catalog profiles override
+     * the site profiles, and the properties only supply the profiles not
+     * set already.
+     *
+     * @param job  the job mapped to the site of the layer
+     */
+    public void apply( Job job ){
+        Job flattened = this.getFlattened();
+
+        apply( job.condorVariables, flattened.condorVariables, Profiles.NAMESPACES.condor );
+        apply( job.dagmanVariables, flattened.dagmanVariables, Profiles.NAMESPACES.dagman );
+        apply( job.globusRSL, flattened.globusRSL, Profiles.NAMESPACES.globus );
+        apply( job.envVariables, flattened.envVariables, Profiles.NAMESPACES.env );
+        apply( job.vdsNS, flattened.vdsNS, Profiles.NAMESPACES.pegasus );
+        apply( job.hints, flattened.hints, Profiles.NAMESPACES.hints );
+        apply( job.getMetadata(), flattened.getMetadata(), Profiles.NAMESPACES.metadata );
+    }
+
+    /**
+     * Returns the empty job with the profiles from all the sources
+     * incorporated, computing it on first use.
+     *
+     * @return the job
+     */
+    protected Job getFlattened(){
+        if( mFlattened == null ){
+            Job job = new Job();
+            job.setSiteHandle( mSite );
+            job.updateProfiles( mSiteProfiles );
+            job.updateProfiles( mEntry );
+            job.updateProfiles( mProps );
+            mFlattened = job;
+        }
+        return mFlattened;
+    }
+
+    /**
+     * Incorporates the profiles from the layer into a namespace of a job.
+     *
+     * @param target     the namespace of the job
+     * @param flattened  the same namespace of the flattened job
+     * @param type       the type of the namespace
+     */
+    private void apply( Namespace target, Namespace flattened, Profiles.NAMESPACES type ){
+        if( target.isEmpty() ){
+            //the flattened profiles are already checked
+            target.inheritFrom( flattened );
+            return;
+        }
+
+        if( mSiteProfiles != null ){
+            target.checkKeyInNS( mSiteProfiles.get( type ) );
+        }
+        target.checkKeyInNS( mEntry );
+        target.checkKeyInNS( mProps, mSite );
+    }
+}
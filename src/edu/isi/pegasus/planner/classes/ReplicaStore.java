@@ -21,17 +21,25 @@ import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
 
 import java.util.Iterator;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Collection;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.List;
+import java.util.function.BiFunction;
 
 /**
  * A Replica Store that allows us to store the entries from a replica catalog.
  * The store map is indexed by LFN's and values stored are ReplicaLocation
  * objects.
  *
+ * The store is safe for use by multiple threads. A <code>ReplicaLocation</code>
+ * is never modified by the store once it is in the store. Adding entries for
+ * an LFN already in the store replaces the existing object with a merged
+ * copy, so that lookups go directly to the underlying concurrent map, and
+ * readers can iterate over the PFN's of a location without a lock.
+ * The store does not accept null LFN's.
+ *
  * @author Karan Vahi
  * @author Gaurang Mehta
  *
@@ -46,14 +54,13 @@ public class ReplicaStore
     /**
      * The replica store.
      */
-    private Map mStore;
-
+    private Map<String,ReplicaLocation> mStore;
 
     /**
      * Default constructor.
      */
     public ReplicaStore(){
-        mStore = new HashMap();
+        mStore = new ConcurrentHashMap<String,ReplicaLocation>();
     }
 
     /**
@@ -64,7 +71,7 @@ public class ReplicaStore
      *                of replica catalog entries for the LFN.
      */
     public ReplicaStore( Map rces ){
-        mStore = new HashMap( rces.size() );
+        mStore = new ConcurrentHashMap<String,ReplicaLocation>( rces.size() );
         store( rces );
     }
 
@@ -134,7 +141,7 @@ public class ReplicaStore
     public void add( String lfn, Collection tuples ){
         //add only if tuples is not empty
         if( tuples.isEmpty() ){ return; }
-        this.add( new ReplicaLocation( lfn, tuples ) );
+        this.store( new ReplicaLocation( lfn, tuples ) );
     }
 
 
@@ -143,21 +150,40 @@ public class ReplicaStore
      * mapping of the same LFN and PFN will be replaced, including all its
      * attributes.
      *
+     * The store keeps a copy of the <code>ReplicaLocation</code>, so that
+     * the caller can continue to modify the object passed.
+     *
      * @param rl   the <code>ReplicaLocation</code> containing a pfn and all
      *             the attributes.
      */
     public void add( ReplicaLocation rl ){
-        String lfn = rl.getLFN();
+        this.store( (ReplicaLocation) rl.clone() );
+    }
 
-        if( this.containsLFN( lfn ) ){
-            //add to the existing Replica Location
-            ReplicaLocation existing = this.get( lfn );
-            existing.addPFNs( rl.getPFNList() );
-        }
-        else{
-            //store directly in the store.
-            put( lfn, rl );
-        }
+    /**
+     * Adds a <code>ReplicaLocation</code> that is owned by the store into
+     * the store, merging it with any existing entry for the LFN.
+     *
+     * @param rl   the <code>ReplicaLocation</code> not referred to by anybody
+     *             else.
+     */
+    private void store( final ReplicaLocation rl ){
+        String lfn = rl.getLFN();
+        checkLFN( lfn );
+
+        mStore.compute( lfn, new BiFunction<String,ReplicaLocation,ReplicaLocation>(){
+            public ReplicaLocation apply( String key, ReplicaLocation existing ){
+                if( existing == null ){
+                    //store directly in the store.
+                    return rl;
+                }
+                //merge into a copy of the existing Replica Location, as
+                //other threads may be iterating over the existing one
+                ReplicaLocation merged = (ReplicaLocation) existing.clone();
+                merged.addPFNs( rl.getPFNList() );
+                return merged;
+            }
+        });
     }
 
 
@@ -278,7 +304,9 @@ public class ReplicaStore
 
 
     /**
-     * Inserts entry in the store overwriting any existing entry.
+     * Inserts entry in the store overwriting any existing entry. The entry
+     * replaces the existing one atomically, and is not to be modified once
+     * it is in the store.
      *
      * @param key   the key
      * @param value <code>ReplicaLocation</code> object.
@@ -286,9 +314,23 @@ public class ReplicaStore
      * @return Object
      */
     protected Object put( String key, ReplicaLocation value ){
+        checkLFN( key );
         return mStore.put( key, value );
     }
 
+    /**
+     * Checks that an LFN can be stored in the store.
+     *
+     * @param lfn  the LFN
+     *
+     * @throws IllegalArgumentException if the LFN is null
+     */
+    private void checkLFN( String lfn ){
+        if( lfn == null ){
+            throw new IllegalArgumentException( "The replica store does not accept a null LFN" );
+        }
+    }
+
     /**
      * Returns an entry corresponding to the LFN
      *
@@ -297,8 +339,7 @@ public class ReplicaStore
      * @return <code>ReplicaLocation</code> object if exists, else null.
      */
     protected ReplicaLocation get( String key ){
-        Object result = mStore.get( key );
-        return ( result == null )? null : ( ReplicaLocation )result;
+        return mStore.get( key );
     }
 
 
@@ -28,6 +28,7 @@ import edu.isi.pegasus.common.util.StreamGobbler;
 import edu.isi.pegasus.common.util.Version;
 
 
+import edu.isi.pegasus.planner.catalog.CatalogCache;
 import edu.isi.pegasus.planner.catalog.SiteCatalog;
 import edu.isi.pegasus.planner.catalog.site.SiteCatalogException;
 import edu.isi.pegasus.planner.catalog.site.SiteFactory;
@@ -41,6 +42,7 @@ import edu.isi.pegasus.planner.classes.NameValue;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.PlannerMetrics;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.classes.PlannerProfile;
 import edu.isi.pegasus.planner.code.CodeGenerator;
 import edu.isi.pegasus.planner.code.CodeGeneratorFactory;
 import edu.isi.pegasus.planner.code.GridStartFactory;
@@ -55,6 +57,7 @@ import edu.isi.pegasus.planner.parser.DAXParserFactory;
 import edu.isi.pegasus.planner.parser.Parser;
 import edu.isi.pegasus.planner.parser.dax.Callback;
 import edu.isi.pegasus.planner.parser.dax.DAXParser;
+import edu.isi.pegasus.planner.parser.dax.DAXSnapshot;
 import edu.isi.pegasus.planner.refiner.MainEngine;
 
 import gnu.getopt.Getopt;
@@ -135,6 +138,17 @@ public class CPlanner extends Executable{
     public static final String JAVA_COMMAND_LINE_PROPERTY_REGEX 
              = "(env|condor|globus|dagman|pegasus)\\..*=.*" ;
     
+    /**
+     * The short options accepted by pegasus-plan.
+     */
+    public static final String SHORT_OPTIONS =
+        "vqhfSnzpVr::aD:d:s:o:O:y:P:c:C:b:g:2:j:3:F:X:4:5:6:78:9:B:1:";
+
+    /**
+     * The prefix for the type of the sites in the catalog cache.
+     */
+    private static final String CACHED_SITES = "sites-";
+
     /**
      * The final successful message that is to be logged.
      */
@@ -230,6 +244,18 @@ public class CPlanner extends Executable{
      * @param args the main arguments passed to the planner.
      */
     public static void main(String[] args) {
+        System.exit( CPlanner.run( args ) );
+    }
+
+    /**
+     * Plans a workflow, and returns the exit code instead of exiting the JVM.
+     * Allows a long running JVM to plan more than one workflow.
+     *
+     * @param args the main arguments passed to the planner.
+     *
+     * @return the exit code of the planner.
+     */
+    public static int run(String[] args) {
 
         CPlanner cPlanner = new CPlanner();
         int result = 0;
@@ -239,9 +265,16 @@ public class CPlanner extends Executable{
         double duration  = -1;
 
         Exception plannerException = null;
+        edu.isi.pegasus.planner.code.generator.Metrics metrics = null;
         try{
             cPlanner.initialize(args , '6');
             cPlanner.mPMetrics.setStartTime( startDate );
+
+            //send the metrics spooled by earlier runs while we plan
+            metrics = new edu.isi.pegasus.planner.code.generator.Metrics();
+            metrics.initialize( cPlanner.mBag );
+            metrics.drainInBackground();
+
             cPlanner.executeCommand();
         }
         catch ( FactoryException fe){
@@ -290,8 +323,10 @@ public class CPlanner extends Executable{
             }
             //lets write out the metrics
             if( cPlanner.mSendMetrics ){
-                edu.isi.pegasus.planner.code.generator.Metrics metrics = new edu.isi.pegasus.planner.code.generator.Metrics();
-                metrics.initialize( cPlanner.mBag );
+                if( metrics == null ){
+                    metrics = new edu.isi.pegasus.planner.code.generator.Metrics();
+                    metrics.initialize( cPlanner.mBag );
+                }
                 metrics.logMetrics( cPlanner.mPMetrics );
             }
             else{
@@ -304,6 +339,18 @@ public class CPlanner extends Executable{
             System.out.println( "ERROR while logging metrics " + e.getMessage() );
         }
 
+        //write out the profile of the planner phases if enabled
+        PlannerProfile profile = ( cPlanner.mBag == null ) ? null : cPlanner.mBag.getPlannerProfile();
+        if( profile != null && profile.getProfileFileLocationInSubmitDirectory() != null ){
+            try{
+                File f = profile.writeOut();
+                cPlanner.log( "Written out planner profile to " + f, LogManager.DEBUG_MESSAGE_LEVEL );
+            }
+            catch( Exception e ){
+                System.out.println( "ERROR while writing out planner profile " + e.getMessage() );
+            }
+        }
+
 	// 2012-03-06 (jsv): Copy dax file to submit directory. It's
 	// MUCH SIMPLER to use the parsed CLI options at this point than
 	// drill open the shell wrapper without messing up everything. 
@@ -342,7 +389,7 @@ public class CPlanner extends Executable{
         }
 
         cPlanner.mLogger.logEventCompletion();
-        System.exit(result);
+        return result;
     }
 
 
@@ -381,7 +428,9 @@ public class CPlanner extends Executable{
         mBag.add( PegasusBag.PEGASUS_PROPERTIES, mProps );
         mBag.add( PegasusBag.PLANNER_OPTIONS, mPOptions );
         mBag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
-
+        if( mProps.logProfile() ){
+            mBag.add( PegasusBag.PLANNER_PROFILE, new PlannerProfile() );
+        }
 
 
         Collection result = null;
@@ -495,7 +544,14 @@ public class CPlanner extends Executable{
         }
 
         //load the parser and parse the dax
+        PlannerProfile profile = mBag.getPlannerProfile();
+        if( profile != null ){
+            profile.startPhase( PlannerProfile.PARSE_PHASE );
+        }
         ADag orgDag = this.parseDAX( dax );
+        if( profile != null ){
+            profile.endPhase();
+        }
         mLogger.log( "Parsed DAX with following metrics " + orgDag.getWorkflowMetrics().toJson(), 
                      LogManager.DEBUG_MESSAGE_LEVEL);
 
@@ -611,6 +667,19 @@ public class CPlanner extends Executable{
         mLogger.log( "Metrics file will be written out to " + mPMetrics.getMetricsFileLocationInSubmitDirectory(),
                      LogManager.CONFIG_MESSAGE_LEVEL );
 
+        //the profile of the planner phases is written next to the metrics file
+        if( profile != null ){
+            profile.setWorkflowUUID( orgDag.getWorkflowUUID() );
+            profile.setProfileFileLocationInSubmitDirectory(
+                            new File( mPOptions.getSubmitDirectory() ,
+                                      edu.isi.pegasus.planner.code.generator.Abstract.getDAGFilename(
+                                                            mPOptions,
+                                                            orgDag.getLabel(),
+                                                            orgDag.getIndex(),
+                                                            PlannerProfile.PROFILE_FILE_SUFFIX )
+                                                            ));
+        }
+
 
         //PM-1113 check if a relativeExec dir needs to be updated because of --random-dir option
         if ( mPOptions.generateRandomDirectory() && mPOptions.getRandomDir() == null ) {
@@ -666,6 +735,9 @@ public class CPlanner extends Executable{
             mLogger.logEventStart( LoggingKeys.EVENTS_PEGASUS_CODE_GENERATION,
                                    LoggingKeys.DAX_ID, 
                                    finalDag.getAbstractWorkflowName() );
+            if( profile != null ){
+                profile.startPhase( PlannerProfile.CODE_GENERATION_PHASE );
+            }
 
             result = codeGenerator.generateCode( finalDag );
 
@@ -676,6 +748,9 @@ public class CPlanner extends Executable{
             //close the connection to planner cache
             mBag.getHandleToPlannerCache().close();
 
+            if( profile != null ){
+                profile.endPhase();
+            }
             mLogger.logEventCompletion();
         }
 
@@ -812,7 +887,7 @@ public class CPlanner extends Executable{
 //        options.setCleanup(PlannerOptions.CLEANUP_OPTIONS.inplace );
         
         Getopt g = new Getopt("pegasus-plan",args,
-                              "vqhfSnzpVr::aD:d:s:o:O:y:P:c:C:b:g:2:j:3:F:X:4:5:6:78:9:B:1:",
+                              CPlanner.SHORT_OPTIONS,
                               longOptions,false);
         g.setOpterr(false);
 
@@ -1671,6 +1746,24 @@ public class CPlanner extends Executable{
 
         /* load the sites in site catalog */
         try{
+            //reuse the sites parsed by an earlier plan in the same jvm
+            CatalogCache cache = CatalogCache.getInstance();
+            File source = catalog.getFileSource();
+            String digest = null;
+            if( cache != null && source != null && source.isFile() && toLoad.contains( "*" ) ){
+                digest = CatalogCache.digest( source );
+                List<SiteCatalogEntry> cached = (List<SiteCatalogEntry>)
+                    cache.get( CACHED_SITES + catalog.getClass().getName(), source, digest );
+                if( cached != null ){
+                    mLogger.log( "Reusing the parsed site catalog " + source,
+                                 LogManager.DEBUG_MESSAGE_LEVEL );
+                    for( SiteCatalogEntry s : cached ){
+                        result.addEntry( (SiteCatalogEntry) s.clone() );
+                    }
+                    return result;
+                }
+            }
+
             catalog.load( new LinkedList( toLoad) );
             
             //load into SiteStore from the catalog.
@@ -1678,12 +1771,17 @@ public class CPlanner extends Executable{
                 //we need to load all sites into the site store
                 toLoad.addAll( catalog.list() );
             }
+            List<SiteCatalogEntry> loaded = new LinkedList<SiteCatalogEntry>();
             for( Iterator<String> it = toLoad.iterator(); it.hasNext(); ){
                 SiteCatalogEntry s = catalog.lookup( it.next() );
                 if( s != null ){
                     result.addEntry( s );
+                    loaded.add( (SiteCatalogEntry) s.clone() );
                 }
             }
+            if( digest != null ){
+                cache.put( CACHED_SITES + catalog.getClass().getName(), source, digest, loaded );
+            }
             
             /* query for the sites, and print them out */
             mLogger.log( "Sites loaded are "  + result.list( ) ,
@@ -1693,6 +1791,9 @@ public class CPlanner extends Executable{
         catch ( SiteCatalogException e ){
             throw new RuntimeException( "Unable to load from site catalog " , e );
         }
+        catch ( IOException e ){
+            throw new RuntimeException( "Unable to read the site catalog " , e );
+        }
         finally{
             /* close the connection */
             try{
@@ -1850,9 +1951,25 @@ public class CPlanner extends Executable{
      * @return 
      */
     private ADag parseDAX(String dax) {
-        Parser p = (Parser)DAXParserFactory.loadDAXParser( mBag, "DAX2CDAG", dax );
-        Callback cb = ((DAXParser)p).getDAXCallback();
+        if( !mProps.useDAXSnapshot() ){
+            Parser p = (Parser)DAXParserFactory.loadDAXParser( mBag, "DAX2CDAG", dax );
+            Callback cb = ((DAXParser)p).getDAXCallback();
+            p.startParser( dax );
+            return (ADag)cb.getConstructedObject();
+        }
+
+        //replay the snapshot from an earlier run if it is still valid
+        DAXSnapshot snapshot = new DAXSnapshot( mBag, dax );
+        Callback cb = DAXParserFactory.loadDAXParserCallback( mBag, dax, "DAX2CDAG" );
+        if( snapshot.replay( cb ) ){
+            return (ADag)cb.getConstructedObject();
+        }
+
+        //parse the DAX and record the snapshot for the next run
+        cb = snapshot.record( DAXParserFactory.loadDAXParserCallback( mBag, dax, "DAX2CDAG" ) );
+        Parser p = (Parser)DAXParserFactory.loadDAXParser( mBag, cb, dax );
         p.startParser( dax );
+        snapshot.write();
         return (ADag)cb.getConstructedObject();
     }
 
@@ -112,8 +112,10 @@ public abstract class Executable {
         
         if( propertyFilePath == null ){
             //PM-1018 if no --conf provided fall back to pegasus.properties 
-            //in the current working directory from where command is called
-            propertyFilePath = "." + File.separatorChar + Executable.DEFAULT_PROPERTIES_FILE;
+            //in the current working directory from where command is called.
+            //user.dir is looked up, as the plan server sets it per request
+            propertyFilePath = new File( System.getProperty( "user.dir" ),
+                                         Executable.DEFAULT_PROPERTIES_FILE ).getPath();
         }
         
     	return propertyFilePath;
@@ -0,0 +1,587 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.client;
+
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.common.util.Environment;
+import edu.isi.pegasus.planner.catalog.CatalogCache;
+
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long running planner, that plans workflows on behalf of the
+ * pegasus-plan-client. The client is used in the prescripts of the sub
+ * workflows, if the property pegasus.plan.server is set to true. This saves
+ * the JVM startup and the class loading of a new pegasus-plan JVM for each
+ * sub workflow.
+ *
+ * <p>
+ * The server listens on the loopback interface only. The port and a random
+ * token are written to a contact file, that is readable only by the user.
+ * Requests that don't present the token are rejected.
+ *
+ * <p>
+ * A request consists of the following lines, followed by the output of the
+ * planner and the exit code in the response.
+ * <pre>
+ *   token &lt;token&gt;
+ *   cwd &lt;working directory of the client&gt;
+ *   env &lt;name&gt;=&lt;value&gt;
+ *   ...
+ *   arg &lt;argument to pegasus-plan&gt;
+ *   ...
+ *   end
+ * </pre>
+ *
+ * <p>
+ * The requests are planned concurrently by a pool of threads. The planner
+ * uses the system properties, the environment, stdout, stderr and a
+ * singleton logger, all of which are process wide. The server makes each of
+ * them scoped to the thread planning a request. The scope is not inherited
+ * by the threads that thread starts, and is passed explicitly to the tasks
+ * that need it with ThreadScope.propagate().
+ *
+ * <p>
+ * The -D options and the working directory of a request are set as system
+ * properties in the scope of the request, and the environment of the client
+ * replaces the environment of the server. The working directory of the jvm
+ * cannot be changed, so the relative paths in the arguments are resolved
+ * against the working directory of the client before planning. Relative
+ * paths in the properties files are resolved against the working directory
+ * of the server, so the catalogs in them need to be absolute paths. The
+ * properties files the planner writes out for the sub workflows have
+ * absolute paths to the catalogs.
+ *
+ * <p>
+ * The parsed site and transformation catalogs are kept in a
+ * <code>CatalogCache</code>, and are reused by the requests till the catalog
+ * files change.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class PlannerServer {
+
+    /**
+     * The basename of the client that is invoked in the prescripts.
+     */
+    public static final String CLIENT_BASENAME = "pegasus-plan-client";
+
+    /**
+     * The default contact file, relative to the home directory of the user.
+     */
+    public static final String DEFAULT_CONTACT_FILE = ".pegasus" + File.separator + "plan-server.contact";
+
+    /**
+     * The prefix for the last line of a response, that contains the exit code.
+     */
+    public static final String EXIT_PREFIX = "pegasus-plan-server-exit ";
+
+    /**
+     * The maximum number of requests that can wait to be accepted.
+     */
+    private static final int BACKLOG = 256;
+
+    /**
+     * The time in milliseconds within which a client must send the request.
+     */
+    private static final int REQUEST_TIMEOUT = 60 * 1000;
+
+    /**
+     * The properties whose values are paths on the submit host, that are
+     * resolved against the working directory of the client if passed as
+     * -D options.
+     */
+    private static final List<String> PATH_PROPERTIES = Arrays.asList(
+        "pegasus.catalog.site.file",
+        "pegasus.catalog.replica.file",
+        "pegasus.catalog.replica.directory",
+        "pegasus.catalog.replica.output.file",
+        "pegasus.catalog.transformation.file",
+        "pegasus.dir.storage.mapper.replica.file",
+        "pegasus.log.metrics.file" );
+
+    /**
+     * The system properties of the jvm, scoped to the requests.
+     */
+    private static ScopedProperties mProperties;
+
+    /**
+     * The stdout of the jvm, scoped to the requests.
+     */
+    private static ScopedOutputStream mOut;
+
+    /**
+     * The stderr of the jvm, scoped to the requests.
+     */
+    private static ScopedOutputStream mErr;
+
+    /**
+     * The socket on which the server listens.
+     */
+    private ServerSocket mSocket;
+
+    /**
+     * The token that the clients need to present.
+     */
+    private String mToken;
+
+    /**
+     * The contact file.
+     */
+    private File mContactFile;
+
+    /**
+     * The threads that plan the requests.
+     */
+    private ExecutorService mExecutor;
+
+    /**
+     * The default constructor.
+     */
+    public PlannerServer(){
+    }
+
+    /**
+     * Makes the system properties, stdout and stderr of the jvm scoped to
+     * the requests. Done once for the jvm.
+     */
+    static synchronized void installScopes(){
+        if( mProperties != null ){
+            return;
+        }
+        mProperties = new ScopedProperties( (Properties) System.getProperties().clone() );
+        System.setProperties( mProperties );
+        mOut = new ScopedOutputStream( System.out );
+        System.setOut( new PrintStream( mOut, true ) );
+        mErr = new ScopedOutputStream( System.err );
+        System.setErr( new PrintStream( mErr, true ) );
+    }
+
+    /**
+     * Starts listening on the loopback interface, and writes out the
+     * contact file.
+     *
+     * @param port         the port to listen on. 0 for any free port.
+     * @param contactFile  the contact file
+     * @param threads      the number of requests to plan concurrently
+     *
+     * @throws IOException
+     */
+    public void start( int port, File contactFile, int threads ) throws IOException{
+        installScopes();
+        CatalogCache.enable();
+        mExecutor = Executors.newFixedThreadPool( threads );
+        mSocket = new ServerSocket( port, BACKLOG, InetAddress.getLoopbackAddress() );
+        mToken  = new BigInteger( 130, new SecureRandom() ).toString( 32 );
+        mContactFile = contactFile;
+
+        //write to a temp file that only the user can read, and move into place
+        File dir = contactFile.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File temp = File.createTempFile( "plan-server", ".contact", dir );
+        temp.setReadable( false, false );
+        temp.setReadable( true, true );
+        temp.setWritable( false, false );
+        temp.setWritable( true, true );
+        PrintWriter pw = new PrintWriter( temp );
+        pw.println( mSocket.getLocalPort() + " " + mToken );
+        pw.close();
+        Files.move( temp.toPath(), contactFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+
+        Runtime.getRuntime().addShutdownHook( new Thread() {
+            public void run(){
+                mContactFile.delete();
+            }
+        });
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort(){
+        return mSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts the requests till the server is closed, and hands them to the
+     * threads that plan them.
+     */
+    public void serve(){
+        while( !mSocket.isClosed() ){
+            try{
+                final Socket socket = mSocket.accept();
+                mExecutor.execute( new Runnable() {
+                    public void run(){
+                        try{
+                            handle( socket );
+                        }
+                        catch( IOException e ){
+                            System.err.println( "Error while handling request " + e.getMessage() );
+                        }
+                        finally{
+                            try{ socket.close(); } catch( IOException e ){}
+                        }
+                    }
+                });
+            }
+            catch( IOException e ){
+                if( !mSocket.isClosed() ){
+                    System.err.println( "Error while accepting request " + e.getMessage() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the server, and removes the contact file. The requests that are
+     * being planned are completed.
+     */
+    public void close(){
+        try{
+            mSocket.close();
+        }
+        catch( IOException e ){
+            //ignore
+        }
+        if( mExecutor != null ){
+            mExecutor.shutdown();
+        }
+        if( mContactFile != null ){
+            mContactFile.delete();
+        }
+    }
+
+    /**
+     * Reads a request from the socket, plans it and writes back the output
+     * and exit code of the planner.
+     *
+     * @param socket  the socket connected to the client
+     *
+     * @throws IOException
+     */
+    protected void handle( Socket socket ) throws IOException{
+        socket.setSoTimeout( REQUEST_TIMEOUT );
+        BufferedReader reader = new BufferedReader( new InputStreamReader( socket.getInputStream(), "UTF-8" ) );
+
+        String line = reader.readLine();
+        if( line == null || !line.equals( "token " + mToken ) ){
+            //don't respond to clients that don't know the token
+            return;
+        }
+
+        String cwd = null;
+        Map<String,String> env = null;
+        List<String> args = new ArrayList<String>();
+        while( (line = reader.readLine()) != null && !line.equals( "end" ) ){
+            if( line.startsWith( "cwd " ) ){
+                cwd = line.substring( 4 );
+            }
+            else if( line.startsWith( "env " ) ){
+                int pos = line.indexOf( '=' );
+                if( pos > 4 ){
+                    if( env == null ){
+                        env = new HashMap<String,String>();
+                    }
+                    env.put( line.substring( 4, pos ), line.substring( pos + 1 ) );
+                }
+            }
+            else if( line.startsWith( "arg " ) ){
+                args.add( line.substring( 4 ) );
+            }
+        }
+
+        PrintStream out = new PrintStream( socket.getOutputStream(), true, "UTF-8" );
+        int result;
+        if( line == null || cwd == null || !new File( cwd ).isAbsolute() ){
+            out.println( "ERROR: Incomplete request to pegasus-plan-server" );
+            result = 1;
+        }
+        else{
+            result = this.plan( cwd, env, args, out );
+        }
+        out.println( EXIT_PREFIX + result );
+        out.flush();
+    }
+
+    /**
+     * Plans a workflow in the scope of the calling thread. The -D options and
+     * the working directory of the client are set as system properties in
+     * the scope, and relative paths are resolved against the working
+     * directory of the client.
+     *
+     * @param cwd   the working directory of the client
+     * @param env   the environment of the client, null to plan with the
+     *              environment of the server
+     * @param args  the arguments to pegasus-plan
+     * @param out   the stream to which the output of the planner is written
+     *
+     * @return the exit code of the planner
+     */
+    protected int plan( String cwd, Map<String,String> env, List<String> args, PrintStream out ){
+        installScopes();
+
+        Properties properties = mProperties.getBase();
+        List<String> plannerArgs;
+        try{
+            plannerArgs = plannerArguments( cwd, args, properties );
+        }
+        catch( IllegalArgumentException e ){
+            out.println( "ERROR: " + e.getMessage() );
+            return 1;
+        }
+        String log = properties.getProperty( "pegasus.log.*" );
+        if( log != null ){
+            properties.setProperty( "pegasus.log.*", resolve( cwd, log ) );
+        }
+        properties.setProperty( "user.dir", cwd );
+
+        mProperties.beginScope( properties );
+        if( env != null ){
+            Environment.beginScope( env );
+        }
+        mOut.beginScope( out );
+        mErr.beginScope( out );
+        LogManagerFactory.beginScope();
+        try{
+            return CPlanner.run( plannerArgs.toArray( new String[ plannerArgs.size() ] ) );
+        }
+        catch( Throwable t ){
+            t.printStackTrace( out );
+            return 1;
+        }
+        finally{
+            LogManagerFactory.endScope();
+            mErr.endScope();
+            mOut.endScope();
+            Environment.endScope();
+            mProperties.endScope();
+            out.flush();
+        }
+    }
+
+    /**
+     * Rewrites the arguments of a request to the arguments to pass to the
+     * planner. The -D options are moved to the properties, the -X options
+     * are dropped, and the paths in the options and in the -D options for
+     * paths are resolved against the working directory of
+     * the client. The submit directory defaults to the working directory
+     * of the client.
+     *
+     * @param cwd         the working directory of the client
+     * @param args        the arguments to pegasus-plan
+     * @param properties  the properties to which the -D options are added
+     *
+     * @return the arguments to pass to the planner
+     *
+     * @throws IllegalArgumentException for options that are incorrect, or
+     *         not supported by the server
+     */
+    static List<String> plannerArguments( String cwd, List<String> args, Properties properties ){
+        LongOpt[] longOptions = new CPlanner().generateValidOptions();
+        Map<Integer,LongOpt> names = new HashMap<Integer,LongOpt>();
+        for( LongOpt o : longOptions ){
+            names.put( o.getVal(), o );
+        }
+
+        String[] argv = args.toArray( new String[ args.size() ] );
+        Getopt g = new Getopt( "pegasus-plan", argv, CPlanner.SHORT_OPTIONS, longOptions, false );
+        g.setOpterr( false );
+
+        List<String> result = new ArrayList<String>();
+        boolean dir = false;
+        int option;
+        while( (option = g.getopt()) != -1 ){
+            String value = g.getOptarg();
+            switch( option ){
+                case 'D'://properties
+                    int pos = value.indexOf( '=' );
+                    if( pos > 0 ){
+                        String key = value.substring( 0, pos );
+                        value = value.substring( pos + 1 );
+                        if( PATH_PROPERTIES.contains( key ) ){
+                            value = resolve( cwd, value );
+                        }
+                        properties.setProperty( key, value );
+                    }
+                    continue;
+
+                case 'X'://jvm options cannot be applied to a running jvm
+                    continue;
+
+                case 'V'://version
+                    throw new IllegalArgumentException( "--version is not supported by pegasus-plan-server" );
+
+                case '?':
+                case ':':
+                    throw new IllegalArgumentException( "Incorrect option or option usage " +
+                                                        argv[ Math.max( 0, g.getOptind() - 1 ) ] );
+
+                case '8'://dir
+                    dir = true;
+                    value = resolve( cwd, value );
+                    break;
+
+                case 'd'://dax
+                case '6'://conf
+                case 'P'://pdax
+                case 'B'://shiwa-bundle
+                case 'O'://output-dir
+                    value = resolve( cwd, value );
+                    break;
+
+                case 'c'://cache
+                case '5'://inherited-rc-files
+                case 'I'://input-dir
+                    StringBuilder sb = new StringBuilder();
+                    for( String path : value.split( "," ) ){
+                        sb.append( sb.length() == 0 ? "" : "," ).append( resolve( cwd, path ) );
+                    }
+                    value = sb.toString();
+                    break;
+
+                default:
+                    break;
+            }
+
+            LongOpt o = names.get( option );
+            if( o == null ){
+                result.add( "-" + (char) option );
+                if( value != null ){
+                    result.add( value );
+                }
+            }
+            else if( value == null ){
+                result.add( "--" + o.getName() );
+            }
+            else if( o.getHasArg() == LongOpt.OPTIONAL_ARGUMENT ){
+                result.add( "--" + o.getName() + "=" + value );
+            }
+            else{
+                result.add( "--" + o.getName() );
+                result.add( value );
+            }
+        }
+
+        //the planner rejects the unparsed arguments
+        for( int i = g.getOptind(); i < argv.length; i++ ){
+            result.add( argv[i] );
+        }
+
+        if( !dir ){
+            //the planner defaults to the working directory of the jvm
+            result.add( "--dir" );
+            result.add( cwd );
+        }
+        return result;
+    }
+
+    /**
+     * Resolves a path against a directory, if it is relative. URLs are
+     * returned as is.
+     *
+     * @param dir   the directory
+     * @param path  the path
+     *
+     * @return the absolute path
+     */
+    private static String resolve( String dir, String path ){
+        File f = new File( path );
+        return ( f.isAbsolute() || path.contains( "://" ) ) ?
+               path :
+               new File( dir, path ).getAbsolutePath();
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args the arguments passed to the server.
+     */
+    public static void main( String[] args ){
+        LongOpt[] longOptions = new LongOpt[4];
+        longOptions[0] = new LongOpt( "port", LongOpt.REQUIRED_ARGUMENT, null, 'p' );
+        longOptions[1] = new LongOpt( "contact", LongOpt.REQUIRED_ARGUMENT, null, 'c' );
+        longOptions[2] = new LongOpt( "threads", LongOpt.REQUIRED_ARGUMENT, null, 't' );
+        longOptions[3] = new LongOpt( "help", LongOpt.NO_ARGUMENT, null, 'h' );
+
+        Getopt g = new Getopt( "pegasus-plan-server", args, "p:c:t:h", longOptions, false );
+        g.setOpterr( false );
+
+        int port = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File contact = new File( System.getProperty( "user.home" ), DEFAULT_CONTACT_FILE );
+        int option;
+        while( (option = g.getopt()) != -1 ){
+            switch( option ){
+                case 'p':
+                    port = Integer.parseInt( g.getOptarg() );
+                    break;
+
+                case 'c':
+                    contact = new File( g.getOptarg() );
+                    break;
+
+                case 't':
+                    threads = Integer.parseInt( g.getOptarg() );
+                    break;
+
+                case 'h':
+                default:
+                    System.out.println( "Usage: pegasus-plan-server [-p|--port port] [-c|--contact file] [-t|--threads n]" );
+                    System.exit( option == 'h' ? 0 : 1 );
+            }
+        }
+
+        PlannerServer server = new PlannerServer();
+        try{
+            server.start( port, contact, threads );
+        }
+        catch( IOException e ){
+            System.err.println( "Unable to start pegasus-plan-server " + e.getMessage() );
+            System.exit( 1 );
+        }
+        System.out.println( "pegasus-plan-server listening on port " + server.getPort() +
+                            ". Contact file " + contact.getAbsolutePath() );
+        server.serve();
+    }
+}
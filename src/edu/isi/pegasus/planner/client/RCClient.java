@@ -32,6 +32,8 @@ import java.util.MissingResourceException;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
@@ -827,7 +829,10 @@ public class RCClient extends Toolkit {
     }
 
     /**
-     * Consumes commands that control the replica management.
+     * Consumes commands that control the replica management. The file is
+     * read and split into chunks by a separate thread, while the chunks
+     * read so far are worked upon, so that reading the file overlaps with
+     * the calls to the replica catalog.
      * 
      * @param filename
      *            is the file to read from.
@@ -837,8 +842,6 @@ public class RCClient extends Toolkit {
      * @exception IOException
      */
     public void parse(String filename, String command) throws IOException {
-	LineNumberReader lnr = null;
-	int chunk = m_chunk_factor;
 	int lines_succ_worked = 0;
 
 	if (command == null) {
@@ -847,55 +850,42 @@ public class RCClient extends Toolkit {
 		    "The command to be applied to the file contents not specified");
 	}
 
-	if (filename != null) {
-	    // connect to file, use non-interactive mode
-	    // reading from a file
-	    lnr = new LineNumberReader(new FileReader(filename));
-	} else {
+	if (filename == null) {
 	    // throw an exception
 	    throw new RuntimeException(
 		    "File containing the mappings not specified");
 	}
 
-	int pos, result = 0;
-	String line = null;
-	StringTokenizer st;
-	List words;
+	// connect to file, use non-interactive mode
+	// reading from a file
+	ChunkReader reader = new ChunkReader(new LineNumberReader(
+		new FileReader(filename)), m_chunk_factor);
+	Thread t = new Thread(reader, "pegasus-rc-client-reader");
+	t.setDaemon(true);
+
+	int result = 0;
 
 	// set the batch mode to true
 	m_batch = true;
-
-	// contains the number of valid lines read so far in the current block
-	int counter = 0;
-	List mappings = new ArrayList(chunk);
+	long start = System.currentTimeMillis();
+	t.start();
 
 	while (true) {
-	    while (counter < chunk && (line = lnr.readLine()) != null) {
-		// do away with superflous whitespaces and comments
-		if ((pos = line.indexOf('#')) != -1)
-		    line = line.substring(0, pos);
-		line = line.trim();
-
-		// skip empty lines
-		if (line.length() == 0)
-		    continue;
-
-		// repeat what we are working on now
-		m_total_lines_worked = lnr.getLineNumber();
-		m_log.debug("LINE " + m_total_lines_worked + ": " + line);
-		words = new ArrayList(chunk);
-		st = new StringTokenizer(line);
-		while (st.hasMoreTokens())
-		    words.add(st.nextToken());
-
-		// add to the mappings
-		counter++;
-		mappings.add(words);
+	    Chunk chunk;
+	    try {
+		chunk = reader.take();
+	    } catch (InterruptedException e) {
+		throw new RuntimeException(
+			"Interrupted while waiting for the file to be read", e);
 	    }
 
+	    // get out of the loop if end
+	    if (chunk.mMappings == null)
+		break;
+
 	    // hand off the mappings for work
 	    try {
-		lines_succ_worked = work(mappings, command);
+		lines_succ_worked = work(chunk.mMappings, command);
 		m_total_lines_succ_worked += lines_succ_worked;
 	    } catch (ReplicaCatalogException rce) {
 		do {
@@ -910,27 +900,200 @@ public class RCClient extends Toolkit {
 		// log the number of lines successfully worked
 		m_log.info("Successfully worked on "
 			+ m_total_lines_succ_worked + " lines.");
-		mappings.clear();
 	    }
-	    m_log.info("Worked till line " + m_total_lines_worked);
-	    // System.out.println();
-
-	    // get out of the loop if end
-	    if (line == null)
-		break;
-	    else
-		counter = 0;
+	    m_total_lines_worked = chunk.mLineNumber;
+	    m_log.info("Worked till line " + m_total_lines_worked + " "
+		    + throughput(m_total_lines_worked, start));
 	}
 
 	// done
-	lnr.close();
+	m_log.info("Worked on " + m_total_lines_worked + " lines in "
+		+ (System.currentTimeMillis() - start) / 1000.0 + " seconds "
+		+ throughput(m_total_lines_worked, start));
+	if (reader.mException instanceof IOException)
+	    throw (IOException) reader.mException;
+	if (reader.mException instanceof RuntimeException)
+	    throw (RuntimeException) reader.mException;
+	if (reader.mException instanceof Error)
+	    throw (Error) reader.mException;
 
 	// telmi, if something went wrong
 	if (result == 1)
 	    throw new RuntimeException("Errors while processing input file");
     }
-    
-    
+
+    /**
+     * Returns a description of the rate at which lines have been worked on.
+     * 
+     * @param lines
+     *            the number of lines worked on
+     * @param start
+     *            the time in milliseconds at which work started
+     * 
+     * @return the rate in lines per second as a string
+     */
+    private String throughput(int lines, long start) {
+	long elapsed = Math.max(1, System.currentTimeMillis() - start);
+	return "( " + (lines * 1000L / elapsed) + " lines/s )";
+    }
+
+    /**
+     * A chunk of lines read from the input file, along with the line number
+     * till which the file had been read.
+     */
+    private static class Chunk {
+
+	/**
+	 * List of lines with each line being a list of words. null signals
+	 * the end of the file.
+	 */
+	private final List mMappings;
+
+	/**
+	 * The line number of the last line in the chunk.
+	 */
+	private final int mLineNumber;
+
+	/**
+	 * The overloaded constructor.
+	 * 
+	 * @param mappings
+	 *            the lines in the chunk
+	 * @param lineNumber
+	 *            the line number of the last line in the chunk
+	 */
+	private Chunk(List mappings, int lineNumber) {
+	    mMappings = mappings;
+	    mLineNumber = lineNumber;
+	}
+    }
+
+    /**
+     * Reads the input file on a separate thread, and hands off chunks of
+     * split lines through a bounded queue. The queue holds only a couple of
+     * chunks, so that the reader does not run too far ahead of the replica
+     * catalog.
+     */
+    private class ChunkReader implements Runnable {
+
+	/**
+	 * The number of chunks that can be read ahead.
+	 */
+	private static final int QUEUE_SIZE = 2;
+
+	/**
+	 * The reader for the input file.
+	 */
+	private final LineNumberReader mReader;
+
+	/**
+	 * The number of lines in a chunk.
+	 */
+	private final int mChunkSize;
+
+	/**
+	 * The queue of chunks read so far.
+	 */
+	private final BlockingQueue<Chunk> mQueue;
+
+	/**
+	 * The exception or error while reading the file, if any.
+	 */
+	private volatile Throwable mException;
+
+	/**
+	 * The overloaded constructor.
+	 * 
+	 * @param reader
+	 *            the reader for the input file
+	 * @param chunkSize
+	 *            the number of lines in a chunk
+	 */
+	private ChunkReader(LineNumberReader reader, int chunkSize) {
+	    mReader = reader;
+	    mChunkSize = chunkSize;
+	    mQueue = new ArrayBlockingQueue<Chunk>(QUEUE_SIZE);
+	}
+
+	/**
+	 * Returns the next chunk, waiting for it to be read if required.
+	 * 
+	 * @return the chunk. The chunk at the end of the file has no mappings.
+	 * 
+	 * @throws InterruptedException
+	 */
+	private Chunk take() throws InterruptedException {
+	    return mQueue.take();
+	}
+
+	/**
+	 * Reads the file and puts the chunks in the queue, followed by an
+	 * empty chunk to signal the end of the file. The empty chunk is put
+	 * even if the reading fails, so that the consumer is never left waiting.
+	 */
+	public void run() {
+	    int pos;
+	    String line;
+	    StringTokenizer st;
+	    List words;
+	    List mappings = new ArrayList(mChunkSize);
+	    boolean interrupted = false;
+
+	    try {
+		try {
+		    while ((line = mReader.readLine()) != null) {
+			// do away with superflous whitespaces and comments
+			if ((pos = line.indexOf('#')) != -1)
+			    line = line.substring(0, pos);
+			line = line.trim();
+
+			// skip empty lines
+			if (line.length() == 0)
+			    continue;
+
+			// repeat what we are working on now
+			m_log.debug("LINE " + mReader.getLineNumber() + ": "
+				+ line);
+			words = new ArrayList();
+			st = new StringTokenizer(line);
+			while (st.hasMoreTokens())
+			    words.add(st.nextToken());
+
+			// add to the mappings
+			mappings.add(words);
+			if (mappings.size() == mChunkSize) {
+			    mQueue.put(new Chunk(mappings, mReader
+				    .getLineNumber()));
+			    mappings = new ArrayList(mChunkSize);
+			}
+		    }
+		} finally {
+		    try {
+			mReader.close();
+		    } catch (IOException e) {
+			// ignore
+		    }
+		}
+		if (!mappings.isEmpty())
+		    mQueue.put(new Chunk(mappings, mReader.getLineNumber()));
+	    } catch (InterruptedException e) {
+		// nobody is waiting for the chunks anymore
+		interrupted = true;
+	    } catch (Throwable e) {
+		// handed to the consumer after the end of the file
+		mException = e;
+	    } finally {
+		if (!interrupted) {
+		    try {
+			mQueue.put(new Chunk(null, mReader.getLineNumber()));
+		    } catch (InterruptedException e) {
+			// nobody is waiting for the chunks anymore
+		    }
+		}
+	    }
+	}
+    }
+
     /**
      * Looks up for the conf property in the command line arguments passed to the RCClient
      * @param opts command line arguments 
@@ -1132,6 +1295,6 @@ public class RCClient extends Toolkit {
 	} catch (Exception e) {
 	}
 
-	m_chunk_factor = size;
+	m_chunk_factor = (size > 0) ? size : RCClient.DEFAULT_CHUNK_FACTOR;
     }
 }
@@ -0,0 +1,94 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.client;
+
+import edu.isi.pegasus.common.util.ThreadScope;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The stdout and stderr of the pegasus-plan-server. A thread that is
+ * planning a request writes to the response of the request, the other
+ * threads write to the stream the server was started with. The threads
+ * started by a thread in a scope don't inherit the scope, unless their tasks
+ * are wrapped with ThreadScope.propagate().
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+class ScopedOutputStream extends OutputStream {
+
+    /**
+     * The stream outside of a scope.
+     */
+    private final OutputStream mBase;
+
+    /**
+     * The stream of the scope of a thread.
+     */
+    private final ThreadLocal<OutputStream> mScoped;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param base  the stream outside of a scope
+     */
+    ScopedOutputStream( OutputStream base ){
+        mBase   = base;
+        mScoped = ThreadScope.newLocal();
+    }
+
+    /**
+     * Starts a scope for the calling thread.
+     *
+     * @param out  the stream of the scope
+     */
+    void beginScope( OutputStream out ){
+        mScoped.set( out );
+    }
+
+    /**
+     * Ends the scope of the calling thread.
+     */
+    void endScope(){
+        mScoped.remove();
+    }
+
+    /**
+     * Returns the stream of the scope of the calling thread.
+     *
+     * @return the stream
+     */
+    private OutputStream current(){
+        OutputStream out = mScoped.get();
+        return ( out == null ) ? mBase : out;
+    }
+
+    public void write( int b ) throws IOException{
+        current().write( b );
+    }
+
+    public void write( byte[] b, int off, int len ) throws IOException{
+        current().write( b, off, len );
+    }
+
+    public void flush() throws IOException{
+        current().flush();
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.client;
+
+import edu.isi.pegasus.common.util.ThreadScope;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The system properties of the pegasus-plan-server. A thread that is
+ * planning a request sees the properties of the request, the other threads
+ * see the properties the server was started with. The threads started by a
+ * thread in a scope don't inherit the scope, unless their tasks are wrapped
+ * with ThreadScope.propagate().
+ *
+ * <p>
+ * All the accessors of Properties that the planner and the jvm use are
+ * delegated to the properties of the scope of the calling thread.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+class ScopedProperties extends Properties {
+
+    /**
+     * The properties outside of a scope.
+     */
+    private final Properties mBase;
+
+    /**
+     * The properties of the scope of a thread.
+     */
+    private final ThreadLocal<Properties> mScoped;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param base  the properties outside of a scope
+     */
+    ScopedProperties( Properties base ){
+        mBase   = base;
+        mScoped = ThreadScope.newLocal();
+    }
+
+    /**
+     * Starts a scope for the calling thread.
+     *
+     * @param properties  the properties of the scope
+     */
+    void beginScope( Properties properties ){
+        mScoped.set( properties );
+    }
+
+    /**
+     * Ends the scope of the calling thread.
+     */
+    void endScope(){
+        mScoped.remove();
+    }
+
+    /**
+     * Returns a copy of the properties outside of a scope.
+     *
+     * @return the copy
+     */
+    Properties getBase(){
+        return (Properties) mBase.clone();
+    }
+
+    /**
+     * Returns the properties of the scope of the calling thread.
+     *
+     * @return the properties
+     */
+    private Properties current(){
+        Properties p = mScoped.get();
+        return ( p == null ) ? mBase : p;
+    }
+
+    public String getProperty( String key ){
+        return current().getProperty( key );
+    }
+
+    public String getProperty( String key, String defaultValue ){
+        return current().getProperty( key, defaultValue );
+    }
+
+    public Object setProperty( String key, String value ){
+        return current().setProperty( key, value );
+    }
+
+    public Enumeration<?> propertyNames(){
+        return current().propertyNames();
+    }
+
+    public Set<String> stringPropertyNames(){
+        return current().stringPropertyNames();
+    }
+
+    public void list( PrintStream out ){
+        current().list( out );
+    }
+
+    public void list( PrintWriter out ){
+        current().list( out );
+    }
+
+    public int size(){
+        return current().size();
+    }
+
+    public boolean isEmpty(){
+        return current().isEmpty();
+    }
+
+    public Enumeration<Object> keys(){
+        return current().keys();
+    }
+
+    public Enumeration<Object> elements(){
+        return current().elements();
+    }
+
+    public boolean contains( Object value ){
+        return current().contains( value );
+    }
+
+    public boolean containsValue( Object value ){
+        return current().containsValue( value );
+    }
+
+    public boolean containsKey( Object key ){
+        return current().containsKey( key );
+    }
+
+    public Object get( Object key ){
+        return current().get( key );
+    }
+
+    public Object getOrDefault( Object key, Object defaultValue ){
+        return current().getOrDefault( key, defaultValue );
+    }
+
+    public Object put( Object key, Object value ){
+        return current().put( key, value );
+    }
+
+    public Object remove( Object key ){
+        return current().remove( key );
+    }
+
+    public void putAll( Map<?,?> t ){
+        current().putAll( t );
+    }
+
+    public void clear(){
+        current().clear();
+    }
+
+    public Set<Object> keySet(){
+        return current().keySet();
+    }
+
+    public Set<Map.Entry<Object,Object>> entrySet(){
+        return current().entrySet();
+    }
+
+    public Collection<Object> values(){
+        return current().values();
+    }
+
+    public void forEach( BiConsumer<? super Object,? super Object> action ){
+        current().forEach( action );
+    }
+
+    public Object clone(){
+        return current().clone();
+    }
+
+    public String toString(){
+        return current().toString();
+    }
+
+    public boolean equals( Object o ){
+        return current().equals( o );
+    }
+
+    public int hashCode(){
+        return current().hashCode();
+    }
+}
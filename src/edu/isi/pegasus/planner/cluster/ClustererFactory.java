@@ -195,7 +195,7 @@ public class ClustererFactory {
      * @return a Map indexed by clustering styles, and values as corresponding
      *         implementing Clustering classes.
      */
-    private static Map clustererTable(){
+    private static synchronized Map clustererTable(){
         if( mClustererTable == null ){
             mClustererTable = new HashMap(3);
             mClustererTable.put( HORIZONTAL_CLUSTERING_CLASS.toLowerCase(),
@@ -217,7 +217,7 @@ public class ClustererFactory {
      * @return a Map indexed by clustering styles, and values as corresponding
      *         Partitioners.
      */
-    private static Map partitionerTable(){
+    private static synchronized Map partitionerTable(){
         if( mPartitionerTable == null ){
             mPartitionerTable = new HashMap(3);
             mPartitionerTable.put( HORIZONTAL_CLUSTERING_CLASS.toLowerCase(),
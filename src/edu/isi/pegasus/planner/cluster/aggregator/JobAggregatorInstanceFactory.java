@@ -216,7 +216,7 @@ public class JobAggregatorInstanceFactory {
      * @return a Map indexed by Pegasus styles, and values as names of implementing
      *         classes.
      */
-    private static Map implementingClassNameTable(){
+    private static synchronized Map implementingClassNameTable(){
         if( mImplementingClassNameTable == null ){
             mImplementingClassNameTable = new HashMap(3);
             mImplementingClassNameTable.put( JobAggregatorFactory.SEQ_EXEC_CLASS.toLowerCase(),
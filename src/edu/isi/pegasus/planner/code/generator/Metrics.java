@@ -24,30 +24,22 @@ import edu.isi.pegasus.common.util.Boolean;
 
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.namespace.ENV;
+import edu.isi.pegasus.common.util.Environment;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 
 /**
  * Logs workflow metrics to a file in the submit directory and also sends them
- * over a HTTP connection to a Metrics Server.
+ * over a HTTP connection to a Metrics Server. The metrics are appended to a
+ * local spool, that is drained in the background.
  *
  *
  * @author Karan Vahi
@@ -92,6 +84,12 @@ public class Metrics  {
      * Getting DAGMan to report to additional metrics servers.comma-separated list of URLs.
      */
     public static final String DAGMAN_SECONDARY_METRICS_SERVER_URL_ENV_VARIABLE = "PEGASUS_USER_METRICS_SERVER";
+    /**
+     * The name of the environment variable that overrides the default
+     * directory of the metrics spool
+     */
+    public static final String METRICS_SPOOL_DIR_ENV_VARIABLE = "PEGASUS_METRICS_SPOOL_DIR";
+
     /**
      * The timeout in seconds for sending the metrics to the server
      */
@@ -112,6 +110,16 @@ public class Metrics  {
      */
     private  LogManager mLogger;
 
+    /**
+     * The spool to which the metrics are appended.
+     */
+    private MetricsSpool mSpool;
+
+    /**
+     * The thread draining the spool in the background, if any.
+     */
+    private Thread mDrain;
+
 
     public Metrics(){
         mSendMetricsToServer = true;
@@ -124,10 +132,10 @@ public class Metrics  {
      * @param bag   bag of pegasus objects
      */
     public void initialize( PegasusBag bag ){
-        String value = System.getenv( COLLECT_METRICS_ENV_VARIABLE );
+        String value = Environment.getenv( COLLECT_METRICS_ENV_VARIABLE );
         mSendMetricsToServer =  Boolean.parse(  value, true );
 
-        value = System.getenv( PRIMARY_METRICS_SERVER_URL_ENV_VARIABLE );
+        value = Environment.getenv( PRIMARY_METRICS_SERVER_URL_ENV_VARIABLE );
         if( value != null ){
             String[] urls = value.split( "," );
             for( int i = 0 ; i < urls.length; i++ ){
@@ -138,7 +146,7 @@ public class Metrics  {
             mMetricsServers.add( METRICS_SERVER_DEFAULT_URL );
         }
 
-        value = System.getenv( SECONDARY_METRICS_SERVER_URL_ENV_VARIABLE );
+        value = Environment.getenv( SECONDARY_METRICS_SERVER_URL_ENV_VARIABLE );
         if( value != null ){
             String[] urls = value.split( "," );
             for( int i = 0 ; i < urls.length; i++ ){
@@ -154,6 +162,12 @@ public class Metrics  {
         if( mLogger == null ){
             mLogger = LogManagerFactory.loadSingletonInstance();
         }
+
+        value = Environment.getenv( METRICS_SPOOL_DIR_ENV_VARIABLE );
+        File spoolDir = ( value == null ) ?
+                         new File( System.getProperty( "user.home" ), MetricsSpool.DEFAULT_SPOOL_DIRECTORY ):
+                         new File( value );
+        mSpool = new MetricsSpool( spoolDir, mLogger );
     }
     
     /**
@@ -179,7 +193,7 @@ public class Metrics  {
             env.construct( DAGMAN_METRICS_ENV_VARIABLE, "true");
             
             //check if metrics need to be reported to additional servers
-            String value = System.getenv(DAGMAN_SECONDARY_METRICS_SERVER_URL_ENV_VARIABLE );
+            String value = Environment.getenv(DAGMAN_SECONDARY_METRICS_SERVER_URL_ENV_VARIABLE );
             if( value != null ){
                 //populate that as another argument to be sent 
                 mLogger.log( "DAGMan will send metrics additionally to these servers " + value, LogManager.DEBUG_MESSAGE_LEVEL );
@@ -201,20 +215,58 @@ public class Metrics  {
         this.writeOutMetricsFile( metrics );
 
         if( this.mSendMetricsToServer ){
+            //spool the metrics and send them in the background, so that
+            //the planner never waits on a metrics server
             int count = mMetricsServers.size();
             int i = 1;
-            for( String url: mMetricsServers ){
-                StringBuffer message = new StringBuffer();
-                message.append( "Sending Planner Metrics to [" ).append( i ).append( " of " ).
-                        append( count ).append(   "] " ).append( url );
-                mLogger.log( message.toString(),
-                     LogManager.DEBUG_MESSAGE_LEVEL );
-                sendMetricsAsynchronously( metrics , url );
-                i++;
+            String payload = metrics.toJson();
+            try{
+                for( String url: mMetricsServers ){
+                    StringBuffer message = new StringBuffer();
+                    message.append( "Spooling Planner Metrics for [" ).append( i ).append( " of " ).
+                            append( count ).append(   "] " ).append( url );
+                    mLogger.log( message.toString(),
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+                    mSpool.append( url, payload );
+                    i++;
+                }
+            }
+            catch( IOException e ){
+                //not fatal. the metrics file is already written out
+                mLogger.log( "Unable to spool metrics to " + mSpool.getSpoolFile(), e,
+                             LogManager.DEBUG_MESSAGE_LEVEL );
+            }
+
+            //best effort. the planner does not wait for the drain on exit,
+            //and whatever is left in the spool is sent by the next run
+            if( mDrain == null || !mDrain.isAlive() ){
+                mDrain = mSpool.drainInBackground();
             }
         }
     }
 
+    /**
+     * Starts draining the spool in the background, so that the metrics left
+     * in the spool by earlier planner runs are sent while the planner plans,
+     * rather than on the exit path. Does nothing if metrics are not to be
+     * sent to the servers.
+     */
+    public void drainInBackground(){
+        if( this.mSendMetricsToServer ){
+            mDrain = mSpool.drainInBackground();
+        }
+    }
+
+    /**
+     * Returns the spool to which the metrics are appended before being sent
+     * to the metrics servers.
+     *
+     * @return the spool
+     */
+    public MetricsSpool getSpool(){
+        return mSpool;
+    }
+
 
     
     /**
@@ -251,189 +303,4 @@ public class Metrics  {
         return f;
     }
 
-    /**
-     * Sends the planner metrics to the metrics server
-     *
-     * @param metrics   the metrics to log
-     * @param url       the url to send the metrics to
-     */
-    private void sendMetricsSynchronously(PlannerMetrics metrics, String url ) throws IOException{
-        
-        SendMetrics sm = new SendMetrics( metrics, url );
-
-        SendMetricsResult result = sm.call();
-
-        if( result.getCode() == 202 ){
-            mLogger.log( "Metrics succesfully sent to the server", LogManager.DEBUG_MESSAGE_LEVEL );
-        }
-        else{
-            mLogger.log( "Unable to send metrics to the server " + result,
-                             LogManager.DEBUG_MESSAGE_LEVEL );
-        }
-    }
-
-    /**
-     * Sends the planner metrics to the metrics server asynchrnously with a
-     * timeout of 5 seconds
-     *
-     * @param metrics   the metrics to log
-     * @param url       the url to send the metrics to
-     */
-    private void sendMetricsAsynchronously( PlannerMetrics metrics, String url ){
-
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-  //      Future<SendMetricsResult> future =   (Future<SendMetricsResult>) executor.submit(
- //                                                           new FutureTask<SendMetricsResult>( new SendMetrics( metrics, url ) ));
-
-        Future<SendMetricsResult> future =   (Future<SendMetricsResult>) executor.submit( new SendMetrics( metrics, url ));
-
-        SendMetricsResult result = null;
-        try {
-            result = future.get( METRICS_SEND_TIMEOUT, TimeUnit.SECONDS )  ;
-
-        } catch (InterruptedException ex) {
-            mLogger.log( "Interrupted while sending metrics " + url, ex,
-                         LogManager.DEBUG_MESSAGE_LEVEL );
-        } catch (ExecutionException ex) {
-            mLogger.log( "Exception caught while sending metrics to server " + url, ex,
-                         LogManager.DEBUG_MESSAGE_LEVEL );
-        } catch (TimeoutException e) {
-            mLogger.log( "Sending of metrics to server timed out " + url, e ,
-                         LogManager.DEBUG_MESSAGE_LEVEL );
-        }
-        finally{
-            executor.shutdownNow();
-        }
-
-        if( result != null ){
-            if( result.getCode() == 202 ){
-               mLogger.log( "Metrics succesfully sent to the server", LogManager.DEBUG_MESSAGE_LEVEL );
-            }
-            else{
-                mLogger.log( "Unable to send metrics to the server " + result,
-                                 LogManager.DEBUG_MESSAGE_LEVEL );
-            }
-        }
-
-        
-    }
-
-
-}
-    
-
-/**
- * A Send metrics class that is used to send metrics to the metrics server
- * using HTTP POST methods
- *
- * @author vahi
- */
-class SendMetrics  implements Callable{
-
-        private PlannerMetrics mMetrics;
-
-        private String mURL;
-
-        public SendMetrics( PlannerMetrics metrics, String url ){
-            mMetrics = metrics;
-            mURL     = url;
-        }
-
-        public SendMetricsResult call () throws java.io.IOException {
-            SendMetricsResult result = this.send( mMetrics, mURL );
-            return result;
-        }
-
-        /**
-         * Sends the planner metrics to the metrics server
-         *
-         * @param metrics   the metrics to log
-         * @param url       the url to send the metrics to
-         */
-        private SendMetricsResult send(PlannerMetrics metrics, String url ) throws IOException{
-            SendMetricsResult result = new SendMetricsResult();
-            
-       
-            URL u = new URL( url );
-            HttpURLConnection connection = (HttpURLConnection) u.openConnection();
-            connection.setDoOutput( true );
-            //connection.setDoInput( true );
-            connection.setRequestMethod( "POST" );
-
-            connection.setRequestProperty( "Content-Type", "application/json");
-
-            try{
-                OutputStreamWriter out = new OutputStreamWriter(
-                                               connection.getOutputStream());
-
-                try{
-                    //String payload = URLEncoder.encode( metrics.toJson(), "UTF-8") ;
-                    String payload = metrics.toJson();
-                    out.write(  payload );
-                }
-                finally{
-                    out.close();
-                }
-
-                result.setCode( connection.getResponseCode() );
-                result.setResponseMessage( connection.getResponseMessage() );
-
-                /*
-                BufferedReader in = new BufferedReader(
-                                        new InputStreamReader(
-                                         connection.getInputStream()));
-                String result;
-                while (( result = in.readLine()) != null) {
-                    System.out.println( result );
-                }*/
-            }
-            finally{
-                connection.disconnect();
-            }
-
-            return result;
-        }
-
-}
-
-
-class SendMetricsResult {
-
-    private int mResponseCode;
-    private String mResponseMessage;
-
-    public SendMetricsResult() {
-        mResponseCode = -1;
-        mResponseMessage = "Results not retrieved yet";
-    }
-
-    public SendMetricsResult(int code, String message) {
-        mResponseCode = code;
-        mResponseMessage = message;
-    }
-
-    public void setCode(int code) {
-        this.mResponseCode = code;
-    }
-
-    public void setResponseMessage(String response) {
-        this.mResponseMessage = response;
-    }
-
-    public int getCode() {
-        return this.mResponseCode;
-    }
-
-    public String getResponseMessage() {
-        return this.mResponseMessage;
-    }
-
-    public String toString(){
-        StringBuffer sb = new StringBuffer();
-
-        sb.append(  "code = " ).append( this.mResponseCode ).
-           append(  "  " ).append( this.mResponseMessage );
-
-        return sb.toString();
-    }
 }
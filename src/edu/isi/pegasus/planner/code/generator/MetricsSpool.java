@@ -0,0 +1,509 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.code.generator;
+
+import edu.isi.pegasus.common.logging.LogManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A local spool for the metrics that are to be sent to the metrics servers.
+ * The planner appends the metrics to the spool file, and a background daemon
+ * thread drains the spool by sending the entries to the servers. Entries that
+ * could not be sent remain in the spool, and are sent by the next drain.
+ * Neither appending nor draining ever blocks the planner on a metrics server.
+ *
+ * <p>
+ * The spool is shared by all the planner instances of a user, including the
+ * nested planner invocations for the sub workflows. Each entry is a line of
+ * the form
+ * <pre>
+ *   url json-payload
+ * </pre>
+ * Updates to the spool file are serialized by an exclusive lock on a lock file
+ * in the spool directory. Only one drain is in progress at any time, which is
+ * ensured by a second lock file, that is held for the duration of the drain.
+ * The position of each entry sent is recorded right away in a sent file, and
+ * the entries recorded there are removed from the spool at the end of the
+ * drain, or at the start of the next drain if the planner exited in the middle
+ * of one. Hence, an entry is not sent again by later drains, and is never lost
+ * because a planner exited.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class MetricsSpool {
+
+    /**
+     * The basename of the spool file.
+     */
+    public static final String SPOOL_FILE_BASENAME = "metrics.spool";
+
+    /**
+     * The suffix of the file that records the positions of the entries sent
+     * in the drain in progress.
+     */
+    public static final String SENT_FILE_SUFFIX = ".sent";
+
+    /**
+     * The default spool directory, relative to the home directory of the user.
+     */
+    public static final String DEFAULT_SPOOL_DIRECTORY = ".pegasus" + File.separator + "metrics";
+
+    /**
+     * The maximum number of entries attempted in one drain.
+     */
+    public static final int MAX_ENTRIES_PER_DRAIN = 256;
+
+    /**
+     * The size in bytes beyond which the oldest entries of the spool are
+     * discarded, so that an unreachable server does not let the spool grow
+     * without bounds.
+     */
+    public static final long MAX_SPOOL_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The timeout in milliseconds to connect to and read from a metrics server.
+     */
+    public static final int HTTP_TIMEOUT = Metrics.METRICS_SEND_TIMEOUT * 1000;
+
+    /**
+     * The HTTP response code with which the metrics server accepts metrics.
+     */
+    public static final int ACCEPTED = 202;
+
+    /**
+     * The charset of the spool file and the payloads.
+     */
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /**
+     * Object to serialize the file locks taken within the JVM, as overlapping
+     * file locks are not permitted within a single JVM.
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    /**
+     * The lock files on which this JVM holds a lock. A lock file is not opened
+     * again while it is locked, as closing any channel to the file releases all
+     * the locks of the JVM on the file on some platforms.
+     */
+    private static final Set<File> HELD_LOCKS = new HashSet<File>();
+
+    /**
+     * The spool directory.
+     */
+    private final File mDirectory;
+
+    /**
+     * The spool file.
+     */
+    private final File mSpool;
+
+    /**
+     * The file recording the positions of the entries sent in the drain in
+     * progress.
+     */
+    private final File mSent;
+
+    /**
+     * The logger object
+     */
+    private final LogManager mLogger;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param directory  the spool directory
+     * @param logger     the logger to use
+     */
+    public MetricsSpool( File directory, LogManager logger ){
+        mDirectory = directory;
+        mSpool     = new File( directory, SPOOL_FILE_BASENAME );
+        mSent      = new File( directory, SPOOL_FILE_BASENAME + SENT_FILE_SUFFIX );
+        mLogger    = logger;
+    }
+
+    /**
+     * Returns the spool file.
+     *
+     * @return the spool file
+     */
+    public File getSpoolFile(){
+        return mSpool;
+    }
+
+    /**
+     * Appends an entry to the spool.
+     *
+     * @param url      the url of the metrics server
+     * @param payload  the JSON payload to send to the server
+     *
+     * @throws IOException
+     */
+    public void append( String url, String payload ) throws IOException{
+        //the payload has to fit on a single line
+        String entry = url + " " + payload.replace( '\n', ' ' ).replace( '\r', ' ' ) + "\n";
+
+        mDirectory.mkdirs();
+        synchronized( JVM_LOCK ){
+            FileLock lock = lock( "lock", true );
+            try{
+                if( mSpool.length() > MAX_SPOOL_SIZE ){
+                    //only trim when no drain is in progress, as the drain
+                    //relies on the spool only being appended to
+                    FileLock drainLock = lock( "drain", false );
+                    if( drainLock != null ){
+                        try{
+                            compact();
+                            List<String> entries = read();
+                            int discard = entries.size() / 2;
+                            mLogger.log( "Discarding " + discard + " oldest entries from metrics spool " + mSpool,
+                                         LogManager.DEBUG_MESSAGE_LEVEL );
+                            write( entries.subList( discard, entries.size() ) );
+                        }
+                        finally{
+                            release( drainLock, "drain" );
+                        }
+                    }
+                }
+                Files.write( mSpool.toPath(), entry.getBytes( UTF8 ),
+                             java.nio.file.StandardOpenOption.CREATE,
+                             java.nio.file.StandardOpenOption.APPEND );
+            }
+            finally{
+                release( lock, "lock" );
+            }
+        }
+    }
+
+    /**
+     * Starts a daemon thread that drains the spool, and returns immediately.
+     * The thread does not keep the JVM from exiting. Entries that are not sent
+     * by then remain in the spool.
+     *
+     * @return the thread started
+     */
+    public Thread drainInBackground(){
+        Thread t = new Thread( "pegasus-metrics-spool" ){
+            public void run(){
+                try{
+                    drain();
+                }
+                catch( Exception e ){
+                    //the entries remain in the spool for the next drain
+                }
+            }
+        };
+        t.setDaemon( true );
+        t.start();
+        return t;
+    }
+
+    /**
+     * Drains the spool, by sending the entries to the metrics servers oldest
+     * first. Once a server fails to accept an entry, the remaining entries for
+     * that server are left in place for the next drain, and the entries for the
+     * other servers are still sent. Returns immediately if a drain is already
+     * in progress.
+     *
+     * <p>
+     * The drain does not log, as it may run in a background thread while the
+     * planner is logging events, and the logger is not thread safe.
+     *
+     * @return the number of entries sent
+     *
+     * @throws IOException
+     */
+    public int drain() throws IOException{
+        if( !mSpool.exists() ){
+            return 0;
+        }
+
+        FileLock drainLock;
+        synchronized( JVM_LOCK ){
+            drainLock = lock( "drain", false );
+        }
+        if( drainLock == null ){
+            //being drained by another planner
+            return 0;
+        }
+
+        int sent = 0;
+        try{
+            //remove the entries sent by an interrupted drain, and pick up
+            //the rest. as we hold the drain lock, the spool is only appended
+            //to in the meantime, and the positions of the entries are stable
+            List<String> entries;
+            synchronized( JVM_LOCK ){
+                FileLock lock = lock( "lock", true );
+                try{
+                    compact();
+                    entries = read();
+                }
+                finally{
+                    release( lock, "lock" );
+                }
+            }
+
+            //send them without holding the spool lock
+            Set<String> unreachable = new HashSet<String>();
+            int attempts = 0;
+            int position = 0;
+            for( Iterator<String> it = entries.iterator(); it.hasNext() && attempts < MAX_ENTRIES_PER_DRAIN; position++ ){
+                String entry = it.next();
+                int pos = entry.indexOf( ' ' );
+                String url = ( pos > 0 ) ? entry.substring( 0, pos ) : null;
+                if( url == null ){
+                    //malformed entry. drop it
+                    recordSent( position );
+                    continue;
+                }
+                if( unreachable.contains( url ) ){
+                    continue;
+                }
+                attempts++;
+                int code = -1;
+                try{
+                    code = send( url, entry.substring( pos + 1 ) );
+                }
+                catch( IOException e ){
+                    //server is unreachable
+                }
+                if( code == ACCEPTED ){
+                    recordSent( position );
+                    sent++;
+                }
+                else{
+                    unreachable.add( url );
+                }
+            }
+
+            //remove the entries sent from the spool
+            synchronized( JVM_LOCK ){
+                FileLock lock = lock( "lock", true );
+                try{
+                    compact();
+                }
+                finally{
+                    release( lock, "lock" );
+                }
+            }
+        }
+        finally{
+            synchronized( JVM_LOCK ){
+                release( drainLock, "drain" );
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Records in the sent file that the entry at a position in the spool was
+     * sent, so that it is not sent again even if the drain does not complete.
+     * The caller should hold the drain lock.
+     *
+     * @param position  the position of the entry in the spool
+     *
+     * @throws IOException
+     */
+    private void recordSent( int position ) throws IOException{
+        Files.write( mSent.toPath(), ( position + "\n" ).getBytes( UTF8 ),
+                     java.nio.file.StandardOpenOption.CREATE,
+                     java.nio.file.StandardOpenOption.APPEND );
+    }
+
+    /**
+     * Removes the entries recorded in the sent file from the spool, and
+     * removes the sent file. The caller should hold both the drain lock and
+     * the spool lock.
+     *
+     * @throws IOException
+     */
+    private void compact() throws IOException{
+        if( !mSent.exists() ){
+            return;
+        }
+        Set<Integer> positions = new HashSet<Integer>();
+        for( String line : Files.readAllLines( mSent.toPath(), UTF8 ) ){
+            try{
+                positions.add( Integer.parseInt( line.trim() ) );
+            }
+            catch( NumberFormatException e ){
+                //partially written position. the entry may be sent again
+            }
+        }
+        List<String> entries = read();
+        List<String> remaining = new LinkedList<String>();
+        int position = 0;
+        for( String entry : entries ){
+            if( !positions.contains( position++ ) ){
+                remaining.add( entry );
+            }
+        }
+        write( remaining );
+        mSent.delete();
+    }
+
+    /**
+     * Sends a payload to a metrics server using HTTP POST.
+     *
+     * @param url      the url of the metrics server
+     * @param payload  the JSON payload
+     *
+     * @return the HTTP response code
+     *
+     * @throws IOException
+     */
+    protected int send( String url, String payload ) throws IOException{
+        HttpURLConnection connection = (HttpURLConnection) new URL( url ).openConnection();
+        connection.setConnectTimeout( HTTP_TIMEOUT );
+        connection.setReadTimeout( HTTP_TIMEOUT );
+        connection.setDoOutput( true );
+        connection.setRequestMethod( "POST" );
+        connection.setRequestProperty( "Content-Type", "application/json");
+        try{
+            OutputStream out = connection.getOutputStream();
+            try{
+                out.write( payload.getBytes( UTF8 ) );
+            }
+            finally{
+                out.close();
+            }
+            return connection.getResponseCode();
+        }
+        finally{
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Reads all the entries in the spool file. The caller should hold the
+     * spool lock.
+     *
+     * @return the entries
+     *
+     * @throws IOException
+     */
+    private List<String> read() throws IOException{
+        List<String> entries = new LinkedList<String>();
+        if( mSpool.exists() ){
+            for( String line : Files.readAllLines( mSpool.toPath(), UTF8 ) ){
+                if( line.length() > 0 ){
+                    entries.add( line );
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Replaces the spool file with the entries passed. The caller should hold
+     * the spool lock.
+     *
+     * @param entries  the entries
+     *
+     * @throws IOException
+     */
+    private void write( List<String> entries ) throws IOException{
+        if( entries.isEmpty() ){
+            mSpool.delete();
+            return;
+        }
+        File temp = new File( mDirectory, SPOOL_FILE_BASENAME + ".tmp" );
+        Files.write( temp.toPath(), entries, UTF8 );
+        Files.move( temp.toPath(), mSpool.toPath(), StandardCopyOption.REPLACE_EXISTING );
+    }
+
+    /**
+     * Acquires an exclusive lock on a lock file in the spool directory. The
+     * caller should synchronize on JVM_LOCK.
+     *
+     * @param suffix  the suffix of the lock file
+     * @param block   whether to wait for the lock, or return null if the lock
+     *                is held by another process
+     *
+     * @return the lock, or null if not acquired
+     *
+     * @throws IOException
+     */
+    private FileLock lock( String suffix, boolean block ) throws IOException{
+        mDirectory.mkdirs();
+        File f = new File( mDirectory, SPOOL_FILE_BASENAME + "." + suffix ).getAbsoluteFile();
+        if( HELD_LOCKS.contains( f ) ){
+            //held by another thread of this JVM
+            return null;
+        }
+        FileChannel channel = new RandomAccessFile( f, "rw" ).getChannel();
+        FileLock lock = null;
+        try{
+            lock = block ? channel.lock() : channel.tryLock();
+        }
+        finally{
+            if( lock == null ){
+                channel.close();
+            }
+        }
+        if( lock != null ){
+            HELD_LOCKS.add( f );
+        }
+        return lock;
+    }
+
+    /**
+     * Releases a lock, and closes the underlying channel. The caller should
+     * synchronize on JVM_LOCK.
+     *
+     * @param lock    the lock
+     * @param suffix  the suffix of the lock file
+     */
+    private void release( FileLock lock, String suffix ){
+        if( lock == null ){
+            return;
+        }
+        HELD_LOCKS.remove( new File( mDirectory, SPOOL_FILE_BASENAME + "." + suffix ).getAbsoluteFile() );
+        try{
+            lock.release();
+        }
+        catch( IOException e ){
+            //ignore
+        }
+        try{
+            lock.channel().close();
+        }
+        catch( IOException e ){
+            //ignore
+        }
+    }
+}
@@ -48,6 +48,8 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.common.util.Boolean;
 
 import edu.isi.pegasus.planner.classes.AggregatedJob;
+import edu.isi.pegasus.planner.estimate.Estimator;
+import edu.isi.pegasus.planner.estimate.EstimatorFactory;
 import edu.isi.pegasus.planner.code.generator.MonitordNotify;
 import edu.isi.pegasus.planner.namespace.Condor;
 import edu.isi.pegasus.planner.namespace.Dagman;
@@ -68,6 +70,7 @@ import edu.isi.pegasus.planner.classes.PegasusFile;
 import edu.isi.pegasus.planner.namespace.Metadata;
 import edu.isi.pegasus.planner.refiner.cleanup.Cleanup;
 import edu.isi.pegasus.planner.transfer.implementation.Transfer;
+import edu.isi.pegasus.common.util.Environment;
 
 
 import java.io.BufferedWriter;
@@ -89,6 +92,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 /**
  * This class generates the condor submit files for the DAG which has to
  * be submitted to the Condor DagMan.
@@ -180,6 +185,32 @@ public class CondorGenerator extends Abstract {
      * The default priority key associated with the cleanup jobs.
      */
     public static final int DEFAULT_CLEANUP_PRIORITY_KEY = 1000;
+
+    /**
+     * The priority mode where the default priority of a compute job is
+     * derived from the depth of the job in the workflow.
+     */
+    public static final String DEPTH_PRIORITY_MODE = "depth";
+
+    /**
+     * The priority mode where the default priority of a compute job is the
+     * length in seconds of the longest path from the job to the end of the
+     * workflow, so that jobs on the critical path are released first.
+     */
+    public static final String CRITICAL_PATH_PRIORITY_MODE = "critical-path";
+
+    /**
+     * The runtime in seconds assumed for a job for which no runtime is
+     * specified or estimated.
+     */
+    public static final long DEFAULT_JOB_RUNTIME = 1;
+
+    /**
+     * The runtime in seconds assumed for an auxiliary job, such as a data
+     * staging, directory creation or cleanup job, for which no runtime is
+     * specified or estimated.
+     */
+    public static final long DEFAULT_AUXILLARY_JOB_RUNTIME = 60;
     
     /**
      * the environment variable key populated with all jobs to have the
@@ -207,7 +238,7 @@ public class CondorGenerator extends Abstract {
     /**
      * Map that maps job type to corresponding condor concurrency limits
      */
-    private static Map<Integer, String> jobTypeToCondorConcurrencyLimits(){
+    private static synchronized Map<Integer, String> jobTypeToCondorConcurrencyLimits(){
         if( mJobTypeToCondorConcurrencyLimits == null ){
             //PM-933
             mJobTypeToCondorConcurrencyLimits = new HashMap();
@@ -233,7 +264,7 @@ public class CondorGenerator extends Abstract {
     /**
      * Map that maps job type to corresponding condor concurrency limits
      */
-    private static Map<String, String> defaultMaxJobsCategoryValues(){
+    private static synchronized Map<String, String> defaultMaxJobsCategoryValues(){
         if( mDefaultMaxJobsCategoryValues == null ){
             //PM-1212
             mDefaultMaxJobsCategoryValues = new HashMap();
@@ -322,6 +353,12 @@ public class CondorGenerator extends Abstract {
      * Boolean indicating whether to assign job priorities or not.
      */
     private boolean mAssignDefaultJobPriorities;
+
+    /**
+     * Boolean indicating whether to compute the default priorities from the
+     * critical path.
+     */
+    private boolean mCriticalPathPriorities;
     
     /**
      * Boolean indicating whether to assign concurrency limits or not.
@@ -366,6 +403,16 @@ public class CondorGenerator extends Abstract {
         mTCHandle    = bag.getHandleToTransformationCatalog();
         mSiteStore   = bag.getHandleToSiteStore();
         mAssignDefaultJobPriorities = mProps.assignDefaultJobPriorities();
+        String priorityMode = mProps.getJobPriorityMode();
+        if( priorityMode.equals( CondorGenerator.CRITICAL_PATH_PRIORITY_MODE ) ){
+            mCriticalPathPriorities = true;
+        }
+        else if( priorityMode.equals( CondorGenerator.DEPTH_PRIORITY_MODE ) ){
+            mCriticalPathPriorities = false;
+        }
+        else{
+            throw new CodeGeneratorException( "Invalid value specified for property pegasus.job.priority.mode " + priorityMode );
+        }
         mAssociateConcurrencyLimits = mProps.associateCondorConcurrencyLimits();
         mAppName     = mProps.getProperty( PegasusProperties.PEGASUS_APP_METRICS_PREFIX );
         if( mAppName == null ){
@@ -489,6 +536,11 @@ public class CondorGenerator extends Abstract {
         //write out any category based dagman knobs to the dagman file
         printDagString( this.getCategoryDAGManKnobs( mProps ) );
 
+        //the bottom levels are computed before the traversal below, as
+        //the bottom up traversal resets the depth of the nodes
+        Map<String,Long> bottomLevels = ( this.mAssignDefaultJobPriorities && this.mCriticalPathPriorities )?
+                                        this.computeBottomLevels( dag ):
+                                        null;
                     
         for( Iterator it = dag.iterator(); it.hasNext(); ){
             GraphNode node = ( GraphNode )it.next();
@@ -498,7 +550,9 @@ public class CondorGenerator extends Abstract {
             //beforehand and assign priorities by default is true
             if( !job.condorVariables.containsKey( Condor.PRIORITY_KEY ) &&
                  this.mAssignDefaultJobPriorities ){
-                int priority = getJobPriority( job, node.getDepth() );
+                int priority = ( bottomLevels == null )?
+                               getJobPriority( job, node.getDepth() ):
+                               getJobPriority( job, node.getDepth(), bottomLevels.get( node.getID() ) );
                 
                 //apply a priority to the job overwriting any preexisting priority
                 job.condorVariables.construct( Condor.PRIORITY_KEY,
@@ -994,7 +1048,7 @@ public class CondorGenerator extends Abstract {
      */
     private  TransformationCatalogEntry constructTCEntryFromEnvironment( ){
         //construct environment profiles 
-        Map<String,String> m = System.getenv();
+        Map<String,String> m = Environment.getenv();
         ENV env = new ENV();
         String key = "CONDOR_HOME";
         if( m.containsKey( key ) ){
@@ -1292,17 +1346,7 @@ public class CondorGenerator extends Abstract {
     protected void writeDagFileTail( ADag dag ) throws CodeGeneratorException{
         try {
             
-            for( Iterator<GraphNode> it = dag.jobIterator(); it.hasNext() ; ){
-                GraphNode gn = (GraphNode) it.next();
-
-                //get a list of parents of the node
-                for( GraphNode child : gn.getChildren() ){
-                    StringBuffer edge = new StringBuffer();
-                    edge.append( "PARENT " ).append( " " ).append( gn.getID() ).append( " " ).
-                         append( "CHILD " ).append( child.getID() );
-                    printDagString( edge.toString() );
-                }
-            }
+            this.writeEdges( mDagWriter, dag.jobIterator() );
 
             printDagString(this.mSeparator);
             printDagString("# End of DAG");
@@ -1318,9 +1362,94 @@ public class CondorGenerator extends Abstract {
 
     }
 
+    /**
+     * Writes out the PARENT CHILD lines for the edges between the nodes
+     * passed. Nodes with identical sets of children, or alternatively nodes
+     * with identical sets of parents, are grouped into a single line of the
+     * form PARENT p1 p2 CHILD c1 c2, so that a complete bipartite set of
+     * edges is written as one line. The grouping that writes out fewer node
+     * names is used.
+     *
+     * @param writer  the writer to the dag file
+     * @param nodes   the nodes whose edges to their children are written
+     *
+     * @return the number of PARENT CHILD lines written
+     *
+     * @throws CodeGeneratorException in case of any error occuring code generation.
+     */
+    protected int writeEdges( PrintWriter writer,
+                              Iterator<GraphNode> nodes ) throws CodeGeneratorException{
+        //the parents grouped by their set of children
+        Map<List<String>,List<String>> byChildren = new LinkedHashMap<List<String>,List<String>>();
+        //the parents of each child
+        Map<String,List<String>> childParents = new LinkedHashMap<String,List<String>>();
+        long byChildrenNames = 0;
+        while( nodes.hasNext() ){
+            GraphNode node = nodes.next();
+            String name = node.getID();
+            List<String> children = new ArrayList<String>( node.getChildren().size() );
+            for( GraphNode child : node.getChildren() ){
+                String childName = child.getID();
+                children.add( childName );
+                List<String> parents = childParents.get( childName );
+                if( parents == null ){
+                    parents = new ArrayList<String>( child.getParents().size() );
+                    childParents.put( childName, parents );
+                }
+                parents.add( name );
+            }
+            if( children.isEmpty() ){
+                continue;
+            }
+            Collections.sort( children );
+            List<String> group = byChildren.get( children );
+            if( group == null ){
+                group = new ArrayList<String>();
+                byChildren.put( children, group );
+                byChildrenNames += children.size();
+            }
+            group.add( name );
+            byChildrenNames++;
+        }
+
+        //the children grouped by their set of parents
+        Map<List<String>,List<String>> byParents = new LinkedHashMap<List<String>,List<String>>();
+        long byParentsNames = 0;
+        for( Map.Entry<String,List<String>> entry : childParents.entrySet() ){
+            List<String> parents = entry.getValue();
+            Collections.sort( parents );
+            List<String> group = byParents.get( parents );
+            if( group == null ){
+                group = new ArrayList<String>();
+                byParents.put( parents, group );
+                byParentsNames += parents.size();
+            }
+            group.add( entry.getKey() );
+            byParentsNames++;
+        }
+
+        boolean groupByChildren = byChildrenNames <= byParentsNames;
+        for( Map.Entry<List<String>,List<String>> entry :
+                ( groupByChildren ? byChildren : byParents ).entrySet() ){
+            List<String> parents  = groupByChildren ? entry.getValue() : entry.getKey();
+            List<String> children = groupByChildren ? entry.getKey() : entry.getValue();
+            StringBuilder edge = new StringBuilder();
+            edge.append( "PARENT " );
+            for( String parent : parents ){
+                edge.append( " " ).append( parent );
+            }
+            edge.append( " " ).append( "CHILD" );
+            for( String child : children ){
+                edge.append( " " ).append( child );
+            }
+            printDagString( writer, edge.toString() );
+        }
+        return ( groupByChildren ? byChildren : byParents ).size();
+    }
+
     /**
      * Writes out the condor submit file for the dag created
-     * 
+     *
      * @param dag 
      * @param dagFile
      */
@@ -1342,8 +1471,20 @@ public class CondorGenerator extends Abstract {
      * @throws CodeGeneratorException
      */
     protected void printDagString(String str) throws CodeGeneratorException{
+        this.printDagString( mDagWriter, str );
+    }
+
+    /**
+     * Writes a string to a dag file.
+     *
+     * @param  writer  the writer to the dag file.
+     * @param  str     The String to be printed to the dag file.
+     *
+     * @throws CodeGeneratorException
+     */
+    protected void printDagString( PrintWriter writer, String str ) throws CodeGeneratorException{
         try {
-            mDagWriter.println(str);
+            writer.println(str);
         } catch (Exception e) {
             throw new CodeGeneratorException( "Writing to Dag file " + e.getMessage(),
                                               e );
@@ -1839,6 +1980,28 @@ public class CondorGenerator extends Abstract {
      * @return
      */
     protected int getJobPriority(Job job, int depth) {
+        return this.getJobPriority( job, depth, -1 );
+    }
+
+    /**
+     * Computes the priority for a job as the length of the longest path from
+     * the job to the end of the workflow if known, else on the basis of the
+     * job type and the depth in the workflow. The length is known for all
+     * jobs, auxiliary or compute, so that the priorities are on the same
+     * scale.
+     * 
+     * @param job          the job whose priority needs to be computed
+     * @param depth        the depth in the workflow
+     * @param bottomLevel  the length in seconds of the longest path from the
+     *                     job to the end of the workflow, -1 if not known
+     * 
+     * @return
+     */
+    protected int getJobPriority(Job job, int depth, long bottomLevel ) {
+        if( bottomLevel >= 0 ){
+            return (int)Math.min( bottomLevel, Integer.MAX_VALUE );
+        }
+
         int priority = 0;
         
         int type = job.getJobType();
@@ -1879,6 +2042,71 @@ public class CondorGenerator extends Abstract {
         return priority;
     }
 
+    /**
+     * Computes the bottom level of each job in the workflow, auxiliary jobs
+     * included, that is the sum of the runtimes of the jobs on the longest
+     * path from the job to the end of the workflow, including the job itself.
+     * The workflow is traversed once bottom up, so that the bottom levels of
+     * all the children of a job are known when the job is reached.
+     * 
+     * @param dag  the workflow
+     * 
+     * @return the bottom levels in seconds indexed by the job ID
+     */
+    protected Map<String,Long> computeBottomLevels( ADag dag ){
+        Estimator estimator = EstimatorFactory.loadEstimator( dag, mBag );
+        Map<String,Long> bottomLevels = new HashMap<String,Long>();
+        long max = 0;
+        for( Iterator<GraphNode> it = dag.bottomUpIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            long childLevel = 0;
+            for( GraphNode child : node.getChildren() ){
+                childLevel = Math.max( childLevel, bottomLevels.get( child.getID() ) );
+            }
+            long level = childLevel + this.getRuntime( (Job)node.getContent(), estimator );
+            bottomLevels.put( node.getID(), level );
+            max = Math.max( max, level );
+        }
+        mLogger.log( "Length of the critical path of the workflow is " + max + " seconds",
+                     LogManager.DEBUG_MESSAGE_LEVEL );
+        return bottomLevels;
+    }
+
+    /**
+     * Returns the runtime for a job, as specified in the Pegasus runtime
+     * profile, else as estimated by the estimator.
+     * 
+     * @param job        the job
+     * @param estimator  the estimator
+     * 
+     * @return the runtime in seconds, else DEFAULT_JOB_RUNTIME for a compute
+     *         job and DEFAULT_AUXILLARY_JOB_RUNTIME for an auxiliary job
+     */
+    private long getRuntime( Job job, Estimator estimator ){
+        String value = job.vdsNS.getStringValue( Pegasus.RUNTIME_KEY );
+        if( value == null ){
+            value = estimator.getRuntime( job );
+        }
+        if( value != null ){
+            try{
+                long runtime = (long)Double.parseDouble( value );
+                if( runtime > 0 ){
+                    return runtime;
+                }
+            }
+            catch( NumberFormatException e ){
+                mLogger.log( "Ignoring invalid runtime " + value + " for job " + job.getID(),
+                             LogManager.WARNING_MESSAGE_LEVEL );
+            }
+        }
+        int type = job.getJobType();
+        return ( type == Job.COMPUTE_JOB ||
+                 type == Job.DAG_JOB ||
+                 type == Job.DAX_JOB )?
+               CondorGenerator.DEFAULT_JOB_RUNTIME:
+               CondorGenerator.DEFAULT_AUXILLARY_JOB_RUNTIME;
+    }
+
    
     /**
      * This function creates the stdio handling with and without gridstart.
@@ -109,7 +109,7 @@ public class CondorStyleFactory {
      * @return a Map indexed by Pegasus styles, and values as names of implementing
      *         classes.
      */
-    private static Map implementingClassNameTable(){
+    private static synchronized Map implementingClassNameTable(){
         if( mImplementingClassNameTable == null ){
             mImplementingClassNameTable = new HashMap(3);
             mImplementingClassNameTable.put( Pegasus.CONDOR_STYLE, CONDOR_STYLE_IMPLEMENTING_CLASS);
@@ -33,6 +33,7 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.namespace.Dagman;
 import edu.isi.pegasus.planner.namespace.ENV;
 import edu.isi.pegasus.planner.namespace.Namespace;
+import edu.isi.pegasus.common.util.Environment;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
@@ -96,7 +97,7 @@ public class PegasusSubmitDAG {
         mPOptions = bag.getPlannerOptions();
         
         mLocalEnv = new ENV();
-        Map<String,String> systemEnv = System.getenv();
+        Map<String,String> systemEnv = Environment.getenv();
         for( Map.Entry<String,String> entry : systemEnv.entrySet() ){
             mLocalEnv.construct( entry.getKey(), entry.getValue() );
         }
@@ -37,6 +37,7 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.common.RunDirectoryFilenameFilter;
 
 import edu.isi.pegasus.planner.client.CPlanner;
+import edu.isi.pegasus.planner.client.PlannerServer;
 
 import edu.isi.pegasus.planner.catalog.TransformationCatalog;
 import edu.isi.pegasus.planner.catalog.classes.Profiles;
@@ -59,6 +60,7 @@ import edu.isi.pegasus.planner.namespace.ENV;
 import edu.isi.pegasus.planner.namespace.Pegasus;
 
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.common.util.Environment;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -1270,7 +1272,7 @@ public class SUBDAXGenerator{
      */
     private  TransformationCatalogEntry constructTCEntryFromEnvironment( ){
         //construct environment profiles 
-        Map<String,String> m = System.getenv();
+        Map<String,String> m = Environment.getenv();
         ENV env = new ENV();
         String key = "CONDOR_HOME";
         if( m.containsKey( key ) ){
@@ -1437,7 +1439,9 @@ public class SUBDAXGenerator{
             //construct the default path to the executable
             script.append( mProps.getBinDir() ).
                    append( File.separator ).
-                   append( "pegasus-plan" );
+                   append( mProps.usePlannerServer() ?
+                           PlannerServer.CLIENT_BASENAME :
+                           "pegasus-plan" );
         }
         else{
             script.append(entry.getPhysicalTransformation());
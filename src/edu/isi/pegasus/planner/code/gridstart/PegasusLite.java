@@ -67,14 +67,13 @@ import edu.isi.pegasus.planner.selector.ReplicaSelector;
 import edu.isi.pegasus.planner.transfer.SLS;
 import edu.isi.pegasus.planner.transfer.sls.SLSFactory;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -337,6 +336,23 @@ public class PegasusLite implements GridStart {
      */
     protected ContainerShellWrapperFactory mContainerWrapperFactory;
 
+    /**
+     * The version and worker package checks at the top of each PegasusLite
+     * script. Rendered once at initialization.
+     */
+    private String mWrapperHeader;
+
+    /**
+     * The rendered preambles, that set up the work directory and the worker
+     * package, indexed by the execution site and the SLS implementation.
+     */
+    private Map<String,WrapperPreamble> mWrapperPreambles;
+
+    /**
+     * The buffer reused for generating the PegasusLite scripts.
+     */
+    private StringBuilder mWrapperBuffer;
+
     
     /**
      * Initializes the GridStart implementation.
@@ -396,7 +412,18 @@ public class PegasusLite implements GridStart {
         mLocalPathToPegasusLiteCommon = getSubmitHostPathToPegasusLiteCommon( );
         mContainerWrapperFactory = new ContainerShellWrapperFactory();
         mContainerWrapperFactory.initialize(bag, dag);
-        
+
+        StringBuilder header = new StringBuilder();
+        header.append( "#!/bin/bash" ).append( '\n' );
+        header.append( "set -e" ).append( '\n' );
+        header.append( "pegasus_lite_version_major=\"" ).append( this.mMajorVersionLevel ).append( "\"").append( '\n' );
+        header.append( "pegasus_lite_version_minor=\"" ).append( this.mMinorVersionLevel ).append( "\"").append( '\n' );
+        header.append( "pegasus_lite_version_patch=\"" ).append( this.mPatchVersionLevel ).append( "\"").append( '\n' );
+        header.append( "pegasus_lite_enforce_strict_wp_check=\"" ).append( this.mEnforceStrictChecksOnWPVersion ).append( "\"").append( '\n' );
+        header.append( "pegasus_lite_version_allow_wp_auto_download=\"" ).append( this.mAllowWPDownloadFromWebsite ).append( "\"").append( '\n' );
+        mWrapperHeader   = header.toString();
+        mWrapperPreambles = new HashMap<String,WrapperPreamble>();
+        mWrapperBuffer   = new StringBuilder();
     }
     
     /**
@@ -799,7 +826,7 @@ public class PegasusLite implements GridStart {
             if( stagingSiteEntry == null ){
                 this.complainForHeadNodeFileServer( job.getID(),  job.getStagingSiteHandle());
             }
-            stagingSiteServerForRetrieval = stagingSiteEntry.selectHeadNodeScratchSharedFileServer( FileServer.OPERATION.get );
+            stagingSiteServerForRetrieval = mSiteStore.selectHeadNodeScratchSharedFileServer( job.getStagingSiteHandle(), FileServer.OPERATION.get );
             if( stagingSiteServerForRetrieval == null ){
                 this.complainForHeadNodeFileServer( job.getID(),  job.getStagingSiteHandle());
             }
@@ -813,17 +840,11 @@ public class PegasusLite implements GridStart {
             
 
         try{
-            OutputStream ostream = new FileOutputStream( shellWrapper , true );
-            PrintWriter writer = new PrintWriter( new BufferedWriter(new OutputStreamWriter(ostream)) );
-
-            StringBuffer sb = new StringBuffer( );
-            sb.append( "#!/bin/bash" ).append( '\n' );
-            sb.append( "set -e" ).append( '\n' );
-            sb.append( "pegasus_lite_version_major=\"" ).append( this.mMajorVersionLevel ).append( "\"").append( '\n' );
-            sb.append( "pegasus_lite_version_minor=\"" ).append( this.mMinorVersionLevel ).append( "\"").append( '\n' );
-            sb.append( "pegasus_lite_version_patch=\"" ).append( this.mPatchVersionLevel ).append( "\"").append( '\n' );
-            sb.append( "pegasus_lite_enforce_strict_wp_check=\"" ).append( this.mEnforceStrictChecksOnWPVersion ).append( "\"").append( '\n' );
-            sb.append( "pegasus_lite_version_allow_wp_auto_download=\"" ).append( this.mAllowWPDownloadFromWebsite ).append( "\"").append( '\n' );
+            //the constant parts of the script are rendered once
+            //and the rest is generated into a reused buffer
+            StringBuilder sb = mWrapperBuffer;
+            sb.setLength( 0 );
+            sb.append( mWrapperHeader );
             
             //PM-1132 set the variable to point to a log file for pegasus lite output
             if( job.envVariables.containsKey( PegasusLite.PEGASUS_LITE_LOG_ENV_KEY) ){
@@ -831,69 +852,16 @@ public class PegasusLite implements GridStart {
                   append( job.envVariables.get(PegasusLite.PEGASUS_LITE_LOG_ENV_KEY) ).append( "\"").append( '\n' );
             }
 
-            sb.append( '\n' );
-            
-            sb.append( ". " ).append( PegasusLite.PEGASUS_LITE_COMMON_FILE_BASENAME ).append( '\n' );
-            sb.append( '\n' );
-
-            sb.append( "pegasus_lite_init\n" );
-            sb.append( '\n' );
-
-            sb.append( "# cleanup in case of failures" ).append( '\n' );
-            sb.append( "trap pegasus_lite_signal_int INT" ).append( '\n' );
-            sb.append( "trap pegasus_lite_signal_term TERM" ).append( '\n' );
-            sb.append( "trap pegasus_lite_unexpected_exit EXIT" ).append( '\n' );
-            sb.append( '\n' );
-
-            appendStderrFragment( sb, "Setting up workdir" );
-            sb.append( "# work dir" ).append( '\n' );
-
-            
-            if( sls.doesCondorModifications() ){
-                //when using condor IO with pegasus lite we dont want
-                //pegasus lite to change the directory where condor
-                //launches the jobs
-                sb.append( "export pegasus_lite_work_dir=$PWD" ).append( '\n' );
+            WrapperPreamble preamble = this.getWrapperPreamble( job, sls );
+            if( preamble.getWorkerNodeDirectory() != null ){
+                StringBuilder message = new StringBuilder();
+                message.append( "Job " ).append( job.getID()  ).append( " will execute in directory " ).
+                        append( preamble.getWorkerNodeDirectory() ).append( " on the local filesystem at site "  ).
+                        append( job.getSiteHandle() );
+                mLogger.log( message.toString(),
+                             LogManager.DEBUG_MESSAGE_LEVEL );
             }
-            else{
-                //PM-822 check if the user has specified a local directory 
-                //for the execution site then set that as PEGASUS_WN_TMP
-                //and let pegasus lite at runtime launch the job in that
-                //directory
-                SiteCatalogEntry execSiteEntry = mSiteStore.lookup( job.getSiteHandle() );
-                String dir = null;
-                
-                if( job.envVariables.containsKey(PegasusLite.WORKER_NODE_DIRECTORY_KEY  )){
-                    //user metioned it as a profile that got assocaited with the job
-                    dir = (String) job.envVariables.get( PegasusLite.WORKER_NODE_DIRECTORY_KEY);
-                }
-                else if( execSiteEntry != null ){
-                    Directory directory = execSiteEntry.getDirectory( Directory.TYPE.local_scratch );
-                    if( directory != null ){
-                        dir = directory.getInternalMountPoint().getMountPoint();
-                    }
-                }
-                                    
-                if( dir != null ){
-                    StringBuilder message = new StringBuilder();
-                    message.append( "Job " ).append( job.getID()  ).append( " will execute in directory " ).
-                            append( dir ).append( " on the local filesystem at site "  ).
-                            append( job.getSiteHandle() );
-                    mLogger.log( message.toString(),
-                                 LogManager.DEBUG_MESSAGE_LEVEL );
-                    sb.append( "export ").append( PegasusLite.WORKER_NODE_DIRECTORY_KEY ).
-                       append( "=" ).append( dir ).append( '\n' );
-                }
-
-            }
-
-            sb.append( "pegasus_lite_setup_work_dir" ).append( '\n' );
-            sb.append( '\n' );
-
-            appendStderrFragment( sb, "Figuring out the worker package to use" );
-            sb.append( "# figure out the worker package to use" ).append( '\n' );
-            sb.append( "pegasus_lite_worker_package" ).append( '\n' );
-            sb.append( '\n' );
+            sb.append( preamble.getText() );
 
             if(  isCompute && //PM-971 for non compute jobs we don't do any sls transfers
                  sls.needsSLSInputTransfers( job ) ){
@@ -929,7 +897,7 @@ public class PegasusLite implements GridStart {
                         sb.append( " --symlink " );
                     }
                     sb.append( " 1>&2" ).append( " << 'EOF'" ).append( '\n' );
-                    sb.append( convertToTransferInputFormat( inputFiles, PegasusFile.LINKAGE.input ) );
+                    convertToTransferInputFormat( sb, inputFiles, PegasusFile.LINKAGE.input );
                     sb.append( "EOF" ).append( '\n' );
                     sb.append( '\n' );
                 }
@@ -996,12 +964,6 @@ public class PegasusLite implements GridStart {
             sb.append( "job_ec=0" ).append( "\n" );
             */
             
-            writer.print( sb.toString() );
-            writer.flush();
-            
-            
-            sb = new StringBuffer();
-            
             //enable the job via kickstart
             //separate calls for aggregated and normal jobs
             ContainerShellWrapper containerWrapper = this.mContainerWrapperFactory.loadInstance(job);
@@ -1034,7 +996,7 @@ public class PegasusLite implements GridStart {
             if(  isCompute && //PM-971 for non compute jobs we don't do any sls transfers
                  sls.needsSLSOutputTransfers( job ) ){
                  
-                FileServer stagingSiteServerForStore = stagingSiteEntry.selectHeadNodeScratchSharedFileServer( FileServer.OPERATION.put );
+                FileServer stagingSiteServerForStore = mSiteStore.selectHeadNodeScratchSharedFileServer( job.getStagingSiteHandle(), FileServer.OPERATION.put );
                  if( stagingSiteServerForStore == null ){
                     this.complainForHeadNodeFileServer( job.getID(),  job.getStagingSiteHandle());
                  }
@@ -1081,7 +1043,7 @@ public class PegasusLite implements GridStart {
                     sb.append( postJob );
 
                     sb.append( " 1>&2" ).append( " << 'EOF'" ).append( '\n' );
-                    sb.append( convertToTransferInputFormat( outputFiles, PegasusFile.LINKAGE.output ) );
+                    convertToTransferInputFormat( sb, outputFiles, PegasusFile.LINKAGE.output );
                     sb.append( "EOF" ).append( '\n' );
                     sb.append( '\n' );
                 }
@@ -1096,11 +1058,14 @@ public class PegasusLite implements GridStart {
             sb.append( "pegasus_lite_final_exit" ).append( '\n' );
             sb.append( "\n" );
            
-            writer.print( sb.toString() );
-            writer.flush();
-            
-            writer.close();
-            ostream.close();
+            Writer writer = Files.newBufferedWriter( shellWrapper.toPath(), Charset.defaultCharset(),
+                                                     StandardOpenOption.CREATE, StandardOpenOption.APPEND );
+            try{
+                writer.append( sb );
+            }
+            finally{
+                writer.close();
+            }
 
             //set the xbit on the shell script
             //for 3.2, we will have 1.6 as the minimum jdk requirement
@@ -1139,18 +1104,107 @@ public class PegasusLite implements GridStart {
     }
     
    
+    /**
+     * Returns the preamble for a job, that sets up the work directory and the
+     * worker package. The preambles are rendered once per execution site and
+     * SLS implementation, unless a job specifies its own worker node directory.
+     *
+     * @param job   the job being wrapped with PegasusLite
+     * @param sls   associated SLS implementation
+     *
+     * @return the preamble
+     */
+    private WrapperPreamble getWrapperPreamble( Job job, SLS sls ){
+        //when using condor IO with pegasus lite we dont want
+        //pegasus lite to change the directory where condor
+        //launches the jobs
+        boolean condorIO = sls.doesCondorModifications();
+        if( !condorIO && job.envVariables.containsKey(PegasusLite.WORKER_NODE_DIRECTORY_KEY  ) ){
+            //user metioned it as a profile that got assocaited with the job
+            return this.renderWrapperPreamble( (String) job.envVariables.get( PegasusLite.WORKER_NODE_DIRECTORY_KEY), false );
+        }
+
+        String key = job.getSiteHandle() + "#" + sls.getClass().getName();
+        WrapperPreamble preamble = mWrapperPreambles.get( key );
+        if( preamble == null ){
+            //PM-822 check if the user has specified a local directory 
+            //for the execution site then set that as PEGASUS_WN_TMP
+            //and let pegasus lite at runtime launch the job in that
+            //directory
+            String dir = null;
+            SiteCatalogEntry execSiteEntry = condorIO ? null : mSiteStore.lookup( job.getSiteHandle() );
+            if( execSiteEntry != null ){
+                Directory directory = execSiteEntry.getDirectory( Directory.TYPE.local_scratch );
+                if( directory != null ){
+                    dir = directory.getInternalMountPoint().getMountPoint();
+                }
+            }
+            preamble = this.renderWrapperPreamble( dir, condorIO );
+            mWrapperPreambles.put( key, preamble );
+        }
+        return preamble;
+    }
+
+    /**
+     * Renders the preamble that sets up the work directory and the worker
+     * package.
+     *
+     * @param dir        the directory on the worker node to execute the job in,
+     *                   can be null
+     * @param condorIO   whether condor IO is used for the job
+     *
+     * @return the preamble
+     */
+    private WrapperPreamble renderWrapperPreamble( String dir, boolean condorIO ){
+        StringBuilder sb = new StringBuilder();
+        sb.append( '\n' );
+        
+        sb.append( ". " ).append( PegasusLite.PEGASUS_LITE_COMMON_FILE_BASENAME ).append( '\n' );
+        sb.append( '\n' );
+
+        sb.append( "pegasus_lite_init\n" );
+        sb.append( '\n' );
+
+        sb.append( "# cleanup in case of failures" ).append( '\n' );
+        sb.append( "trap pegasus_lite_signal_int INT" ).append( '\n' );
+        sb.append( "trap pegasus_lite_signal_term TERM" ).append( '\n' );
+        sb.append( "trap pegasus_lite_unexpected_exit EXIT" ).append( '\n' );
+        sb.append( '\n' );
+
+        appendStderrFragment( sb, "Setting up workdir" );
+        sb.append( "# work dir" ).append( '\n' );
+
+        if( condorIO ){
+            sb.append( "export pegasus_lite_work_dir=$PWD" ).append( '\n' );
+        }
+        else if( dir != null ){
+            sb.append( "export ").append( PegasusLite.WORKER_NODE_DIRECTORY_KEY ).
+               append( "=" ).append( dir ).append( '\n' );
+        }
+
+        sb.append( "pegasus_lite_setup_work_dir" ).append( '\n' );
+        sb.append( '\n' );
+
+        appendStderrFragment( sb, "Figuring out the worker package to use" );
+        sb.append( "# figure out the worker package to use" ).append( '\n' );
+        sb.append( "pegasus_lite_worker_package" ).append( '\n' );
+        sb.append( '\n' );
+
+        return new WrapperPreamble( sb.toString(), condorIO ? null : dir );
+    }
+    
     /**
      * Convers the collection of files into an input format suitable for the
-     * transfer executable
+     * transfer executable, and appends it to a buffer
      * 
+     * @param sb       the buffer to append to
      * @param files    Collection of <code>FileTransfer</code> objects.
      * @param linkage file type of transfers
      * 
-     * @return  the blurb containing the files in the input format for the transfer
-     *          executable
+     * @return  the buffer with the blurb containing the files in the input
+     *          format for the transfer executable
      */
-    protected StringBuffer convertToTransferInputFormat( Collection<FileTransfer> files, PegasusFile.LINKAGE linkage ){
-        StringBuffer sb = new StringBuffer();
+    protected StringBuilder convertToTransferInputFormat( StringBuilder sb, Collection<FileTransfer> files, PegasusFile.LINKAGE linkage ){
         
         sb.append("[\n");
 
@@ -1452,7 +1506,7 @@ public class PegasusLite implements GridStart {
             sb.append( "set +e " ).append( "\n");
             sb.append(  sls.invocationString( job, null ) );
             sb.append( " 1>&2" ).append( " << 'EOF'" ).append( '\n' );
-            sb.append( convertToTransferInputFormat( files, fileType ) );
+            convertToTransferInputFormat( sb, files, fileType );
             sb.append( "EOF" ).append( '\n' );
             sb.append( "ec=$?" ).append( '\n' );
             sb.append( "set -e").append( '\n' );
@@ -1471,7 +1525,7 @@ public class PegasusLite implements GridStart {
      * @param sb       string buffer
      * @param message  the message  
      */
-    private void appendStderrFragment(StringBuffer sb, String message ) {
+    private void appendStderrFragment(StringBuilder sb, String message ) {
         //prefix + 1 + message
         int len = PegasusLite.MESSAGE_PREFIX.length() + 1 + message.length();
         if( len > PegasusLite.MESSAGE_STRING_LENGTH ){
@@ -1493,4 +1547,50 @@ public class PegasusLite implements GridStart {
         
     }
 
+
+    /**
+     * A rendered preamble for the PegasusLite scripts.
+     */
+    private static class WrapperPreamble {
+
+        /**
+         * The text of the preamble.
+         */
+        private final String mText;
+
+        /**
+         * The directory on the worker node set in the preamble, can be null.
+         */
+        private final String mWorkerNodeDirectory;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param text  the text of the preamble
+         * @param dir   the directory on the worker node, can be null
+         */
+        public WrapperPreamble( String text, String dir ){
+            mText = text;
+            mWorkerNodeDirectory = dir;
+        }
+
+        /**
+         * Returns the text of the preamble.
+         *
+         * @return the text
+         */
+        public String getText(){
+            return mText;
+        }
+
+        /**
+         * Returns the directory on the worker node set in the preamble.
+         *
+         * @return the directory, else null
+         */
+        public String getWorkerNodeDirectory(){
+            return mWorkerNodeDirectory;
+        }
+    }
+
 }
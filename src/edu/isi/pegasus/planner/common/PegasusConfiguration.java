@@ -309,6 +309,8 @@ public class PegasusConfiguration {
             }
         }
         
+        //the entries were updated. any site layouts compiled till now are stale
+        store.clearLayouts();
     }
     
     /**
@@ -239,6 +239,15 @@ public class PegasusProperties implements Cloneable {
     private static Map<Profiles.NAMESPACES,String> mNamepsaceToPropertiesPrefix;
     
     public Map<Profiles.NAMESPACES, String> namespaceToPropertiesPrefix(){
+        return namespaceToPropertiesPrefixTable();
+    }
+
+    /**
+     * Returns the map, initializing it if required.
+     *
+     * @return the map
+     */
+    private static synchronized Map<Profiles.NAMESPACES, String> namespaceToPropertiesPrefixTable(){
         if( mNamepsaceToPropertiesPrefix == null ){
             mNamepsaceToPropertiesPrefix = new HashMap<Profiles.NAMESPACES, String>();
             mNamepsaceToPropertiesPrefix.put( Profiles.NAMESPACES.condor, "condor" );
@@ -486,11 +495,9 @@ public class PegasusProperties implements Cloneable {
             //Karan April 27, 2011
             mProps = CommonProperties.nonSingletonInstance( confProperties );
         } catch ( IOException e ) {
-            System.err.println( "unable to read property file: " + e.getMessage() );
-            System.exit( 1 );
+            throw new RuntimeException( "Unable to read property file: " + e.getMessage(), e );
         } catch ( MissingResourceException e ) {
-            System.err.println( "A required property is missing: " + e.getMessage() );
-            System.exit( 1 );
+            throw new RuntimeException( "A required property is missing: " + e.getMessage(), e );
         }
 
     }
@@ -758,6 +765,20 @@ public class PegasusProperties implements Cloneable {
                               false );
     }
 
+    /**
+     * Returns a boolean indicating whether the prescripts for the sub
+     * workflows should hand off the planning to a running pegasus-plan-server,
+     * instead of starting a new pegasus-plan.
+     *
+     * Referred to by the "pegasus.plan.server" property
+     *
+     * @return the value in the properties file, else false
+     */
+    public boolean usePlannerServer(){
+        return Boolean.parse( mProps.getProperty( "pegasus.plan.server" ),
+                              false );
+    }
+
     /**
      * Returns the storage directory suffix or absolute specified
      * that is appended/replaced to the storage-mount-point specified in the
@@ -2135,6 +2156,19 @@ public class PegasusProperties implements Cloneable {
                               false  ); 
     }
 
+    /**
+     * Returns a boolean indicating whether to write out a profile of the
+     * planner phases to the submit directory or not.
+     *
+     * Referred to by the "pegasus.log.profile" property.
+     *
+     * @return boolean value specified in properties else false.
+     */
+    public boolean logProfile(){
+        return Boolean.parse( mProps.getProperty( "pegasus.log.profile" ) ,
+                              false  ); 
+    }
+
     //SOME MISCELLANEOUS PROPERTIES
 
     /**
@@ -2150,6 +2184,17 @@ public class PegasusProperties implements Cloneable {
                               true  );
     }
 
+    /**
+     * Returns the mode used to compute the default priorities of the jobs.
+     * 
+     * Referred to by the "pegasus.job.priority.mode" property.
+     *
+     * @return the value specified in properties else depth.
+     */
+    public String getJobPriorityMode() {
+        return mProps.getProperty( "pegasus.job.priority.mode", "depth" );
+    }
+
     /**
      * Returns a boolean indicating whether we create registration jobs or not.
      * 
@@ -2241,6 +2286,21 @@ public class PegasusProperties implements Cloneable {
         return Boolean.parse( mProps.getProperty( "pegasus.parser.dax.data.dependencies" ),
                               true) ;
     }
+
+    /**
+     * Returns a boolean indicating whether the planner should write out a
+     * binary snapshot of the parsed DAX next to the DAX, and use it in place
+     * of parsing the DAX on later runs.
+     *
+     * Referred to by the "pegasus.parser.dax.snapshot" property.
+     *
+     * @return boolean value in the properties file, else false if not specified
+     *         or an invalid value specified.
+     */
+    public boolean useDAXSnapshot(){
+        return Boolean.parse( mProps.getProperty( "pegasus.parser.dax.snapshot" ),
+                              false) ;
+    }
     
     /**
      * Returns the path to the wings properties file.
@@ -2304,6 +2364,29 @@ public class PegasusProperties implements Cloneable {
         return mProps.getProperty( "pegasus.partition.parser.load", "single" );
     }
 
+    /**
+     * Returns the number of threads used to write out the partitioned daxes,
+     * for writers that can write them out concurrently.
+     *
+     * Referred to by the "pegasus.partition.writer.threads" property.
+     *
+     * @return the value specified in the properties file, else
+     *         the number of processors available to the JVM. A value
+     *         of 1 writes out the partitions sequentially.
+     */
+    public int getPartitionWriterThreads() {
+        int val = Runtime.getRuntime().availableProcessors();
+        String prop = mProps.getProperty( "pegasus.partition.writer.threads" );
+        if( prop != null ){
+            try {
+                val = Integer.parseInt( prop );
+            } catch ( NumberFormatException e ) {
+                //use the default
+            }
+        }
+        return ( val < 1 ) ? 1 : val;
+    }
+
     /**
      * Returns the scope for the data reusue module.
      *
@@ -2688,7 +2771,11 @@ public class PegasusProperties implements Cloneable {
         if( properties.containsKey(key) ){
             String value = properties.getProperty( key );
             if( value != null ){
-                properties.setProperty( key, new File( value ).getAbsolutePath() );
+                //resolved against user.dir, that the pegasus-plan-server
+                //sets per request, and not the working directory of the jvm
+                properties.setProperty( key, new File( value ).isAbsolute() ?
+                                             value :
+                                             new File( System.getProperty( "user.dir" ), value ).getAbsolutePath() );
             }
         }
     }
@@ -25,6 +25,7 @@ import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.namespace.Metadata;
+import edu.isi.pegasus.common.util.Environment;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
@@ -90,7 +91,7 @@ public class Aspen implements Estimator {
         String modelEnvVariable = mProps.getProperty( Aspen.ASPEN_MODELS_PROPERTY_KEY );
         if( modelEnvVariable == null ){
             //try to pick up from environment
-            modelEnvVariable = System.getenv( ASPEN_MODELS_PATH_ENV_VARIABLE );
+            modelEnvVariable = Environment.getenv( ASPEN_MODELS_PATH_ENV_VARIABLE );
         }
         if( modelEnvVariable == null ){
             //complain for hte models directory
@@ -100,7 +101,7 @@ public class Aspen implements Estimator {
         
         //construct the environement variables for invoking client
         //we inherit all in current environment and ASPENPATH
-        Map<String,String> envs = System.getenv();
+        Map<String,String> envs = Environment.getenv();
         mEnvVariables = new String[ envs.keySet().size() + 1 ];
         mEnvVariables[0] = ASPEN_MODELS_PATH_ENV_VARIABLE + "=" + modelEnvVariable;
         int i = 1;
@@ -16,6 +16,7 @@
 
 package edu.isi.pegasus.planner.mapper;
 
+import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import java.io.File;
@@ -36,16 +37,17 @@ public interface SubmitMapper extends Mapper {
     /**
      * Internal API version for the Submit Mapper
      */
-    public static final String VERSION = "1.0";
+    public static final String VERSION = "1.1";
     
     /**
      * Initializes the submit mapper
      * 
      * @param bag           the bag of Pegasus objects
+     * @param workflow      the workflow for whose jobs directories are mapped
      * @param properties    properties that can be used to control the behavior of the mapper
      * @param base          the base directory relative to which all job directories are created
      */
-    public void initialize( PegasusBag bag, Properties properties,  File base );
+    public void initialize( PegasusBag bag, ADag workflow, Properties properties,  File base );
     
     public File getRelativeDir(Job job);
 
@@ -16,6 +16,7 @@
 package edu.isi.pegasus.planner.mapper;
 
 
+import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 
 import edu.isi.pegasus.planner.common.PegasusProperties;
@@ -54,8 +55,9 @@ public class SubmitMapperFactory {
      * at runtime in the properties file. A default replica selector is loaded
      * if property is not specified in the properties.
      *
-     * @param bag    the bag of objects that is required.
-     * @param base   the base directory
+     * @param bag       the bag of objects that is required.
+     * @param workflow  the workflow for whose jobs directories are mapped.
+     * @param base      the base directory
      *
      * @return the instance of the class implementing this interface.
      * @throws SubmitMapperFactoryException that chains any error that
@@ -64,7 +66,7 @@ public class SubmitMapperFactory {
      * @see #DEFAULT_PACKAGE_NAME
      * @see #DEFAULT_CREATOR
      */
-    public static SubmitMapper loadInstance( PegasusBag bag, File base )
+    public static SubmitMapper loadInstance( PegasusBag bag, ADag workflow, File base )
                                          throws SubmitMapperFactoryException {
 
         PegasusProperties properties = ( PegasusProperties )bag.get( PegasusBag.PEGASUS_PROPERTIES );
@@ -96,7 +98,7 @@ public class SubmitMapperFactory {
             //try loading the class dynamically
             DynamicLoader dl = new DynamicLoader(className);
             creator = ( SubmitMapper ) dl.instantiate( new Object[ 0 ] );
-            creator.initialize( bag , mapperProps, base);
+            creator.initialize( bag , workflow, mapperProps, base);
         }
         catch(Exception e){
             //chain the exception caught into the appropriate Factory Exception
@@ -17,21 +17,32 @@ package edu.isi.pegasus.planner.mapper.output;
 
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaFactory;
 
 import edu.isi.pegasus.planner.catalog.site.classes.FileServer;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
 import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
 
 import edu.isi.pegasus.planner.mapper.MapperException;
 import edu.isi.pegasus.planner.mapper.OutputMapper;
 
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import java.util.Properties;
+import java.util.Set;
 
 
 /**
@@ -50,6 +61,18 @@ import java.util.Properties;
  *                                          if using a file based RC
  * </pre>
  * 
+ * The locations of the output files of the workflow on the output site are
+ * looked up in bulk, in batches, when the mapper is initialized. Mapping of
+ * those files is then an in memory lookup. The following properties control
+ * the prefetch
+ * <pre>
+ * pegasus.dir.storage.mapper.replica.prefetch.batch  the number of lfns to
+ *                                                   lookup in one go
+ * pegasus.dir.storage.mapper.replica.prefetch.limit  the maximum number of lfns
+ *                                                   to prefetch. 0 disables
+ *                                                   the prefetch
+ * </pre>
+ * The files beyond the limit are looked up individually when they are mapped.
  * 
  * @author Karan Vahi
  */
@@ -73,6 +96,29 @@ public class Replica implements OutputMapper {
      */
     public static final String READ_ONLY_KEY = "read.only";
     
+    /**
+     * The name of the key in the property subset that specifies the number
+     * of lfns looked up in a single call to the backend while prefetching.
+     */
+    public static final String PREFETCH_BATCH_KEY = "prefetch.batch";
+
+    /**
+     * The name of the key in the property subset that specifies the maximum
+     * number of lfns for which the locations are prefetched.
+     */
+    public static final String PREFETCH_LIMIT_KEY = "prefetch.limit";
+
+    /**
+     * The default number of lfns looked up in a single call.
+     */
+    public static final int DEFAULT_PREFETCH_BATCH = 1000;
+
+    /**
+     * The default maximum number of lfns for which the locations are
+     * prefetched.
+     */
+    public static final int DEFAULT_PREFETCH_LIMIT = 500000;
+
     
     /**
      * The short name for this backend.
@@ -103,6 +149,12 @@ public class Replica implements OutputMapper {
     
     protected ReplicaCatalog mRCCatalog;
     
+    /**
+     * The prefetched locations on the output site, indexed by lfn. The value
+     * is null for the lfns that were looked up, but not found.
+     */
+    protected Map<String,String> mPrefetched;
+    
     /**
      * The default constructor.
      */
@@ -123,6 +175,7 @@ public class Replica implements OutputMapper {
         mLogger       = bag.getLogger();
         mSiteStore    = bag.getHandleToSiteStore();
         mOutputSite   = outputSite;
+        mPrefetched   = new HashMap<String,String>();
         
         boolean stageOut = (( outputSite != null ) && ( outputSite.trim().length() > 0 ));
 
@@ -139,6 +192,12 @@ public class Replica implements OutputMapper {
         //we only are reading not inserting any entries
         props.setProperty( Replica.READ_ONLY_KEY, "true" );
         
+        //the prefetch keys are for the mapper, not the backend
+        int batch = this.getIntValue( (String)props.remove( Replica.PREFETCH_BATCH_KEY ),
+                                      Replica.DEFAULT_PREFETCH_BATCH );
+        int limit = this.getIntValue( (String)props.remove( Replica.PREFETCH_LIMIT_KEY ),
+                                      Replica.DEFAULT_PREFETCH_LIMIT );
+        
         catalogImplementor = ( catalogImplementor == null ) ?
                 DEFAULT_REPLICA_BACKEND:
                 catalogImplementor;
@@ -150,6 +209,57 @@ public class Replica implements OutputMapper {
             throw new MapperException( "Unable to connect to replica catalog backend for output mapper " + catalogImplementor , e);
         }
 
+        this.prefetch( workflow, Math.max( 1, batch ), limit );
+    }
+    
+    /**
+     * Looks up the locations on the output site for the output files of the
+     * workflow that are transferred to the output site, in batches. Nothing
+     * is prefetched if there is no output site, as only the lookups on the
+     * output site are answered from the prefetched locations.
+     * 
+     * @param workflow  the workflow refined so far.
+     * @param batch     the number of lfns to lookup in one go
+     * @param limit     the maximum number of lfns to prefetch
+     */
+    protected void prefetch( ADag workflow, int batch, int limit ){
+        if( mOutputSite == null || mRCCatalog == null ){
+            return;
+        }
+        Set<String> lfns = new LinkedHashSet<String>();
+        for( Iterator<GraphNode> it = workflow.jobIterator(); it.hasNext() && lfns.size() < limit; ){
+            Job job = (Job)it.next().getContent();
+            for( PegasusFile pf : job.getOutputFiles() ){
+                if( lfns.size() >= limit ){
+                    mLogger.log( "Prefetching locations for only the first " + limit + " output files",
+                                 LogManager.CONFIG_MESSAGE_LEVEL );
+                    break;
+                }
+                if( !pf.getTransientTransferFlag() ){
+                    lfns.add( pf.getLFN() );
+                }
+            }
+        }
+        if( lfns.isEmpty() ){
+            return;
+        }
+
+        mLogger.log( "Prefetching locations for " + lfns.size() + " output files in batches of " + batch,
+                     LogManager.DEBUG_MESSAGE_LEVEL );
+        Set<String> lookup = new LinkedHashSet<String>();
+        for( Iterator<String> it = lfns.iterator(); it.hasNext(); ){
+            lookup.add( it.next() );
+            if( lookup.size() == batch || !it.hasNext() ){
+                Map<String,Collection<ReplicaCatalogEntry>> result = mRCCatalog.lookup( lookup, mOutputSite );
+                for( String lfn : lookup ){
+                    Collection<ReplicaCatalogEntry> rces = result.get( lfn );
+                    //we just store the first matching URL
+                    mPrefetched.put( lfn,
+                                     ( rces == null || rces.isEmpty() ) ? null : rces.iterator().next().getPFN() );
+                }
+                lookup.clear();
+            }
+        }
     }
     
     /**
@@ -189,7 +299,9 @@ public class Replica implements OutputMapper {
     public String map( String lfn, String site, FileServer.OPERATION operation, boolean existing ) throws MapperException{
         
         //we just return the first matching URL
-        String url = mRCCatalog.lookup(lfn, site);
+        String url = ( site != null && site.equals( mOutputSite ) && mPrefetched.containsKey( lfn ) ) ?
+                     mPrefetched.get( lfn ):
+                     mRCCatalog.lookup(lfn, site);
         
         if( url == null ){
             throw new MapperException( this.getErrorMessagePrefix() + "Unable to retrive location from Mapper Replica Backend for lfn " + lfn );
@@ -234,6 +346,29 @@ public class Replica implements OutputMapper {
         return error.toString();
     }
 
+    /**
+     * Parses an integer value, returning the default value if the value is
+     * not specified or invalid.
+     * 
+     * @param value         the value to parse
+     * @param defaultValue  the default value
+     * 
+     * @return the integer value
+     */
+    private int getIntValue( String value, int defaultValue ){
+        if( value == null ){
+            return defaultValue;
+        }
+        try{
+            return Integer.parseInt( value.trim() );
+        }
+        catch( NumberFormatException e ){
+            mLogger.log( "Invalid value " + value + " specified for the output replica mapper. Defaulting to " + defaultValue,
+                         LogManager.WARNING_MESSAGE_LEVEL );
+            return defaultValue;
+        }
+    }
+
     private String getShortName() {
         return Replica.SHORT_NAME;
     }
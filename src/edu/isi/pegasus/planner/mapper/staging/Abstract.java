@@ -73,14 +73,13 @@ public abstract class Abstract implements StagingMapper {
     public String map(  Job job, File addOn,  SiteCatalogEntry site, FileServer.OPERATION operation, String lfn  )  throws MapperException{
         StringBuffer url = new StringBuffer();
 
-        FileServer getServer = site.selectHeadNodeScratchSharedFileServer( operation );
         String siteHandle = site.getSiteHandle();
+        FileServer getServer = mSiteStore.selectHeadNodeScratchSharedFileServer( siteHandle, operation );
         if( getServer == null ){
             this.complainForScratchFileServer(job, operation, siteHandle);
         }
 
-        url.append( getServer.getURLPrefix() ).
-            append( mSiteStore.getExternalWorkDirectory(getServer, siteHandle ));
+        url.append( mSiteStore.getExternalWorkDirectoryURL( getServer, siteHandle ));
         
         //check if we already have placed this file on the staging site
         //use that addOn then.
@@ -16,6 +16,7 @@
 package edu.isi.pegasus.planner.mapper.submit;
 
 import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
@@ -62,10 +63,11 @@ public class Flat implements SubmitMapper{
      * Initializes the submit mapper
      * 
      * @param bag           the bag of Pegasus objects
+     * @param workflow      the workflow for whose jobs directories are mapped
      * @param properties    properties that can be used to control the behavior of the mapper
      * @param base          the base directory relative to which all job directories are created
      */
-    public void initialize(PegasusBag bag, Properties properties, File base) {
+    public void initialize(PegasusBag bag, ADag workflow, Properties properties, File base) {
         mBaseDir = base;
         mLogger  = bag.getLogger();
         PlannerOptions options = bag.getPlannerOptions();
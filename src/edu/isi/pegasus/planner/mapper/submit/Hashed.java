@@ -16,6 +16,7 @@
 package edu.isi.pegasus.planner.mapper.submit;
 
 import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
@@ -60,10 +61,18 @@ public class Hashed implements SubmitMapper{
     public static final String LEVELS_PROPERTY_KEY = "hashed.levels";
     
     /**
-     * The default number of levels.
+     * The default number of levels, if the workflow size is not known.
      */
     public static final int DEFAULT_LEVELS = 2;
     
+    /**
+     * The factor by which the number of jobs in the workflow passed to the
+     * mapper is scaled, to account for the auxiliary jobs (stage-in, stage-out,
+     * registration, cleanup and create dir jobs) that are added to the
+     * workflow during refinement.
+     */
+    public static final int AUXILIARY_JOBS_FACTOR = 5;
+    
     /**
      * The root of the directory tree under which other directories are created
      */
@@ -91,10 +100,11 @@ public class Hashed implements SubmitMapper{
      * Initializes the submit mapper
      * 
      * @param bag           the bag of Pegasus objects
+     * @param workflow      the workflow for whose jobs directories are mapped
      * @param properties    properties that can be used to control the behavior of the mapper
      * @param base          the base directory relative to which all job directories are created
      */
-    public void initialize(PegasusBag bag, Properties properties, File base) {
+    public void initialize(PegasusBag bag, ADag workflow, Properties properties, File base) {
         mBaseDir = base;
         mLogger  = bag.getLogger();
         PlannerOptions options = bag.getPlannerOptions();
@@ -109,10 +119,21 @@ public class Hashed implements SubmitMapper{
                 multiplicator = Integer.parseInt( properties.getProperty(MULIPLICATOR_PROPERTY_KEY));
             }
             
+            //the number of jobs we expect to place, including the
+            //auxiliary jobs added later during refinement
+            int jobs = ( workflow == null )? 0 : workflow.size() * Hashed.AUXILIARY_JOBS_FACTOR;
+            
+            //the levels are sized from the workflow, unless specified
             int levels = Hashed.DEFAULT_LEVELS;
             if( properties.containsKey( Hashed.LEVELS_PROPERTY_KEY) ){
                 levels = Integer.parseInt( properties.getProperty(LEVELS_PROPERTY_KEY));
             }
+            else if( jobs > 0 ){
+                levels = Math.max( 1, HashedFileFactory.calculateLevels( jobs, 
+                                                                        multiplicator, 
+                                                                        creator.getFilesPerDirectory(), 
+                                                                        creator.getOffset() ) );
+            }
             
             //each job creates at creates the following files
             //  - submit file
@@ -129,6 +150,13 @@ public class Hashed implements SubmitMapper{
             //mSubmitDirectoryCreator.setFilesPerDirectory( 10 );
             //mSubmitDirectoryCreator.setLevelsFromTotals( 100 );
             
+            //the directories are created on demand, as the jobs are
+            //mapped to them, so that no empty directories are left
+            //behind for the auxiliary jobs that are never added
+            mLogger.log( "Hashed submit directories for " + jobs + 
+                         " jobs are laid out with " + levels + " levels", 
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            
             mFactory = creator;
         }
         catch ( IOException e ) {
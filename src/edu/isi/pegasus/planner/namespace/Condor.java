@@ -51,7 +51,7 @@ public class Condor extends Namespace{
      * 
      * @return 
      */
-    public static Map<String,String> classAdKeysToPegasusProfiles(){
+    public static synchronized Map<String,String> classAdKeysToPegasusProfiles(){
         if( mClassAdToPegasus == null ){
             mClassAdToPegasus = new HashMap();
             mClassAdToPegasus.put( Condor.REQUEST_MEMORY_KEY, Pegasus.MEMORY_KEY );
@@ -944,6 +944,22 @@ public class Condor extends Namespace{
     }
 
 
+    /**
+     * Incorporates the profiles of a layer shared by many jobs into an empty
+     * namespace. The namespace reads through to the profiles of the layer,
+     * and only stores the profiles that are set or removed afterwards.
+     *
+     * @param layer  the namespace holding the shared profiles, that is not
+     *               modified afterwards
+     */
+    public void inheritFrom( Namespace layer ){
+        if( !this.isEmpty() || layer.mProfileMap == null ){
+            super.inheritFrom( layer );
+            return;
+        }
+        mProfileMap = new LayeredProfileMap( layer.mProfileMap, new TreeMap<Object,Object>() );
+    }
+
     /**
      * Returns a boolean value, that a particular key is mapped to in this
      * namespace. If the key is mapped to a non boolean
@@ -1000,6 +1016,11 @@ public class Condor extends Namespace{
      * @return the Cloned object
      */
     public Object clone(){
+        if( mProfileMap instanceof LayeredProfileMap ){
+            Condor obj = new Condor();
+            obj.mProfileMap = ((LayeredProfileMap)mProfileMap).copy();
+            return obj;
+        }
         return new Condor(this.mProfileMap);
     }
 
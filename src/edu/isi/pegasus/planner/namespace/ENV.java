@@ -163,6 +163,22 @@ public class ENV extends Namespace {
     }
 
 
+    /**
+     * Incorporates the profiles of a layer shared by many jobs into an empty
+     * namespace. The namespace reads through to the profiles of the layer,
+     * and only stores the profiles that are set or removed afterwards.
+     *
+     * @param layer  the namespace holding the shared profiles, that is not
+     *               modified afterwards
+     */
+    public void inheritFrom( Namespace layer ){
+        if( !this.isEmpty() || layer.mProfileMap == null ){
+            super.inheritFrom( layer );
+            return;
+        }
+        mProfileMap = new LayeredProfileMap( layer.mProfileMap, new LinkedHashMap<Object,Object>() );
+    }
+
     /**
      * This checks whether the key passed by the user is valid in the current
      * namespace or not. At present, for this namespace all the keys are
@@ -301,6 +317,11 @@ public class ENV extends Namespace {
      * @return the Cloned object
      */
     public Object clone() {
+        if( mProfileMap instanceof LayeredProfileMap ){
+            ENV obj = new ENV();
+            obj.mProfileMap = ((LayeredProfileMap)mProfileMap).copy();
+            return obj;
+        }
         return ( mProfileMap == null ? new ENV() : new ENV(this.mProfileMap) );
     }
 
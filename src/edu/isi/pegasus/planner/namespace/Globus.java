@@ -59,7 +59,7 @@ public class Globus extends Namespace {
      * 
      * @return 
      */
-    public static Map<String,String> rslToPegasusProfiles(){
+    public static synchronized Map<String,String> rslToPegasusProfiles(){
         if( mRSLToPegasus == null ){
             mRSLToPegasus = new HashMap();
             mRSLToPegasus.put( Globus.MAX_MEMORY_KEY, Pegasus.MEMORY_KEY );
@@ -81,7 +81,7 @@ public class Globus extends Namespace {
      * 
      * @return 
      */
-    public static Map<String,String> rslToEnvProfiles(){
+    public static synchronized Map<String,String> rslToEnvProfiles(){
         if( mRSLToENV == null ){
             mRSLToENV = new HashMap();
             mRSLToENV.put( Globus.MAX_MEMORY_KEY, "PEGASUS_MEMORY");
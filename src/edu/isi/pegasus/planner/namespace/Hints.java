@@ -249,6 +249,15 @@ public class Hints extends Namespace {
      * @return Map
      */
     public  java.util.Map deprecatedTable() {
+        return initializeDeprecatedTable();
+    }
+
+    /**
+     * Returns the deprecated table, initializing it if required.
+     *
+     * @return Map
+     */
+    private static synchronized java.util.Map initializeDeprecatedTable() {
         if ( mDeprecatedTable == null ) {
             // only initialize once and only once, as needed.
             mDeprecatedTable = new java.util.HashMap();
@@ -0,0 +1,210 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.namespace;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The profiles of a namespace, that reads through to a layer of profiles
+ * shared by many jobs, and only stores the profiles the namespace sets or
+ * removes itself. The shared layer is never modified through this map.
+ *
+ * <p>
+ * The iteration order is that of the map the overrides are stored in. A
+ * sorted map iterates over all the keys in sorted order, any other map over
+ * the keys of the layer first, and then the keys only set in the overrides.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+class LayeredProfileMap extends AbstractMap<Object,Object> {
+
+    /**
+     * The shared layer of profiles.
+     */
+    private final Map<Object,Object> mLayer;
+
+    /**
+     * The profiles set in this map, that override the ones in the layer.
+     */
+    private final Map<Object,Object> mOverrides;
+
+    /**
+     * The keys of the layer that are removed in this map.
+     */
+    private final Set<Object> mRemoved;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param layer      the shared layer of profiles
+     * @param overrides  the empty map to store the overrides in
+     */
+    LayeredProfileMap( Map<?,?> layer, Map<Object,Object> overrides ){
+        mLayer     = Collections.unmodifiableMap( layer );
+        mOverrides = overrides;
+        mRemoved   = new HashSet<Object>();
+    }
+
+    /**
+     * Returns a copy of the map, that reads through to the same layer.
+     *
+     * @return the copy
+     */
+    LayeredProfileMap copy(){
+        Map<Object,Object> overrides = ( mOverrides instanceof SortedMap )?
+                                       new TreeMap<Object,Object>( mOverrides ):
+                                       new LinkedHashMap<Object,Object>( mOverrides );
+        LayeredProfileMap copy = new LayeredProfileMap( mLayer, overrides );
+        copy.mRemoved.addAll( mRemoved );
+        return copy;
+    }
+
+    public Object get( Object key ){
+        if( mOverrides.containsKey( key ) ){
+            return mOverrides.get( key );
+        }
+        return mRemoved.contains( key ) ? null : mLayer.get( key );
+    }
+
+    public boolean containsKey( Object key ){
+        return mOverrides.containsKey( key ) ||
+               ( !mRemoved.contains( key ) && mLayer.containsKey( key ) );
+    }
+
+    public Object put( Object key, Object value ){
+        Object previous = this.get( key );
+        mRemoved.remove( key );
+        mOverrides.put( key, value );
+        return previous;
+    }
+
+    public Object remove( Object key ){
+        Object previous = this.get( key );
+        mOverrides.remove( key );
+        if( mLayer.containsKey( key ) ){
+            mRemoved.add( key );
+        }
+        return previous;
+    }
+
+    public void clear(){
+        mOverrides.clear();
+        mRemoved.addAll( mLayer.keySet() );
+    }
+
+    public int size(){
+        int size = mOverrides.size();
+        for( Object key : mLayer.keySet() ){
+            if( !mOverrides.containsKey( key ) && !mRemoved.contains( key ) ){
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return this.size() == 0;
+    }
+
+    public Set<Map.Entry<Object,Object>> entrySet(){
+        return new AbstractSet<Map.Entry<Object,Object>>(){
+            public Iterator<Map.Entry<Object,Object>> iterator(){
+                return new EntryIterator( merged().keySet().iterator() );
+            }
+
+            public int size(){
+                return LayeredProfileMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Returns the profiles of the layer and the overrides merged into a
+     * single map, in the iteration order of this map.
+     *
+     * @return the merged profiles
+     */
+    private Map<Object,Object> merged(){
+        Map<Object,Object> merged = ( mOverrides instanceof SortedMap )?
+                                    new TreeMap<Object,Object>():
+                                    new LinkedHashMap<Object,Object>();
+        for( Map.Entry<Object,Object> entry : mLayer.entrySet() ){
+            if( !mRemoved.contains( entry.getKey() ) ){
+                merged.put( entry.getKey(), entry.getValue() );
+            }
+        }
+        merged.putAll( mOverrides );
+        return merged;
+    }
+
+    /**
+     * An iterator over the entries of the map, that writes changes through
+     * to the map.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<Object,Object>> {
+
+        /**
+         * The iterator over a snapshot of the keys.
+         */
+        private final Iterator<Object> mKeys;
+
+        /**
+         * The key last returned.
+         */
+        private Object mCurrent;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param keys  the iterator over a snapshot of the keys
+         */
+        EntryIterator( Iterator<Object> keys ){
+            mKeys = keys;
+        }
+
+        public boolean hasNext(){
+            return mKeys.hasNext();
+        }
+
+        public Map.Entry<Object,Object> next(){
+            mCurrent = mKeys.next();
+            return new AbstractMap.SimpleEntry<Object,Object>( mCurrent, get( mCurrent ) ){
+                public Object setValue( Object value ){
+                    super.setValue( value );
+                    return put( getKey(), value );
+                }
+            };
+        }
+
+        public void remove(){
+            if( mCurrent == null ){
+                throw new IllegalStateException();
+            }
+            LayeredProfileMap.this.remove( mCurrent );
+            mCurrent = null;
+        }
+    }
+}
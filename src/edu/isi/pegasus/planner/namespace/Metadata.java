@@ -43,6 +43,9 @@ public class Metadata extends Namespace {
     public static final String CHECKSUM_TYPE_KEY  = "checksum.type";
     public static final String CHECKSUM_VALUE_KEY = "checksum.value";
     
+    //size of a file in bytes, as specified in the DAX or replica catalog
+    public static final String SIZE_KEY = "size";
+    
     /**
      * The name of the implementing namespace. It should be one of the valid
      * namespaces always.
@@ -383,6 +383,22 @@ public abstract class Namespace /*extends Data*/{
        mProfileMap.put(key, value);
    }
 
+   /**
+    * Incorporates the profiles of a layer shared by many jobs into an empty
+    * namespace, without checking them again. The profiles are copied into
+    * the namespace. Namespaces that are mostly left unchanged per job
+    * override this to read through to the layer instead.
+    *
+    * @param layer  the namespace holding the shared profiles, that is not
+    *               modified afterwards
+    */
+   public void inheritFrom( Namespace layer ){
+       for( Iterator it = layer.getProfileKeyIterator(); it.hasNext(); ){
+           String key = (String) it.next();
+           this.construct( key, (String) layer.get( key ) );
+       }
+   }
+
    /**
     * Removes the key from the namespace.
     *
@@ -437,7 +453,7 @@ public abstract class Namespace /*extends Data*/{
     *
     */
    public Object get(Object key){
-      return mProfileMap.get(key);
+      return ( mProfileMap == null )? null : mProfileMap.get(key);
    }
 
    /**
@@ -72,7 +72,7 @@ public interface Callback {
      *
      * @param attributes is a map of attribute key to attribute value
      */
-    public void cbDocument(java.util.Map attributes);
+    public void cbDocument(java.util.Map<String,String> attributes);
 
         
     /**
@@ -113,7 +113,7 @@ public class DAXParser2 extends Parser implements DAXParser {
      * 
      * @return corresponding key in hints namespace else null
      */
-    private static String executionToHintsNamespace( String key ){
+    private static synchronized String executionToHintsNamespace( String key ){
         if ( mExecutionToHintsNamespace == null ){
             mExecutionToHintsNamespace = new HashMap<String,String>();
             mExecutionToHintsNamespace.put("site", Hints.EXECUTION_SITE_KEY );
@@ -0,0 +1,1337 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.parser.dax;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.util.Version;
+
+import edu.isi.pegasus.planner.catalog.classes.Profiles;
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.catalog.transformation.classes.TCType;
+import edu.isi.pegasus.planner.classes.CompoundTransformation;
+import edu.isi.pegasus.planner.classes.DAGJob;
+import edu.isi.pegasus.planner.classes.DAXJob;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.Notifications;
+import edu.isi.pegasus.planner.classes.PCRelation;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.classes.Profile;
+import edu.isi.pegasus.planner.classes.ReplicaLocation;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.dax.Invoke;
+import edu.isi.pegasus.planner.namespace.Namespace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A compact binary snapshot of a parsed DAX, that allows the planner to skip
+ * the XML parsing on later runs against the same DAX.
+ *
+ * <p>
+ * The snapshot records the stream of callback events that the DAX parser
+ * generates, and replays them into a fresh callback instead of parsing the
+ * XML. Hence, the <code>ADag</code> is always constructed by the callback
+ * itself, and the workflow metrics, the data dependencies and the replica and
+ * transformation stores come out the same as for a parse of the XML.
+ *
+ * <p>
+ * The snapshot is written next to the DAX with the suffix .snapshot. It
+ * starts with a header containing a format version and a key that is computed
+ * from the Pegasus version, the path, size, modification time and contents of
+ * the DAX, the job name prefix and the parser properties. A snapshot whose header does
+ * not match is ignored. The events are encoded as follows
+ * <ul>
+ *   <li> all integers are written as varints.</li>
+ *   <li> strings are interned in a string table that is built up while
+ *        writing, so that a repeated string is written as its index.</li>
+ *   <li> profiles are interned in a table of namespace, key and value triples
+ *        that is shared by the jobs and the executables.</li>
+ *   <li> the edges refer to the jobs by the order in which they appeared.</li>
+ * </ul>
+ *
+ * A DAX that contains constructs the snapshot does not support, such as
+ * containers or non string profile values, is not snapshotted, and is
+ * parsed as usual on later runs.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class DAXSnapshot {
+
+    /**
+     * The suffix of the snapshot file.
+     */
+    public static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+
+    /**
+     * The magic number at the start of a snapshot file.
+     */
+    public static final int MAGIC = 0x50445853;
+
+    /**
+     * The version of the snapshot format.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * The event codes.
+     */
+    private static final int END_EVENT = 0;
+    private static final int DOCUMENT_EVENT = 1;
+    private static final int WF_INVOKE_EVENT = 2;
+    private static final int METADATA_EVENT = 3;
+    private static final int JOB_EVENT = 4;
+    private static final int PARENTS_EVENT = 5;
+    private static final int COMPOUND_EVENT = 6;
+    private static final int FILE_EVENT = 7;
+    private static final int EXECUTABLE_EVENT = 8;
+    private static final int DONE_EVENT = 9;
+
+    /**
+     * The kinds of jobs.
+     */
+    private static final int COMPUTE_JOB_KIND = 0;
+    private static final int DAG_JOB_KIND = 1;
+    private static final int DAX_JOB_KIND = 2;
+
+    /**
+     * The charset for the strings.
+     */
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /**
+     * The path to the DAX.
+     */
+    private final String mDAX;
+
+    /**
+     * The snapshot file.
+     */
+    private final File mFile;
+
+    /**
+     * The object holding all the properties pertaining to Pegasus.
+     */
+    private final PegasusProperties mProps;
+
+    /**
+     * The job name prefix passed to the planner.
+     */
+    private final String mJobPrefix;
+
+    /**
+     * The handle to the logging object.
+     */
+    private final LogManager mLogger;
+
+    /**
+     * The recorder handed out for the last parse, if any.
+     */
+    private Recorder mRecorder;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param bag  the bag of initialization objects.
+     * @param dax  the path to the DAX.
+     */
+    public DAXSnapshot( PegasusBag bag, String dax ){
+        mDAX    = dax;
+        mFile   = new File( dax + SNAPSHOT_FILE_SUFFIX );
+        mProps  = bag.getPegasusProperties();
+        mLogger = bag.getLogger();
+        PlannerOptions options = bag.getPlannerOptions();
+        mJobPrefix = ( options == null ) ? null : options.getJobnamePrefix();
+    }
+
+    /**
+     * Returns the snapshot file.
+     *
+     * @return the file
+     */
+    public File getFile(){
+        return mFile;
+    }
+
+    /**
+     * Replays the snapshot into a callback, that has been initialized for the
+     * DAX. Nothing is replayed if the snapshot does not exist, or was written
+     * for a different DAX, Pegasus version or parser configuration.
+     *
+     * <p>
+     * If the snapshot turns out to be corrupt midway, false is returned and
+     * the callback is in an undefined state. The caller should then parse the
+     * DAX with a new callback.
+     *
+     * @param callback  the callback to replay into.
+     *
+     * @return true if the snapshot was replayed completely, else false.
+     */
+    public boolean replay( Callback callback ){
+        if( !mFile.isFile() ){
+            return false;
+        }
+        DataInputStream in = null;
+        try{
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( mFile ), 64 * 1024 ) );
+            if( in.readInt() != MAGIC ){
+                return false;
+            }
+            Decoder header = new Decoder( in );
+            if( header.readVarint() != FORMAT_VERSION || !computeKey().equals( header.readString() ) ){
+                mLogger.log( "Ignoring stale DAX snapshot " + mFile, LogManager.DEBUG_MESSAGE_LEVEL );
+                return false;
+            }
+            new Decoder( in ).replay( callback );
+            mLogger.log( "Replayed DAX snapshot " + mFile, LogManager.DEBUG_MESSAGE_LEVEL );
+            return true;
+        }
+        catch( IOException e ){
+            mLogger.log( "Unable to replay DAX snapshot " + mFile + " " + e.getMessage(),
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            return false;
+        }
+        catch( RuntimeException e ){
+            //a corrupt snapshot can trip up the callback
+            mLogger.log( "Unable to replay DAX snapshot " + mFile + " " + e.getMessage(),
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            return false;
+        }
+        finally{
+            if( in != null ){
+                try{ in.close(); } catch( IOException e ){}
+            }
+        }
+    }
+
+    /**
+     * Wraps a callback, so that the events passed to it while parsing the DAX
+     * are recorded for the snapshot.
+     *
+     * @param callback  the callback the parser should call.
+     *
+     * @return the callback to hand to the parser.
+     */
+    public Callback record( Callback callback ){
+        mRecorder = new Recorder( callback );
+        return mRecorder;
+    }
+
+    /**
+     * Writes out the events recorded during the last parse to the snapshot
+     * file. The snapshot is written to a temporary file and moved into place,
+     * so that a concurrent replay never sees a partial snapshot. Failures are
+     * not fatal, as the DAX is parsed again on the next run.
+     *
+     * @return true if the snapshot was written out, else false.
+     */
+    public boolean write(){
+        if( mRecorder == null || !mRecorder.isComplete() ){
+            return false;
+        }
+        File temp = null;
+        try{
+            temp = File.createTempFile( mFile.getName() + ".", ".tmp", mFile.getAbsoluteFile().getParentFile() );
+            OutputStream out = new BufferedOutputStream( new FileOutputStream( temp ) );
+            try{
+                DataOutputStream header = new DataOutputStream( out );
+                header.writeInt( MAGIC );
+                Encoder encoder = new Encoder( header );
+                encoder.writeVarint( FORMAT_VERSION );
+                encoder.writeString( computeKey() );
+                header.flush();
+                mRecorder.writeTo( out );
+            }
+            finally{
+                out.close();
+            }
+            Files.move( temp.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            mLogger.log( "Written out DAX snapshot " + mFile, LogManager.DEBUG_MESSAGE_LEVEL );
+            return true;
+        }
+        catch( IOException e ){
+            mLogger.log( "Unable to write DAX snapshot " + mFile + " " + e.getMessage(),
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            if( temp != null ){
+                temp.delete();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Computes the key that identifies the DAX and the configuration for
+     * which a snapshot is valid. The contents of the DAX are part of the key,
+     * as a DAX may be rewritten with the same size within the resolution of
+     * the modification time.
+     *
+     * @return the key as a hex string
+     *
+     * @throws IOException in case of error while reading the DAX
+     */
+    protected String computeKey() throws IOException{
+        File dax = new File( mDAX ).getAbsoluteFile();
+        StringBuffer sb = new StringBuffer();
+        sb.append( new Version().toString() ).append( '\n' ).
+           append( dax.getPath() ).append( '\n' ).
+           append( dax.length() ).append( '\n' ).
+           append( dax.lastModified() ).append( '\n' ).
+           append( mJobPrefix ).append( '\n' );
+        for( String prefix : new String[]{ "pegasus.parser", "pegasus.schema" } ){
+            Properties p = mProps.matchingSubset( prefix, true );
+            for( Object key : new TreeSet<Object>( p.keySet() ) ){
+                sb.append( key ).append( '=' ).append( p.get( key ) ).append( '\n' );
+            }
+        }
+
+        MessageDigest md;
+        try{
+            md = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch( NoSuchAlgorithmException e ){
+            throw new RuntimeException( "Unable to compute DAX snapshot key", e );
+        }
+        md.update( sb.toString().getBytes( UTF8 ) );
+        InputStream in = new FileInputStream( dax );
+        try{
+            byte[] buffer = new byte[ 64 * 1024 ];
+            int read;
+            while( (read = in.read( buffer )) != -1 ){
+                md.update( buffer, 0, read );
+            }
+        }
+        finally{
+            in.close();
+        }
+
+        StringBuffer hex = new StringBuffer();
+        for( byte b : md.digest() ){
+            hex.append( String.format( "%02x", b ) );
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A callback that encodes the events it receives before passing them on
+     * to the wrapped callback. An event is encoded before it is passed on, as
+     * the callbacks modify the objects passed to them.
+     */
+    private class Recorder implements Callback{
+
+        /**
+         * The callback the events are passed on to.
+         */
+        private final Callback mDelegate;
+
+        /**
+         * The buffer holding the encoded events.
+         */
+        private ByteArrayOutputStream mBuffer;
+
+        /**
+         * The encoder writing to the buffer.
+         */
+        private Encoder mEncoder;
+
+        /**
+         * Whether the end of the DAX was reached.
+         */
+        private boolean mDone;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param delegate  the callback to pass the events on to.
+         */
+        public Recorder( Callback delegate ){
+            mDelegate = delegate;
+            mBuffer   = new ByteArrayOutputStream( 64 * 1024 );
+            mEncoder  = new Encoder( new DataOutputStream( mBuffer ) );
+            mDone     = false;
+        }
+
+        /**
+         * Returns whether all events of the DAX were recorded.
+         *
+         * @return boolean
+         */
+        public boolean isComplete(){
+            return mDone && mEncoder != null;
+        }
+
+        /**
+         * Writes out the encoded events.
+         *
+         * @param out  the stream to write to
+         *
+         * @throws IOException
+         */
+        public void writeTo( OutputStream out ) throws IOException{
+            mBuffer.writeTo( out );
+        }
+
+        public void initialize( PegasusBag bag, String dax ){
+            mDelegate.initialize( bag, dax );
+        }
+
+        public Object getConstructedObject(){
+            return mDelegate.getConstructedObject();
+        }
+
+        public void cbDocument( Map<String,String> attributes ){
+            if( mEncoder != null ){
+                try{
+                    mEncoder.writeVarint( DOCUMENT_EVENT );
+                    mEncoder.writeMap( attributes );
+                }
+                catch( IOException e ){
+                    abort( e );
+                }
+            }
+            mDelegate.cbDocument( attributes );
+        }
+
+        public void cbWfInvoke( Invoke invoke ){
+            if( mEncoder != null ){
+                try{
+                    mEncoder.writeVarint( WF_INVOKE_EVENT );
+                    mEncoder.writeInvoke( invoke );
+                }
+                catch( IOException e ){
+                    abort( e );
+                }
+            }
+            mDelegate.cbWfInvoke( invoke );
+        }
+
+        public void cbFile( ReplicaLocation rl ){
+            if( mEncoder != null ){
+                try{
+                    mEncoder.writeVarint( FILE_EVENT );
+                    mEncoder.writeReplicaLocation( rl );
+                }
+                catch( IOException e ){
+                    abort( e );
+                }
+            }
+            mDelegate.cbFile( rl );
+        }
+
+        public void cbExecutable( TransformationCatalogEntry tce ){
+            if( mEncoder != null ){
+                try{
+                    mEncoder.writeVarint( EXECUTABLE_EVENT );
+                    mEncoder.writeTransformation( tce );
+                }
+                catch( IOException e ){
+                    abort( e );
+                }
+            }
+            mDelegate.cbExecutable( tce );
+        }
+
+        public void cbCompoundTransformation( CompoundTransformation compoundTransformation ){
+            if( mEncoder != null ){
+                try{
+                    mEncoder.writeVarint( COMPOUND_EVENT );
+                    mEncoder.writeCompoundTransformation( compoundTransformation );
+                }
+                catch( IOException e ){
+                    abort( e );
+                }
+            }
+            mDelegate.cbCompoundTransformation( compoundTransformation );
+        }
+
+        public void cbMetadata( Profile p ){
+            if( mEncoder != null ){
+                try{
+                    mEncoder.writeVarint( METADATA_EVENT );
+                    mEncoder.writeProfile( p.getProfileNamespace(), p.getProfileKey(), p.getProfileValue() );
+                }
+                catch( IOException e ){
+                    abort( e );
+                }
+            }
+            mDelegate.cbMetadata( p );
+        }
+
+        public void cbJob( Job job ){
+            if( mEncoder != null ){
+                try{
+                    mEncoder.writeVarint( JOB_EVENT );
+                    mEncoder.writeJob( job );
+                }
+                catch( IOException e ){
+                    abort( e );
+                }
+            }
+            mDelegate.cbJob( job );
+        }
+
+        public void cbParents( String child, List<PCRelation> parents ){
+            if( mEncoder != null ){
+                try{
+                    mEncoder.writeVarint( PARENTS_EVENT );
+                    mEncoder.writeJobReference( child );
+                    mEncoder.writeVarint( parents.size() );
+                    for( PCRelation relation : parents ){
+                        mEncoder.writeJobReference( relation.getParent() );
+                    }
+                }
+                catch( IOException e ){
+                    abort( e );
+                }
+            }
+            mDelegate.cbParents( child, parents );
+        }
+
+        public void cbDone(){
+            if( mEncoder != null ){
+                try{
+                    mEncoder.writeVarint( DONE_EVENT );
+                    mEncoder.writeVarint( END_EVENT );
+                    mEncoder.flush();
+                }
+                catch( IOException e ){
+                    abort( e );
+                }
+            }
+            mDone = true;
+            mDelegate.cbDone();
+        }
+
+        /**
+         * Stops recording, as the DAX cannot be snapshotted.
+         *
+         * @param e  the reason
+         */
+        private void abort( IOException e ){
+            mLogger.log( "DAX " + mDAX + " cannot be snapshotted: " + e.getMessage(),
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            mEncoder = null;
+            mBuffer  = null;
+        }
+    }
+
+    /**
+     * Encodes the objects passed in the callback events.
+     */
+    private static class Encoder{
+
+        /**
+         * The stream to write to.
+         */
+        private final DataOutputStream mOut;
+
+        /**
+         * The index of each string written so far.
+         */
+        private final Map<String,Integer> mStrings;
+
+        /**
+         * The index of each profile written so far.
+         */
+        private final Map<String,Integer> mProfiles;
+
+        /**
+         * The index of each job by its logical id, in the order the jobs
+         * were written.
+         */
+        private final Map<String,Integer> mJobs;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param out  the stream to write to
+         */
+        public Encoder( DataOutputStream out ){
+            mOut      = out;
+            mStrings  = new HashMap<String,Integer>();
+            mProfiles = new HashMap<String,Integer>();
+            mJobs     = new HashMap<String,Integer>();
+        }
+
+        public void flush() throws IOException{
+            mOut.flush();
+        }
+
+        public void writeVarint( int value ) throws IOException{
+            while( ( value & ~0x7F ) != 0 ){
+                mOut.writeByte( ( value & 0x7F ) | 0x80 );
+                value >>>= 7;
+            }
+            mOut.writeByte( value );
+        }
+
+        public void writeBoolean( boolean value ) throws IOException{
+            mOut.writeByte( value ? 1 : 0 );
+        }
+
+        /**
+         * Writes a double, that is mostly unset (-1).
+         *
+         * @param value  the value
+         *
+         * @throws IOException
+         */
+        public void writeDouble( double value ) throws IOException{
+            if( value == -1 ){
+                mOut.writeByte( 0 );
+            }
+            else{
+                mOut.writeByte( 1 );
+                mOut.writeDouble( value );
+            }
+        }
+
+        /**
+         * Writes a string, as a reference into the string table if it was
+         * written before.
+         *
+         * @param value  the string, can be null
+         *
+         * @throws IOException
+         */
+        public void writeString( String value ) throws IOException{
+            if( value == null ){
+                writeVarint( 0 );
+                return;
+            }
+            Integer index = mStrings.get( value );
+            if( index != null ){
+                writeVarint( index + 2 );
+                return;
+            }
+            mStrings.put( value, mStrings.size() );
+            writeVarint( 1 );
+            byte[] bytes = value.getBytes( UTF8 );
+            writeVarint( bytes.length );
+            mOut.write( bytes );
+        }
+
+        /**
+         * Writes a value that has to be a string.
+         *
+         * @param value  the value
+         *
+         * @throws IOException if the value is not a string
+         */
+        public void writeStringValue( Object value ) throws IOException{
+            if( value != null && !( value instanceof String ) ){
+                throw new IOException( "unsupported value of type " + value.getClass().getName() );
+            }
+            writeString( (String)value );
+        }
+
+        /**
+         * Writes a profile, as a reference into the profile table if it was
+         * written before.
+         *
+         * @param namespace  the namespace
+         * @param key        the key
+         * @param value      the value
+         *
+         * @throws IOException
+         */
+        public void writeProfile( String namespace, String key, Object value ) throws IOException{
+            if( !( value instanceof String ) ){
+                throw new IOException( "unsupported value for profile " + namespace + "." + key );
+            }
+            String profile = namespace + '\0' + key + '\0' + value;
+            Integer index = mProfiles.get( profile );
+            if( index != null ){
+                writeVarint( index + 1 );
+                return;
+            }
+            mProfiles.put( profile, mProfiles.size() );
+            writeVarint( 0 );
+            writeString( namespace );
+            writeString( key );
+            writeString( (String)value );
+        }
+
+        public void writeMap( Map<?,?> attributes ) throws IOException{
+            writeVarint( attributes.size() );
+            for( Map.Entry<?,?> entry : attributes.entrySet() ){
+                writeStringValue( entry.getKey() );
+                writeStringValue( entry.getValue() );
+            }
+        }
+
+        public void writeNamespace( Namespace n ) throws IOException{
+            Set<?> keys = n.keySet();
+            if( keys == null ){
+                writeVarint( 0 );
+                return;
+            }
+            writeVarint( keys.size() );
+            String namespace = n.namespaceName();
+            for( Object key : keys ){
+                if( !( key instanceof String ) ){
+                    throw new IOException( "unsupported key in namespace " + namespace );
+                }
+                writeProfile( namespace, (String)key, n.get( key ) );
+            }
+        }
+
+        public void writeInvoke( Invoke invoke ) throws IOException{
+            writeVarint( Invoke.WHEN.valueOf( invoke.getWhen() ).ordinal() );
+            writeString( invoke.getWhat() );
+        }
+
+        public void writeNotifications( Notifications notifications ) throws IOException{
+            List<Invoke> invokes = new LinkedList<Invoke>();
+            for( Invoke.WHEN when : Invoke.WHEN.values() ){
+                Collection<Invoke> c = notifications.getNotifications( when );
+                if( c != null ){
+                    invokes.addAll( c );
+                }
+            }
+            writeVarint( invokes.size() );
+            for( Invoke invoke : invokes ){
+                writeInvoke( invoke );
+            }
+        }
+
+        public void writeFile( PegasusFile pf ) throws IOException{
+            if( pf.getClass() != PegasusFile.class ){
+                throw new IOException( "unsupported file of type " + pf.getClass().getName() );
+            }
+            writeString( pf.getLFN() );
+            writeVarint( pf.getLinkage().ordinal() );
+            writeVarint( pf.getType() );
+            writeVarint( pf.getTransferFlag() );
+            long flags = 0;
+            BitSet bits = pf.getFlags();
+            for( int i = bits.nextSetBit( 0 ); i >= 0; i = bits.nextSetBit( i + 1 ) ){
+                if( i >= 31 ){
+                    throw new IOException( "unsupported flags for file " + pf.getLFN() );
+                }
+                flags |= ( 1 << i );
+            }
+            writeVarint( (int)flags );
+            writeDouble( pf.getSize() );
+            writeBoolean( pf.isRawInputFile() );
+            writeBoolean( pf.hasChecksumComputedInWF() );
+            writeNamespace( pf.getAllMetadata() );
+        }
+
+        public void writeFiles( Collection<PegasusFile> files ) throws IOException{
+            writeVarint( files.size() );
+            for( PegasusFile pf : files ){
+                writeFile( pf );
+            }
+        }
+
+        public void writeReplicaLocation( ReplicaLocation rl ) throws IOException{
+            writeString( rl.getLFN() );
+            List<ReplicaCatalogEntry> pfns = rl.getPFNList();
+            writeVarint( pfns.size() );
+            for( ReplicaCatalogEntry rce : pfns ){
+                writeString( rce.getPFN() );
+                writeVarint( rce.getAttributeCount() );
+                for( Iterator<?> it = rce.getAttributeIterator(); it.hasNext(); ){
+                    String key = (String)it.next();
+                    writeString( key );
+                    writeStringValue( rce.getAttribute( key ) );
+                }
+            }
+            writeNamespace( rl.getAllMetadata() );
+        }
+
+        public void writeTransformation( TransformationCatalogEntry tce ) throws IOException{
+            if( tce.getContainer() != null ){
+                throw new IOException( "unsupported container for executable " + tce.getLogicalTransformation() );
+            }
+            writeString( tce.getLogicalNamespace() );
+            writeString( tce.getLogicalName() );
+            writeString( tce.getLogicalVersion() );
+            writeString( tce.getResourceId() );
+            writeString( tce.getPhysicalTransformation() );
+            writeString( tce.getType() == null ? null : tce.getType().name() );
+
+            SysInfo info = tce.getSysInfo();
+            writeBoolean( info != null );
+            if( info != null ){
+                writeString( info.getArchitecture() == null ? null : info.getArchitecture().name() );
+                writeString( info.getOS() == null ? null : info.getOS().name() );
+                writeString( info.getOSRelease() );
+                writeString( info.getOSVersion() );
+                writeString( info.getGlibc() );
+            }
+
+            List<?> profiles = tce.getProfiles();
+            writeVarint( profiles == null ? 0 : profiles.size() );
+            if( profiles != null ){
+                for( Object o : profiles ){
+                    Profile p = (Profile)o;
+                    writeProfile( p.getProfileNamespace(), p.getProfileKey(), p.getProfileValue() );
+                }
+            }
+            writeNotifications( tce.getNotifications() );
+        }
+
+        public void writeCompoundTransformation( CompoundTransformation ct ) throws IOException{
+            writeString( ct.getNamespace() );
+            writeString( ct.getName() );
+            writeString( ct.getVersion() );
+            writeFiles( ct.getDependantFiles() );
+            writeNotifications( ct.getNotifications() );
+        }
+
+        public void writeJob( Job job ) throws IOException{
+            int kind;
+            if( job.getClass() == Job.class ){
+                kind = COMPUTE_JOB_KIND;
+            }
+            else if( job.getClass() == DAGJob.class ){
+                kind = DAG_JOB_KIND;
+            }
+            else if( job.getClass() == DAXJob.class ){
+                kind = DAX_JOB_KIND;
+            }
+            else{
+                throw new IOException( "unsupported job of type " + job.getClass().getName() );
+            }
+            if( job.getContainer() != null || job.getSubmissionCredential() != null ||
+                !job.getCredentialTypes().isEmpty() || job.getGraphNodeReference() != null ){
+                throw new IOException( "unsupported state for job " + job.getID() );
+            }
+
+            writeVarint( kind );
+            writeString( job.jobName );
+            writeString( job.namespace );
+            writeString( job.logicalName );
+            writeString( job.logicalId );
+            writeString( job.version );
+            writeString( job.dvName );
+            writeString( job.dvNamespace );
+            writeString( job.dvVersion );
+            writeString( job.jobID );
+            writeString( job.globusScheduler );
+            writeString( job.executable );
+            writeString( job.condorUniverse );
+            writeString( job.stdIn );
+            writeString( job.stdOut );
+            writeString( job.stdErr );
+            writeString( job.strargs );
+            writeString( job.executionPool );
+            writeVarint( job.jobClass );
+            writeVarint( job.level + 1 );
+            writeDouble( job.getRuntime() );
+            writeBoolean( job.userExecutablesStagedForJob() );
+            writeString( job.getStagingSiteHandle() );
+            writeString( job.getNodeLabel() );
+            writeString( job.getDirectory() );
+            writeString( job.getRelativeSubmitDirectory() );
+
+            writeNamespace( job.envVariables );
+            writeNamespace( job.globusRSL );
+            writeNamespace( job.condorVariables );
+            writeNamespace( job.dagmanVariables );
+            writeNamespace( job.hints );
+            writeNamespace( job.vdsNS );
+            writeNamespace( job.getMetadata() );
+
+            //an output file may be the same object as an input file
+            List<PegasusFile> inputs = new ArrayList<PegasusFile>( job.getInputFiles() );
+            writeFiles( inputs );
+            Set<PegasusFile> outputs = job.getOutputFiles();
+            writeVarint( outputs.size() );
+            for( PegasusFile pf : outputs ){
+                int index = indexOf( inputs, pf );
+                writeVarint( index + 1 );
+                if( index == -1 ){
+                    writeFile( pf );
+                }
+            }
+
+            writeNotifications( job.getNotifications() );
+
+            if( kind == DAG_JOB_KIND ){
+                DAGJob dagJob = (DAGJob)job;
+                writeString( dagJob.getDAGLFN() );
+                writeString( dagJob.getDAGFile() );
+            }
+            else if( kind == DAX_JOB_KIND ){
+                DAXJob daxJob = (DAXJob)job;
+                writeString( daxJob.getDAXLFN() );
+                writeString( daxJob.getDAXFile() );
+            }
+
+            mJobs.put( job.logicalId, mJobs.size() );
+        }
+
+        /**
+         * Writes a reference to a job by its logical id, as the index of the
+         * job if it was written before.
+         *
+         * @param id  the logical id of the job
+         *
+         * @throws IOException
+         */
+        public void writeJobReference( String id ) throws IOException{
+            Integer index = mJobs.get( id );
+            if( index == null ){
+                writeVarint( 0 );
+                writeString( id );
+            }
+            else{
+                writeVarint( index + 1 );
+            }
+        }
+
+        /**
+         * Returns the index of an object in a list by identity.
+         *
+         * @param list  the list
+         * @param o     the object
+         *
+         * @return the index, else -1
+         */
+        private static int indexOf( List<?> list, Object o ){
+            int i = 0;
+            for( Object item : list ){
+                if( item == o ){
+                    return i;
+                }
+                i++;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Decodes the events of a snapshot, and passes them on to a callback.
+     */
+    private static class Decoder{
+
+        /**
+         * The stream to read from.
+         */
+        private final DataInputStream mIn;
+
+        /**
+         * The string table.
+         */
+        private final List<String> mStrings;
+
+        /**
+         * The profile table, with each profile as namespace, key and value.
+         */
+        private final List<String[]> mProfiles;
+
+        /**
+         * The logical ids of the jobs, in the order they were read.
+         */
+        private final List<String> mJobs;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param in  the stream to read from
+         */
+        public Decoder( DataInputStream in ){
+            mIn       = in;
+            mStrings  = new ArrayList<String>();
+            mProfiles = new ArrayList<String[]>();
+            mJobs     = new ArrayList<String>();
+        }
+
+        /**
+         * Reads the events, and passes them on to the callback.
+         *
+         * @param c  the callback
+         *
+         * @throws IOException in case of a corrupt snapshot
+         */
+        public void replay( Callback c ) throws IOException{
+            int event;
+            while( ( event = readVarint() ) != END_EVENT ){
+                switch( event ){
+                    case DOCUMENT_EVENT:
+                        c.cbDocument( readMap() );
+                        break;
+
+                    case WF_INVOKE_EVENT:
+                        c.cbWfInvoke( readInvoke() );
+                        break;
+
+                    case METADATA_EVENT:
+                        String[] p = readProfile();
+                        c.cbMetadata( new Profile( p[0], p[1], p[2] ) );
+                        break;
+
+                    case JOB_EVENT:
+                        c.cbJob( readJob() );
+                        break;
+
+                    case PARENTS_EVENT:
+                        String child = readJobReference();
+                        int count = readVarint();
+                        List<PCRelation> parents = new LinkedList<PCRelation>();
+                        for( int i = 0; i < count; i++ ){
+                            parents.add( new PCRelation( readJobReference(), child ) );
+                        }
+                        c.cbParents( child, parents );
+                        break;
+
+                    case COMPOUND_EVENT:
+                        c.cbCompoundTransformation( readCompoundTransformation() );
+                        break;
+
+                    case FILE_EVENT:
+                        c.cbFile( readReplicaLocation() );
+                        break;
+
+                    case EXECUTABLE_EVENT:
+                        c.cbExecutable( readTransformation() );
+                        break;
+
+                    case DONE_EVENT:
+                        c.cbDone();
+                        break;
+
+                    default:
+                        throw new IOException( "Unknown event " + event );
+                }
+            }
+        }
+
+        public int readVarint() throws IOException{
+            int value = 0;
+            for( int shift = 0; shift < 35; shift += 7 ){
+                int b = mIn.readUnsignedByte();
+                value |= ( b & 0x7F ) << shift;
+                if( ( b & 0x80 ) == 0 ){
+                    return value;
+                }
+            }
+            throw new IOException( "Malformed varint" );
+        }
+
+        public boolean readBoolean() throws IOException{
+            return mIn.readByte() != 0;
+        }
+
+        public double readDouble() throws IOException{
+            return ( mIn.readByte() == 0 ) ? -1 : mIn.readDouble();
+        }
+
+        public String readString() throws IOException{
+            int index = readVarint();
+            if( index == 0 ){
+                return null;
+            }
+            if( index == 1 ){
+                int length = readVarint();
+                byte[] bytes = new byte[ length ];
+                mIn.readFully( bytes );
+                String value = new String( bytes, UTF8 );
+                mStrings.add( value );
+                return value;
+            }
+            index -= 2;
+            if( index >= mStrings.size() ){
+                throw new IOException( "Invalid string reference " + index );
+            }
+            return mStrings.get( index );
+        }
+
+        public String[] readProfile() throws IOException{
+            int index = readVarint();
+            if( index == 0 ){
+                String[] profile = new String[]{ readString(), readString(), readString() };
+                mProfiles.add( profile );
+                return profile;
+            }
+            index -= 1;
+            if( index >= mProfiles.size() ){
+                throw new IOException( "Invalid profile reference " + index );
+            }
+            return mProfiles.get( index );
+        }
+
+        public Map<String,String> readMap() throws IOException{
+            int count = readVarint();
+            Map<String,String> m = new HashMap<String,String>();
+            for( int i = 0; i < count; i++ ){
+                String key = readString();
+                m.put( key, readString() );
+            }
+            return m;
+        }
+
+        public void readNamespace( Namespace n ) throws IOException{
+            int count = readVarint();
+            for( int i = 0; i < count; i++ ){
+                String[] p = readProfile();
+                n.construct( p[1], p[2] );
+            }
+        }
+
+        public Invoke readInvoke() throws IOException{
+            Invoke.WHEN[] values = Invoke.WHEN.values();
+            int when = readVarint();
+            if( when >= values.length ){
+                throw new IOException( "Invalid notification condition " + when );
+            }
+            return new Invoke( values[ when ], readString() );
+        }
+
+        public void readNotifications( Notifications n ) throws IOException{
+            int count = readVarint();
+            for( int i = 0; i < count; i++ ){
+                n.add( readInvoke() );
+            }
+        }
+
+        public PegasusFile readFile() throws IOException{
+            PegasusFile pf = new PegasusFile( readString() );
+            PegasusFile.LINKAGE[] linkages = PegasusFile.LINKAGE.values();
+            int linkage = readVarint();
+            if( linkage >= linkages.length ){
+                throw new IOException( "Invalid linkage " + linkage );
+            }
+            pf.setLinkage( linkages[ linkage ] );
+            try{
+                pf.setType( readVarint() );
+                pf.setTransferFlag( readVarint() );
+            }
+            catch( IllegalArgumentException e ){
+                throw new IOException( e.getMessage() );
+            }
+            int flags = readVarint();
+            BitSet bits = pf.getFlags();
+            bits.clear();
+            for( int i = 0; i < 31; i++ ){
+                if( ( flags & ( 1 << i ) ) != 0 ){
+                    bits.set( i );
+                }
+            }
+            pf.setSize( readDouble() );
+            if( readBoolean() ){
+                pf.setRawInput( true );
+            }
+            pf.setChecksumComputedInWF( readBoolean() );
+            readNamespace( pf.getAllMetadata() );
+            return pf;
+        }
+
+        public List<PegasusFile> readFiles() throws IOException{
+            int count = readVarint();
+            List<PegasusFile> files = new ArrayList<PegasusFile>( count );
+            for( int i = 0; i < count; i++ ){
+                files.add( readFile() );
+            }
+            return files;
+        }
+
+        public ReplicaLocation readReplicaLocation() throws IOException{
+            ReplicaLocation rl = new ReplicaLocation();
+            rl.setLFN( readString() );
+            int count = readVarint();
+            for( int i = 0; i < count; i++ ){
+                ReplicaCatalogEntry rce = new ReplicaCatalogEntry( readString() );
+                int attributes = readVarint();
+                for( int j = 0; j < attributes; j++ ){
+                    String key = readString();
+                    rce.addAttribute( key, readString() );
+                }
+                //the list is already sanitized
+                rl.getPFNList().add( rce );
+            }
+            readNamespace( rl.getAllMetadata() );
+            return rl;
+        }
+
+        public TransformationCatalogEntry readTransformation() throws IOException{
+            TransformationCatalogEntry tce = new TransformationCatalogEntry( readString(), readString(), readString() );
+            tce.setResourceId( readString() );
+            tce.setPhysicalTransformation( readString() );
+            try{
+                String type = readString();
+                tce.setType( type == null ? null : TCType.valueOf( type ) );
+                if( readBoolean() ){
+                    SysInfo info = new SysInfo();
+                    String arch = readString();
+                    info.setArchitecture( arch == null ? null : SysInfo.Architecture.valueOf( arch ) );
+                    String os = readString();
+                    info.setOS( os == null ? null : SysInfo.OS.valueOf( os ) );
+                    info.setOSRelease( readString() );
+                    info.setOSVersion( readString() );
+                    info.setGlibc( readString() );
+                    tce.setSysInfo( info );
+                }
+            }
+            catch( IllegalArgumentException e ){
+                throw new IOException( e.getMessage() );
+            }
+
+            int count = readVarint();
+            if( count > 0 ){
+                Profiles profiles = new Profiles();
+                for( int i = 0; i < count; i++ ){
+                    String[] p = readProfile();
+                    profiles.addProfileDirectly( new Profile( p[0], p[1], p[2] ) );
+                }
+                tce.addProfiles( profiles );
+            }
+            readNotifications( tce.getNotifications() );
+            return tce;
+        }
+
+        public CompoundTransformation readCompoundTransformation() throws IOException{
+            CompoundTransformation ct = new CompoundTransformation( readString(), readString(), readString() );
+            for( PegasusFile pf : readFiles() ){
+                ct.addDependantFile( pf );
+            }
+            readNotifications( ct.getNotifications() );
+            return ct;
+        }
+
+        public Job readJob() throws IOException{
+            int kind = readVarint();
+            Job job;
+            switch( kind ){
+                case COMPUTE_JOB_KIND:
+                    job = new Job();
+                    break;
+
+                case DAG_JOB_KIND:
+                    job = new DAGJob();
+                    break;
+
+                case DAX_JOB_KIND:
+                    job = new DAXJob();
+                    break;
+
+                default:
+                    throw new IOException( "Unknown job kind " + kind );
+            }
+
+            job.jobName         = readString();
+            job.namespace       = readString();
+            job.logicalName     = readString();
+            job.logicalId       = readString();
+            job.version         = readString();
+            job.dvName          = readString();
+            job.dvNamespace     = readString();
+            job.dvVersion       = readString();
+            job.jobID           = readString();
+            job.globusScheduler = readString();
+            job.executable      = readString();
+            job.condorUniverse  = readString();
+            job.stdIn           = readString();
+            job.stdOut          = readString();
+            job.stdErr          = readString();
+            job.strargs         = readString();
+            job.executionPool   = readString();
+            job.jobClass        = readVarint();
+            job.level           = readVarint() - 1;
+            job.setRuntime( readDouble() );
+            job.setExecutableStagingForJob( readBoolean() );
+            job.setStagingSiteHandle( readString() );
+            job.setNodeLabel( readString() );
+            job.setDirectory( readString() );
+            job.setRelativeSubmitDirectory( readString() );
+
+            readNamespace( job.envVariables );
+            readNamespace( job.globusRSL );
+            readNamespace( job.condorVariables );
+            readNamespace( job.dagmanVariables );
+            readNamespace( job.hints );
+            readNamespace( job.vdsNS );
+            readNamespace( job.getMetadata() );
+
+            List<PegasusFile> inputs = readFiles();
+            for( PegasusFile pf : inputs ){
+                job.addInputFile( pf );
+            }
+            int count = readVarint();
+            for( int i = 0; i < count; i++ ){
+                int index = readVarint();
+                if( index > inputs.size() ){
+                    throw new IOException( "Invalid file reference " + index );
+                }
+                job.addOutputFile( index == 0 ? readFile() : inputs.get( index - 1 ) );
+            }
+
+            readNotifications( job.getNotifications() );
+
+            if( kind == DAG_JOB_KIND ){
+                DAGJob dagJob = (DAGJob)job;
+                dagJob.setDAGLFN( readString() );
+                dagJob.setDAGFile( readString() );
+            }
+            else if( kind == DAX_JOB_KIND ){
+                DAXJob daxJob = (DAXJob)job;
+                daxJob.setDAXLFN( readString() );
+                daxJob.setDAXFile( readString() );
+            }
+
+            mJobs.add( job.logicalId );
+            return job;
+        }
+
+        public String readJobReference() throws IOException{
+            int index = readVarint();
+            if( index == 0 ){
+                return readString();
+            }
+            index -= 1;
+            if( index >= mJobs.size() ){
+                throw new IOException( "Invalid job reference " + index );
+            }
+            return mJobs.get( index );
+        }
+    }
+}
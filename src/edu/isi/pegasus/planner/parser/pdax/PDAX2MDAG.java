@@ -31,6 +31,7 @@ import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.common.util.CondorVersion;
 
 import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.client.PlannerServer;
 import edu.isi.pegasus.common.util.StreamGobbler;
 import edu.isi.pegasus.common.util.DefaultStreamGobblerCallback;
 import edu.isi.pegasus.common.util.StreamGobblerCallback;
@@ -74,6 +75,7 @@ import java.text.NumberFormat;
 import java.text.DecimalFormat;
 import edu.isi.pegasus.planner.namespace.Condor;
 import edu.isi.pegasus.planner.namespace.ENV;
+import edu.isi.pegasus.common.util.Environment;
 
 
 /**
@@ -913,7 +915,7 @@ public class PDAX2MDAG implements Callback {
      */
     private  TransformationCatalogEntry constructTCEntryFromEnvironment( ){
         //construct environment profiles 
-        Map<String,String> m = System.getenv();
+        Map<String,String> m = Environment.getenv();
         ENV env = new ENV();
         String key = "CONDOR_HOME";
         if( m.containsKey( key ) ){
@@ -1143,7 +1145,9 @@ public class PDAX2MDAG implements Callback {
 
             //construct the default path to the executable
             script.append( mProps.getBinDir() ).append( mSeparator ).
-                   append( RETRY_LOGICAL_NAME );
+                   append( mProps.usePlannerServer() ?
+                           PlannerServer.CLIENT_BASENAME :
+                           RETRY_LOGICAL_NAME );
         }
         else{
             script.append(entry.getPhysicalTransformation());
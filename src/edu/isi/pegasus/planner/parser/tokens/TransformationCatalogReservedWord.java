@@ -119,7 +119,7 @@ public class TransformationCatalogReservedWord
      * Singleton access to the symbol table as a whole.
      * @return Map
      */
-    public static java.util.Map<String,TransformationCatalogReservedWord> symbolTable() {
+    public static synchronized java.util.Map<String,TransformationCatalogReservedWord> symbolTable() {
         if (mSymbolTable == null) {
             // only initialize once and only once, as needed.
             mSymbolTable = new java.util.TreeMap<String,TransformationCatalogReservedWord>();
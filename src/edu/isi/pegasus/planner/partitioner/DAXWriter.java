@@ -51,7 +51,7 @@ public abstract class DAXWriter {
     /**
      * The name of the package in which the writers are implemented.
      */
-    public static final String PACKAGE_NAME = "org.griphyn.cPlanner.partitioner";
+    public static final String PACKAGE_NAME = "edu.isi.pegasus.planner.partitioner";
 
     /**
      * The dax file that is being partitioned. The dax file is the repository
@@ -134,6 +134,30 @@ public abstract class DAXWriter {
      */
     public abstract boolean writePartitionDax( Partition partition, int index );
 
+    /**
+     * Returns whether the writer can write out partitioned daxes concurrently,
+     * once prepare has been called for each of them. Implementations that
+     * return true should not log from writePartitionDax, as the logger is not
+     * thread safe.
+     *
+     * @return false by default
+     */
+    public boolean supportsConcurrentWrites(){
+        return false;
+    }
+
+    /**
+     * Prepares the writer to write out a partition. It is called from the
+     * thread that the partitioner invokes the callbacks in, before the
+     * partition is written out, and is the place to do any logging or
+     * lazy loading required. The default implementation does nothing.
+     *
+     * @param partition  the partition that is to be written out next.
+     */
+    public void prepare( Partition partition ){
+
+    }
+
 
 
     /**
@@ -335,6 +359,24 @@ public abstract class DAXWriter {
     }
 
 
+    /**
+     * Opens a new write handle to the partitioned dax for a partition, without
+     * touching the shared write handle of this writer. The caller is
+     * responsible for closing it.
+     *
+     * @param index the partition number of the partition.
+     *
+     * @return the write handle
+     *
+     * @throws IOException in case of error while opening the file
+     */
+    protected PrintWriter openWriteHandle( int index ) throws IOException{
+        String name = ( (mPartitionName == null) ?
+                        constructPartitionName( null, true ):
+                        mPartitionName ) + "_" + index + ".dax";
+        return new PrintWriter( new BufferedWriter( new FileWriter( mPDAXDirectory + File.separator + name ) ) );
+    }
+
     /**
      * Writes out to the file.
      */
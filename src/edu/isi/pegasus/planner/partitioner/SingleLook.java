@@ -28,6 +28,7 @@ import org.griphyn.vdl.dax.Job;
 import org.griphyn.vdl.euryale.Callback;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -39,26 +40,16 @@ import java.util.Set;
  * it is initialized, stores it in memory and then refers the memory to look
  * up the job details for the jobs making up a particular partition.
  *
+ * <p>
+ * Once the dax is in memory, the partitioned daxes can be written out
+ * concurrently, as each write works only on its own ADAG object and
+ * write handle.
+ *
  * @author Karan Vahi
  * @version $Revision$
  */
 public class SingleLook extends DAXWriter{
 
-    /**
-     * The set of job id's in the partition.
-     */
-    private Set mNodeSet;
-
-    /**
-     * A map containing the relations between the jobs making up the partition.
-     */
-    private Map mRelationsMap;
-
-    /**
-     * The ADAG object containing the partitioned dax.
-     */
-    private ADAG mPartADAG;
-
     /**
      * The number of jobs that are in the partition.
      */
@@ -72,7 +63,7 @@ public class SingleLook extends DAXWriter{
     /**
      * The flag to identify that dax is in memory.
      */
-    private boolean mDAXInMemory;
+    private volatile boolean mDAXInMemory;
 
     /**
      * The map containing all the jobs in the dax indexed by the job id.
@@ -93,6 +84,24 @@ public class SingleLook extends DAXWriter{
         mJobMap      = null;
     }
 
+    /**
+     * Returns true, as the partitioned daxes are written out from the dax
+     * in memory.
+     *
+     * @return true
+     */
+    public boolean supportsConcurrentWrites(){
+        return true;
+    }
+
+    /**
+     * Loads the dax in memory, if it is not already loaded.
+     *
+     * @param partition  the partition that is to be written out next.
+     */
+    public void prepare( Partition partition ){
+        this.loadDAX( partition.getNodeIDs().size() );
+    }
 
     /**
      * It writes out a dax consisting of the jobs as specified in the partition.
@@ -109,41 +118,18 @@ public class SingleLook extends DAXWriter{
         List fileList = null;
         List parentIDs = null;
 
-        //do the cleanup from the previous partition write
-        mPartADAG = null;
-        mNodeSet  = null;
-        mRelationsMap = null;
-
-
         //get from the partition object the set of jobs
         //and relations between them
-        mNodeSet      = partition.getNodeIDs();
-        mRelationsMap = partition.getRelations();
-        mNumOfJobs    = mNodeSet.size();
+        Set nodeSet      = partition.getNodeIDs();
+        Map relationsMap = partition.getRelations();
 
-        //set the current number of jobs whose information we have
-        mCurrentNum = 0;
-        if(!mDAXInMemory){
-            mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_PARSE_DAX, LoggingKeys.DAX_ID, mDaxFile );
-
-            //dax is not in memory.
-            mJobMap = new java.util.HashMap();
-            //Callback takes care of putting dax in memory
-            Callback callback = new MyCallBackHandler();
-            org.griphyn.vdl.euryale.DAXParser d =
-                new org.griphyn.vdl.euryale.DAXParser(null);
-            d.setCallback(callback);
-
-            //start the parsing of the dax
-            d.parse(mDaxFile);
-            mDAXInMemory = true;
-            mLogger.logEventCompletion();
-        }
+        //no op if prepare() was called beforehand
+        this.loadDAX( nodeSet.size() );
 
-        mPartADAG      = new ADAG(0,index,mPartitionName);
+        ADAG partADAG = new ADAG(0,index,mPartitionName);
 
         //get the job information for the jobs in the partiton.
-        it = mNodeSet.iterator();
+        it = nodeSet.iterator();
         while(it.hasNext()){
             String id = (String)it.next();
             Job job = (Job)mJobMap.get(id);
@@ -153,7 +139,7 @@ public class SingleLook extends DAXWriter{
             }
 
             //add the job to ADAG
-            mPartADAG.addJob(job);
+            partADAG.addJob(job);
 
             //build up the files used by the partition
             fileList = job.getUsesList();
@@ -162,7 +148,7 @@ public class SingleLook extends DAXWriter{
             Iterator fileIt = fileList.iterator();
             while(fileIt.hasNext()){
                 Filename file = (Filename)fileIt.next();
-                mPartADAG.addFilename(file.getFilename(),
+                partADAG.addFilename(file.getFilename(),
                                       (file.getLink() == LFN.INPUT)?true:false,
                                       file.getTemporary(),
                                       file.getDontRegister(),file.getDontTransfer());
@@ -172,40 +158,73 @@ public class SingleLook extends DAXWriter{
         //put in the relations amongst
         //jobs in the partition
         //add the relations between the jobs in the partition to the ADAG
-        it = mRelationsMap.keySet().iterator();
+        it = relationsMap.keySet().iterator();
         while(it.hasNext()){
             String childID = (String)it.next();
-            parentIDs =  (List)mRelationsMap.get(childID);
+            parentIDs =  (List)relationsMap.get(childID);
 
             //get all the parents of the children and populate them in the
             //ADAG object
             Iterator it1 = parentIDs.iterator();
             while(it1.hasNext()){
-                mPartADAG.addChild(childID,(String)it1.next());
+                partADAG.addChild(childID,(String)it1.next());
             }
 
         }
-        mLogger.log("Writing out the DAX File for partition " + partition.getID(),
-                    LogManager.DEBUG_MESSAGE_LEVEL);
-        //do the actual writing to the file
-        this.initializeWriteHandle(index);
+
+        //do the actual writing to the file. a write handle
+        //of our own, as partitions may be written concurrently.
+        //no logging here, as the logger is not thread safe.
+        PrintWriter writer = null;
         try{
-            mPartADAG.toXML(mWriteHandle, "");
+            writer = this.openWriteHandle(index);
+            partADAG.toXML(writer, "");
+            if( writer.checkError() ){
+                return false;
+            }
         }
         catch(IOException e){
-            mLogger.log("Error while writing out a partition dax :" +
-                        e.getMessage(),LogManager.ERROR_MESSAGE_LEVEL);
             return false;
         }
-        this.close();
-        mLogger.log("Writing out the DAX File for partition - DONE" + partition.getID(),
-                     LogManager.DEBUG_MESSAGE_LEVEL);
-
+        finally{
+            if( writer != null ){
+                writer.close();
+            }
+        }
 
         //generation was successful
         return true;
     }
 
+    /**
+     * Parses the dax and puts the jobs in memory, if not already done.
+     *
+     * @param jobs  the number of jobs in the partition being written out.
+     */
+    private synchronized void loadDAX( int jobs ){
+        if( mDAXInMemory ){
+            return;
+        }
+        mNumOfJobs  = jobs;
+        //set the current number of jobs whose information we have
+        mCurrentNum = 0;
+
+        mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_PARSE_DAX, LoggingKeys.DAX_ID, mDaxFile );
+
+        //dax is not in memory.
+        mJobMap = new java.util.HashMap();
+        //Callback takes care of putting dax in memory
+        Callback callback = new MyCallBackHandler();
+        org.griphyn.vdl.euryale.DAXParser d =
+            new org.griphyn.vdl.euryale.DAXParser(null);
+        d.setCallback(callback);
+
+        //start the parsing of the dax
+        d.parse(mDaxFile);
+        mDAXInMemory = true;
+        mLogger.logEventCompletion();
+    }
+
 
 
 
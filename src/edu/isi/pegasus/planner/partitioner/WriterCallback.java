@@ -20,12 +20,21 @@ package edu.isi.pegasus.planner.partitioner;
 import edu.isi.pegasus.common.logging.LogManagerFactory;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.util.ThreadScope;
 
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
 import java.io.File;
 import java.io.IOException;
 
@@ -34,6 +43,13 @@ import java.io.IOException;
  * and also writes out a <code>PDAX</code> file that captures the relations
  * between the partitions.
  *
+ * <p>
+ * If the dax writer supports concurrent writes, the partitioned daxes are
+ * written out by a pool of threads, while the partitioner carries on
+ * constructing the next partitions. The PDAX file is always written out in the
+ * thread that invokes the callbacks. All the writes are waited upon in
+ * <code>cbDone()</code>.
+ *
  * @author not attributable
  * @version $Revision$
  */
@@ -73,6 +89,23 @@ public class WriterCallback implements Callback {
      */
     protected boolean mPartitioningStarted;
 
+    /**
+     * The pool of threads that write out the partitioned daxes. Is null if
+     * the partitioned daxes are written out sequentially.
+     */
+    protected ExecutorService mExecutor;
+
+    /**
+     * The pending writes of the partitioned daxes, in the order in which they
+     * were submitted.
+     */
+    protected List<Future<Boolean>> mWrites;
+
+    /**
+     * The ID's of the partitions corresponding to the pending writes.
+     */
+    protected List<String> mWriteIDs;
+
     /**
      * The default constructor.
      *
@@ -106,6 +139,22 @@ public class WriterCallback implements Callback {
 
         //write out the XML header for the PDAX file
         mPDAXWriter.writeHeader();
+
+        //write out the partitioned daxes in parallel if possible
+        int threads = properties.getPartitionWriterThreads();
+        mWrites   = new LinkedList<Future<Boolean>>();
+        mWriteIDs = new LinkedList<String>();
+        if( threads > 1 && mDAXWriter.supportsConcurrentWrites() ){
+            mLogger.log( "Writing out partitioned daxes using " + threads + " threads",
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            mExecutor = Executors.newFixedThreadPool( threads, new ThreadFactory(){
+                public Thread newThread( Runnable r ){
+                    Thread t = new Thread( r, "pegasus-partition-writer" );
+                    t.setDaemon( true );
+                    return t;
+                }
+            });
+        }
     }
 
     /**
@@ -133,7 +182,23 @@ public class WriterCallback implements Callback {
             mLogger.log( "Writing to the pdax file for partition -DONE" + p.getID(),
                           LogManager.DEBUG_MESSAGE_LEVEL );
             //write out the DAX file
-            mDAXWriter.writePartitionDax( p );
+            mDAXWriter.prepare( p );
+            mLogger.log( "Writing out the DAX File for partition " + p.getID(),
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            if( mExecutor == null ){
+                if( !mDAXWriter.writePartitionDax( p ) ){
+                    throw new IOException( "Unable to write out the partition dax" );
+                }
+            }
+            else{
+                final Partition partition = p;
+                mWrites.add( mExecutor.submit( ThreadScope.propagate( new Callable<Boolean>(){
+                    public Boolean call(){
+                        return mDAXWriter.writePartitionDax( partition );
+                    }
+                })));
+                mWriteIDs.add( p.getID() );
+            }
 
         }
         catch( IOException ioe ){
@@ -170,8 +235,51 @@ public class WriterCallback implements Callback {
         //that we are done with partitioning.
         mPartitioningStarted = false;
 
-        mPDAXWriter.close();
-        mDAXWriter.close();
+        try{
+            waitForWrites();
+        }
+        finally{
+            if( mExecutor != null ){
+                mExecutor.shutdownNow();
+                mExecutor = null;
+            }
+            mPDAXWriter.close();
+            mDAXWriter.close();
+        }
+    }
+
+    /**
+     * Waits for the pending writes of the partitioned daxes to complete.
+     *
+     * @throws RuntimeException in case any of the partitioned daxes could not
+     *         be written out.
+     */
+    protected void waitForWrites(){
+        Iterator<String> ids = mWriteIDs.iterator();
+        for( Future<Boolean> write : mWrites ){
+            String id = ids.next();
+            Throwable cause = null;
+            try{
+                if( write.get() ){
+                    continue;
+                }
+            }
+            catch( InterruptedException e ){
+                Thread.currentThread().interrupt();
+                cause = e;
+            }
+            catch( ExecutionException e ){
+                cause = e.getCause();
+            }
+            throw new RuntimeException( "Writer Callback for partition " + id,
+                                        ( cause == null )?
+                                        new IOException( "Unable to write out the partition dax" ):
+                                        cause );
+        }
+        mWrites.clear();
+        mWriteIDs.clear();
+        mLogger.log( "Writing out the partitioned daxes -DONE",
+                     LogManager.DEBUG_MESSAGE_LEVEL );
     }
 
 
@@ -258,7 +258,7 @@ public class DeployWorkerPackage
      * 
      * @return map
      */
-    private static Map<SysInfo.OS,String> osToOSReleaseAndVersion(){
+    private static synchronized Map<SysInfo.OS,String> osToOSReleaseAndVersion(){
         //singleton access
         if( mOSToNMIOSReleaseAndVersion == null ){
             mOSToNMIOSReleaseAndVersion = new HashMap();
@@ -274,7 +274,7 @@ public class DeployWorkerPackage
      * 
      * @return 
      */
-    private static Set<String> supportedOSReleaseAndVersions(){
+    private static synchronized Set<String> supportedOSReleaseAndVersions(){
         if( mSupportedOSReleaseVersions == null ){
             mSupportedOSReleaseVersions = new HashSet();
             mSupportedOSReleaseVersions.add( "rhel_6" );
@@ -1716,10 +1716,7 @@ public class DeployWorkerPackage
      * @throws RuntimeException when URL Prefix cannot be determined for various reason.
      */
     protected FileServer getScratchFileServer( String site ){
-        SiteCatalogEntry stagingSiteEntry = this.mSiteStore.lookup( site );
-        FileServer fileServer = ( stagingSiteEntry == null )?
-                                null:
-                                stagingSiteEntry.selectHeadNodeScratchSharedFileServer( FileServer.OPERATION.put );
+        FileServer fileServer = this.mSiteStore.selectHeadNodeScratchSharedFileServer( site, FileServer.OPERATION.put );
         String destURLPrefix =  ( fileServer == null )?
                                     null:
                                     fileServer.getURLPrefix();
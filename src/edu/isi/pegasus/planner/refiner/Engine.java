@@ -59,7 +59,7 @@ public abstract  class Engine {
     /**
      * The pool on which all the output data should be transferred.
      */
-    protected static String mOutputPool;
+    protected String mOutputPool;
 
     /**
      * The object holding all the properties pertaining to Pegasus.
@@ -134,6 +134,7 @@ public abstract  class Engine {
         mTCHandle = bag.getHandleToTransformationCatalog();
         mSiteStore= bag.getHandleToSiteStore();
         mSubmitDirMapper = bag.getSubmitMapper();
+        mOutputPool = ( mPOptions == null ) ? null : mPOptions.getOutputSite();
         loadProperties();
     }
     
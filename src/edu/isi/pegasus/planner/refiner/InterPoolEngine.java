@@ -31,6 +31,7 @@ import edu.isi.pegasus.planner.classes.FileTransfer;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.classes.ProfileLayer;
 import edu.isi.pegasus.planner.code.CodeGeneratorFactory;
 import edu.isi.pegasus.planner.code.generator.Stampede;
 import edu.isi.pegasus.planner.common.PegRandom;
@@ -52,6 +53,8 @@ import edu.isi.pegasus.planner.selector.site.SiteSelectorFactory;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -125,6 +128,13 @@ public class InterPoolEngine extends Engine implements Refiner {
      */
     private Estimator mEstimator;
 
+    /**
+     * The profile layers indexed by site, and then by the transformation
+     * catalog entry. All entries without profiles share the layer indexed
+     * by null.
+     */
+    private Map<String,Map<TransformationCatalogEntry,ProfileLayer>> mProfileLayers;
+
     /**
      * Default constructor.
      *
@@ -144,6 +154,7 @@ public class InterPoolEngine extends Engine implements Refiner {
         mXMLStore        = XMLProducerFactory.loadXMLProducer( mProps );
         
         mPegasusConfiguration = new PegasusConfiguration( bag.getLogger() );
+        mProfileLayers   = new HashMap<String,Map<TransformationCatalogEntry,ProfileLayer>>();
     }
 
     /**
@@ -388,10 +399,6 @@ public class InterPoolEngine extends Engine implements Refiner {
         mLogger.log( "For job "  + job.getName() + " updating profiles from site " + job.getSiteHandle() ,
                      LogManager.TRACE_MESSAGE_LEVEL );
 
-        //the profile information from the pool catalog needs to be
-        //assimilated into the job.
-        job.updateProfiles( mSiteStore.lookup( siteHandle ).getProfiles() );
-
         /* PM-810
         TransformationCatalogEntry tcEntry = lookupTC( job );
 
@@ -402,16 +409,12 @@ public class InterPoolEngine extends Engine implements Refiner {
         //catalog for the job. JIRA PM-391
         job.addNotifications( tcEntry );
 
-
-        //the profile information from the transformation
-        //catalog needs to be assimilated into the job
-        //overriding the one from pool catalog.
-        job.updateProfiles(tcEntry);
-
-        //the profile information from the properties file
-        //is assimilated overidding the one from transformation
-        //catalog.
-        job.updateProfiles(mProps);
+        //the profile information from the pool catalog, the
+        //transformation catalog and the properties file is
+        //assimilated into the job in that order. The sources are
+        //shared by all jobs mapped to the site with the same entry,
+        //and are flattened only once.
+        this.getProfileLayer( siteHandle, tcEntry ).apply( job );
 
         /* PM-810
         //handle dependant executables
@@ -425,6 +428,38 @@ public class InterPoolEngine extends Engine implements Refiner {
         return true;
     }
 
+    /**
+     * Returns the profile layer for jobs mapped to a site with a
+     * transformation catalog entry, creating it on first use.
+     *
+     * @param site     the site the jobs are mapped to
+     * @param tcEntry  the transformation catalog entry associated with the jobs
+     *
+     * @return the profile layer
+     */
+    private ProfileLayer getProfileLayer( String site, TransformationCatalogEntry tcEntry ){
+        Map<TransformationCatalogEntry,ProfileLayer> layers = mProfileLayers.get( site );
+        if( layers == null ){
+            //entries are looked up by identity, as the TC Mapper
+            //hands out the same entry objects for a transformation
+            layers = new IdentityHashMap<TransformationCatalogEntry,ProfileLayer>();
+            mProfileLayers.put( site, layers );
+        }
+
+        TransformationCatalogEntry key = ( tcEntry.getProfiles() == null || tcEntry.getProfiles().isEmpty() )?
+                                         null:
+                                         tcEntry;
+        ProfileLayer layer = layers.get( key );
+        if( layer == null ){
+            layer = new ProfileLayer( site,
+                                      mSiteStore.lookup( site ).getProfiles(),
+                                      tcEntry,
+                                      mProps );
+            layers.put( key, layer );
+        }
+        return layer;
+    }
+
     /**
      * Returns the main executable to be associated with the job.
      * 
@@ -24,6 +24,7 @@ import java.util.Set;
 import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.classes.PlannerProfile;
 
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.common.util.FileUtils;
@@ -130,11 +131,6 @@ public class MainEngine
         super( bag );
         mOriginalDag = orgDag;
         mExecPools = (Set)mPOptions.getExecutionSites();
-        mOutputPool = mPOptions.getOutputSite();
-
-        if (mOutputPool != null && mOutputPool.length() > 0) {
-            Engine.mOutputPool = mOutputPool;
-        }
 
     }
 
@@ -175,18 +171,22 @@ public class MainEngine
         mLogger.logEventCompletion();
         
 
+        this.startPhase( PlannerProfile.REDUCE_PHASE );
         mRedEng     = new DataReuseEngine( mOriginalDag, mBag );
         mReducedDag = mRedEng.reduceWorkflow(mOriginalDag, mRCBridge );
+        this.endPhase();
 
         //unmark arg strings
         //unmarkArgs();
         mOriginalDag = null;
        
         mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_SITESELECTION, LoggingKeys.DAX_ID, abstractWFName );
+        this.startPhase( PlannerProfile.SITE_SELECTION_PHASE );
         mIPEng = new InterPoolEngine( mReducedDag, mBag );
         mIPEng.determineSites();
         mBag = mIPEng.getPegasusBag();
         mIPEng = null;
+        this.endPhase();
         mLogger.logEventCompletion();
 
         //intialize the deployment engine
@@ -198,6 +198,7 @@ public class MainEngine
         //do the node cluster
         if( mPOptions.getClusteringTechnique() != null ){
             mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_CLUSTER, LoggingKeys.DAX_ID, abstractWFName );
+            this.startPhase( PlannerProfile.CLUSTER_PHASE );
             mNodeCollapser = new NodeCollapser( mBag );
 
             try{
@@ -208,6 +209,7 @@ public class MainEngine
             }
 
             mNodeCollapser = null;
+            this.endPhase();
             mLogger.logEventCompletion();
         }
 
@@ -218,6 +220,7 @@ public class MainEngine
 
         mLogger.log(message,LogManager.INFO_MESSAGE_LEVEL);
         mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_ADD_TRANSFER_NODES, LoggingKeys.DAX_ID, abstractWFName );
+        this.startPhase( PlannerProfile.TRANSFER_PHASE );
         mTransEng = new TransferEngine( mReducedDag, 
                                         mBag,
                                         mRedEng.getDeletedJobs(),
@@ -225,6 +228,7 @@ public class MainEngine
         mTransEng.addTransferNodes( mRCBridge , plannerCache );
         mTransEng = null;
         mRedEng = null;
+        this.endPhase();
         mLogger.logEventCompletion();
         
         //populate the transient RC into PegasusBag
@@ -245,9 +249,11 @@ public class MainEngine
                         "in the workflow";
             //mLogger.log(message,LogManager.INFO_MESSAGE_LEVEL);
             mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_GENERATE_WORKDIR, LoggingKeys.DAX_ID, abstractWFName );
+            this.startPhase( PlannerProfile.CREATE_DIR_PHASE );
             mCreateEng = new CreateDirectory( mBag );
             mCreateEng.addCreateDirectoryNodes( mReducedDag );
             mCreateEng = null;
+            this.endPhase();
             mLogger.logEventCompletion();
 
         }
@@ -258,8 +264,10 @@ public class MainEngine
                 mPOptions.getCleanup() != PlannerOptions.CLEANUP_OPTIONS.leaf )){ 
             message = "Adding cleanup jobs in the workflow";
             mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_GENERATE_CLEANUP, LoggingKeys.DAX_ID, abstractWFName );
+            this.startPhase( PlannerProfile.CLEANUP_PHASE );
             CleanupEngine cEngine = new CleanupEngine( mBag );
             mReducedDag = cEngine.addCleanupJobs( mReducedDag );
+            this.endPhase();
             mLogger.logEventCompletion();
         }
         
@@ -279,8 +287,10 @@ public class MainEngine
             
             //PM-150
             mLogger.logEventStart( "Adding Leaf Cleanup Jobs", LoggingKeys.DAX_ID, abstractWFName );
+            this.startPhase( PlannerProfile.LEAF_CLEANUP_PHASE );
             mRemoveEng = new RemoveDirectory( mReducedDag, mBag, this.mPOptions.getSubmitDirectory() );
             mReducedDag = mRemoveEng.addRemoveDirectoryNodes(mReducedDag);
+            this.endPhase();
             mLogger.logEventCompletion();
             mRemoveEng = null;
         }
@@ -296,6 +306,30 @@ public class MainEngine
         return mReducedDag;
     }
 
+    /**
+     * Starts profiling a phase of the refinement, if the planner is being
+     * profiled.
+     *
+     * @param name  the name of the phase
+     */
+    private void startPhase( String name ){
+        PlannerProfile profile = mBag.getPlannerProfile();
+        if( profile != null ){
+            profile.startPhase( name );
+        }
+    }
+
+    /**
+     * Ends profiling the current phase of the refinement, if the planner is
+     * being profiled.
+     */
+    private void endPhase(){
+        PlannerProfile profile = mBag.getPlannerProfile();
+        if( profile != null ){
+            profile.endPhase();
+        }
+    }
+
     /**
      * Returns the cleanup dag for the concrete dag.
      *
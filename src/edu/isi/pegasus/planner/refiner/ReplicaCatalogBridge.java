@@ -20,6 +20,7 @@ package edu.isi.pegasus.planner.refiner;
 import edu.isi.pegasus.common.credential.CredentialHandler;
 import edu.isi.pegasus.common.credential.CredentialHandlerFactory;
 import edu.isi.pegasus.common.logging.LoggingKeys;
+import edu.isi.pegasus.common.util.ThreadScope;
 
 import edu.isi.pegasus.planner.catalog.site.classes.GridGateway;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
@@ -39,6 +40,8 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
 import edu.isi.pegasus.planner.catalog.replica.ReplicaFactory;
+import edu.isi.pegasus.planner.catalog.replica.impl.Regex;
+import edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile;
 
 import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
 import edu.isi.pegasus.planner.catalog.transformation.classes.TCType;
@@ -57,7 +60,12 @@ import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.namespace.Dagman;
 import edu.isi.pegasus.planner.namespace.Metadata;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This coordinates the look up to the Replica Location Service, to determine
@@ -151,6 +159,12 @@ public class ReplicaCatalogBridge
      */
     public static final String REPLICA_CATALOG_URL_KEY = "url";
 
+    /**
+     * The maximum number of threads used to look up the file and directory
+     * based replica sources.
+     */
+    public static final int MAX_LOOKUP_THREADS = 4;
+
     /**
      * The handle to the main Replica Catalog.
      */
@@ -299,13 +313,25 @@ public class ReplicaCatalogBridge
         mSearchFiles = dag.getDAGInfo().getLFNs( options.getForce() );
 
         mReplicaFileSources = new LinkedHashSet<File>();
+
+        //the input directories, cache files and inherited files
+        //are looked up first, as the locations they contain are
+        //preferred over the ones in the replica catalog
+        this.loadFileSources( options );
+
+        //only the files that the sources above do not resolve
+        //need to be looked up in the replica catalog
+        Set<String> rcSearchFiles = this.getReplicaCatalogSearchFiles();
+        mLogger.log( "Looking up " + rcSearchFiles.size() + " of " + mSearchFiles.size() +
+                     " files in the Replica Catalog",
+                     LogManager.DEBUG_MESSAGE_LEVEL );
         
         try {
 
             //make sure that RLS can be loaded from local environment
             //Karan May 1 2007
             mReplicaCatalog = null;
-            if ( mSearchFiles != null && !mSearchFiles.isEmpty() ){
+            if ( !rcSearchFiles.isEmpty() ){
 
                 //need to clone before setting any read only properites
                 PegasusProperties props = (PegasusProperties) properties.clone();
@@ -326,7 +352,7 @@ public class ReplicaCatalogBridge
                 mReplicaCatalog = ReplicaFactory.loadInstance( props );          
                 
                 //load all the mappings.
-                mReplicaStore = new ReplicaStore( mReplicaCatalog.lookup( mSearchFiles ) );
+                mReplicaStore = new ReplicaStore( mReplicaCatalog.lookup( rcSearchFiles ) );
                 
                 mReplicaFileSources.add( mReplicaCatalog.getFileSource() );
             }
@@ -359,40 +385,203 @@ public class ReplicaCatalogBridge
         }
 
         
-        if( mReplicaCatalog != null ){
-            //specify maxjobs to 1 for File based replica catalog
-            //JIRA PM-377
-            if( mReplicaCatalog instanceof edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile ){
-                //we set the default category value to 1
-                //in the properties
-                String key = getDefaultRegistrationMaxJobsPropertyKey();
-                mLogger.log( "Setting property " + key + " to 1 to set max jobs for registrations jobs category",
-                              LogManager.DEBUG_MESSAGE_LEVEL );
-                mProps.setProperty( key, "1" );
+        //the replica catalog is not loaded if the other sources
+        //resolve all the files, but the registration jobs still
+        //write to the replica catalog configured in the properties
+        String implementor = this.getReplicaCatalogImplementor();
+
+        //specify maxjobs to 1 for File based replica catalog
+        //JIRA PM-377
+        if( implementor.equals( SimpleFile.class.getName() ) ){
+            //we set the default category value to 1
+            //in the properties
+            String key = getDefaultRegistrationMaxJobsPropertyKey();
+            mLogger.log( "Setting property " + key + " to 1 to set max jobs for registrations jobs category",
+                          LogManager.DEBUG_MESSAGE_LEVEL );
+            mProps.setProperty( key, "1" );
+        }
+
+        if( mReplicaCatalog == null && !mRCDown ){
+            File source = this.getReplicaCatalogFileSource( implementor );
+            if( source != null ){
+                mReplicaFileSources.add( source );
             }
         }
         
-        //incorporate all mappings from input directory if specified
-        Set<String> inputDirs = options.getInputDirectories();
-        if( !inputDirs.isEmpty() ){
-            mDirectoryReplicaStore = getReplicaStoreFromDirectories( inputDirs );
+        //record the cache and inherited files as sources
+        for( String source: options.getCacheFiles() ){
+            mReplicaFileSources.add( new File(source));
         }
-            
-        //incorporate the caching if any
-        if ( !options.getCacheFiles().isEmpty() ) {
-            loadCacheFiles( options.getCacheFiles() );
-            for( String source: options.getCacheFiles() ){
-                mReplicaFileSources.add( new File(source));
+        for( String source: options.getInheritedRCFiles() ){
+            mReplicaFileSources.add( new File(source));
+        }
+    }
+
+    /**
+     * Returns the fully qualified name of the class implementing the replica
+     * catalog. If the replica catalog is not loaded, it is determined from
+     * the properties the same way as the ReplicaFactory does.
+     *
+     * @return the class name
+     */
+    private String getReplicaCatalogImplementor(){
+        if( mReplicaCatalog != null ){
+            return mReplicaCatalog.getClass().getName();
+        }
+        String implementor = mProps.getProperty( ReplicaCatalog.c_prefix );
+        //File also means SimpleFile
+        if( implementor == null || implementor.equalsIgnoreCase( "File" ) ){
+            implementor = "SimpleFile";
+        }
+        return ( implementor.indexOf( '.' ) == -1 ) ?
+               ReplicaFactory.DEFAULT_PACKAGE + "." + implementor :
+               implementor;
+    }
+
+    /**
+     * Returns the file backing a file based replica catalog that was not
+     * loaded, as configured in the properties.
+     *
+     * @param implementor  the class implementing the replica catalog
+     *
+     * @return the file, or null if the replica catalog is not file based
+     *         or no file exists
+     */
+    private File getReplicaCatalogFileSource( String implementor ){
+        String file = mProps.getProperty( ReplicaCatalog.c_prefix + ".file" );
+        if( implementor.equals( SimpleFile.class.getName() ) ){
+            File source = ( file == null ) ?
+                          new File( SimpleFile.DEFAULT_REPLICA_CATALOG_BASENAME ).getAbsoluteFile() :
+                          new File( file );
+            return source.exists() ? source : null;
+        }
+        if( implementor.equals( Regex.class.getName() ) && file != null ){
+            return new File( file );
+        }
+        return null;
+    }
+
+    /**
+     * Returns the files that need to be looked up in the replica catalog.
+     * These are the search files, minus the ones for which the locations in
+     * the cache, the input directories, the DAX or the inherited replica store
+     * are used exclusively, without considering the replica catalog.
+     *
+     * @return the set of logical file names
+     *
+     * @see #getFileLocs(String)
+     */
+    private Set<String> getReplicaCatalogSearchFiles(){
+        Set<String> result = new HashSet<String>();
+        for( Iterator it = mSearchFiles.iterator(); it.hasNext(); ){
+            String lfn = (String) it.next();
+            if( ( !mTreatCacheAsRC && mCacheStore.containsLFN( lfn ) ) ||
+                mDirectoryReplicaStore.containsLFN( lfn ) ||
+                ( !mDAXLocationsAsRC && mDAXReplicaStore.containsLFN( lfn ) ) ||
+                mInheritedReplicaStore.containsLFN( lfn ) ){
+                continue;
+            }
+            result.add( lfn );
+        }
+        return result;
+    }
+
+    /**
+     * Loads the mappings for the search files from the input directories,
+     * the cache files and the inherited replica files specified at runtime.
+     * The sources are independent of each other and are looked up in
+     * parallel.
+     *
+     * @param options  the options passed to the planner at runtime.
+     */
+    private void loadFileSources( PlannerOptions options ){
+        Set<String> directories = options.getInputDirectories();
+        Set<String> files = new LinkedHashSet<String>();
+        files.addAll( options.getCacheFiles() );
+        files.addAll( options.getInheritedRCFiles() );
+        for( String file : new LinkedHashSet<String>( files ) ){
+            //PM-1257 checksums for the entries in a cache file
+            //can be in a .meta file alongside
+            if( new File( file + ".meta" ).exists() ){
+                files.add( file + ".meta" );
             }
         }
 
-        //load inherited replica store
-        if ( !options.getInheritedRCFiles().isEmpty() ) {
-            this.loadInheritedReplicaStore( options.getInheritedRCFiles() );
-            for( String source: options.getInheritedRCFiles() ){
-                mReplicaFileSources.add( new File(source));
+        int sources = directories.size() + files.size();
+        if( sources == 0 || mSearchFiles.isEmpty() ){
+            return;
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( sources,
+                                                                           Math.min( MAX_LOOKUP_THREADS,
+                                                                                     Runtime.getRuntime().availableProcessors() ) ) );
+        try{
+            Properties properties = mProps.getVDSProperties().matchingSubset( ReplicaCatalog.c_prefix,
+                                                                              false );
+            Map<String,Future<Map<String,Collection<ReplicaCatalogEntry>>>> directoryLookups = new HashMap();
+            for( String directory : directories ){
+                Properties p = (Properties) properties.clone();
+                p.setProperty( ReplicaCatalogBridge.DIRECTORY_REPLICA_CATALOG_KEY, directory );
+                directoryLookups.put( directory,
+                                      this.submitLookup( executor, DIRECTORY_REPLICA_CATALOG_IMPLEMENTER, p ) );
+            }
+
+            Map<String,Future<Map<String,Collection<ReplicaCatalogEntry>>>> fileLookups = new HashMap();
+            for( String file : files ){
+                //all cache files are loaded in readonly mode
+                Properties p = (Properties) properties.clone();
+                p.setProperty( ReplicaCatalogBridge.CACHE_READ_ONLY_KEY, "true" );
+                p.setProperty( ReplicaCatalogBridge.CACHE_REPLICA_CATALOG_KEY, file );
+                fileLookups.put( file,
+                                 this.submitLookup( executor, CACHE_REPLICA_CATALOG_IMPLEMENTER, p ) );
+            }
+
+            //incorporate all mappings from input directory if specified
+            if( !directories.isEmpty() ){
+                mDirectoryReplicaStore = getReplicaStoreFromDirectories( directories, directoryLookups );
+            }
+
+            //incorporate the caching if any
+            if ( !options.getCacheFiles().isEmpty() ) {
+                loadCacheFiles( options.getCacheFiles(), fileLookups );
+            }
+
+            //load inherited replica store
+            if ( !options.getInheritedRCFiles().isEmpty() ) {
+                this.loadInheritedReplicaStore( options.getInheritedRCFiles(), fileLookups );
             }
         }
+        finally{
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits a lookup of the search files in a file or directory based
+     * replica source. The lookup does not log, as the logger is not
+     * thread safe. The lookup runs in the scope of the calling thread.
+     *
+     * @param executor     the executor to submit the lookup to
+     * @param implementor  the replica catalog implementation for the source
+     * @param properties   the connection properties for the source
+     *
+     * @return the pending mappings for the search files
+     */
+    private Future<Map<String,Collection<ReplicaCatalogEntry>>> submitLookup( ExecutorService executor,
+                                                                             final String implementor,
+                                                                             final Properties properties ){
+        final Set searchFiles = mSearchFiles;
+        return executor.submit( ThreadScope.propagate( new Callable<Map<String,Collection<ReplicaCatalogEntry>>>(){
+            public Map<String,Collection<ReplicaCatalogEntry>> call() throws Exception {
+                ReplicaCatalog catalog = ReplicaFactory.loadInstance( implementor, properties );
+                try{
+                    return catalog.lookup( searchFiles );
+                }
+                finally{
+                    catalog.close();
+                }
+            }
+        }));
     }
 
 
@@ -442,7 +631,7 @@ public class ReplicaCatalogBridge
         
         //check in the main replica catalog
         if ( ( this.mDAXReplicaStore.isEmpty() && mDirectoryReplicaStore.isEmpty()) &&
-                ( mRCDown || mReplicaCatalog == null )) {
+                mRCDown ) {
             mLogger.log("Replica Catalog is either down or connection to it was never opened ",
                         LogManager.WARNING_MESSAGE_LEVEL);
             return lfnsFound;
@@ -510,7 +699,9 @@ public class ReplicaCatalogBridge
             if( this.mDAXLocationsAsRC ){
                 //dax entry is non null
                 if( result == null ){
-                    result = daxEntry;
+                    //merge into a copy, as the entry in the store is not
+                    //to be modified
+                    result = (ReplicaLocation) daxEntry.clone();
                 }
                 else{
                     //merge with what we received from the cache
@@ -935,29 +1126,32 @@ public class ReplicaCatalogBridge
     /**
      * Ends up loading the inherited replica files.
      *
-     * @param files  set of paths to the inherited replica files.
+     * @param files    set of paths to the inherited replica files.
+     * @param lookups  the lookups submitted for the files, indexed by path
      */
-    private void loadInheritedReplicaStore( Set files ) {
+    private void loadInheritedReplicaStore( Set files, Map<String,Future<Map<String,Collection<ReplicaCatalogEntry>>>> lookups ) {
         mLogger.log("Loading Inhertied ReplicaFiles files: " + files,  LogManager.DEBUG_MESSAGE_LEVEL);
-        this.mInheritedReplicaStore = this.getReplicaStoreFromFiles( files );
+        this.mInheritedReplicaStore = this.getReplicaStoreFromFiles( files, lookups );
     }
     /**
      * Ends up loading the cache files so as to enable the lookup for the transient
      * files created by the parent jobs.
      *
      * @param cacheFiles  set of paths to the cache files.
+     * @param lookups     the lookups submitted for the files, indexed by path
      */
-    private void loadCacheFiles( Set cacheFiles ) {
+    private void loadCacheFiles( Set cacheFiles, Map<String,Future<Map<String,Collection<ReplicaCatalogEntry>>>> lookups ) {
         mLogger.log("Loading cache files: " + cacheFiles,  LogManager.DEBUG_MESSAGE_LEVEL);
-        mCacheStore = this.getReplicaStoreFromFiles(cacheFiles);
+        mCacheStore = this.getReplicaStoreFromFiles( cacheFiles, lookups );
     }
 
     /**
      * Ends up loading a Replica Store from replica catalog files
      *
-     * @param files  set of paths to the cache files.
+     * @param files    set of paths to the cache files.
+     * @param lookups  the lookups submitted for the files, indexed by path
      */
-    private ReplicaStore getReplicaStoreFromFiles( Set files ) {
+    private ReplicaStore getReplicaStoreFromFiles( Set files, Map<String,Future<Map<String,Collection<ReplicaCatalogEntry>>>> lookups ) {
         ReplicaStore store = new ReplicaStore();
         
         mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_LOAD_TRANSIENT_CACHE, 
@@ -969,13 +1163,13 @@ public class ReplicaCatalogBridge
             String  file = ( String ) it.next();
         
             //suck in all the entries into the cache replica store.
-            Map<String,Collection<ReplicaCatalogEntry>> cacheMap = lookupFromCacheFile(  file, mSearchFiles );
+            Map<String,Collection<ReplicaCatalogEntry>> cacheMap = lookupFromCacheFile(  file, lookups.get( file ) );
             
-            File metaCacheFile = new File( file + ".meta" );
-            if( metaCacheFile.exists() ){
+            String metaCacheFile = file + ".meta";
+            if( lookups.containsKey( metaCacheFile ) ){
                 //PM-1257 rerieve metatadata from cache.meta file that can include
                 //checksum data and merge in cache map
-                Map<String,Collection<ReplicaCatalogEntry>> metadataCacheMap = lookupFromCacheFile(  file + ".meta", mSearchFiles );
+                Map<String,Collection<ReplicaCatalogEntry>> metadataCacheMap = lookupFromCacheFile(  metaCacheFile, lookups.get( metaCacheFile ) );
                 for( Map.Entry<String,Collection<ReplicaCatalogEntry>> metadataEntry : metadataCacheMap.entrySet()){
                     String lfn = metadataEntry.getKey();
                     
@@ -1015,27 +1209,19 @@ public class ReplicaCatalogBridge
     /**
      * Retrieves locations of search files from a cache file
      * 
-     * @param file          the cache file
-     * @param searchFiles   lfn's to search for
+     * @param file    the cache file
+     * @param lookup  the lookup submitted for the cache file
      * @return 
      */
-    private Map<String,Collection<ReplicaCatalogEntry>> lookupFromCacheFile(String file, Set<String> searchFiles ){
-        Properties cacheProps = mProps.getVDSProperties().matchingSubset(
-                                                              ReplicaCatalog.c_prefix,
-                                                              false );
+    private Map<String,Collection<ReplicaCatalogEntry>> lookupFromCacheFile(String file, Future<Map<String,Collection<ReplicaCatalogEntry>>> lookup ){
         Map<String,Collection<ReplicaCatalogEntry>> found = new HashMap();
-        ReplicaCatalog simpleFile;
-        //all cache files are loaded in readonly mode
-        cacheProps.setProperty( ReplicaCatalogBridge.CACHE_READ_ONLY_KEY, "true" );
-        
-        
-        //set the appropriate property to designate path to file
-        cacheProps.setProperty( ReplicaCatalogBridge.CACHE_REPLICA_CATALOG_KEY, file );
 
         mLogger.log("Loading  file: " + file,  LogManager.DEBUG_MESSAGE_LEVEL);
+        //suck in all the entries into the cache replica store.
+        //returns an unmodifiable collection. so merging an issue..
+        Map<String,Collection<ReplicaCatalogEntry>> m = null;
         try{
-            simpleFile = ReplicaFactory.loadInstance( CACHE_REPLICA_CATALOG_IMPLEMENTER,
-                                                      cacheProps );
+            m = lookup.get();
         }
         catch( Exception e ){
             mLogger.log( "Unable to load cache file " + file,
@@ -1043,9 +1229,6 @@ public class ReplicaCatalogBridge
                          LogManager.ERROR_MESSAGE_LEVEL );
             return found;
         }
-        //suck in all the entries into the cache replica store.
-        //returns an unmodifiable collection. so merging an issue..
-        Map<String,Collection<ReplicaCatalogEntry>> m = simpleFile.lookup( searchFiles ) ;
         
         //only add entries for which we have a PFN
         for( String lfn: m.keySet() ){
@@ -1058,9 +1241,6 @@ public class ReplicaCatalogBridge
         //no wildcards as we only want to load mappings for files that
         //we require
         //mCacheStore.add( simpleFile.lookup( wildcardConstraint ) );
-
-        //close connection
-        simpleFile.close();
         return found;
         
     }
@@ -1069,41 +1249,25 @@ public class ReplicaCatalogBridge
      * Loads the mappings from the input directory 
      * 
      * @param directies set of directories to load from
+     * @param lookups   the lookups submitted for the directories, indexed by directory
      */
-    private ReplicaStore getReplicaStoreFromDirectories( Set<String> directories) {
+    private ReplicaStore getReplicaStoreFromDirectories( Set<String> directories, Map<String,Future<Map<String,Collection<ReplicaCatalogEntry>>>> lookups ) {
         ReplicaStore store = new ReplicaStore();
-        Properties properties = mProps.getVDSProperties().matchingSubset(
-                                                              ReplicaCatalog.c_prefix,
-                                                              false );
 
         for( String directory : directories ){
             mLogger.logEventStart( LoggingKeys.EVENT_PEGASUS_LOAD_DIRECTORY_CACHE, 
                                    LoggingKeys.DAX_ID,
                                    mDag.getAbstractWorkflowName() );
 
-            ReplicaCatalog catalog = null;
-
-            //set the appropriate property to designate path to file
-            properties.setProperty( ReplicaCatalogBridge.DIRECTORY_REPLICA_CATALOG_KEY, directory );
-
             mLogger.log("Loading from directory: " + directory,  LogManager.DEBUG_MESSAGE_LEVEL);
             try{
-                catalog = ReplicaFactory.loadInstance( DIRECTORY_REPLICA_CATALOG_IMPLEMENTER,
-                                                       properties );
-
-
-                store.add( catalog.lookup( mSearchFiles ) );
+                store.add( lookups.get( directory ).get() );
             }
             catch( Exception e ){
                 mLogger.log( "Unable to load from directory  " + directory,
                                  e,
                                  LogManager.ERROR_MESSAGE_LEVEL );
             }
-            finally{
-                if( catalog != null ){
-                    catalog.close();
-                }
-            }
             mLogger.logEventCompletion();
         }
         return store;
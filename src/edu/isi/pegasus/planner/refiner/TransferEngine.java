@@ -22,6 +22,7 @@ import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
 import edu.isi.pegasus.common.logging.LogManager;
 
 import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.FileIndex;
 import edu.isi.pegasus.planner.classes.FileTransfer;
 import edu.isi.pegasus.planner.classes.NameValue;
 import edu.isi.pegasus.planner.classes.PegasusFile;
@@ -39,6 +40,7 @@ import edu.isi.pegasus.planner.partitioner.graph.Graph;
 
 import edu.isi.pegasus.planner.selector.ReplicaSelector;
 import edu.isi.pegasus.planner.selector.replica.ReplicaSelectorFactory;
+import edu.isi.pegasus.planner.selector.replica.Throughput;
 
 import edu.isi.pegasus.planner.transfer.Refiner;
 import edu.isi.pegasus.planner.transfer.refiner.RefinerFactory;
@@ -62,6 +64,7 @@ import edu.isi.pegasus.planner.common.PegasusConfiguration;
 import edu.isi.pegasus.planner.mapper.SubmitMapperFactory;
 
 import edu.isi.pegasus.planner.namespace.Dagman;
+import edu.isi.pegasus.planner.namespace.Metadata;
 import edu.isi.pegasus.planner.mapper.OutputMapper;
 import edu.isi.pegasus.planner.mapper.OutputMapperFactory;
 import edu.isi.pegasus.planner.mapper.StagingMapper;
@@ -158,6 +161,12 @@ public class TransferEngine extends Engine {
      */
     private ReplicaSelector mReplicaSelector;
 
+    /**
+     * Boolean indicating whether the replica selector orders the replicas
+     * on the basis of the size of the file.
+     */
+    private boolean mSelectorUsesFileSize;
+
     /**
      * The handle to the transfer refiner that adds the transfer nodes into the
      * workflow.
@@ -235,6 +244,17 @@ public class TransferEngine extends Engine {
      * Whether to do integrity checking or not.
      */
     protected boolean mDoIntegrityChecking ;
+
+    /**
+     * The index of the lfns of the files in the workflow.
+     */
+    private FileIndex mFileIndex;
+
+    /**
+     * The indexed output files of the jobs traversed so far, indexed by the
+     * job ID.
+     */
+    private Map<String,FileIndex.Files> mIndexedOutputFiles;
     
     /**
      * Overloaded constructor.
@@ -250,7 +270,7 @@ public class TransferEngine extends Engine {
                            List<Job> deletedLeafJobs){
         super( bag );
 
-        mSubmitDirMapper =  SubmitMapperFactory.loadInstance( bag,  new File(mPOptions.getSubmitDirectory()));
+        mSubmitDirMapper =  SubmitMapperFactory.loadInstance( bag, reducedDag, new File(mPOptions.getSubmitDirectory()));
         bag.add(PegasusBag.PEGASUS_SUBMIT_MAPPER, mSubmitDirMapper );
         
         mStagingMapper = StagingMapperFactory.loadInstance(bag);
@@ -272,6 +292,7 @@ public class TransferEngine extends Engine {
             mTXRefiner = RefinerFactory.loadInstance( reducedDag,
                                                       bag );
             mReplicaSelector = ReplicaSelectorFactory.loadInstance(mProps);
+            mSelectorUsesFileSize = ( mReplicaSelector instanceof Throughput );
         }
         catch(Exception e){
             //wrap all the exceptions into a factory exception
@@ -454,6 +475,9 @@ public class TransferEngine extends Engine {
         //PM-747 no need for conversion as ADag now implements Graph interface
         Graph workflow =  mDag;
 
+        mFileIndex = new FileIndex();
+        mIndexedOutputFiles = new HashMap<String,FileIndex.Files>();
+
         //go through each job in turn
 
         boolean stageOut = (( outputSite != null ) && ( outputSite.trim().length() > 0 ));
@@ -493,7 +517,8 @@ public class TransferEngine extends Engine {
                 }
 
                 //PM-590 Stricter checks
-                String stagingSiteURLPrefix = stagingSite.selectHeadNodeScratchSharedFileServerURLPrefix( FileServer.OPERATION.put );
+                FileServer stagingSiteServer = mSiteStore.selectHeadNodeScratchSharedFileServer( stagingSite.getSiteHandle(), FileServer.OPERATION.put );
+                String stagingSiteURLPrefix = ( stagingSiteServer == null )? null : stagingSiteServer.getURLPrefix();
                 if( stagingSiteURLPrefix == null ){
                     this.complainForHeadNodeURLPrefix( REFINER_NAME, stagingSite.getSiteHandle(), FileServer.OPERATION.put, currentJob );
                 }
@@ -670,17 +695,20 @@ public class TransferEngine extends Engine {
      */
     private void processParents(Job job, Collection<GraphNode> parents) {
 
-        Set nodeIpFiles = job.getInputFiles();
+        FileIndex.Files nodeIpFiles = mFileIndex.index( job.getInputFiles() );
         Vector vRCSearchFiles = new Vector(); //vector of PegasusFile
 
 
-        //getAll the output Files of the parents
-        Set<PegasusFile> parentsOutFiles = getOutputFiles( parents );
+        //mark the input files generated by the parents
+        boolean[] generated = new boolean[ nodeIpFiles.size() ];
+        for( GraphNode parent : parents ){
+            nodeIpFiles.markCommonFiles( this.getIndexedOutputFiles( (Job)parent.getContent() ), generated );
+        }
 
 
         //interpool transfer of the nodes parents
         //output files
-        Collection[] interSiteFileTX = this.getInterpoolFileTX(job, parents);
+        Collection[] interSiteFileTX = this.getInterpoolFileTX(job, nodeIpFiles, parents);
         Collection localInterSiteTX = interSiteFileTX[0];
         Collection remoteInterSiteTX = interSiteFileTX[1];
 
@@ -695,9 +723,9 @@ public class TransferEngine extends Engine {
         //check if node ip files are in the parents out files
         //if files are not, then these are to be got
         //from the RC based on the transiency characteristic
-        for( Iterator it = nodeIpFiles.iterator(); it.hasNext(); ){
-            PegasusFile pf = (PegasusFile) it.next();
-            if( !parentsOutFiles.contains( pf ) ){
+        for( int i = 0; i < nodeIpFiles.size(); i++ ){
+            PegasusFile pf = nodeIpFiles.getFile( i );
+            if( !generated[i] ){
                 //PM-976 all input files that are not generated
                 //by parent jobs should be looked up in the replica catalog
                 //we don't consider the value of the transfer flag
@@ -993,12 +1021,13 @@ public class TransferEngine extends Engine {
      *
      * @param job     the job with reference to which interpool file transfers
      *                need to be determined.
+     * @param inputs    the indexed input files of the job.
      * @param parents   Collection of <code>GraphNode</code> ojbects corresponding to the
      *                  parent jobs of the job.
      *
      * @return    array of Collection of  <code>FileTransfer</code> objects
      */
-    private Collection<FileTransfer>[] getInterpoolFileTX(Job job, Collection<GraphNode>parents ) {
+    private Collection<FileTransfer>[] getInterpoolFileTX(Job job, FileIndex.Files inputs, Collection<GraphNode>parents ) {
         String destSiteHandle = job.getStagingSiteHandle();
         //contains the remote_initialdir if specified for the job
         String destRemoteDir = job.vdsNS.getStringValue(
@@ -1039,12 +1068,10 @@ public class TransferEngine extends Engine {
                 "file://" + mSiteStore.getInternalWorkDirectory( destSiteHandle, destRemoteDir );
             */
 
-            for (Iterator fileIt = pJob.getOutputFiles().iterator(); fileIt.hasNext(); ){
-                PegasusFile pf = (PegasusFile) fileIt.next();
+            //the parent's output files that are inputs of the job
+            for ( PegasusFile pf : this.getIndexedOutputFiles( pJob ).getCommonFiles( inputs ) ){
                 String outFile = pf.getLFN();
 
-               if( job.getInputFiles().contains( pf ) ){
-
                    //PM-833 figure out the addOn component just once per lfn
                    String lfn = pf.getLFN();
                    File addOn = mStagingMapper.mapToRelativeDirectory(job, destSite, lfn);
@@ -1120,7 +1147,6 @@ public class TransferEngine extends Engine {
                             remoteTransfers.add(ft);
                         }
                     }
-                }
                 
             }
 
@@ -1411,6 +1437,19 @@ public class TransferEngine extends Engine {
             //to the associated PegasusFile that is associated with the compute jobs
             pf.addMetadata( rl.getAllMetadata() );
             
+            //sizes for raw input files can also be specified as
+            //attributes in the replica catalog
+            if( ft.getSize() < 0 && pf.getMetadata( Metadata.SIZE_KEY ) != null ){
+                try{
+                    ft.setSize( pf.getMetadata( Metadata.SIZE_KEY ) );
+                }
+                catch( NumberFormatException nfe ){
+                    mLogger.log( "Ignoring invalid size " + pf.getMetadata( Metadata.SIZE_KEY ) + 
+                                 " in the replica catalog for lfn " + lfn,
+                                 LogManager.WARNING_MESSAGE_LEVEL );
+                }
+            }
+            
             //PM-1250 if no checksum exists then set pegasus-transfer
             //to generate checksum. Later on a dial might be required here
             if( this.mDoIntegrityChecking && !pf.hasRCCheckSum() ){
@@ -1421,8 +1460,17 @@ public class TransferEngine extends Engine {
             //PM-1190 associate metadata with the FileTransfer
             ft.setMetadata( pf.getAllMetadata());
             
+            //the throughput replica selector uses the size of the file
+            //to order the replicas. pass a copy, as the replica
+            //location may be cached in the replica catalog bridge
+            if( mSelectorUsesFileSize &&
+                ft.getSize() >= 0 && rl.getMetadata( Metadata.SIZE_KEY ) == null ){
+                rl = (ReplicaLocation) rl.clone();
+                rl.addMetadata( Metadata.SIZE_KEY, Long.toString( (long)ft.getSize() ) );
+            }
+
             //select from the various replicas
-            candidateLocations =  mReplicaSelector.selectAndOrderReplicas( rl, 
+            candidateLocations =  mReplicaSelector.selectAndOrderReplicas( rl,
                                                                     executionSiteHandle,
                                                                     runTransferOnLocalSite );
             if( candidateLocations.getPFNCount() == 0 ){
@@ -1779,23 +1827,19 @@ public class TransferEngine extends Engine {
     }
 
     /**
-     * It gets the output files for all the nodes which are specified in
-     * the  nodes passed.
+     * Returns the indexed output files for a job. The output files of a job
+     * are indexed once, and reused for all the children of the job.
      *
-     * @param nodes   List<GraphNode> containing the jobs
-     * 
+     * @param job   the job
      *
-     * @return   Set of PegasusFile objects
+     * @return   the indexed output files
      */
-    private Set<PegasusFile> getOutputFiles( Collection<GraphNode> nodes ) {
-
-        Set<PegasusFile> files = new HashSet();
-
-        for( GraphNode n : nodes ){
-            Job job = (Job)n.getContent();
-            files.addAll( job.getOutputFiles() );
+    private FileIndex.Files getIndexedOutputFiles( Job job ) {
+        FileIndex.Files files = mIndexedOutputFiles.get( job.getID() );
+        if( files == null ){
+            files = mFileIndex.index( job.getOutputFiles() );
+            mIndexedOutputFiles.put( job.getID(), files );
         }
-
         return files;
     }
 
@@ -1945,14 +1989,13 @@ public class TransferEngine extends Engine {
 
         StringBuffer url = new StringBuffer();
 
-        FileServer getServer = entry.selectHeadNodeScratchSharedFileServer( operation );
+        FileServer getServer = mSiteStore.selectHeadNodeScratchSharedFileServer( entry.getSiteHandle(), operation );
 
         if( getServer == null ){
             this.complainForScratchFileServer(job, operation, entry.getSiteHandle());
         }
 
-        url.append( getServer.getURLPrefix() ).
-            append( mSiteStore.getExternalWorkDirectory(getServer, entry.getSiteHandle() ));
+        url.append( mSiteStore.getExternalWorkDirectoryURL( getServer, entry.getSiteHandle() ));
 
         if( lfn != null ){
             url.append( File.separatorChar ).append( lfn );
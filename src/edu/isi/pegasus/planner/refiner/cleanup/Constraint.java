@@ -63,47 +63,53 @@ public class Constraint extends AbstractCleanupStrategy {
     /**
      * Maximum available space per site.
      */
-    private static long maxSpacePerSite;
+    private long maxSpacePerSite;
 
     /**
      * Map of max available space per site.
      */
-    private static Map<String, Long> maxAvailableSpacePerSite;
+    private Map<String, Long> maxAvailableSpacePerSite;
 
     /**
      * Maps of how much space is still available per site.
      */
-    private static Map<String, Long> availableSpacePerSite;
+    private Map<String, Long> availableSpacePerSite;
 
     /**
      *
      */
-    private static boolean deferStageins;
+    private boolean deferStageins;
 
     /**
      * Dependency list. Maps from a node to the set of nodes dependent on it.
      */
-    private static Map<GraphNode, Set<GraphNode>> dependencies;
+    private Map<GraphNode, Set<GraphNode>> dependencies;
 
     /**
      * Set of current heads (jobs that can be run immediately.
      */
-    private static Set<GraphNode> heads;
+    private Set<GraphNode> heads;
 
     /**
      * Set of jobs that have finished execution.
      */
-    private static Set<GraphNode> executed;
+    private Set<GraphNode> executed;
 
     /**
      * List of files that are pending cleanup.
      */
-    private static NavigableMap<Long, List<FloatingFile>> floatingFiles;
+    private NavigableMap<Long, List<FloatingFile>> floatingFiles;
 
     /**
      * Set of external stage-ins for which space is reserved in advance.
      */
-    private static HashSet<Job> reservations;
+    private HashSet<Job> reservations;
+
+    /**
+     * Maps from file name to file size, as read from the CSV file. Null if
+     * no CSV file is specified.
+     */
+    private Map<String, Long> sizes;
 
     /**
      * Adds cleanup jobs to the workflow.
@@ -133,9 +139,10 @@ public class Constraint extends AbstractCleanupStrategy {
 
         // read file sizes from a CSV file
         String CSVName = System.getProperty("pegasus.file.cleanup.constraint.csv");
+        sizes = null;
         if (CSVName != null) {
             try {
-                Utilities.loadHashMap(CSVName);
+                sizes = Utilities.loadHashMap(CSVName);
             } catch (IOException e) {
                 mLogger.log("Falling back to the old mechanism due to IOException while reading CSV: " + CSVName, LogManager.WARNING_MESSAGE_LEVEL);
             }
@@ -303,7 +310,7 @@ public class Constraint extends AbstractCleanupStrategy {
                         //figure out sizes and reserve that much space
                         Set<PegasusFile> outputs = j.getOutputFiles();
                         for (PegasusFile currentOutput : outputs) {
-                            long currentOutputFileSize = Utilities.getFileSize(currentOutput);
+                            long currentOutputFileSize = Utilities.getFileSize(currentOutput, sizes);
                             mLogger.log("Found stage in of file " + currentOutput.getLFN() + " of size "
                                     + currentOutputFileSize, LogManager.DEBUG_MESSAGE_LEVEL);
                             availableSpacePerSite.put(site, availableSpacePerSite.get(site) - currentOutputFileSize);
@@ -373,7 +380,7 @@ public class Constraint extends AbstractCleanupStrategy {
                 } else {
                     mLogger.log("We can free file '" + outputFile.getLFN()
                             + "' on executing '" + currentJob.getID(), LogManager.DEBUG_MESSAGE_LEVEL);
-                    final long fileSize = Utilities.getFileSize(outputFile);
+                    final long fileSize = Utilities.getFileSize(outputFile, sizes);
                     if (!floatsForChoice.containsKey(fileSize)) {
                         List<FloatingFile> floats = new ArrayList<FloatingFile>(1);
                         floats.add(new FloatingFile(new HashSet<GraphNode>(toExecute.getParents()), outputFile));
@@ -395,7 +402,7 @@ public class Constraint extends AbstractCleanupStrategy {
                 if (transferJob.getNonThirdPartySite() != null && !transferJob.getNonThirdPartySite().equals(site)) {
                     intermediateRequirement = 0;
                 } else {
-                    intermediateRequirement = Utilities.getIntermediateRequirement(currentJob);
+                    intermediateRequirement = Utilities.getIntermediateRequirement(currentJob, sizes);
                 }
             }
         } else {
@@ -447,7 +454,7 @@ public class Constraint extends AbstractCleanupStrategy {
                             } else {
                                 mLogger.log("We can free file '" + candidateFile.getLFN()
                                         + "' on executing '" + currentJob.getID(), LogManager.DEBUG_MESSAGE_LEVEL);
-                                final long fileSize = Utilities.getFileSize(candidateFile);
+                                final long fileSize = Utilities.getFileSize(candidateFile, sizes);
                                 if (!floatsForChoice.containsKey(fileSize)) {
                                     List<FloatingFile> files = new ArrayList<FloatingFile>(1);
                                     files.add(new FloatingFile(dependenciesForFile, candidateFile));
@@ -478,7 +485,7 @@ public class Constraint extends AbstractCleanupStrategy {
                                 + "' since no children need", LogManager.DEBUG_MESSAGE_LEVEL);
                         Set<GraphNode> dependenciesForFile = new HashSet<GraphNode>(1);
                         dependenciesForFile.add(toExecute);
-                        Long fileSize = Utilities.getFileSize(outputFile);
+                        Long fileSize = Utilities.getFileSize(outputFile, sizes);
                         if (!floatsForChoice.containsKey(fileSize)) {
                             List<FloatingFile> files = new ArrayList<FloatingFile>(1);
                             files.add(new FloatingFile(dependenciesForFile, outputFile));
@@ -489,7 +496,7 @@ public class Constraint extends AbstractCleanupStrategy {
                     }
                 }
             }
-            intermediateRequirement = Utilities.getIntermediateRequirement(currentJob);
+            intermediateRequirement = Utilities.getIntermediateRequirement(currentJob, sizes);
         }
         //The list of jobs run on executing this file is a singleton containing only this job
         LinkedList<GraphNode> list = new LinkedList<GraphNode>();
@@ -615,7 +622,7 @@ public class Constraint extends AbstractCleanupStrategy {
             node.removeChild(node);
             node.removeParent(node);
 
-            mLogger.log(Utilities.cleanUpJobToString(parents, heads, listOfFiles), LogManager.DEBUG_MESSAGE_LEVEL);
+            mLogger.log(Utilities.cleanUpJobToString(parents, heads, listOfFiles, sizes), LogManager.DEBUG_MESSAGE_LEVEL);
             workflow.addNode(node);
         }
 
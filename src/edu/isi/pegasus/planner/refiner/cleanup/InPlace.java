@@ -17,12 +17,16 @@ package edu.isi.pegasus.planner.refiner.cleanup;
 
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.classes.DAXJob;
+import edu.isi.pegasus.planner.classes.FileIndex;
 import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusFile;
 import edu.isi.pegasus.planner.namespace.Condor;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNodeContent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -48,6 +52,16 @@ public class InPlace extends AbstractCleanupStrategy {
      * Number of jobs on a level of the workflow per cleanup job
      */
     public static final float NUM_JOBS_PER_LEVEL_PER_CLEANUP_JOB = 5;
+    
+    /**
+     * The index of the lfns of the files in the workflow.
+     */
+    private FileIndex mFileIndex;
+    
+    /**
+     * The IDs of the files that should not be cleaned up.
+     */
+    private BitSet mDoNotCleanIDs;
    
     /**
      * Adds cleanup jobs to the workflow.
@@ -61,6 +75,14 @@ public class InPlace extends AbstractCleanupStrategy {
         // invoke addCleanupJobs from super class.
         workflow = super.addCleanupJobs(workflow);
 
+        //index all the files in the workflow, so that the files can
+        //be tracked by their IDs
+        mFileIndex = new FileIndex(workflow);
+        mDoNotCleanIDs = new BitSet(mFileIndex.size());
+        for (Object obj : this.mDoNotClean) {
+            mDoNotCleanIDs.set(mFileIndex.getID(((PegasusFile) obj).getLFN()));
+        }
+
         //for each site do the process of adding cleanup jobs
         for (Iterator it = mResMap.entrySet().iterator(); it.hasNext();) {
             Map.Entry entry = (Map.Entry) it.next();
@@ -84,7 +106,8 @@ public class InPlace extends AbstractCleanupStrategy {
     private void addCleanUpJobs(String site, Set leaves, Graph workflow) {
 
         mLogger.log(site + " " + leaves.size(), LogManager.DEBUG_MESSAGE_LEVEL);
-        HashMap cleanedBy = new HashMap();
+        //the cleanup node for each file, indexed by the ID of the file
+        GraphNode[] cleanedBy = new GraphNode[mFileIndex.size()];
 
         //the below in case we get rid of the primitive java 1.4
         //PriorityQueue<GraphNode> pQ=new   PriorityQueue<GraphNode>(resMap.get(site).size(),GraphNode_ORDER);
@@ -125,41 +148,32 @@ public class InPlace extends AbstractCleanupStrategy {
                     continue;
                 }
 
-//              Leads to corruption of input files for the job.
-//                Set fileSet = curGN_SI.getInputFiles();
-                Set<PegasusFile> fileSet = new HashSet(curGN_SI.getInputFiles());
-
                 //PM-698 traverse through the input files and unset those
                 //that have cleanup flag set to false
-                for (Iterator<PegasusFile> it = fileSet.iterator(); it.hasNext();) {
-                    PegasusFile pf = it.next();
-                    if (!pf.canBeCleanedup()) {
+                List<PegasusFile> candidates = new ArrayList<PegasusFile>();
+                for (PegasusFile pf : curGN_SI.getInputFiles()) {
+                    if (pf.canBeCleanedup()) {
+                        candidates.add(pf);
+                    } else {
                         //PM-969 we only consider the cleanup attribute and not the transfer flag itself
-                        it.remove();
                         mLogger.log("File " + pf.getLFN() + " will not be cleaned up for job " + curGN_SI.getID(),
                                 LogManager.DEBUG_MESSAGE_LEVEL);
                     }
                 }
 
-                for (Object obj : curGN_SI.getOutputFiles()) {
-                    PegasusFile pf = (PegasusFile) obj;
+                for (PegasusFile pf : curGN_SI.getOutputFiles()) {
                     if (pf.canBeCleanedup()) {
                         //PM-739 only add if the cleanup flag is set to true
-                        fileSet.add(pf);
+                        candidates.add(pf);
                     } else {
                         mLogger.log("File " + pf.getLFN() + " will not be cleaned up for job " + curGN_SI.getID(),
                                 LogManager.DEBUG_MESSAGE_LEVEL);
                     }
                 }
 
-                //remove the files in fileSet that are in this.mDoNotClean
-                Set fileSet2 = new HashSet(fileSet);
-                for (Iterator itfs2 = fileSet2.iterator(); itfs2.hasNext();) {
-                    Object _dum_pf = itfs2.next();
-                    if (this.mDoNotClean.contains(_dum_pf)) {
-                        fileSet.remove(_dum_pf);
-                    }
-                }
+                //an input file that is also an output file is only
+                //considered once
+                FileIndex.Files fileSet = mFileIndex.index(candidates);
 
                 // create new GraphNode with MLogicalID=mLogicalName , mParents
                 // mContent ID ,Name , jobtype
@@ -169,12 +183,18 @@ public class InPlace extends AbstractCleanupStrategy {
                         curGN_SI.getTXName());
 
                 List<PegasusFile> cleanupFiles = new LinkedList();
-                for (Iterator it = fileSet.iterator(); it.hasNext();) {
-                    PegasusFile file = (PegasusFile) it.next();
+                int[] cleanupIDs = new int[fileSet.size()];
+                for (int i = 0; i < fileSet.size(); i++) {
+                    int id = fileSet.getID(i);
+
+                    //skip the files in this.mDoNotClean
+                    if (mDoNotCleanIDs.get(id)) {
+                        continue;
+                    }
 
                     //check if its already set up to be cleaned up
-                    if (cleanedBy.containsKey(file.getLFN())) {
-                        GraphNode child = (GraphNode) cleanedBy.get(file.getLFN());
+                    if (cleanedBy[id] != null) {
+                        GraphNode child = cleanedBy[id];
                         if (!child.getParents().contains(curGN)) {
                             child.addParent(curGN);
                         }
@@ -183,7 +203,8 @@ public class InPlace extends AbstractCleanupStrategy {
                         }
                     } else {
 
-                        cleanupFiles.add(file);
+                        cleanupIDs[cleanupFiles.size()] = id;
+                        cleanupFiles.add(fileSet.getFile(i));
 
                     }
                 }// all the files
@@ -196,7 +217,8 @@ public class InPlace extends AbstractCleanupStrategy {
 
                     //PM-663, we need to store the compute job
                     //with the cleanupNode but do with a copy
-                    CleanupJobContent cleanupContent = new CleanupJobContent(curGN, cleanupFiles);
+                    CleanupJobContent cleanupContent = new CleanupJobContent(curGN, cleanupFiles,
+                            Arrays.copyOf(cleanupIDs, cleanupFiles.size()));
                     nuGN.setContent(cleanupContent);
                     cleanupNodesPerLevel.add(nuGN);
                 }
@@ -256,12 +278,21 @@ public class InPlace extends AbstractCleanupStrategy {
 
         //output whats file is cleaned by what ?
         mLogger.log("", LogManager.DEBUG_MESSAGE_LEVEL);
-        mLogger.log("For site: " + site + " number of files cleaned up - " + cleanedBy.keySet().size(),
+        int cleaned = 0;
+        for (GraphNode cl_GN : cleanedBy) {
+            if (cl_GN != null) {
+                cleaned++;
+            }
+        }
+        mLogger.log("For site: " + site + " number of files cleaned up - " + cleaned,
                 LogManager.INFO_MESSAGE_LEVEL);
         mLogger.log("CLEANUP LIST", LogManager.DEBUG_MESSAGE_LEVEL);
-        for (Iterator it = cleanedBy.keySet().iterator(); it.hasNext();) {
-            String lfn = (String) it.next();
-            GraphNode cl_GN = (GraphNode) cleanedBy.get(lfn);
+        for (int id = 0; id < cleanedBy.length; id++) {
+            GraphNode cl_GN = cleanedBy[id];
+            if (cl_GN == null) {
+                continue;
+            }
+            String lfn = mFileIndex.getLFN(id);
             Job cl_si = (Job) cl_GN.getContent();
             //Arun please use a StringBuffer first
             //Karan March 13, 2007
@@ -461,14 +492,14 @@ public class InPlace extends AbstractCleanupStrategy {
      * job in the workflow that needs cleanup. the cleanup jobs have content as
      * a CleanupJobContent
      *
-     * @param cleanedBy a map that tracks which file was deleted by which
-     * cleanup job
+     * @param cleanedBy tracks which file was deleted by which cleanup job,
+     * indexed by the ID of the file
      * @param site the site associated with the cleanup jobs
      * @param level the level of the workflow
      *
      * @return a set of clustered cleanup nodes
      */
-    private List<GraphNode> clusterCleanupGraphNodes(List<GraphNode> cleanupNodes, HashMap cleanedBy, String site, int level) {
+    private List<GraphNode> clusterCleanupGraphNodes(List<GraphNode> cleanupNodes, GraphNode[] cleanedBy, String site, int level) {
         List<GraphNode> clusteredCleanupJobs = new LinkedList();
 
         //sanity check for empty list
@@ -548,8 +579,8 @@ public class InPlace extends AbstractCleanupStrategy {
      * nodes into one node
      *
      * @param nodes list of cleanup nodes that are to be aggregated
-     * @param cleanedBy a map that tracks which file was deleted by which
-     * cleanup job
+     * @param cleanedBy tracks which file was deleted by which cleanup job,
+     * indexed by the ID of the file
      * @param site the site associated with the cleanup jobs
      * @param level the level of the workflow
      * @param index the index of the cleanup job for that level
@@ -558,7 +589,7 @@ public class InPlace extends AbstractCleanupStrategy {
      * the workflow else, null if the clustered cleanup node has no files to
      * delete
      */
-    private GraphNode createClusteredCleanupGraphNode(List<GraphNode> nodes, HashMap cleanedBy, String site, int level, int index) {
+    private GraphNode createClusteredCleanupGraphNode(List<GraphNode> nodes, GraphNode[] cleanedBy, String site, int level, int index) {
         GraphNode clusteredCleanupNode = new GraphNode(generateClusteredJobID(site, level, index));
 
         //sanity check
@@ -574,20 +605,27 @@ public class InPlace extends AbstractCleanupStrategy {
 
         //the list of files to be deleted by the clustered cleanup job
         List<PegasusFile> allFilesToDelete = new LinkedList();
+        List<int[]> allIDsToDelete = new LinkedList();
+        int count = 0;
 
         //for each cleanup Node add the files and modify dependencies accordingly
         GraphNode primaryNode = null; //the primary compute node associated with the cleanup job
         for (GraphNode cleanupNode : nodes) {
             CleanupJobContent content = (CleanupJobContent) cleanupNode.getContent();
             List<PegasusFile> filesToDelete = content.getListOfFilesToDelete();
+            int[] ids = content.getFileIDs();
+            int[] idsToDelete = new int[ids.length];
+            int numToDelete = 0;
             primaryNode = content.getNode();
 
+            int i = 0;
             for (PegasusFile file : filesToDelete) {
-                if (cleanedBy.containsKey(file.getLFN())) {
+                int id = ids[i++];
+                if (cleanedBy[id] != null) {
                     //somewhere during the clustering of the cleanup nodes at this
                     //level, the file was designated to cleaned up by a
                     //clustered cleanup node
-                    GraphNode existingCleanupNode = (GraphNode) cleanedBy.get(file.getLFN());
+                    GraphNode existingCleanupNode = cleanedBy[id];
                     mLogger.log("\t\tFile " + file.getLFN() + " already cleaned by clustered cleanup node " + existingCleanupNode.getID(),
                             LogManager.DEBUG_MESSAGE_LEVEL);
 
@@ -598,10 +636,13 @@ public class InPlace extends AbstractCleanupStrategy {
                         primaryNode.addChild(existingCleanupNode);
                     }
                 } else {
-                    cleanedBy.put(file.getLFN(), clusteredCleanupNode);
+                    cleanedBy[id] = clusteredCleanupNode;
                     allFilesToDelete.add(file);
+                    idsToDelete[numToDelete++] = id;
                 }
             }
+            allIDsToDelete.add(Arrays.copyOf(idsToDelete, numToDelete));
+            count += numToDelete;
 
             //allFilesToDelete.addAll( filesToDelete );
             if (!allFilesToDelete.isEmpty()) {
@@ -624,7 +665,13 @@ public class InPlace extends AbstractCleanupStrategy {
             return null;
         }
 
-        clusteredCleanupNode.setContent(new CleanupJobContent(primaryNode, allFilesToDelete));
+        int[] allIDs = new int[count];
+        count = 0;
+        for (int[] ids : allIDsToDelete) {
+            System.arraycopy(ids, 0, allIDs, count, ids.length);
+            count += ids.length;
+        }
+        clusteredCleanupNode.setContent(new CleanupJobContent(primaryNode, allFilesToDelete, allIDs));
 
         return clusteredCleanupNode;
     }
@@ -678,14 +725,21 @@ class CleanupJobContent implements GraphNodeContent {
      */
     private List<PegasusFile> mToBeDeletedFiles;
 
+    /**
+     * The IDs of the files to be deleted, in the same order as the files.
+     */
+    private int[] mFileIDs;
+
     /**
      *
      * @param cleanupNode
      * @param files
+     * @param ids the IDs of the files in the file index
      */
-    public CleanupJobContent(GraphNode node, List<PegasusFile> files) {
+    public CleanupJobContent(GraphNode node, List<PegasusFile> files, int[] ids) {
         mNode = node;
         mToBeDeletedFiles = files;
+        mFileIDs = ids;
     }
 
     /**
@@ -697,6 +751,16 @@ class CleanupJobContent implements GraphNodeContent {
         return this.mToBeDeletedFiles;
     }
 
+    /**
+     * Returns the IDs of the files to be deleted, in the same order as the
+     * list of files.
+     *
+     * @return the IDs
+     */
+    public int[] getFileIDs() {
+        return this.mFileIDs;
+    }
+
     /**
      * Returns the associated cleanupNode for which the files are deleted.
      *
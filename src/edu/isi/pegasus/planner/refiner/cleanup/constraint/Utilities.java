@@ -38,10 +38,16 @@ public class Utilities {
 
     // Default file size of 10 MB
     private static final long DEFAULT_FILE_SIZE = 10485760;
-    //Maps from file name to file size
-    static Map<String, Long> sizes = null;
 
-    public static long getFileSize(PegasusFile file) {
+    /**
+     * Returns the size of a file, looked up in the sizes read from the CSV
+     * file, else from the file itself.
+     *
+     * @param file  the file
+     * @param sizes maps from file name to file size. can be null.
+     * @return the size in bytes
+     */
+    public static long getFileSize(PegasusFile file, Map<String, Long> sizes) {
         if (sizes == null || sizes.get(file.getLFN()) == null) {
             long fileSize = (long) file.getSize();
             return fileSize == -1 ? DEFAULT_FILE_SIZE : fileSize;
@@ -49,7 +55,7 @@ public class Utilities {
         return sizes.get(file.getLFN());
     }
 
-    public static String cleanUpJobToString(Iterable<GraphNode> parents, Iterable<GraphNode> heads, Iterable<PegasusFile> listOfFiles) {
+    public static String cleanUpJobToString(Iterable<GraphNode> parents, Iterable<GraphNode> heads, Iterable<PegasusFile> listOfFiles, Map<String, Long> sizes) {
         StringBuilder sb = new StringBuilder("CleanupJob{parents = {");
         for (GraphNode parent : parents) {
             sb.append(parent.getID());
@@ -65,7 +71,7 @@ public class Utilities {
             sb
                     .append(file.getLFN())
                     .append(':')
-                    .append(getFileSize(file))
+                    .append(getFileSize(file, sizes))
                     .append(',');
         }
         sb.replace(sb.length() - 1, sb.length(), "}}");
@@ -76,14 +82,15 @@ public class Utilities {
      * Read file sizes from CSV file.
      *
      * @param csvName CSV file name.
+     * @return map from file name to file size.
      * @throws IOException
      */
-    public static void loadHashMap(String csvName) throws IOException {
+    public static Map<String, Long> loadHashMap(String csvName) throws IOException {
         final CellProcessor[] processors = new CellProcessor[]{null, null, null, null, new ParseLong()};
         CsvBeanReader beanReader = new CsvBeanReader(new FileReader(csvName), CsvPreference.STANDARD_PREFERENCE);
         final String[] header = beanReader.getHeader(true);
         FileDataBean fileDataBean;
-        sizes = new HashMap<String, Long>();
+        Map<String, Long> sizes = new HashMap<String, Long>();
         while ((fileDataBean = beanReader.read(FileDataBean.class, header, processors)) != null) {
             Long currentSize = sizes.get(fileDataBean.filename);
             if (currentSize != null) {
@@ -91,6 +98,7 @@ public class Utilities {
             }
             sizes.put(fileDataBean.filename, fileDataBean.length);
         }
+        return sizes;
     }
 
     /**
@@ -169,19 +177,19 @@ public class Utilities {
         return dependencies;
     }
 
-    public static long getIntermediateRequirement(Job currentJob) {
+    public static long getIntermediateRequirement(Job currentJob, Map<String, Long> sizes) {
         long spaceUsed = 0;
         switch (currentJob.getJobType()) {
             case Job.CLEANUP_JOB:
                 for (PegasusFile currentFile : (Set<PegasusFile>) currentJob.getInputFiles()) {
-                    spaceUsed -= getFileSize(currentFile);
+                    spaceUsed -= getFileSize(currentFile, sizes);
                 }
                 break;
             case Job.STAGE_OUT_JOB:
                 return 0;
             default:
                 for (PegasusFile currentFile : (Set<PegasusFile>) currentJob.getOutputFiles()) {
-                    spaceUsed += getFileSize(currentFile);
+                    spaceUsed += getFileSize(currentFile, sizes);
                 }
         }
         return spaceUsed;
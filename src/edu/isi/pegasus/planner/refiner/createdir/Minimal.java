@@ -29,7 +29,6 @@ import edu.isi.pegasus.planner.classes.DAGJob;
 import edu.isi.pegasus.planner.classes.DAXJob;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.refiner.DeployWorkerPackage;
-import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
@@ -44,13 +43,19 @@ import java.util.Set;
  * This strategy for adding create dir jobs to the workflow only adds the minimum 
  * number of edges from the create dir job to the compute jobs in the workflow.
  * 
- * The strategy involves in walking the graph in a BFS order, and updating a bit set
- * associated with each job based on the BitSet of the parent jobs. The BitSet
- * indicates whether an edge exists from the create dir job to an ancestor of the node.
+ * The strategy involves in walking the graph once in a topological order, and 
+ * updating a site mask associated with each job based on the masks of the parent 
+ * jobs. A bit in the mask indicates whether an edge exists from the create dir 
+ * job for the site to an ancestor of the node.
  * 
- * For a node, the bit set is the union of all the parents BitSets. The BFS traversal
- * ensures that the bitsets are of a node are only updated once the parents have
- * been processed
+ * For a node, the mask is the union of all the parents masks. The topological
+ * traversal ensures that the mask of a node is only computed once the parents 
+ * have been processed. An edge from a create dir job is only added to a node,
+ * if none of the ancestors of the node already depends on it. Hence, no 
+ * redundant edges are added that need to be pruned later. 
+ * 
+ * The masks of all the nodes are packed into a single array of longs, and the 
+ * traversal is linear in the number of nodes and edges of the workflow.
  * 
  * 
  * @author Karan Vahi
@@ -74,14 +79,14 @@ public class Minimal extends AbstractStrategy {
      * Modifies the workflow to add create directory nodes. The workflow passed
      * is a worklow, where the jobs have been mapped to sites.
      * 
-     * The strategy involves in walking the graph in a BFS order, and updating a 
-     * bit set associated with each job based on the BitSet of the parent jobs. 
-     * The BitSet indicates whether an edge exists from the create dir job to an 
-     * ancestor of the node.
+     * The strategy involves in walking the graph in a topological order, and 
+     * updating a site mask associated with each job based on the masks of the 
+     * parent jobs. A bit in the mask indicates whether an edge exists from the 
+     * create dir job for the site to an ancestor of the node.
      * 
-     * For a node, the bit set is the union of all the parents BitSets. The BFS 
-     * traversal ensures that the bitsets are of a node are only updated once the 
-     * parents have been processed.
+     * For a node, the mask is the union of all the parents masks. The 
+     * topological traversal ensures that the mask of a node is only computed 
+     * once the parents have been processed.
      * 
      * @param dag   the workflow to which the nodes have to be added.
      * 
@@ -96,14 +101,14 @@ public class Minimal extends AbstractStrategy {
     /**
      * Adds create dir nodes to the workflow.
      * 
-     * The strategy involves in walking the graph in a BFS order, and updating a 
-     * bit set associated with each job based on the BitSet of the parent jobs. 
-     * The BitSet indicates whether an edge exists from the create dir job to an 
-     * ancestor of the node.
+     * The strategy involves in walking the graph in a topological order, and 
+     * updating a site mask associated with each job based on the masks of the 
+     * parent jobs. A bit in the mask indicates whether an edge exists from the 
+     * create dir job for the site to an ancestor of the node.
      * 
-     * For a node, the bit set is the union of all the parents BitSets. The BFS 
-     * traversal ensures that the bitsets are of a node are only updated once the 
-     * parents have been processed.
+     * For a node, the mask is the union of all the parents masks. The 
+     * topological traversal ensures that the mask of a node is only computed 
+     * once the parents have been processed.
      * 
      * @param workflow  the workflow 
      * @param sites     the staging sites the workflow refers to.
@@ -111,20 +116,21 @@ public class Minimal extends AbstractStrategy {
      * @return 
      */
     public ADag addCreateDirectoryNodes( ADag workflow,  Set<String> sites ) {
-        //the number of sites dictates the size of the BitSet associated with each job.
+        //the number of sites dictates the number of bits in the mask
+        //associated with each job.
         Map<String, Integer> siteToBitIndexMap = new HashMap();
-        int bitSetSize = sites.size();
         int i = 0;
         for( String site: sites ){
             siteToBitIndexMap.put( site, i++ );
         }
+        int words = ( sites.size() + 63 ) >>> 6;
         
         
         //create the create dir jobs required but don't add to the workflow
         //till edges are figured out
         //for each execution pool add a create directory node.
-        Map<GraphNode,List<GraphNode>> createDirChildrenMap = new HashMap();
-        Map<String,GraphNode> createDirMap = new HashMap();//mas site to the associated create dir node
+        GraphNode[] createDirNodes = new GraphNode[ sites.size() ];
+        List<GraphNode>[] createDirChildren = new List[ sites.size() ];
         for (String site: sites ){
             String jobName = getCreateDirJobName( workflow, site );
             Job newJob  = mImpl.makeCreateDirJob( site,
@@ -133,63 +139,77 @@ public class Minimal extends AbstractStrategy {
             mLogger.log( "Creating create dir node " + jobName , LogManager.DEBUG_MESSAGE_LEVEL );
             GraphNode node = new GraphNode( newJob.getID() );
             node.setContent(newJob);
-            createDirChildrenMap.put(node, new LinkedList<GraphNode>());
-            createDirMap.put( site, node );
+            int index = siteToBitIndexMap.get( site );
+            createDirNodes[ index ]    = node;
+            createDirChildren[ index ] = new LinkedList<GraphNode>();
         }
         
         
-        //we use an identity hash map to associate the nodes with the bitmaps 
-        Map<GraphNode,BitSet> nodeBitMap = new IdentityHashMap( workflow.size() );
-        
-        //do a BFS walk over the workflow
-        for( Iterator<GraphNode> it = workflow.iterator(); it.hasNext(); ){
+        //number the nodes, and record the in degree of each node.
+        //we use an identity hash map, as the nodes are not modified
+        int order = workflow.size();
+        Map<GraphNode,Integer> nodeIndexMap = new IdentityHashMap( order );
+        GraphNode[] nodes = new GraphNode[ order ];
+        int[] inDegree = new int[ order ];
+        int[] queue    = new int[ order ];
+        int tail = 0;
+        i = 0;
+        for( Iterator<GraphNode> it = workflow.nodeIterator(); it.hasNext(); i++ ){
             GraphNode node = it.next();
-            BitSet set     = new BitSet( bitSetSize );
+            nodes[ i ] = node;
+            nodeIndexMap.put( node, i );
+            inDegree[ i ] = node.getParents().size();
+            if( inDegree[ i ] == 0 ){
+                queue[ tail++ ] = i;
+            }
+        }
+        
+        //the site masks of all the nodes packed into one array. the mask of
+        //a node is the union of the masks of its parents, and indicates the
+        //sites whose create dir job is already an ancestor of the node
+        long[] masks = new long[ order * words ];
+        
+        //walk the workflow in topological order, so that the mask of a node 
+        //is only computed once the masks of all its parents are
+        for( int head = 0; head < tail; head++ ){
+            int index      = queue[ head ];
+            GraphNode node = nodes[ index ];
+            
+            //release the children whose parents have all been traversed
+            for( GraphNode child: node.getChildren() ){
+                int c = nodeIndexMap.get( child );
+                if( --inDegree[ c ] == 0 ){
+                    queue[ tail++ ] = c;
+                }
+            }
+            
             Job job        = (Job)node.getContent();
-            String site    = getAssociatedCreateDirSite( job );
             
             //check if for stage out jobs there are any parents specified 
             //or not.
-            if( job instanceof TransferJob && job.getJobType() == Job.STAGE_OUT_JOB ){
-                Collection<GraphNode> parents = node.getParents();
-                boolean skip = false;
-                if( parents.isEmpty() ){
-                    //means we have a stage out job only. probably the workflow
-                    //was fully reduced in data reuse
-                    skip = true;
-                }
-                if( parents.size() == 1 ){
-                    for(GraphNode parent : parents ){
-                        if( parent.getID().startsWith( DeployWorkerPackage.DEPLOY_WORKER_PREFIX)){
-                            //PM-1128 we only have a single parent to a stage out job that is a
-                            //stage worker job. the stage out job is deleting outputs of jobs
-                            //deleted in data reuse
-                            skip = true;
-                        }
-                    }
-                }
-                if( skip ){
-                    //means we have a stage out job only. probably the workflow
-                    //was fully reduced in data reuse
-                    mLogger.log( "Not considering job for create dir edges - " + job.getID() , LogManager.DEBUG_MESSAGE_LEVEL );
-                    nodeBitMap.put(node, set);
-                    continue;
-                }
-                
+            if( job instanceof TransferJob && job.getJobType() == Job.STAGE_OUT_JOB &&
+                this.skipStageOutJob( node ) ){
+                //means we have a stage out job only. probably the workflow
+                //was fully reduced in data reuse
+                mLogger.log( "Not considering job for create dir edges - " + job.getID() , LogManager.DEBUG_MESSAGE_LEVEL );
+                continue;
             }
             
-            //the set is a union of all the parents set
+            //the mask is a union of all the parents masks
+            int offset = index * words;
             for( GraphNode parent: node.getParents() ){
-                BitSet pSet = nodeBitMap.get( parent );
-                set.or( pSet );
+                int pOffset = nodeIndexMap.get( parent ) * words;
+                for( int w = 0; w < words; w++ ){
+                    masks[ offset + w ] |= masks[ pOffset + w ];
+                }
             }
             
+            String site    = getAssociatedCreateDirSite( job );
             if( site == null ){
                 //only ok for stage worker jobs
                 if( job instanceof TransferJob || job.getJobType() == Job.REPLICA_REG_JOB ){
                     mLogger.log( "Not adding edge to create dir job for job " + job.getID(),
                                      LogManager.DEBUG_MESSAGE_LEVEL );
-                    nodeBitMap.put(node, set);
                     continue;
                 }
                 else{
@@ -197,7 +217,7 @@ public class Minimal extends AbstractStrategy {
                 }
             }
             
-            Object value = siteToBitIndexMap.get( site );
+            Integer value = siteToBitIndexMap.get( site );
             if( value == null){
                 StringBuffer parents = new StringBuffer();
                 parents.append( "{");
@@ -207,35 +227,36 @@ public class Minimal extends AbstractStrategy {
                 parents.append( "}");
                 throw new RuntimeException( "Create dir site " + site + " for job " + job.getID() + 
                                             " with parents " + parents + 
-                                            " is not present in staging sites for workflow " +  createDirMap.keySet() );
+                                            " is not present in staging sites for workflow " +  siteToBitIndexMap.keySet() );
             }
-            int index = (Integer)value; 
-            if(! set.get( index ) ){
-                //none of the parents have an index to the site
+            int bit = value;
+            long word = 1L << ( bit & 63 );
+            if( ( masks[ offset + ( bit >>> 6 ) ] & word ) == 0 ){
+                //none of the ancestors is the create dir job for the site
                 //need to add an edge.
-                //String parent = getCreateDirJobName( dag, site );
-                GraphNode parent = createDirMap.get( site );
+                GraphNode parent = createDirNodes[ bit ];
                 mLogger.log( "Need to add edge "  + parent.getID() + " -> " + job.getID(),
                              LogManager.DEBUG_MESSAGE_LEVEL );
-                createDirChildrenMap.get( parent ).add( node );
+                createDirChildren[ bit ].add( node );
 
-                //edge has been added . set the bit to true
-                set.set( index );
+                //edge has been added . set the bit 
+                masks[ offset + ( bit >>> 6 ) ] |= word;
             }
-            
-            //set the bitset of createdirs for the node
-            nodeBitMap.put(node, set);
+        }
+        
+        if( tail != order ){
+            throw new RuntimeException( "Unable to traverse the workflow in topological order. Traversed " + 
+                                        tail + " of " + order + " jobs" );
         }
         
         
         //for each create dir job add it to the workflow
         //and connect the edges
-        for ( Map.Entry<GraphNode, List<GraphNode>> entry : createDirChildrenMap.entrySet()  ){
-            GraphNode createDirNode = entry.getKey();
-            List<GraphNode> children = entry.getValue();
+        for ( int index = 0; index < createDirNodes.length; index++ ){
+            GraphNode createDirNode = createDirNodes[ index ];
             mLogger.log(  "Adding node to the worfklow " + createDirNode.getID(),
                           LogManager.DEBUG_MESSAGE_LEVEL );
-            for( GraphNode child: children ){
+            for( GraphNode child: createDirChildren[ index ] ){
                 createDirNode.addChild(child);
                 child.addParent( createDirNode );
             }
@@ -247,6 +268,35 @@ public class Minimal extends AbstractStrategy {
         return workflow;
     }
     
+    /**
+     * Returns whether a stage out job should not be considered for create dir 
+     * edges. This is the case, if the stage out job has no parents or only 
+     * a stage worker job as parent. 
+     * 
+     * @param node  the node for the stage out job
+     * 
+     * @return boolean
+     */
+    private boolean skipStageOutJob( GraphNode node ){
+        Collection<GraphNode> parents = node.getParents();
+        if( parents.isEmpty() ){
+            //means we have a stage out job only. probably the workflow
+            //was fully reduced in data reuse
+            return true;
+        }
+        if( parents.size() == 1 ){
+            for(GraphNode parent : parents ){
+                if( parent.getID().startsWith( DeployWorkerPackage.DEPLOY_WORKER_PREFIX)){
+                    //PM-1128 we only have a single parent to a stage out job that is a
+                    //stage worker job. the stage out job is deleting outputs of jobs
+                    //deleted in data reuse
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
     
     /**
      * Returns the associated site that job is dependant on.
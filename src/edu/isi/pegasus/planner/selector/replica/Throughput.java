@@ -0,0 +1,467 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.selector.replica;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.util.PegasusURL;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+
+import edu.isi.pegasus.planner.classes.ReplicaLocation;
+
+import edu.isi.pegasus.planner.common.PegRandom;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+
+import edu.isi.pegasus.planner.namespace.Metadata;
+
+import edu.isi.pegasus.planner.selector.ReplicaSelector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A replica selector that orders the replicas by the expected time to
+ * transfer them, based on the throughput and the failure rate observed for
+ * the source of each replica in past transfers.
+ *
+ * <p>
+ * The expected transfer time of a replica is the size of the file divided by
+ * the throughput observed for the source ( protocol://host ) of the replica,
+ * scaled up by the expected number of attempts given the failure rate of the
+ * source. The size of the file is picked up from the size metadata of the
+ * file in the replica catalog or the DAX. Valid file URL's are always
+ * ordered first, as in the Default replica selector.
+ *
+ * <p>
+ * Sources for which there are no recent observations are explored, by
+ * assuming that they are as fast as the fastest known source amongst the
+ * candidates. In addition, with a configurable probability a random candidate
+ * is moved to the front of the list.
+ *
+ * <p>
+ * In order to use the replica selector implemented by this class,
+ * <pre>
+ *        - the property pegasus.selector.replica must be set to value Throughput
+ * </pre>
+ *
+ * The selector is configured by the following properties
+ * <pre>
+ * pegasus.selector.replica.throughput.stats     the transfer statistics file
+ *                                               ( defaults to ~/.pegasus/transfer-stats.txt )
+ * pegasus.selector.replica.throughput.records   comma separated list of files
+ *                                               or directories with the transfer
+ *                                               records to add to the statistics
+ * pegasus.selector.replica.throughput.halflife  half life of the observations in
+ *                                               hours ( defaults to 168 )
+ * pegasus.selector.replica.throughput.explore   probability of trying a random
+ *                                               replica first ( defaults to 0.1 )
+ * </pre>
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ *
+ * @see TransferStatistics
+ */
+public class Throughput extends Default {
+
+    /**
+     * A short description of the replica selector.
+     */
+    private static final String mDescription = "Throughput";
+
+    /**
+     * The property prefix for all the properties of this selector.
+     */
+    public static final String PROPERTY_PREFIX = "pegasus.selector.replica.throughput";
+
+    /**
+     * The key for the transfer statistics file.
+     */
+    public static final String STATISTICS_FILE_KEY = "stats";
+
+    /**
+     * The key for the files with the transfer records.
+     */
+    public static final String RECORDS_KEY = "records";
+
+    /**
+     * The key for the half life in hours.
+     */
+    public static final String HALF_LIFE_KEY = "halflife";
+
+    /**
+     * The key for the exploration probability.
+     */
+    public static final String EXPLORE_KEY = "explore";
+
+    /**
+     * The default basename of the transfer statistics file in ~/.pegasus
+     */
+    public static final String DEFAULT_STATISTICS_FILE = "transfer-stats.txt";
+
+    /**
+     * The default half life in hours.
+     */
+    public static final double DEFAULT_HALF_LIFE = 168;
+
+    /**
+     * The default exploration probability.
+     */
+    public static final double DEFAULT_EXPLORE_PROBABILITY = 0.1;
+
+    /**
+     * The environment variable that is set for the transfer jobs, to have
+     * pegasus-transfer log the data_transfer records this selector reads.
+     */
+    public static final String TRANSFER_RECORDS_ENV_KEY = "PEGASUS_TRANSFER_RECORDS";
+
+    /**
+     * The size assumed for files whose size is not known. As all candidate
+     * replicas are for the same file, it only scales the expected times.
+     */
+    private static final double DEFAULT_FILE_SIZE = 1;
+
+    /**
+     * The priority assigned to the first remote replica. The priorities of
+     * the following replicas are one less than the previous.
+     */
+    private static final int HIGHEST_REMOTE_PRIORITY = 50;
+
+    /**
+     * The priority assigned to the valid file URL's.
+     */
+    private static final String FILE_URLS_PRIORITY = "100";
+
+    /**
+     * The statistics of past transfers.
+     */
+    private TransferStatistics mStatistics;
+
+    /**
+     * The probability of moving a random replica to the front.
+     */
+    private double mExploreProbability;
+
+    /**
+     * Returns whether this replica selector is the one configured in the
+     * properties.
+     *
+     * @param properties the <code>PegasusProperties</code> object.
+     *
+     * @return boolean
+     */
+    public static boolean isSelected( PegasusProperties properties ){
+        String selector = properties.getReplicaSelector();
+        if( selector == null ){
+            return false;
+        }
+        selector = selector.trim();
+        return selector.equals( Throughput.mDescription ) ||
+               selector.equals( Throughput.class.getName() );
+    }
+
+    /**
+     * The overloaded constructor, that is called by load method.
+     *
+     * @param properties the <code>PegasusProperties</code> object containing all
+     *                   the properties required by Pegasus.
+     */
+    public Throughput( PegasusProperties properties ){
+        super( properties );
+        Properties p = properties.matchingSubset( Throughput.PROPERTY_PREFIX, false );
+
+        double halfLife = this.getDoubleValue( p, HALF_LIFE_KEY, DEFAULT_HALF_LIFE );
+        if( halfLife <= 0 ){
+            mLogger.log( "[ThroughputReplicaSelector] Ignoring invalid half life " + halfLife,
+                         LogManager.WARNING_MESSAGE_LEVEL );
+            halfLife = DEFAULT_HALF_LIFE;
+        }
+        mExploreProbability = this.getDoubleValue( p, EXPLORE_KEY, DEFAULT_EXPLORE_PROBABILITY );
+        mStatistics = new TransferStatistics( halfLife * 3600 );
+
+        String path = p.getProperty( STATISTICS_FILE_KEY );
+        File file = ( path == null ) ?
+                    new File( new File( System.getProperty( "user.home" ), ".pegasus" ), DEFAULT_STATISTICS_FILE ):
+                    new File( path );
+        if( file.exists() ){
+            try{
+                mStatistics.load( file );
+            }
+            catch( IOException e ){
+                //the statistics are only a hint. continue without them
+                mLogger.log( "[ThroughputReplicaSelector] Unable to load transfer statistics from " + file,
+                             e, LogManager.WARNING_MESSAGE_LEVEL );
+            }
+        }
+
+        String records = p.getProperty( RECORDS_KEY );
+        if( records != null ){
+            int added = 0;
+            for( String record : records.split( "," ) ){
+                record = record.trim();
+                if( record.length() == 0 ){
+                    continue;
+                }
+                try{
+                    added += mStatistics.ingest( new File( record ) );
+                }
+                catch( IOException e ){
+                    mLogger.log( "[ThroughputReplicaSelector] Unable to read transfer records from " + record,
+                                 e, LogManager.WARNING_MESSAGE_LEVEL );
+                }
+            }
+            if( added > 0 ){
+                try{
+                    mStatistics.store( file );
+                }
+                catch( IOException e ){
+                    mLogger.log( "[ThroughputReplicaSelector] Unable to save transfer statistics to " + file,
+                                 e, LogManager.WARNING_MESSAGE_LEVEL );
+                }
+            }
+            mLogger.log( "[ThroughputReplicaSelector] Added " + added + " transfer records to " + file,
+                         LogManager.CONFIG_MESSAGE_LEVEL );
+        }
+        mLogger.log( "[ThroughputReplicaSelector] Transfer statistics loaded for " + mStatistics.size() + " sources",
+                     LogManager.CONFIG_MESSAGE_LEVEL );
+    }
+
+    /**
+     * The overloaded constructor, that allows the statistics to be passed in.
+     *
+     * @param properties  the <code>PegasusProperties</code> object containing all
+     *                    the properties required by Pegasus.
+     * @param statistics  the statistics of past transfers
+     * @param explore     the probability of moving a random replica to the front
+     */
+    public Throughput( PegasusProperties properties, TransferStatistics statistics, double explore ){
+        super( properties );
+        mStatistics         = statistics;
+        mExploreProbability = explore;
+    }
+
+    /**
+     * This orders all valid location amongst all the locations returned by the
+     * Replica Mechanism. The following ordering mechanism is employed
+     *
+     *  - valid file URL's
+     *  - all other URL's in the increasing order of their expected transfer
+     *    times. Ties are broken in favor of the preferred site.
+     *
+     * @param rl         the <code>ReplicaLocation</code> object containing all
+     *                   the pfn's associated with that LFN.
+     * @param preferredSite the preffered site for picking up the replicas.
+     * @param allowLocalFileURLs indicates whether Replica Selector can select a replica
+     *                      on the local site / submit host.
+     *
+     * @return <code>ReplicaLocation</code> corresponding to the replicas selected
+     */
+    public ReplicaLocation selectAndOrderReplicas( ReplicaLocation rl,
+                                                   final String preferredSite,
+                                                   boolean allowLocalFileURLs ){
+
+        ReplicaLocation result = new ReplicaLocation();
+        result.setLFN( rl.getLFN() );
+
+        double size = this.getSize( rl );
+        long now = System.currentTimeMillis() / 1000;
+
+        List<Candidate> remote = new ArrayList<Candidate>();
+        double bestThroughput = -1;
+        for ( Iterator<ReplicaCatalogEntry> it = rl.pfnIterator(); it.hasNext(); ) {
+            ReplicaCatalogEntry rce = it.next();
+
+            //check if a File URL is allowable or not
+            if( removeFileURL(rce, preferredSite, allowLocalFileURLs) ){
+                this.warnForFileURL(rce, preferredSite, allowLocalFileURLs);
+                continue;
+            }
+
+            if ( rce.getPFN().startsWith( PegasusURL.FILE_URL_SCHEME ) ) {
+                //file URL's have highest priority
+                rce.addAttribute( ReplicaSelector.PRIORITY_KEY, FILE_URLS_PRIORITY );
+                result.addPFN( rce );
+                continue;
+            }
+
+            Candidate c = new Candidate( rce, remote.size() );
+            String source = TransferStatistics.getSource( rce.getPFN() );
+            if( source != null && mStatistics.isKnown( source, now ) ){
+                double throughput = mStatistics.getThroughput( source );
+                if( throughput > 0 ){
+                    c.mThroughput  = throughput;
+                    c.mFailureRate = mStatistics.getFailureRate( source );
+                    bestThroughput = Math.max( bestThroughput, throughput );
+                }
+            }
+            remote.add( c );
+        }
+
+        for( Candidate c : remote ){
+            double throughput = c.mThroughput;
+            if( throughput <= 0 ){
+                //explore the unknown sources, by assuming they are as good
+                //as the best known one. if none are known all are equal
+                throughput = ( bestThroughput > 0 ) ? bestThroughput : 1;
+            }
+            //expected number of attempts for a success is 1/(1-failure rate)
+            c.mExpectedTime = ( size / throughput ) / Math.max( 1 - c.mFailureRate, 0.01 );
+        }
+
+        Collections.sort( remote, new Comparator<Candidate>(){
+            public int compare( Candidate c1, Candidate c2 ){
+                int result = Double.compare( c1.mExpectedTime, c2.mExpectedTime );
+                if( result == 0 ){
+                    boolean p1 = preferredSite != null && preferredSite.equals( c1.mRCE.getResourceHandle() );
+                    boolean p2 = preferredSite != null && preferredSite.equals( c2.mRCE.getResourceHandle() );
+                    result = ( p1 == p2 ) ? 0 : ( p1 ? -1 : 1 );
+                }
+                return ( result == 0 ) ? c1.mPosition - c2.mPosition : result;
+            }
+        });
+
+        if( remote.size() > 1 && PegRandom.nextDouble() < mExploreProbability ){
+            Candidate c = remote.remove( PegRandom.getInteger( remote.size() - 1 ) );
+            remote.add( 0, c );
+        }
+
+        int priority = HIGHEST_REMOTE_PRIORITY;
+        for( Candidate c : remote ){
+            c.mRCE.addAttribute( ReplicaSelector.PRIORITY_KEY, Integer.toString( priority ) );
+            priority = Math.max( priority - 1, 1 );
+            result.addPFN( c.mRCE );
+        }
+        return result;
+    }
+
+    /**
+     * Selects the replica with the lowest expected transfer time.
+     *
+     * @param candidates         the <code>ReplicaLocation</code> object containing all
+     *                   the pfn's associated with that LFN.
+     * @param preferredSite the preffered site for picking up the replicas.
+     * @param allowLocalFileURLs indicates whether Replica Selector can select a replica
+     *                      on the local site / submit host.
+     *
+     * @return <code>ReplicaCatalogEntry</code> corresponding to the location selected.
+     */
+    public ReplicaCatalogEntry selectReplica( ReplicaLocation candidates,
+                                              String preferredSite,
+                                              boolean allowLocalFileURLs ){
+        ReplicaLocation rl = this.selectAndOrderReplicas( candidates, preferredSite, allowLocalFileURLs );
+        if ( rl.getPFNCount() == 0 ) {
+            StringBuffer error = new StringBuffer();
+            error.append( "Unable to select a Physical Filename (PFN) for file with logical filename (LFN) as ").
+                  append( rl.getLFN() ).append( " for staging to site " ).append( preferredSite ).
+                  append( " amongst ").append( candidates.getPFNList() );
+            throw new RuntimeException( error.toString() );
+        }
+        return rl.getPFN( 0 );
+    }
+
+    /**
+     * Returns a short description of the replica selector.
+     *
+     * @return string corresponding to the description.
+     */
+    public String description(){
+        return mDescription;
+    }
+
+    /**
+     * Returns the size of the file from the metadata associated with the
+     * replica location.
+     *
+     * @param rl  the replica location
+     *
+     * @return the size, else DEFAULT_FILE_SIZE if not known
+     */
+    private double getSize( ReplicaLocation rl ){
+        String value = rl.getMetadata( Metadata.SIZE_KEY );
+        if( value != null ){
+            try{
+                double size = Double.parseDouble( value );
+                if( size > 0 ){
+                    return size;
+                }
+            }
+            catch( NumberFormatException e ){
+                //fall through to the default
+            }
+        }
+        return DEFAULT_FILE_SIZE;
+    }
+
+    /**
+     * Returns a double value for a property.
+     *
+     * @param p             the properties
+     * @param key           the key
+     * @param defaultValue  the default value
+     *
+     * @return the value
+     */
+    private double getDoubleValue( Properties p, String key, double defaultValue ){
+        String value = p.getProperty( key );
+        if( value == null ){
+            return defaultValue;
+        }
+        try{
+            return Double.parseDouble( value );
+        }
+        catch( NumberFormatException e ){
+            mLogger.log( "[ThroughputReplicaSelector] Ignoring invalid value " + value + " for property " +
+                         PROPERTY_PREFIX + "." + key,
+                         LogManager.WARNING_MESSAGE_LEVEL );
+            return defaultValue;
+        }
+    }
+
+    /**
+     * A candidate remote replica.
+     */
+    private static class Candidate {
+
+        private final ReplicaCatalogEntry mRCE;
+
+        /**
+         * The position amongst the remote candidates in the replica catalog.
+         */
+        private final int mPosition;
+
+        /**
+         * The observed throughput, -1 if not known.
+         */
+        private double mThroughput;
+
+        private double mFailureRate;
+
+        private double mExpectedTime;
+
+        public Candidate( ReplicaCatalogEntry rce, int position ){
+            mRCE         = rce;
+            mPosition    = position;
+            mThroughput  = -1;
+            mFailureRate = 0;
+        }
+    }
+}
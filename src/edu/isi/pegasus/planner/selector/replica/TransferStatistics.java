@@ -0,0 +1,516 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.selector.replica;
+
+import edu.isi.pegasus.common.util.PegasusURL;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * A store of the observed throughput and failure rate of the sources of
+ * past transfers, indexed by the URL prefix ( protocol://host ) of the source
+ * URL.
+ *
+ * <p>
+ * The observations are decayed exponentially with age, with a configurable
+ * half life. A source whose decayed number of attempts falls below
+ * {@link #MINIMUM_ATTEMPTS} is treated as unknown, so that it is explored
+ * again.
+ *
+ * <p>
+ * The observations are read from the data_transfer records that
+ * pegasus-transfer logs at the INFO level for each transfer attempt, that
+ * look like
+ * <pre>
+ * 2017-07-14 02:40:00,123    INFO:  ts=1500000000 event=data_transfer level=INFO status=0
+ *     src_url=gsiftp://host/path ... transfer_start_ts=1499999990 transfer_duration=10
+ *     bytes_transferred=1048576
+ * </pre>
+ *
+ * The bytes transferred are only logged for transfers with a local file.
+ * The same record may also be logged at the DEBUG level, if the transfer
+ * is reported to a monitoring endpoint, and is then read in only once.
+ *
+ * The store itself is saved as a text file with one line per source.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class TransferStatistics {
+
+    /**
+     * The event name of the transfer records logged by pegasus-transfer.
+     */
+    public static final String TRANSFER_EVENT = "event=data_transfer";
+
+    /**
+     * The decayed number of attempts below which a source is considered
+     * unknown.
+     */
+    public static final double MINIMUM_ATTEMPTS = 0.5;
+
+    /**
+     * The minimum duration in seconds of a transfer. The transfer records
+     * round the duration to the nearest second.
+     */
+    private static final double MINIMUM_DURATION = 1;
+
+    /**
+     * The header written out at the top of the store.
+     */
+    private static final String HEADER = "# source bytes seconds attempts failures updated last_record";
+
+    /**
+     * The half life of the observations in seconds.
+     */
+    private final double mHalfLife;
+
+    /**
+     * The statistics indexed by the source URL prefix.
+     */
+    private final Map<String,Source> mSources;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param halfLife  the half life of the observations in seconds.
+     */
+    public TransferStatistics( double halfLife ){
+        if( halfLife <= 0 ){
+            throw new IllegalArgumentException( "Invalid half life for transfer statistics " + halfLife );
+        }
+        mHalfLife = halfLife;
+        mSources  = new HashMap<String,Source>();
+    }
+
+    /**
+     * Returns the key for the source of an URL.
+     *
+     * @param url  the url
+     *
+     * @return the URL prefix, else null if the url cannot be parsed
+     */
+    public static String getSource( String url ){
+        try{
+            return new PegasusURL( url ).getURLPrefix();
+        }
+        catch( RuntimeException e ){
+            return null;
+        }
+    }
+
+    /**
+     * Records a transfer from a source.
+     *
+     * @param source    the source URL prefix
+     * @param start     the start time of the transfer in seconds since the epoch
+     * @param duration  the duration of the transfer in seconds
+     * @param bytes     the bytes transferred, -1 if not known
+     * @param success   whether the transfer succeeded
+     */
+    public void record( String source, long start, double duration, double bytes, boolean success ){
+        Source s = mSources.get( source );
+        if( s == null ){
+            s = new Source();
+            mSources.put( source, s );
+        }
+        s.decay( start, mHalfLife );
+        s.mAttempts += 1;
+        if( success ){
+            if( bytes > 0 ){
+                s.mBytes   += bytes;
+                s.mSeconds += Math.max( duration, MINIMUM_DURATION );
+            }
+        }
+        else{
+            s.mFailures += 1;
+        }
+        s.mLastRecord = Math.max( s.mLastRecord, start );
+    }
+
+    /**
+     * Returns the decayed number of transfer attempts from a source.
+     *
+     * @param source  the source URL prefix
+     * @param now     the current time in seconds since the epoch
+     *
+     * @return the number of attempts
+     */
+    public double getAttempts( String source, long now ){
+        Source s = mSources.get( source );
+        return ( s == null ) ? 0 : s.mAttempts * s.factor( now, mHalfLife );
+    }
+
+    /**
+     * Returns whether there are enough recent observations for a source.
+     *
+     * @param source  the source URL prefix
+     * @param now     the current time in seconds since the epoch
+     *
+     * @return boolean
+     */
+    public boolean isKnown( String source, long now ){
+        return this.getAttempts( source, now ) >= MINIMUM_ATTEMPTS;
+    }
+
+    /**
+     * Returns the throughput observed for a source.
+     *
+     * @param source  the source URL prefix
+     *
+     * @return the throughput in bytes per second, else -1 if no successful
+     *         transfers with known sizes were observed
+     */
+    public double getThroughput( String source ){
+        Source s = mSources.get( source );
+        return ( s == null || s.mSeconds <= 0 ) ? -1 : s.mBytes / s.mSeconds;
+    }
+
+    /**
+     * Returns the fraction of the transfers from a source that failed.
+     *
+     * @param source  the source URL prefix
+     *
+     * @return the failure rate, 0 if nothing observed
+     */
+    public double getFailureRate( String source ){
+        Source s = mSources.get( source );
+        return ( s == null || s.mAttempts <= 0 ) ? 0 : s.mFailures / s.mAttempts;
+    }
+
+    /**
+     * Returns the number of sources in the store.
+     *
+     * @return the number of sources
+     */
+    public int size(){
+        return mSources.size();
+    }
+
+    /**
+     * Reads in the transfer records from a file, or recursively from all the
+     * files in a directory. Records that are not newer than the last record
+     * already in the store for a source are ignored, so that the same files
+     * can be read in again.
+     *
+     * @param file  the file or directory
+     *
+     * @return the number of records added
+     *
+     * @throws IOException in case of error while reading
+     */
+    public int ingest( File file ) throws IOException{
+        List<Record> records = new ArrayList<Record>();
+        this.collect( file, records );
+
+        //apply in the order of the start times, as the observations
+        //are decayed with respect to the last record
+        Collections.sort( records, new Comparator<Record>(){
+            public int compare( Record r1, Record r2 ){
+                return ( r1.mStart < r2.mStart ) ? -1 : ( ( r1.mStart == r2.mStart ) ? 0 : 1 );
+            }
+        });
+
+        Map<String,Long> last = new HashMap<String,Long>();
+        for( Map.Entry<String,Source> entry : mSources.entrySet() ){
+            last.put( entry.getKey(), entry.getValue().mLastRecord );
+        }
+        int added = 0;
+        for( Record r : records ){
+            Long previous = last.get( r.mSource );
+            if( previous != null && r.mStart <= previous ){
+                continue;
+            }
+            this.record( r.mSource, r.mStart, r.mDuration, r.mBytes, r.mSuccess );
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Loads the store from a file. The sources in the file are added to the
+     * sources already in the store.
+     *
+     * @param file  the file
+     *
+     * @throws IOException in case of error while reading
+     */
+    public void load( File file ) throws IOException{
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try{
+            String line;
+            int lineNumber = 0;
+            while( ( line = reader.readLine() ) != null ){
+                lineNumber++;
+                line = line.trim();
+                if( line.length() == 0 || line.startsWith( "#" ) ){
+                    continue;
+                }
+                StringTokenizer st = new StringTokenizer( line );
+                if( st.countTokens() != 7 ){
+                    throw new IOException( "Invalid line " + lineNumber + " in transfer statistics file " + file );
+                }
+                try{
+                    String source = st.nextToken();
+                    Source s = new Source();
+                    s.mBytes      = Double.parseDouble( st.nextToken() );
+                    s.mSeconds    = Double.parseDouble( st.nextToken() );
+                    s.mAttempts   = Double.parseDouble( st.nextToken() );
+                    s.mFailures   = Double.parseDouble( st.nextToken() );
+                    s.mUpdated    = Long.parseLong( st.nextToken() );
+                    s.mLastRecord = Long.parseLong( st.nextToken() );
+                    mSources.put( source, s );
+                }
+                catch( NumberFormatException e ){
+                    throw new IOException( "Invalid line " + lineNumber + " in transfer statistics file " + file, e );
+                }
+            }
+        }
+        finally{
+            reader.close();
+        }
+    }
+
+    /**
+     * Saves the store to a file. The file is written to a temporary file
+     * first, that is then renamed, so that concurrent readers never see a
+     * partial store.
+     *
+     * @param file  the file
+     *
+     * @throws IOException in case of error while writing
+     */
+    public void store( File file ) throws IOException{
+        File dir = file.getAbsoluteFile().getParentFile();
+        if( dir != null && !dir.exists() && !dir.mkdirs() ){
+            throw new IOException( "Unable to create directory " + dir );
+        }
+        File temp = File.createTempFile( file.getName(), ".tmp", dir );
+        PrintWriter writer = new PrintWriter( new BufferedWriter( new FileWriter( temp ) ) );
+        try{
+            writer.println( HEADER );
+            for( Map.Entry<String,Source> entry : mSources.entrySet() ){
+                Source s = entry.getValue();
+                writer.print( entry.getKey() );
+                writer.print( ' ' );
+                writer.print( s.mBytes );
+                writer.print( ' ' );
+                writer.print( s.mSeconds );
+                writer.print( ' ' );
+                writer.print( s.mAttempts );
+                writer.print( ' ' );
+                writer.print( s.mFailures );
+                writer.print( ' ' );
+                writer.print( s.mUpdated );
+                writer.print( ' ' );
+                writer.println( s.mLastRecord );
+            }
+        }
+        finally{
+            writer.close();
+        }
+        if( writer.checkError() ){
+            temp.delete();
+            throw new IOException( "Error while writing transfer statistics to " + temp );
+        }
+        Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+    }
+
+    /**
+     * Collects the transfer records from a file or directory.
+     *
+     * @param file     the file or directory
+     * @param records  the list to add the records to
+     *
+     * @throws IOException in case of error while reading
+     */
+    private void collect( File file, List<Record> records ) throws IOException{
+        if( file.isDirectory() ){
+            File[] files = file.listFiles();
+            if( files != null ){
+                for( File f : files ){
+                    this.collect( f, records );
+                }
+            }
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try{
+            String line;
+            Set<String> seen = new HashSet<String>();
+            while( ( line = reader.readLine() ) != null ){
+                if( line.indexOf( TRANSFER_EVENT ) == -1 ){
+                    continue;
+                }
+                Record r = Record.parse( line );
+                if( r != null && seen.add( r.mKey ) ){
+                    records.add( r );
+                }
+            }
+        }
+        finally{
+            reader.close();
+        }
+    }
+
+    /**
+     * The decayed sums of the observations for a single source.
+     */
+    private static class Source {
+
+        /**
+         * The bytes transferred in successful transfers.
+         */
+        private double mBytes;
+
+        /**
+         * The seconds taken by the successful transfers with known sizes.
+         */
+        private double mSeconds;
+
+        /**
+         * The number of transfer attempts.
+         */
+        private double mAttempts;
+
+        /**
+         * The number of failed transfers.
+         */
+        private double mFailures;
+
+        /**
+         * The time in seconds to which the sums were last decayed.
+         */
+        private long mUpdated;
+
+        /**
+         * The start time of the latest record read in.
+         */
+        private long mLastRecord;
+
+        /**
+         * Returns the decay factor for the time elapsed since the sums were
+         * last decayed.
+         *
+         * @param now       the current time in seconds
+         * @param halfLife  the half life in seconds
+         *
+         * @return the factor
+         */
+        private double factor( long now, double halfLife ){
+            return ( now <= mUpdated ) ? 1 : Math.pow( 0.5, ( now - mUpdated ) / halfLife );
+        }
+
+        /**
+         * Decays the sums to a point in time.
+         *
+         * @param now       the current time in seconds
+         * @param halfLife  the half life in seconds
+         */
+        private void decay( long now, double halfLife ){
+            double factor = this.factor( now, halfLife );
+            mBytes    *= factor;
+            mSeconds  *= factor;
+            mAttempts *= factor;
+            mFailures *= factor;
+            mUpdated   = Math.max( mUpdated, now );
+        }
+    }
+
+    /**
+     * A single transfer record.
+     */
+    private static class Record {
+
+        /**
+         * The key identifying the transfer attempt within a log.
+         */
+        private String mKey;
+
+        private String mSource;
+
+        private long mStart;
+
+        private double mDuration;
+
+        private double mBytes;
+
+        private boolean mSuccess;
+
+        /**
+         * Parses the key=value pairs in a record.
+         *
+         * @param line  the line with the record
+         *
+         * @return the record, else null if the record is incomplete or is for
+         *         a transfer from a local file
+         */
+        private static Record parse( String line ){
+            Map<String,String> values = new HashMap<String,String>();
+            StringTokenizer st = new StringTokenizer( line );
+            while( st.hasMoreTokens() ){
+                String token = st.nextToken();
+                int index = token.indexOf( '=' );
+                if( index > 0 ){
+                    values.put( token.substring( 0, index ), token.substring( index + 1 ) );
+                }
+            }
+
+            String url    = values.get( "src_url" );
+            String status = values.get( "status" );
+            String start  = values.get( "transfer_start_ts" );
+            if( url == null || status == null || start == null ){
+                return null;
+            }
+            Record r = new Record();
+            r.mSource = getSource( url );
+            if( r.mSource == null || url.startsWith( PegasusURL.FILE_URL_SCHEME ) ){
+                return null;
+            }
+            r.mKey = url + " " + values.get( "dst_url" ) + " " + start + " " + status;
+            try{
+                r.mSuccess  = Integer.parseInt( status ) == 0;
+                r.mStart    = (long)Double.parseDouble( start );
+                String duration = values.get( "transfer_duration" );
+                r.mDuration = ( duration == null ) ? 0 : Double.parseDouble( duration );
+                String bytes = values.get( "bytes_transferred" );
+                r.mBytes    = ( bytes == null ) ? -1 : Double.parseDouble( bytes );
+            }
+            catch( NumberFormatException e ){
+                return null;
+            }
+            return r;
+        }
+    }
+}
@@ -106,7 +106,7 @@ public class RemoteTransfer {
       *
       * @return map
       */
-    private static Map propertyTable(){
+    private static synchronized Map propertyTable(){
         //singleton access
         if (mPropertyTable == null) {
             mPropertyTable = new TreeMap();
@@ -129,7 +129,7 @@ public class TPT {
       *
       * @return map
       */
-    private static Map propertyTable(){
+    private static synchronized Map propertyTable(){
         //singleton access
         if (mPropertyTable == null) {
             mPropertyTable = new TreeMap();
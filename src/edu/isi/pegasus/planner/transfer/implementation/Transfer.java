@@ -50,6 +50,7 @@ import edu.isi.pegasus.planner.classes.PegasusFile;
 import edu.isi.pegasus.planner.namespace.Dagman;
 import edu.isi.pegasus.planner.namespace.Metadata;
 import edu.isi.pegasus.planner.selector.ReplicaSelector;
+import edu.isi.pegasus.planner.selector.replica.Throughput;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -129,6 +130,12 @@ public class Transfer extends AbstractMultipleFTPerXFERJob {
      * The executable basename for the transfer executable.
      */
     public static final String EXECUTABLE_BASENAME = "pegasus-transfer";
+
+    /**
+     * Boolean indicating whether pegasus-transfer is to log a record of each
+     * transfer attempt, for the throughput replica selector.
+     */
+    private boolean mLogTransferRecords;
     
     /**
      * Returns the dagman category for transfer job 
@@ -187,6 +194,7 @@ public class Transfer extends AbstractMultipleFTPerXFERJob {
      */
     public Transfer( PegasusBag bag ){
         super( bag );
+        mLogTransferRecords = Throughput.isSelected( mProps );
     }
 
     /**
@@ -328,6 +336,12 @@ public class Transfer extends AbstractMultipleFTPerXFERJob {
            job.dagmanVariables.construct( Dagman.CATEGORY_KEY, getDAGManCategory( job.getJobType() ) );
        }
 
+        //the throughput replica selector reads the records of the
+        //transfers, that pegasus-transfer only logs on request
+        if( mLogTransferRecords ){
+            job.envVariables.construct( Throughput.TRANSFER_RECORDS_ENV_KEY, "true" );
+        }
+
     }
 
 
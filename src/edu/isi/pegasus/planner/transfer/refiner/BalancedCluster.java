@@ -456,7 +456,7 @@ public class BalancedCluster extends Basic {
                     stageInMap.put(siteHandle,pt);
                 }
                 //add the FT to the appropriate transfer job.
-                TransferContainer siTC = pt.addTransfer( ft, level, type );
+                TransferContainer siTC = this.addTransfer( pt, ft, level, type );
                 String newJobName = siTC.getTXName();
                 
                 if(ft.isTransferringExecutableFile()){
@@ -615,7 +615,7 @@ public class BalancedCluster extends Basic {
                 //get the appropriate pool transfer object for the site
                 PoolTransfer pt = this.getStageOutPoolTransfer( site, localTransfer, bundle );
                 //we add the appropriate file transfer
-                soTC = pt.addTransfer( ft, level, Job.STAGE_OUT_JOB );
+                soTC = this.addTransfer( pt, ft, level, Job.STAGE_OUT_JOB );
                 String soJob = soTC.getTXName();
 
                 if (!deletedLeaf) {
@@ -646,6 +646,22 @@ public class BalancedCluster extends Basic {
 
     }
 
+    /**
+     * Adds a single file transfer to one of the transfer containers of a
+     * PoolTransfer. The default implementation does a round robin
+     * distribution of the files amongst the transfer jobs.
+     *
+     * @param pt     the PoolTransfer for the staging site
+     * @param ft     the file transfer to be added
+     * @param level  the level of the workflow
+     * @param type   the type of transfer job
+     *
+     * @return  the Transfer Container to which the file transfer was added.
+     */
+    protected TransferContainer addTransfer( PoolTransfer pt, FileTransfer ft, int level, int type ){
+        return pt.addTransfer( ft, level, type );
+    }
+
     /**
      * Returns the bundle value associated with a compute job as a String.
      * 
@@ -1153,6 +1169,12 @@ public class BalancedCluster extends Basic {
          */
         private boolean mLocalTransfer;
 
+        /**
+         * The number of bytes assigned to each transfer container. Only
+         * updated when transfers are added by size.
+         */
+        private double[] mLoad;
+
         /**
          * The default constructor.
          */
@@ -1162,6 +1184,7 @@ public class BalancedCluster extends Basic {
             mPool     = null;
             mTXContainers = null;
             mLocalTransfer = true;
+            mLoad     = new double[0];
          }
 
         /**
@@ -1182,6 +1205,7 @@ public class BalancedCluster extends Basic {
             for(int i = 0; i < number; i++){
                 mTXContainers.add(null);
             }
+            mLoad     = new double[ number ];
         }
 
       /**
@@ -1262,6 +1286,40 @@ public class BalancedCluster extends Basic {
            return tc;
        }
 
+       /**
+        * Adds a single <code>FileTransfer</code> object to the TransferContainer
+        * that has the least number of bytes assigned to it so far. Ties are
+        * broken in favor of the container with the lower index, so that empty
+        * containers are filled up in order.
+        *
+        * @param file   the file transfer to be added
+        * @param size   the size in bytes to be charged for the file
+        * @param level  the level of the workflow
+        * @param type   the type of transfer job
+        *
+        * @return  the Transfer Container to which the file transfer was added.
+        */
+       public TransferContainer addTransfer( FileTransfer file, double size, int level, int type ){
+           int index = 0;
+           for( int i = 1; i < mCapacity; i++ ){
+               if( mLoad[i] < mLoad[index] ){
+                   index = i;
+               }
+           }
+
+           TransferContainer tc = (TransferContainer)mTXContainers.get( index );
+           if( tc == null ){
+               tc = new TransferContainer();
+               tc.setTXName( getTXJobName( index, type, level ) );
+               //add the name for the registration job that maybe associated
+               tc.setRegName( getRegJobName( index, level ) );
+               mTXContainers.set( index, tc );
+           }
+           tc.addTransfer( file );
+           mLoad[ index ] += size;
+
+           return tc;
+       }
 
         
 
@@ -0,0 +1,262 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.transfer.refiner;
+
+
+import edu.isi.pegasus.common.logging.LogManager;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.FileTransfer;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+
+import edu.isi.pegasus.planner.namespace.Metadata;
+
+import edu.isi.pegasus.planner.refiner.ReplicaCatalogBridge;
+
+import edu.isi.pegasus.planner.transfer.Implementation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An extension of the BalancedCluster refiner, that distributes the files
+ * amongst the stagein and stageout jobs on the basis of the file sizes, instead
+ * of doing a round robin distribution. The number of transfer jobs created
+ * per level of the workflow is the same as for BalancedCluster.
+ *
+ * <p>
+ * The files for a compute job are sorted in decreasing order of size, and
+ * each file is then assigned to the transfer job that has the least number
+ * of bytes assigned to it so far ( longest processing time first ).
+ *
+ * <p>
+ * The size of a file is picked up from the size attribute in the DAX, or the
+ * size metadata attribute associated with the file in the DAX or the replica
+ * catalog. If the size of a file is not known, it is charged the average size
+ * of the files with known sizes seen so far. If no sizes are known at all, each
+ * file is charged a single unit, and the refiner falls back to balancing the
+ * number of files per transfer job, which is similar to BalancedCluster.
+ *
+ * <p>
+ * To use this refiner, set the following property
+ * <pre>
+ *   pegasus.transfer.refiner  SizeBalancedCluster
+ * </pre>
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class SizeBalancedCluster extends BalancedCluster {
+
+    /**
+     * A short description of the transfer refinement.
+     */
+    public static final String DESCRIPTION =
+                      "Size Balanced Cluster Transfer Refiner( size based distribution at file level)";
+
+    /**
+     * The size charged for a file when no sizes are known.
+     */
+    private static final double UNKNOWN_SIZE_UNIT = 1;
+
+    /**
+     * Comparator that sorts file transfers in decreasing order of size.
+     */
+    private final Comparator<FileTransfer> mDecreasingSize;
+
+    /**
+     * The total bytes of the files with known sizes.
+     */
+    private double mKnownBytes;
+
+    /**
+     * The number of files with known sizes.
+     */
+    private long mKnownFiles;
+
+    /**
+     * The number of files for which no size was known.
+     */
+    private long mUnknownFiles;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param dag        the workflow to which transfer nodes need to be added.
+     * @param bag        the bag of initialization objects
+     *
+     */
+    public SizeBalancedCluster( ADag dag, PegasusBag bag ){
+        super( dag, bag );
+        mKnownBytes   = 0;
+        mKnownFiles   = 0;
+        mUnknownFiles = 0;
+        mDecreasingSize = new Comparator<FileTransfer>(){
+            public int compare( FileTransfer a, FileTransfer b ){
+                return Double.compare( getSize( b ), getSize( a ) );
+            }
+        };
+    }
+
+    /**
+     * Adds the stage in transfer nodes which transfer the input files for a job,
+     * from the location returned from the replica catalog to the job's execution
+     * pool. The files are sorted in decreasing order of size, before being
+     * distributed amongst the stagein jobs.
+     *
+     * @param job   <code>Job</code> object corresponding to the node to
+     *              which the files are to be transferred to.
+     * @param localTransfer boolean indicating whether transfer has to happen on local site.
+     * @param files Collection of <code>FileTransfer</code> objects containing the
+     *              information about source and destURL's.
+     * @param type  the type of transfer job being created
+     * @param stageInMap  Map indexed by site name that gives all the transfers for
+     *                   that site.
+     * @param bundleValue   used to determine the bundling factor to employ for a job.
+     * @param implementation  the transfer implementation to use.
+     */
+    public  void addStageInXFERNodes( Job job,
+                                      boolean localTransfer,
+                                      Collection files,
+                                      int type,
+                                      Map<String,PoolTransfer> stageInMap,
+                                      ClusterValue bundleValue,
+                                      Implementation implementation ){
+
+        this.sortBySize( files );
+        super.addStageInXFERNodes( job, localTransfer, files, type, stageInMap, bundleValue, implementation );
+    }
+
+    /**
+     * Adds the stageout transfer nodes, that stage data to an output site
+     * specified by the user. The files are sorted in decreasing order of size,
+     * before being distributed amongst the stageout jobs.
+     *
+     * @param job   <code>Job</code> object corresponding to the node to
+     *              which the files are to be transferred to.
+     * @param files Collection of <code>FileTransfer</code> objects containing the
+     *              information about source and destURL's.
+     * @param rcb   bridge to the Replica Catalog. Used for creating registration
+     *              nodes in the workflow.
+     * @param localTransfer  whether the transfer should be on local site or not.
+     * @param deletedLeaf to specify whether the node is being added for
+     *                      a deleted node by the reduction engine or not.
+     *                      default: false
+     */
+    public  void addStageOutXFERNodes(Job job,
+                                      Collection files,
+                                      ReplicaCatalogBridge rcb,
+                                      boolean localTransfer,
+                                      boolean deletedLeaf){
+        this.sortBySize( files );
+        super.addStageOutXFERNodes( job, files, rcb, localTransfer, deletedLeaf );
+    }
+
+    /**
+     * Adds a single file transfer to the transfer container of the PoolTransfer,
+     * that has the least number of bytes assigned to it.
+     *
+     * @param pt     the PoolTransfer for the staging site
+     * @param ft     the file transfer to be added
+     * @param level  the level of the workflow
+     * @param type   the type of transfer job
+     *
+     * @return  the Transfer Container to which the file transfer was added.
+     */
+    protected TransferContainer addTransfer( PoolTransfer pt, FileTransfer ft, int level, int type ){
+        double size = getSize( ft );
+        if( size < 0 ){
+            //charge the average of the known sizes
+            mUnknownFiles++;
+            size = ( mKnownFiles == 0 ) ?
+                    SizeBalancedCluster.UNKNOWN_SIZE_UNIT :
+                    mKnownBytes / mKnownFiles;
+        }
+        else{
+            mKnownBytes += size;
+            mKnownFiles++;
+        }
+        return pt.addTransfer( ft, size, level, type );
+    }
+
+    /**
+     * Signals that the traversal of the workflow is done.
+     */
+    public void done( ){
+        super.done();
+
+        if( mUnknownFiles > 0 ){
+            mLogger.log( "Sizes were not known for " + mUnknownFiles + " of " +
+                         ( mUnknownFiles + mKnownFiles ) + " files transferred. " +
+                         "Transfer jobs may not be balanced by size.",
+                         ( mKnownFiles == 0 ) ? LogManager.WARNING_MESSAGE_LEVEL :
+                                                LogManager.CONFIG_MESSAGE_LEVEL );
+        }
+    }
+
+    /**
+     * Returns a textual description of the transfer mode.
+     *
+     * @return a short textual description
+     */
+    public  String getDescription(){
+        return SizeBalancedCluster.DESCRIPTION;
+    }
+
+    /**
+     * Sorts the file transfers in decreasing order of size, if the
+     * collection is a list.
+     *
+     * @param files  the collection of <code>FileTransfer</code> objects
+     */
+    protected void sortBySize( Collection files ){
+        if( files instanceof List && files.size() > 1 ){
+            Collections.sort( (List<FileTransfer>)files, mDecreasingSize );
+        }
+    }
+
+    /**
+     * Returns the size of the file being transferred. The size attribute is
+     * used if set, else the size metadata attribute.
+     *
+     * @param ft  the file transfer
+     *
+     * @return size in bytes, else -1 if not known
+     */
+    protected double getSize( FileTransfer ft ){
+        double size = ft.getSize();
+        if( size >= 0 ){
+            return size;
+        }
+
+        String value = ft.getMetadata( Metadata.SIZE_KEY );
+        if( value != null ){
+            try{
+                size = Double.parseDouble( value );
+            }
+            catch( NumberFormatException e ){
+                //ignore and treat the size as unknown
+            }
+        }
+        return ( size >= 0 ) ? size : -1;
+    }
+}
@@ -63,6 +63,12 @@ public class AnnotationSchema extends DatabaseSchema
   protected static final String[] c_lfn_names =
   { "ANNO_LFN_I", "ANNO_LFN_O", "ANNO_LFN_B" };
 
+  /**
+   * Number of LFNs looked up by one batched query. Shorter batches are
+   * padded by repeating the last LFN.
+   */
+  protected static final int c_batch_size = 64;
+
   /**
    * Communication between saveDefinition and deleteDefinition in
    * update mode.
@@ -123,7 +129,8 @@ public class AnnotationSchema extends DatabaseSchema
     super( dbDriverName, VDC.PROPERTY_PREFIX ); 
     Logging.instance().log( "dbschema", 3, "done with default schema c'tor" );
 
-    this.m_cache = this.m_dbdriver.cachingMakesSense() ? new Cache(600) : null;
+    this.m_cache = this.m_dbdriver.cachingMakesSense() ?
+      new Cache( "annotation definition cache", 600, Cache.DEFAULT_SIZE ) : null;
     this.m_deferDeleteCommit = false;
     this.m_parser = null;
 
@@ -168,6 +175,15 @@ public class AnnotationSchema extends DatabaseSchema
 	"SELECT distinct did FROM anno_lfn_o WHERE name=?" );
     this.m_dbdriver.insertPreparedStatement( "stmt.select.lfn_b", 
 	"SELECT distinct did FROM anno_lfn_b WHERE name=?" );
+
+    // batched lookups of many LFNs, one statement per table
+    StringBuffer in = new StringBuffer( 2*c_batch_size );
+    for ( int ii=0; ii<c_batch_size; ++ii ) in.append( ii==0 ? "?" : ",?" );
+    for ( int ii=0; ii<c_lfn_names.length; ++ii ) {
+      String table = c_lfn_names[ii].toLowerCase();
+      this.m_dbdriver.insertPreparedStatement( "stmt.select." + table + ".batch",
+	"SELECT distinct did,name FROM " + table + " WHERE name IN (" + in + ")" );
+    }
     this.m_dbdriver.insertPreparedStatement( "stmt.select.lfn_*",
 	"SELECT distinct did FROM anno_lfn_i WHERE name=? UNION " +
 	"SELECT distinct did FROM anno_lfn_o WHERE name=? UNION " +
@@ -1193,6 +1209,73 @@ public class AnnotationSchema extends DatabaseSchema
     return result;
   }
 
+  /**
+   * Searches the database for all derivations that contain any of a
+   * number of LFNs. The LFNs are looked up in batches of c_batch_size
+   * per query, except for wildcard linkage, which uses one query per
+   * LFN.
+   *
+   * @param lfns   a collection of LFN names
+   * @param link   the linkage type of the LFNs
+   * @return       a map from each LFN to a list of Definition items that
+   *               match the criterion. The list may be empty.
+   *
+   * @see #searchFilename( String, int )
+   */
+  public java.util.Map searchFilenames( java.util.Collection lfns, int link )
+    throws SQLException 
+  {
+    java.util.Map result = new HashMap();
+    java.util.List names = new ArrayList();
+    for ( Iterator i=lfns.iterator(); i.hasNext(); ) {
+      String lfn = (String) i.next();
+      if ( lfn == null )
+	throw new NullPointerException("You must query for a filename");
+      if ( ! result.containsKey(lfn) ) {
+	result.put( lfn, new ArrayList() );
+	names.add(lfn);
+      }
+    }
+
+    if ( link == -1 ) {
+      // wildcard match, no batched statement
+      for ( Iterator i=names.iterator(); i.hasNext(); ) {
+	String lfn = (String) i.next();
+	result.put( lfn, searchFilename( lfn, link ) );
+      }
+      return result;
+    }
+    if ( link == LFN.NONE )
+      throw new RuntimeException( "The linkage \"none\" is not permitted" );
+    if ( ! LFN.isInRange(link) )
+      throw new RuntimeException( "The linkage " + link + " is not permitted" );
+
+    String table = c_lfn_names[link-1];
+    Logging.instance().log("xaction", 1, "START select LFNs batch" );
+    PreparedStatement ps = 
+      this.m_dbdriver.getPreparedStatement( "stmt.select." + 
+					    table.toLowerCase() + ".batch" );
+    for ( int start=0; start < names.size(); start += c_batch_size ) {
+      int end = Math.min( start + c_batch_size, names.size() );
+      for ( int ii=0; ii<c_batch_size; ++ii ) 
+	ps.setString( ii+1, (String) names.get( Math.min( start+ii, end-1 ) ) );
+      Logging.instance().log( "chunk", 2, "SELECT distinct did,name FROM " + 
+			      table + " WHERE name IN (" + (end-start) + 
+			      " names)" );
+
+      ResultSet rs = ps.executeQuery();
+      while ( rs.next() ) {
+	java.util.List list = (java.util.List) result.get( rs.getString(2) );
+	Definition d = loadDefinition( rs.getLong(1) );
+	if ( d != null && list != null ) list.add(d);
+      }
+      rs.close();
+    }
+
+    Logging.instance().log("xaction", 1, "FINAL select LFNs batch" );
+    return result;
+  }
+
   //
   //
   // annotations
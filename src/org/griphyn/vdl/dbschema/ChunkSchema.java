@@ -43,6 +43,12 @@ public class ChunkSchema extends DatabaseSchema implements VDC
   protected static final String[] c_lfn_names =
   { "VDC_NLFN", "VDC_ILFN", "VDC_OLFN", "VDC_BLFN" };
 
+  /**
+   * Number of LFNs looked up by one batched query. Shorter batches are
+   * padded by repeating the last LFN.
+   */
+  protected static final int c_batch_size = 64;
+
   /**
    * Communication between saveDefinition and deleteDefinition in
    * update mode.
@@ -103,7 +109,8 @@ public class ChunkSchema extends DatabaseSchema implements VDC
     super( dbDriverName, PROPERTY_PREFIX ); 
     Logging.instance().log( "dbschema", 3, "done with default schema c'tor" );
 
-    this.m_cache = this.m_dbdriver.cachingMakesSense() ? new Cache(600) : null;
+    this.m_cache = this.m_dbdriver.cachingMakesSense() ?
+      new Cache( "chunk definition cache", 600, Cache.DEFAULT_SIZE ) : null;
     this.m_deferDeleteCommit = false;
     this.m_parser = null;
 
@@ -128,6 +135,15 @@ public class ChunkSchema extends DatabaseSchema implements VDC
 	"SELECT distinct id FROM vdc_olfn WHERE name=?" );
     this.m_dbdriver.insertPreparedStatement( "stmt.select.blfn", 
 	"SELECT distinct id FROM vdc_blfn WHERE name=?" );
+
+    // batched lookups of many LFNs, one statement per table
+    StringBuffer in = new StringBuffer( 2*c_batch_size );
+    for ( int ii=0; ii<c_batch_size; ++ii ) in.append( ii==0 ? "?" : ",?" );
+    for ( int ii=0; ii<c_lfn_names.length; ++ii ) {
+      String table = c_lfn_names[ii].toLowerCase();
+      this.m_dbdriver.insertPreparedStatement( "stmt.select." + table + ".batch",
+	"SELECT distinct id,name FROM " + table + " WHERE name IN (" + in + ")" );
+    }
     this.m_dbdriver.insertPreparedStatement( "stmt.select.all.lfn",
 	"SELECT distinct did FROM vdc_nlfn WHERE name=? UNION " +
 	"SELECT distinct did FROM vdc_ilfn WHERE name=? UNION " +
@@ -850,4 +866,69 @@ public class ChunkSchema extends DatabaseSchema implements VDC
     Logging.instance().log("xaction", 1, "FINAL select LFNs" );
     return result;
   }
+
+  /**
+   * Searches the database for all derivations that contain any of a
+   * number of LFNs. The LFNs are looked up in batches of c_batch_size
+   * per query, except for wildcard linkage, which uses one query per
+   * LFN.
+   *
+   * @param lfns   a collection of LFN names
+   * @param link   the linkage type of the LFNs
+   * @return       a map from each LFN to a list of Definition items that
+   *               match the criterion. The list may be empty.
+   *
+   * @see #searchFilename( String, int )
+   */
+  public java.util.Map searchFilenames( java.util.Collection lfns, int link )
+    throws SQLException 
+  {
+    java.util.Map result = new HashMap();
+    java.util.List names = new ArrayList();
+    for ( Iterator i=lfns.iterator(); i.hasNext(); ) {
+      String lfn = (String) i.next();
+      if ( lfn == null )
+	throw new NullPointerException("You must query for a filename");
+      if ( ! result.containsKey(lfn) ) {
+	result.put( lfn, new ArrayList() );
+	names.add(lfn);
+      }
+    }
+
+    if ( link == -1 ) {
+      // wildcard match, no batched statement
+      for ( Iterator i=names.iterator(); i.hasNext(); ) {
+	String lfn = (String) i.next();
+	result.put( lfn, searchFilename( lfn, link ) );
+      }
+      return result;
+    }
+    if ( ! LFN.isInRange(link) )
+      throw new RuntimeException( "Unknown linkage value " + link );
+
+    String table = c_lfn_names[link];
+    Logging.instance().log("xaction", 1, "START select LFNs batch" );
+    PreparedStatement ps = 
+      this.m_dbdriver.getPreparedStatement( "stmt.select." + 
+					    table.toLowerCase() + ".batch" );
+    for ( int start=0; start < names.size(); start += c_batch_size ) {
+      int end = Math.min( start + c_batch_size, names.size() );
+      for ( int ii=0; ii<c_batch_size; ++ii ) 
+	ps.setString( ii+1, (String) names.get( Math.min( start+ii, end-1 ) ) );
+      Logging.instance().log( "chunk", 2, "SELECT distinct id,name FROM " + 
+			      table + " WHERE name IN (" + (end-start) + 
+			      " names)" );
+
+      ResultSet rs = ps.executeQuery();
+      while ( rs.next() ) {
+	java.util.List list = (java.util.List) result.get( rs.getString(2) );
+	Definition d = loadDefinition( rs.getLong(1) );
+	if ( d != null && list != null ) list.add(d);
+      }
+      rs.close();
+    }
+
+    Logging.instance().log("xaction", 1, "FINAL select LFNs batch" );
+    return result;
+  }
 }
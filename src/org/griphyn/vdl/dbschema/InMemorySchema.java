@@ -387,6 +387,94 @@ public class InMemorySchema extends DatabaseSchema implements VDC
     return result;
   }
 
+  /**
+   * Searches the database for all derivations that contain any of a
+   * number of LFNs. All derivations are checked in a single pass, 
+   * instead of one pass per LFN.
+   *
+   * @param lfns   a collection of LFN names
+   * @param link   the linkage type of the LFNs
+   * @return       a map from each LFN to a list of Definition items that
+   *               match the criterion. The list may be empty.
+   *
+   * @see #searchFilename( String, int )
+   */
+  public java.util.Map 
+    searchFilenames( java.util.Collection lfns, 
+		     int link )
+    throws SQLException
+  {
+    java.util.Map result = new HashMap();
+    for ( Iterator i=lfns.iterator(); i.hasNext(); ) {
+      String lfn = (String) i.next();
+      if ( lfn == null )
+	throw new NullPointerException("You must query for a filename");
+      result.put( lfn, new ArrayList() );
+    }
+
+    // check all Derivations once (this may be time consuming!)
+    for ( Iterator i=this.m_memory.iterateDefinition(); i.hasNext(); ) {
+      Definition d = (Definition) i.next();
+      if ( d instanceof Derivation ) {
+        Derivation dv = (Derivation) d;
+        Set found = new HashSet();
+        for ( Iterator j=dv.iteratePass(); j.hasNext(); ) {
+          Value actual = ((Pass) j.next()).getValue();
+          switch ( actual.getContainerType() ) {
+          case Value.SCALAR:
+            // this is a regular SCALAR
+            scalarCollectLfn( (Scalar) actual, result.keySet(), link, found );
+            break;
+          case Value.LIST:
+            // a LIST is a list of SCALARs
+            org.griphyn.vdl.classes.List list = 
+              (org.griphyn.vdl.classes.List) actual;
+            for ( Iterator f = list.iterateScalar(); f.hasNext() ; ) 
+              scalarCollectLfn( (Scalar) f.next(), result.keySet(), link, found );
+            break;
+          default:
+            // this should not happen
+            Logging.instance().log( "default", 0,
+                                    "WARNING: An actual argument \"" +
+                                    actual.toString() +
+                                    "\" is neither SCALAR nor LIST" );
+            break;
+          }
+        }
+
+        for ( Iterator j=found.iterator(); j.hasNext(); ) 
+          ((java.util.List) result.get( j.next() )).add(dv);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * This helper function collects the logical filenames from a given
+   * Scalar instance, that are part of a set of wanted filenames.
+   *
+   * @param scalar is a Scalar instance to check
+   * @param wanted is the set of logical filenames to check for
+   * @param link is the linkage type of the lfn. 
+   * if -1, do not check the linkage type.
+   * @param found is the set to which the found filenames are added
+   */
+  protected void scalarCollectLfn( Scalar scalar, Set wanted, int link, 
+				   Set found )
+  {
+    for ( Iterator e = scalar.iterateLeaf(); e.hasNext(); ) {
+      org.griphyn.vdl.classes.Leaf leaf =
+        (org.griphyn.vdl.classes.Leaf) e.next();
+      if ( leaf instanceof LFN ) {
+        LFN local = (LFN) leaf;
+        if ( (link == -1 || local.getLink() == link) &&
+             wanted.contains( local.getFilename() ) )
+          found.add( local.getFilename() );
+      }
+    }
+  }
+
   /**
    * This helper function checks, if a given Scalar instance
    * contains the specified logical filename as LFN instance anywhere
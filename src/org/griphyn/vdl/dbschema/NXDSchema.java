@@ -589,6 +589,27 @@ public class NXDSchema extends DatabaseSchema implements XDC
     return result;
   }
 
+  /**
+   * Searches the database for all derivations that contain any of a
+   * number of LFNs. The XML database is queried once per LFN.
+   *
+   * @param lfns   a collection of LFN names
+   * @param link   the linkage type of the LFNs
+   * @return       a map from each LFN to a list of Definition items that
+   *               match the criterion. The list may be empty.
+   */
+  public java.util.Map searchFilenames( java.util.Collection lfns, int link )
+    throws SQLException 
+  {
+    java.util.Map result = new java.util.HashMap();
+    for ( java.util.Iterator i=lfns.iterator(); i.hasNext(); ) {
+      String lfn = (String) i.next();
+      if ( ! result.containsKey(lfn) ) 
+	result.put( lfn, searchFilename( lfn, link ) );
+    }
+    return result;
+  }
+
 
   /**
    * Delete one or more definitions from the backend database. The key
@@ -180,4 +180,23 @@ public interface VDC extends Catalog
 		    int link )
     throws SQLException;
 
+  /**
+   * Searches the database for all derivations that contain any of a
+   * number of LFNs. This is the batched form of searchFilename, which
+   * permits backends to answer for many LFNs in fewer round trips. The
+   * linkage is an additional constraint. This method does not allow
+   * jokers.
+   *
+   * @param lfns   a collection of LFN names
+   * @param link   the linkage type of the LFNs
+   * @return       a map from each LFN to a list of Definition items that
+   *               match the criterion. The list may be empty.
+   *
+   * @see #searchFilename( String, int )
+   */
+  public abstract java.util.Map 
+    searchFilenames( java.util.Collection lfns, 
+		     int link )
+    throws SQLException;
+
 }
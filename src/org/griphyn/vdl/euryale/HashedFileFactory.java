@@ -135,6 +135,14 @@ public class HashedFileFactory extends FlatFileFactory {
      */
     protected int mh_digits;
 
+    /**
+     * The leaf directory the virtual constructor last placed a file into.
+     * The hashed position only ever moves forward, so the directories are
+     * checked for and created only when the position moves on to the next
+     * leaf directory, on its first use.
+     */
+    protected File m_lastDirectory;
+
     /**
      * Resets the helper structures after changing layout parameters. You will
      * also need to call this function after you invoked the virtual
@@ -144,6 +152,7 @@ public class HashedFileFactory extends FlatFileFactory {
     public void reset() {
         super.reset();
         m_count = 0;
+        m_lastDirectory = null;
         mh_level = new int[m_levels];
         mh_digits = (int) Math.ceil(Math.log(m_filesPerDirectory) / Math.log(16));
         mh_buffer = new StringBuffer(mh_digits);
@@ -304,8 +313,13 @@ public class HashedFileFactory extends FlatFileFactory {
             throw new RuntimeException("ERROR! Wrap-around of generator.");
         }
 
-        //create the base directory if required
-        File d = createDirectory();
+        //create the base directory if required, the first time a file
+        //is placed into it
+        File d = getDirectory();
+        if (!d.equals(m_lastDirectory)) {
+            d = createDirectory();
+            m_lastDirectory = d;
+        }
 
         // return position in new (or old) directory
         return new File(d, basename);
@@ -338,6 +352,20 @@ public class HashedFileFactory extends FlatFileFactory {
         return d;
     }
 
+    /**
+     * Returns the directory for the current hashed position, without checking
+     * for it or creating it.
+     *
+     * @return the File structure to the directory
+     */
+    protected File getDirectory() {
+        File d = getBaseDirectory();
+        for (int i = 0; i < m_levels; ++i) {
+            d = new File(d, format(mh_level[i]));
+        }
+        return d;
+    }
+
     /**
      * Returns the number of times the regular virtual constructor for
      * structured entries was called.
@@ -18,17 +18,93 @@ import java.util.*;
 import org.griphyn.vdl.util.Logging;
 
 /**
+ * A size-bounded cache with a time to live for its entries. When the
+ * cache is full, the least recently used entry is evicted. Besides the
+ * regular (positive) entries, the cache can remember that a key is
+ * known to have no value. Such negative entries usually have a shorter
+ * lifetime than positive entries. All methods are thread-safe, and
+ * each cache instance maintains its own statistics.
+ *
  * @author Jens-S. Vöckler
  * @author Yong Zhao
  * @version $Revision$
  */
 public class Cache 
 {
+  /**
+   * The value returned by {@link #get( Object )} for a negative entry.
+   * A negative entry remembers that the key is known to have no value.
+   */
+  public static final Object NEGATIVE = new Object() {
+      public String toString() { return "NEGATIVE"; }
+    };
+
+  /**
+   * The default maximum number of entries in a cache.
+   */
+  public static final int DEFAULT_SIZE = 10000;
+
+  /**
+   * The default maximum lifetime of a negative entry in seconds.
+   */
+  public static final int DEFAULT_NEGATIVE_TTL = 60;
+
+  /**
+   * Index of the insert counter in the statistics.
+   */
+  public static final int INSERT = 0;
+
+  /**
+   * Index of the update counter in the statistics.
+   */
+  public static final int UPDATE = 1;
+
+  /**
+   * Index of the miss counter in the statistics.
+   */
+  public static final int MISS = 2;
+
+  /**
+   * Index of the expired counter in the statistics.
+   */
+  public static final int EXPIRED = 3;
+
+  /**
+   * Index of the hit counter in the statistics. Hits on negative
+   * entries are included.
+   */
+  public static final int HIT = 4;
+
+  /**
+   * Index of the counter for hits on negative entries in the statistics.
+   */
+  public static final int NEGATIVE_HIT = 5;
+
+  /**
+   * Index of the eviction counter in the statistics.
+   */
+  public static final int EVICT = 6;
+
   /**
    * remember how long to save a cache entry.
    */
   long m_ttl = 0;
 
+  /**
+   * remember how long to save a negative cache entry.
+   */
+  long m_negativeTtl = 0;
+
+  /**
+   * the maximum number of entries.
+   */
+  int m_maxSize;
+
+  /**
+   * the name of the cache, used when logging the statistics.
+   */
+  String m_name;
+
   /**
    * Interior class to encapsulate cached objects and their additional
    * management keys.
@@ -46,29 +122,36 @@ public class Cache
     long m_expire;
     
     /**
-     * Constructs a cache item with its management data. The time to live
-     * is determined from the member variable. 
+     * Constructs a cache item with its management data. 
      *
      * @param value is the object to be cached.
+     * @param ttl is the lifetime of the item in milliseconds.
      */
-    CacheEntry( Object value )
+    CacheEntry( Object value, long ttl )
     {
       this.m_value = value;
-      this.m_expire = System.currentTimeMillis() + m_ttl;
+      this.m_expire = System.currentTimeMillis() + ttl;
     }
   }
 
   /**
    * remember the objects to cache for. The cache consists of a concise
    * key to locate any object, a value for the located large object, and
-   * a lifetime for the object.
+   * a lifetime for the object. The map is kept in access order, so that
+   * the eldest entry is the least recently used one.
    */
-  java.util.Map m_cache = null;
+  java.util.LinkedHashMap m_cache = null;
 
   /**
-   * Maintains statistics.
+   * Maintains statistics: insert, update, miss, expired, hit,
+   * negative hit, evicted.
    */
-  static long[] m_stats = null;
+  long[] m_stats = new long[7];
+
+  /**
+   * All caches, whose statistics are logged at shutdown. 
+   */
+  static Map c_caches = null;
 
   /**
    * ctor: Initialize the base functionalities of the cache.
@@ -76,71 +159,190 @@ public class Cache
    */
   public Cache( int ttl )
   {
-    this.m_ttl = 1000*ttl;
-    this.m_cache = new java.util.HashMap();
-    if ( m_stats == null ) {
-      // Singleton: 
-      Cache.m_stats = new long[5]; // insert, update, miss, expired, hit
+    this( "cache", ttl, Cache.DEFAULT_SIZE );
+  }
+
+  /**
+   * ctor: Initialize the base functionalities of the cache.
+   * @param name is a short name of the cache for the statistics.
+   * @param ttl is the lifetime of a positive entry in seconds.
+   * @param maxSize is the maximum number of entries to keep.
+   */
+  public Cache( String name, int ttl, int maxSize )
+  {
+    this( name, ttl, Math.min( ttl, Cache.DEFAULT_NEGATIVE_TTL ), maxSize );
+  }
+
+  /**
+   * ctor: Initialize the base functionalities of the cache.
+   * @param name is a short name of the cache for the statistics.
+   * @param ttl is the lifetime of a positive entry in seconds.
+   * @param negativeTtl is the lifetime of a negative entry in seconds.
+   * @param maxSize is the maximum number of entries to keep.
+   */
+  public Cache( String name, int ttl, int negativeTtl, int maxSize )
+  {
+    if ( maxSize < 1 ) 
+      throw new IllegalArgumentException( "illegal cache size " + maxSize );
+    this.m_name = name;
+    this.m_ttl = 1000L*ttl;
+    this.m_negativeTtl = 1000L*negativeTtl;
+    this.m_maxSize = maxSize;
+    this.m_cache = new java.util.LinkedHashMap( 64, 0.75f, true ) {
+	protected boolean removeEldestEntry( Map.Entry eldest ) {
+	  if ( size() > m_maxSize ) {
+	    m_stats[EVICT]++;
+	    return true;
+	  }
+	  return false;
+	}
+      };
+    register( this );
+  }
+
+  /**
+   * Remembers a cache for the statistics logged at shutdown.
+   * @param cache is the cache to remember.
+   */
+  private static synchronized void register( Cache cache )
+  {
+    if ( c_caches == null ) {
+      // Singleton: weak keys so that the registry does not keep caches alive
+      Cache.c_caches = new WeakHashMap();
 
       Runtime.getRuntime().addShutdownHook(new Thread() {
 	  public void run() {
-	    Logging.instance().log( "cache", 0, "ins=" + Cache.m_stats[0] +
-				    ",updt=" + Cache.m_stats[1] +
-				    ",miss=" + Cache.m_stats[2] +
-				    ",hit=" + Cache.m_stats[4] );
+	    Cache[] caches;
+	    synchronized ( Cache.class ) {
+	      caches = (Cache[]) c_caches.keySet().toArray( new Cache[0] );
+	    }
+	    for ( int i=0; i<caches.length; ++i ) {
+	      if ( caches[i] != null ) 
+		Logging.instance().log( "cache", 0, caches[i].toString() );
+	    }
 	  }
 	});
     }
+    c_caches.put( cache, null );
   }
 
   /**
    * Enters a value into the cache.
    * @param key is a concise, unique description of the object.
    * @param value is the object to be cached. 
-   * @return <code>null</code> for a fresh object, or the old CacheEntry.
+   * @return <code>null</code> for a fresh object, or the old value.
    */
   public Object set( Object key, Object value ) 
+  {
+    return put( key, value, this.m_ttl );
+  }
+
+  /**
+   * Enters a negative entry into the cache, which remembers that the
+   * key is known to have no value. A negative entry lives for the 
+   * lifetime of negative entries.
+   * @param key is a concise, unique description of the object.
+   * @return <code>null</code> for a fresh object, or the old value.
+   * @see #NEGATIVE
+   */
+  public Object setNegative( Object key )
+  {
+    return put( key, Cache.NEGATIVE, this.m_negativeTtl );
+  }
+
+  /**
+   * Worker for entering values and negative entries into the cache.
+   * @param key is a concise, unique description of the object.
+   * @param value is the object to be cached. 
+   * @param ttl is the lifetime of the entry in milliseconds.
+   * @return <code>null</code> for a fresh object, or the old value.
+   */
+  private synchronized Object put( Object key, Object value, long ttl )
   {
     CacheEntry ce = 
-      (CacheEntry) this.m_cache.put( key, new CacheEntry(value) );
-    this.m_stats[ ce == null ? 0 : 1]++; // count insert or update
+      (CacheEntry) this.m_cache.put( key, new CacheEntry(value,ttl) );
+    this.m_stats[ ce == null ? INSERT : UPDATE ]++; 
     return ( ce == null ? null : ce.m_value );
   }
 
   /**
    * Requests an item from the cache.
    * @param key is the descriptor of the object.
+   * @return the cached object, {@link #NEGATIVE} for a negative entry,
+   * or <code>null</code> if the key is unknown or expired.
    */
-  public Object get( Object key )
+  public synchronized Object get( Object key )
   {
     CacheEntry ce = (CacheEntry) this.m_cache.get(key);
 
     // new object?
     if ( ce == null ) {
-      this.m_stats[2]++; // count MISS
+      this.m_stats[MISS]++; 
       return null;
     }
 
     // expired object?
     if ( ce.m_expire < System.currentTimeMillis() ) {
-      this.m_stats[3]++; // count EXPIRED
+      this.m_stats[EXPIRED]++; 
       this.m_cache.remove(key);
       return null; 
     }
 
     // known object!
-    this.m_stats[4]++;
+    this.m_stats[HIT]++;
+    if ( ce.m_value == Cache.NEGATIVE ) this.m_stats[NEGATIVE_HIT]++;
     return ce.m_value;
   }
 
+  /**
+   * Looks at an item in the cache without counting the lookup in the
+   * statistics. Use this method to check which keys still need to be
+   * looked up, before the keys are requested with {@link #get( Object )}.
+   * The entry still counts as recently used for the eviction.
+   * @param key is the descriptor of the object.
+   * @return the cached object, {@link #NEGATIVE} for a negative entry,
+   * or <code>null</code> if the key is unknown or expired.
+   */
+  public synchronized Object peek( Object key )
+  {
+    CacheEntry ce = (CacheEntry) this.m_cache.get(key);
+    return ( ce == null || ce.m_expire < System.currentTimeMillis() ?
+	     null : ce.m_value );
+  }
+
+  /**
+   * Determines the number of entries in the cache, including expired
+   * entries that were not yet removed.
+   * @return the number of entries.
+   */
+  public synchronized int size()
+  {
+    return this.m_cache.size();
+  }
+
   /**
    * Requests a copy of the statistics counters. 
-   * @return the counter values.
+   * @return the counter values, indexed by the statistics constants.
+   * @see #INSERT
+   * @see #HIT
+   * @see #EVICT
    */
-  public long[] getStatistics()
+  public synchronized long[] getStatistics()
   {
-    long[] result = new long[5];
-    System.arraycopy(this.m_stats,0,result,0,5);
+    long[] result = new long[ this.m_stats.length ];
+    System.arraycopy(this.m_stats,0,result,0,result.length);
     return result;
   }
+
+  /**
+   * Renders the name and the statistics of the cache.
+   * @return a one line summary of the cache.
+   */
+  public String toString()
+  {
+    long[] s = getStatistics();
+    return this.m_name + ": size=" + size() + ",ins=" + s[INSERT] + 
+      ",updt=" + s[UPDATE] + ",miss=" + s[MISS] + ",exp=" + s[EXPIRED] + 
+      ",hit=" + s[HIT] + ",neg=" + s[NEGATIVE_HIT] + ",evict=" + s[EVICT];
+  }
 }
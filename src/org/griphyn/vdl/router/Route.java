@@ -159,9 +159,17 @@ public class Route
 	    java.util.List list = vdc.searchFilename( filename, LFN.OUTPUT );
 	    if ( list != null && ! list.isEmpty() ) {
 	      result.addAll(list);
-	      if ( cache != null ) cache.set( filename, result );
+	      if ( cache != null ) cache.set( filename, new ArrayList(list) );
 	      flag = false;
+	    } else {
+	      // negative caching at each level
+	      if ( cache != null ) cache.setNegative( filename );
 	    }
+	  } else if ( item == Cache.NEGATIVE ) {
+	    // known to be absent at this level, continue with the next
+	    Logging.instance().log( "cache", 1, "[" + level + 
+				    "] LFN cache NEG  for " + 
+				    filename );
 	  } else {
 	    // cache hit
 	    Logging.instance().log( "cache", 1, "[" + level + 
@@ -173,15 +181,6 @@ public class Route
 	  level--;
 	}
 
-	if ( flag && result.isEmpty() ) {
-	  // negative caching on the way out
-	  if ( i.hasNext() ) {
-	    StackElement element = (StackElement) i.next();
-	    Cache cache = element.getLFNCache();
-	    if ( cache != null ) cache.set( filename, result );
-	  }
-	}
-
       } catch ( Exception e ) {
 	Logging.instance().log( "default", 0, "caught " + e + ", aborting" );
 	throw new RuntimeException(e.getMessage());
@@ -190,6 +189,65 @@ public class Route
       return result;
     }
 
+    /**
+     * Looks up the producers of a number of logical filenames in one
+     * go, and enters the results into the LFN caches. Only stack 
+     * elements with a cache are queried, and only for filenames that
+     * are not yet cached there. Like derivationsWithOutput, the search
+     * for a filename stops at the first level that produces it. A 
+     * subsequent call to derivationsWithOutput will then be answered
+     * from the caches without a round trip to the database for each
+     * filename.
+     *
+     * @param filenames is a collection of logical filenames to prefetch.
+     * @see #derivationsWithOutput( String )
+     */
+    public void prefetchOutputs( Collection filenames )
+    {
+      if ( filenames == null || filenames.size() < 2 ) return;
+      Logging.instance().log( "trace", 2, "prefetchOutputs(" + 
+			      filenames.size() + " LFNs)" );
+      try {
+	// the filenames not yet known to be produced at a higher level
+	Set pending = new HashSet(filenames);
+	int level = m_stack.size();
+	for ( ListIterator i = m_stack.listIterator(level); 
+	      i.hasPrevious() && ! pending.isEmpty(); level-- ) {
+	  StackElement element = (StackElement) i.previous();
+	  Cache cache = element.getLFNCache();
+	  if ( cache == null ) continue;
+
+	  Set missing = new HashSet();
+	  for ( Iterator j=pending.iterator(); j.hasNext(); ) {
+	    String filename = (String) j.next();
+	    Object item = cache.peek(filename);
+	    if ( item == null ) missing.add(filename);
+	    else if ( item != Cache.NEGATIVE ) j.remove();
+	  }
+	  if ( missing.isEmpty() ) continue;
+
+	  Logging.instance().log( "cache", 0, "[" + level + 
+				  "] LFN cache PREFETCH for " + 
+				  missing.size() + " LFNs" );
+	  VDC vdc = (VDC) element.getDatabaseSchema();
+	  Map found = vdc.searchFilenames( missing, LFN.OUTPUT );
+	  for ( Iterator j=missing.iterator(); j.hasNext(); ) {
+	    String filename = (String) j.next();
+	    java.util.List list = (java.util.List) found.get(filename);
+	    if ( list != null && ! list.isEmpty() ) {
+	      cache.set( filename, new ArrayList(list) );
+	      pending.remove(filename);
+	    } else { 
+	      cache.setNegative( filename );
+	    }
+	  }
+	}
+      } catch ( Exception e ) {
+	Logging.instance().log( "default", 0, "caught " + e + ", aborting" );
+	throw new RuntimeException(e.getMessage());
+      }
+    }
+
     private String genKey( String usesspace, String uses, 
 			   String min, String max )
     {
@@ -236,7 +294,7 @@ public class Route
 	while ( i.hasPrevious() && flag ) {
 	  StackElement element = (StackElement) i.previous();
 	  
-	  // check for existence of LFN
+	  // check for existence of TR
 	  Cache cache = element.getTRCache();
 	  Object item = cache==null ? null : cache.get(key);
 	  if ( item == null ) {
@@ -261,9 +319,16 @@ public class Route
 		result.add(d);
 	    }
 	    if ( ! result.isEmpty() ) { 
-	      if ( cache != null ) cache.set( key, result );
+	      if ( cache != null ) cache.set( key, new ArrayList(result) );
 	      flag = false;
+	    } else {
+	      // negative caching at each level
+	      if ( cache != null ) cache.setNegative( key );
 	    }
+	  } else if ( item == Cache.NEGATIVE ) {
+	    // known to be absent at this level, continue with the next
+	    Logging.instance().log( "cache", 1, "[" + level + 
+				    "] TR cache NEG  for " + key );
 	  } else {
 	    // cache hit
 	    result.addAll( (java.util.List) item );
@@ -274,15 +339,6 @@ public class Route
 	  level--;
 	}
 
-	if ( flag && result.isEmpty() ) {
-	  // negative caching on the way out
-	  if ( i.hasNext() ) {
-	    StackElement element = (StackElement) i.next();
-	    Cache cache = element.getTRCache();
-	    if ( cache != null ) cache.set( key, result );
-	  }
-	}
-
       } catch ( Exception e ) {
 	Logging.instance().log( "default", 0, "caught " + e + ", aborting" );
 	throw new RuntimeException(e.getMessage());
@@ -1241,6 +1297,8 @@ public class Route
 
 	TreeSet parents = new TreeSet();
 	java.util.List input = dv.getLFNList( LFN.INPUT );
+	// look up the producers of all inputs in one go
+	this.m_stack.prefetchOutputs( input );
 	for ( Iterator i = input.iterator(); i.hasNext(); ) {
 	  String lfn = (String) i.next();
 	  parents.addAll( requestLfn( lfn, state, level, dv.getNamespace() ) );
@@ -1539,6 +1597,7 @@ public class Route
   public void requestLfn( Collection list, BookKeeper state )
   {
     if ( m_stack.isEmpty() || list == null || state == null ) return;
+    m_stack.prefetchOutputs( list );
     for ( Iterator i=list.iterator(); i.hasNext(); ) {
       String lfn = (String) i.next();
       Logging.instance().log( "route", 0, "requesting LFN " + lfn );
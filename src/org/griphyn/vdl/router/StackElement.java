@@ -52,8 +52,8 @@ public class StackElement
   {
     this.m_dbschema = schema;
     if ( schema.cachingMakesSense() ) {
-      this.m_lfnCache = new Cache(600);
-      this.m_TRCache = new Cache(600);
+      this.m_lfnCache = new Cache( "LFN cache", 600, Cache.DEFAULT_SIZE );
+      this.m_TRCache = new Cache( "TR cache", 600, Cache.DEFAULT_SIZE );
     } else {
       this.m_lfnCache = this.m_TRCache = null;
     }
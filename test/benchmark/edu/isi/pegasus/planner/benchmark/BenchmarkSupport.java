@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Helper methods shared by the benchmarks.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class BenchmarkSupport {
+
+    /**
+     * Loads a bag with the properties, the logger and the planner options.
+     * The logger only logs warnings and errors, so that the logging does not
+     * show up in the measurements.
+     *
+     * @return the bag
+     */
+    public static PegasusBag loadBag(){
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        LogManager logger = LogManagerFactory.loadSingletonInstance( props );
+        logger.setLevel( LogManager.WARNING_MESSAGE_LEVEL );
+        logger.logEventStart( "benchmark.planner", "setup", "0" );
+
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, logger );
+        bag.add( PegasusBag.PLANNER_OPTIONS, new PlannerOptions() );
+        return bag;
+    }
+
+    /**
+     * Creates a temporary directory for the files of a benchmark.
+     *
+     * @param prefix  the prefix for the directory name
+     *
+     * @return the directory
+     *
+     * @throws IOException in case of error while creating the directory
+     */
+    public static File createDirectory( String prefix ) throws IOException{
+        return Files.createTempDirectory( prefix ).toFile();
+    }
+
+    /**
+     * Deletes a file or a directory recursively.
+     *
+     * @param f  the file to delete
+     */
+    public static void delete( File f ){
+        if( f == null ){
+            return;
+        }
+        File[] children = f.listFiles();
+        if( children != null ){
+            for( File child : children ){
+                delete( child );
+            }
+        }
+        f.delete();
+    }
+}
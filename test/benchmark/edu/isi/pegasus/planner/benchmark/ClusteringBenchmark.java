@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.cluster.ClustererException;
+import edu.isi.pegasus.planner.namespace.Pegasus;
+import edu.isi.pegasus.planner.refiner.NodeCollapser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the horizontal and the label based vertical clustering of the
+ * workflow, after the jobs are mapped to the compute site. For horizontal
+ * clustering the jobs on a level are clustered in groups of ten. For
+ * vertical clustering the jobs in every two consecutive levels carry the
+ * same label. The workflow is regenerated and mapped before each
+ * invocation, as the clustering modifies it in place.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( value = 1, jvmArgsAppend = { "-Xmx4g" } )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+public class ClusteringBenchmark {
+
+    /**
+     * The number of jobs clustered together in horizontal clustering.
+     */
+    private static final String CLUSTER_SIZE = "10";
+
+    /**
+     * The number of jobs in the generated workflow.
+     */
+    @Param( { "1000", "10000", "100000", "1000000" } )
+    public int jobs;
+
+    /**
+     * The clustering technique.
+     */
+    @Param( { "horizontal", "vertical" } )
+    public String technique;
+
+    private WorkflowGenerator mGenerator;
+
+    private File mDirectory;
+
+    private PlannerSetup mSetup;
+
+    private PegasusBag mBag;
+
+    private ADag mDAG;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException{
+        mGenerator = new WorkflowGenerator( jobs );
+        mDirectory = BenchmarkSupport.createDirectory( "pegasus-benchmark-cluster" );
+        mSetup = new PlannerSetup( mDirectory, mGenerator );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown(){
+        BenchmarkSupport.delete( mDirectory );
+    }
+
+    @Setup( Level.Invocation )
+    public void generate() throws IOException{
+        mBag = mSetup.loadBag( technique );
+        mDAG = mGenerator.toADag();
+        boolean horizontal = technique.equals( "horizontal" );
+        for( int i = 0; i < jobs; i++ ){
+            Job job = (Job)mDAG.getNode( mGenerator.getID( i ) ).getContent();
+            if( horizontal ){
+                job.vdsNS.construct( Pegasus.COLLAPSE_KEY, CLUSTER_SIZE );
+            }
+            else{
+                //labelling pairs of levels keeps the clustered workflow acyclic
+                job.vdsNS.construct( Pegasus.LABEL_KEY, "L" + mGenerator.getLevel( i ) / 2 );
+            }
+        }
+        mSetup.selectSites( mDAG, mBag );
+    }
+
+    @Benchmark
+    public ADag cluster() throws ClustererException{
+        return new NodeCollapser( mBag ).cluster( mDAG, technique );
+    }
+}
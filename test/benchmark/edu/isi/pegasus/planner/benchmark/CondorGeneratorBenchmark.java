@@ -0,0 +1,114 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.code.CodeGeneratorException;
+import edu.isi.pegasus.planner.code.generator.condor.CondorGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the writing of the .dag file and the condor submit files for
+ * the executable workflow. The workflow is planned into a new submit
+ * directory before each invocation, as the generator updates the jobs. The
+ * generator is initialized along with it, as the initialization runs
+ * condor_version.
+ * The DAGMan submit file is not written, as it is generated by running
+ * condor_submit_dag, that need not be installed where the benchmarks run.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( value = 1, jvmArgsAppend = { "-Xmx4g" } )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+public class CondorGeneratorBenchmark {
+
+    /**
+     * The number of jobs in the generated workflow.
+     */
+    @Param( { "1000", "10000", "100000", "1000000" } )
+    public int jobs;
+
+    private WorkflowGenerator mGenerator;
+
+    private File mDirectory;
+
+    private PlannerSetup mSetup;
+
+    private PegasusBag mBag;
+
+    private ADag mDAG;
+
+    private CondorGenerator mCodeGenerator;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException{
+        mGenerator = new WorkflowGenerator( jobs );
+        mDirectory = BenchmarkSupport.createDirectory( "pegasus-benchmark-condor" );
+        mSetup = new PlannerSetup( mDirectory, mGenerator );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown(){
+        BenchmarkSupport.delete( mDirectory );
+    }
+
+    @Setup( Level.Invocation )
+    public void plan() throws IOException, CodeGeneratorException{
+        mBag = mSetup.loadBag( null );
+        mDAG = mSetup.plan( mGenerator.toADag(), mBag );
+        mCodeGenerator = new CondorGenerator(){
+            protected void writeOutDAGManSubmitFile( ADag dag, File dagFile ){
+                //needs condor_submit_dag
+            }
+        };
+        mCodeGenerator.initialize( mBag );
+    }
+
+    @TearDown( Level.Invocation )
+    public void clean(){
+        mBag.getHandleToPlannerCache().close();
+        BenchmarkSupport.delete( new File( mBag.getPlannerOptions().getSubmitDirectory() ) );
+    }
+
+    @Benchmark
+    public Collection<File> generate() throws CodeGeneratorException{
+        return mCodeGenerator.generateCode( mDAG );
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.parser.DAXParserFactory;
+import edu.isi.pegasus.planner.parser.Parser;
+import edu.isi.pegasus.planner.parser.dax.Callback;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the parsing of a DAX 3 file into the workflow, using the
+ * parser and the callback the planner loads.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( value = 1, jvmArgsAppend = { "-Xmx4g" } )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+public class DAXParserBenchmark {
+
+    /**
+     * The number of jobs in the generated workflow.
+     */
+    @Param( { "1000", "10000", "100000", "1000000" } )
+    public int jobs;
+
+    private PegasusBag mBag;
+
+    private File mDirectory;
+
+    /**
+     * The path to the generated DAX.
+     */
+    private String mDAX;
+
+    @Setup( Level.Trial )
+    public void setUp() throws Exception{
+        mBag = BenchmarkSupport.loadBag();
+        mDirectory = BenchmarkSupport.createDirectory( "pegasus-benchmark-dax" );
+        mDAX = new File( mDirectory, "synthetic.dax" ).getAbsolutePath();
+        new WorkflowGenerator( jobs ).writeDAX( mDAX );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown(){
+        BenchmarkSupport.delete( mDirectory );
+    }
+
+    @Benchmark
+    public ADag parse(){
+        Callback cb = DAXParserFactory.loadDAXParserCallback( mBag, mDAX, "DAX2CDAG" );
+        Parser p = (Parser)DAXParserFactory.loadDAXParser( mBag, cb, mDAX );
+        p.startParser( mDAX );
+        return (ADag)cb.getConstructedObject();
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.refiner.DataReuseEngine;
+import edu.isi.pegasus.planner.refiner.ReplicaCatalogBridge;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the data reuse reduction of the workflow, where the outputs
+ * of the first half of the jobs are already present in the replica catalog.
+ * The workflow is regenerated before each invocation, as the reduction
+ * modifies it in place.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( value = 1, jvmArgsAppend = { "-Xmx4g" } )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+public class DataReuseBenchmark {
+
+    /**
+     * The number of jobs in the generated workflow.
+     */
+    @Param( { "1000", "10000", "100000", "1000000" } )
+    public int jobs;
+
+    private PegasusBag mBag;
+
+    private WorkflowGenerator mGenerator;
+
+    /**
+     * The files that are in the replica catalog.
+     */
+    private Set<String> mFilesInRC;
+
+    private ADag mDAG;
+
+    private ReplicaCatalogBridge mRCB;
+
+    @Setup( Level.Trial )
+    public void setUp(){
+        mBag = BenchmarkSupport.loadBag();
+        mGenerator = new WorkflowGenerator( jobs );
+        mFilesInRC = new HashSet<String>();
+        for( int i = 0; i < jobs / 2; i++ ){
+            mFilesInRC.add( mGenerator.getOutputFile( i ) );
+        }
+    }
+
+    @Setup( Level.Invocation )
+    public void generate(){
+        mDAG = mGenerator.toADag();
+        mRCB = new StaticReplicaCatalogBridge( mDAG, mBag, mFilesInRC );
+    }
+
+    @Benchmark
+    public ADag reduce(){
+        return new DataReuseEngine( mDAG, mBag ).reduceWorkflow( mDAG, mRCB );
+    }
+
+    /**
+     * A replica catalog bridge that returns a fixed set of files, instead of
+     * querying the replica catalog.
+     */
+    private static class StaticReplicaCatalogBridge extends ReplicaCatalogBridge {
+
+        private final Set<String> mFiles;
+
+        public StaticReplicaCatalogBridge( ADag dag, PegasusBag bag, Set<String> files ){
+            super( dag, bag );
+            mFiles = files;
+        }
+
+        public Set getFilesInReplica(){
+            return mFiles;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.catalog.site.SiteFactory;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationFactory;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Metadata;
+import edu.isi.pegasus.planner.refiner.InterPoolEngine;
+import edu.isi.pegasus.planner.refiner.MainEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Sets up the catalogs and the planner options, for the benchmarks of the
+ * phases of the planner that need a configured planner. The workflow is
+ * planned for a condor pool compute site, with the local site as the output
+ * site. The site catalog, the transformation catalog and the replica
+ * catalog are written out as files in a directory.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class PlannerSetup {
+
+    /**
+     * The handle of the site the jobs are mapped to.
+     */
+    public static final String COMPUTE_SITE = "compute";
+
+    /**
+     * The handle of the output site.
+     */
+    public static final String LOCAL_SITE = "local";
+
+    /**
+     * The directory the catalogs and the submit directories are in.
+     */
+    private final File mDirectory;
+
+    /**
+     * The number of submit directories created.
+     */
+    private int mRuns;
+
+    /**
+     * The overloaded constructor. Writes out the catalogs for a workflow.
+     *
+     * @param directory  the directory to write the catalogs and the submit
+     *                   directories in
+     * @param generator  the generator of the workflow to be planned
+     *
+     * @throws IOException in case of error while writing out the catalogs
+     */
+    public PlannerSetup( File directory, WorkflowGenerator generator ) throws IOException{
+        mDirectory = directory;
+        mRuns      = 0;
+        this.writeSiteCatalog();
+        this.writeTransformationCatalog();
+        this.writeReplicaCatalog( generator );
+    }
+
+    /**
+     * Loads a bag with the properties, the logger, the planner options for a
+     * new submit directory, the site store and the transformation catalog.
+     * A new bag is to be loaded for each workflow planned, as the planner
+     * updates the bag and the catalogs in it.
+     *
+     * @param clustering  the clustering technique, or null for no clustering
+     *
+     * @return the bag
+     *
+     * @throws IOException in case of error while writing out the properties
+     *                     to the submit directory
+     */
+    public PegasusBag loadBag( String clustering ) throws IOException{
+        PegasusBag bag = BenchmarkSupport.loadBag();
+        PegasusProperties props = bag.getPegasusProperties();
+        props.setProperty( PegasusProperties.PEGASUS_SITE_CATALOG_PROPERTY, "XML" );
+        props.setProperty( PegasusProperties.PEGASUS_SITE_CATALOG_FILE_PROPERTY,
+                           this.file( "sites.xml" ) );
+        props.setProperty( PegasusProperties.PEGASUS_TRANSFORMATION_CATALOG_PROPERTY, "Text" );
+        props.setProperty( PegasusProperties.PEGASUS_TRANSFORMATION_CATALOG_FILE_PROPERTY,
+                           this.file( "tc.txt" ) );
+        props.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_PROPERTY, "File" );
+        props.setProperty( PegasusProperties.PEGASUS_REPLICA_CATALOG_FILE_PROPERTY,
+                           this.file( "rc.txt" ) );
+
+        PlannerOptions options = bag.getPlannerOptions();
+        File submit = new File( mDirectory, "submit" + mRuns++ );
+        options.setSubmitDirectory( mDirectory.getAbsolutePath(), submit.getName() );
+        options.setExecutionSites( COMPUTE_SITE );
+        options.setOutputSite( LOCAL_SITE );
+        options.setRandomDir( "work" );
+        if( clustering != null ){
+            options.setClusteringTechnique( clustering );
+        }
+        submit.mkdirs();
+        props.writeOutProperties( options.getSubmitDirectory() );
+
+        Collection<String> sites = new ArrayList<String>();
+        sites.add( COMPUTE_SITE );
+        SiteStore store = SiteFactory.loadSiteStore( sites, bag );
+        store.setForPlannerUse( props, options );
+        bag.add( PegasusBag.SITE_STORE, store );
+        bag.add( PegasusBag.TRANSFORMATION_CATALOG, TransformationFactory.loadInstance( bag ) );
+        return bag;
+    }
+
+    /**
+     * Maps the jobs of a workflow to the compute site, as the planner does
+     * before the clustering.
+     *
+     * @param dag  the workflow
+     * @param bag  the bag loaded for the workflow
+     *
+     * @return the workflow
+     */
+    public ADag selectSites( ADag dag, PegasusBag bag ){
+        this.prepare( dag, bag );
+        dag.getWorkflowMetrics().lockTaskMetrics( true );
+        new InterPoolEngine( dag, bag ).determineSites();
+        return dag;
+    }
+
+    /**
+     * Plans a workflow into the executable workflow, that is handed to the
+     * code generator.
+     *
+     * @param dag  the workflow
+     * @param bag  the bag loaded for the workflow
+     *
+     * @return the executable workflow
+     */
+    public ADag plan( ADag dag, PegasusBag bag ){
+        this.prepare( dag, bag );
+        return new MainEngine( dag, bag ).runPlanner();
+    }
+
+    /**
+     * Sets the identifiers of the workflow, that are set by pegasus-plan
+     * after parsing the DAX.
+     *
+     * @param dag  the workflow
+     * @param bag  the bag loaded for the workflow
+     */
+    private void prepare( ADag dag, PegasusBag bag ){
+        dag.generateFlowName();
+        dag.setFlowTimestamp( bag.getPlannerOptions().getDateTime(
+                                    bag.getPegasusProperties().useExtendedTimeStamp() ) );
+        dag.generateFlowID();
+        dag.setReleaseVersion();
+        dag.setRootWorkflowUUID( dag.getWorkflowUUID() );
+    }
+
+    /**
+     * Writes out the site catalog with the local site and the condor pool
+     * compute site, both with a shared filesystem. The scratch of the compute
+     * site is accessed by a gridftp server, so that the transfers are run on
+     * the local site.
+     *
+     * @throws IOException in case of error while writing out the catalog
+     */
+    private void writeSiteCatalog() throws IOException{
+        PrintWriter pw = new PrintWriter( this.file( "sites.xml" ) );
+        pw.println( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" );
+        pw.println( "<sitecatalog xmlns=\"http://pegasus.isi.edu/schema/sitecatalog\"" +
+                    " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"" +
+                    " xsi:schemaLocation=\"http://pegasus.isi.edu/schema/sitecatalog" +
+                    " http://pegasus.isi.edu/schema/sc-4.0.xsd\" version=\"4.0\">" );
+        pw.println( "  <site handle=\"" + LOCAL_SITE + "\" arch=\"x86_64\" os=\"LINUX\">" );
+        this.writeDirectory( pw, "shared-scratch", "file://", this.file( "local-scratch" ) );
+        this.writeDirectory( pw, "shared-storage", "file://", this.file( "outputs" ) );
+        pw.println( "    <profile namespace=\"env\" key=\"PEGASUS_HOME\">/usr</profile>" );
+        pw.println( "  </site>" );
+        pw.println( "  <site handle=\"" + COMPUTE_SITE + "\" arch=\"x86_64\" os=\"LINUX\">" );
+        this.writeDirectory( pw, "shared-scratch", "gsiftp://compute.example.edu", this.file( "scratch" ) );
+        pw.println( "    <profile namespace=\"pegasus\" key=\"style\">condor</profile>" );
+        pw.println( "    <profile namespace=\"condor\" key=\"universe\">vanilla</profile>" );
+        pw.println( "    <profile namespace=\"env\" key=\"PEGASUS_HOME\">/usr</profile>" );
+        pw.println( "  </site>" );
+        pw.println( "</sitecatalog>" );
+        pw.close();
+    }
+
+    /**
+     * Writes out a directory of a site, with a file server for all
+     * operations.
+     *
+     * @param pw      the writer to the site catalog
+     * @param type    the type of the directory
+     * @param server  the url prefix of the file server
+     * @param path    the path to the directory
+     */
+    private void writeDirectory( PrintWriter pw, String type, String server, String path ){
+        pw.println( "    <directory type=\"" + type + "\" path=\"" + path + "\">" );
+        pw.println( "      <file-server operation=\"all\" url=\"" + server + path + "\"/>" );
+        pw.println( "    </directory>" );
+    }
+
+    /**
+     * Writes out the transformation catalog, with the transformation of the
+     * synthetic jobs installed on the compute site.
+     *
+     * @throws IOException in case of error while writing out the catalog
+     */
+    private void writeTransformationCatalog() throws IOException{
+        PrintWriter pw = new PrintWriter( this.file( "tc.txt" ) );
+        pw.println( "tr " + WorkflowGenerator.TRANSFORMATION_NAMESPACE + "::" +
+                    WorkflowGenerator.TRANSFORMATION_NAME + ":" +
+                    WorkflowGenerator.TRANSFORMATION_VERSION + " {" );
+        pw.println( "  site " + COMPUTE_SITE + " {" );
+        pw.println( "    pfn \"/usr/bin/" + WorkflowGenerator.TRANSFORMATION_NAME + "\"" );
+        pw.println( "    arch \"x86_64\"" );
+        pw.println( "    os \"linux\"" );
+        pw.println( "    type \"INSTALLED\"" );
+        pw.println( "  }" );
+        pw.println( "}" );
+        pw.close();
+    }
+
+    /**
+     * Writes out the replica catalog, with the raw input files of the
+     * workflow on the local site. The files are of different sizes, between
+     * 1 KB and 100 KB.
+     *
+     * @param generator  the generator of the workflow
+     *
+     * @throws IOException in case of error while writing out the catalog
+     */
+    private void writeReplicaCatalog( WorkflowGenerator generator ) throws IOException{
+        PrintWriter pw = new PrintWriter( this.file( "rc.txt" ) );
+        String inputs = this.file( "inputs" );
+        for( int i = 0; i < generator.getJobs() && generator.getParents( i ).length == 0; i++ ){
+            String lfn = generator.getInputFile( i );
+            pw.println( lfn + " file://" + inputs + "/" + lfn + " site=\"" + LOCAL_SITE + "\"" +
+                        " " + Metadata.SIZE_KEY + "=\"" + 1024 * ( 1 + i % 100 ) + "\"" );
+        }
+        pw.close();
+    }
+
+    /**
+     * Returns the path to a file in the directory.
+     *
+     * @param name  the name of the file
+     *
+     * @return the path
+     */
+    private String file( String name ){
+        return new File( mDirectory, name ).getAbsolutePath();
+    }
+}
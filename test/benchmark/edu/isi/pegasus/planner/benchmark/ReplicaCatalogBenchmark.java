@@ -0,0 +1,227 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.common.util.FindExecutable;
+import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.replica.impl.JDBCRC;
+import edu.isi.pegasus.planner.catalog.replica.impl.Regex;
+import edu.isi.pegasus.planner.catalog.replica.impl.SimpleFile;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the lookups the planner does against the replica catalog, for
+ * all the files referred to in a generated workflow.
+ *
+ * The JDBCRC backend requires pegasus-db-admin to create the SQLite
+ * database, and is not run by default. It can be selected by passing
+ * -p backend=JDBCRC to JMH.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( value = 1, jvmArgsAppend = { "-Xmx4g" } )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+public class ReplicaCatalogBenchmark {
+
+    /**
+     * The site handle for all the replicas.
+     */
+    private static final String SITE = "local";
+
+    /**
+     * The number of regular expression entries in the Regex catalog.
+     */
+    private static final int REGEX_ENTRIES = 100;
+
+    /**
+     * The number of jobs in the generated workflow.
+     */
+    @Param( { "1000", "10000", "100000", "1000000" } )
+    public int jobs;
+
+    /**
+     * The replica catalog implementation to benchmark.
+     */
+    @Param( { "SimpleFile", "Regex" } )
+    public String backend;
+
+    private File mDirectory;
+
+    private ReplicaCatalog mCatalog;
+
+    /**
+     * The files to lookup.
+     */
+    private Set<String> mLFNs;
+
+    @Setup( Level.Trial )
+    public void setUp() throws Exception{
+        BenchmarkSupport.loadBag();
+        mDirectory = BenchmarkSupport.createDirectory( "pegasus-benchmark-rc" );
+        mLFNs = new WorkflowGenerator( jobs ).getFiles();
+
+        Map<String,Collection<ReplicaCatalogEntry>> mappings = new HashMap<String,Collection<ReplicaCatalogEntry>>();
+        for( String lfn : mLFNs ){
+            mappings.put( lfn, entry( "file://" + mDirectory.getAbsolutePath() + "/" + lfn, false ) );
+        }
+        if( backend.equals( "Regex" ) ){
+            for( int i = 0; i < REGEX_ENTRIES; i++ ){
+                mappings.put( "f\\.tmp\\." + i + "\\.(.*)",
+                              entry( "file://" + mDirectory.getAbsolutePath() + "/tmp/[1]", true ) );
+            }
+        }
+
+        //populate the catalog, and then connect to it read only
+        ReplicaCatalog catalog = this.connect( false );
+        catalog.insert( mappings );
+        catalog.close();
+        mCatalog = this.connect( true );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown(){
+        mCatalog.close();
+        BenchmarkSupport.delete( mDirectory );
+    }
+
+    @Benchmark
+    public Map bulkLookup(){
+        return mCatalog.lookup( mLFNs, SITE );
+    }
+
+    @Benchmark
+    public int singleLookups(){
+        int result = 0;
+        for( String lfn : mLFNs ){
+            result += mCatalog.lookup( lfn ).size();
+        }
+        return result;
+    }
+
+    /**
+     * Connects to the catalog for the backend being benchmarked.
+     *
+     * @param readOnly  whether to connect to the file based catalogs in
+     *                  read only mode.
+     *
+     * @return the connected catalog
+     *
+     * @throws Exception in case of error while connecting
+     */
+    private ReplicaCatalog connect( boolean readOnly ) throws Exception{
+        ReplicaCatalog catalog;
+        Properties props = new Properties();
+        if( backend.equals( "SimpleFile" ) ){
+            catalog = new SimpleFile();
+            props.setProperty( SimpleFile.READ_ONLY_KEY, Boolean.toString( readOnly ) );
+            props.setProperty( "file", new File( mDirectory, "rc.data" ).getAbsolutePath() );
+        }
+        else if( backend.equals( "Regex" ) ){
+            catalog = new Regex();
+            props.setProperty( Regex.READ_ONLY_KEY, Boolean.toString( readOnly ) );
+            props.setProperty( "file", new File( mDirectory, "rc.data" ).getAbsolutePath() );
+        }
+        else if( backend.equals( "JDBCRC" ) ){
+            String url = "jdbc:sqlite:" + new File( mDirectory, "rc.db" ).getAbsolutePath();
+            if( !readOnly ){
+                this.createDatabase( url );
+            }
+            catalog = new JDBCRC();
+            props.setProperty( "db.driver", "sqlite" );
+            props.setProperty( "db.url", url );
+        }
+        else{
+            throw new IllegalArgumentException( "Unsupported replica catalog backend " + backend );
+        }
+        if( !catalog.connect( props ) ){
+            throw new RuntimeException( "Unable to connect to the " + backend + " replica catalog" );
+        }
+        return catalog;
+    }
+
+    /**
+     * Creates the database for the JDBCRC backend using pegasus-db-admin.
+     *
+     * @param url  the jdbc url of the database
+     *
+     * @throws Exception in case of error while creating the database
+     */
+    private void createDatabase( String url ) throws Exception{
+        String basename = "pegasus-db-admin";
+        File admin = FindExecutable.findExec( basename );
+        if( admin == null ){
+            throw new RuntimeException( "Unable to find path to " + basename );
+        }
+        ProcessBuilder pb = new ProcessBuilder( admin.getAbsolutePath(), "create", url );
+        String python = System.getProperty( "externals.python.path" );
+        if( python != null ){
+            pb.environment().put( "PYTHONPATH", python );
+        }
+        pb.redirectErrorStream( true );
+        pb.redirectOutput( new File( mDirectory, "pegasus-db-admin.log" ) );
+        int status = pb.start().waitFor();
+        if( status != 0 ){
+            throw new RuntimeException( "Database creation failed with non zero exit status " + status );
+        }
+    }
+
+    /**
+     * Returns the replica catalog entries for a single replica.
+     *
+     * @param pfn    the pfn
+     * @param regex  whether the lfn is a regular expression
+     *
+     * @return the entries
+     */
+    private Collection<ReplicaCatalogEntry> entry( String pfn, boolean regex ){
+        ReplicaCatalogEntry rce = new ReplicaCatalogEntry( pfn, SITE );
+        if( regex ){
+            rce.addAttribute( Regex.REGEX_KEY, "true" );
+        }
+        List<ReplicaCatalogEntry> result = new LinkedList<ReplicaCatalogEntry>();
+        result.add( rce );
+        return result;
+    }
+}
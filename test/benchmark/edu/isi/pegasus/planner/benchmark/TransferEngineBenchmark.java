@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerCache;
+import edu.isi.pegasus.planner.refiner.ReplicaCatalogBridge;
+import edu.isi.pegasus.planner.refiner.TransferEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the addition of the stage-in, inter site and stage-out
+ * transfer jobs to the workflow by the transfer refiners, after the jobs
+ * are mapped to the compute site. The raw input files are looked up in a
+ * file based replica catalog. The workflow is regenerated and mapped
+ * before each invocation, as the refiner modifies it in place.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( value = 1, jvmArgsAppend = { "-Xmx4g" } )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+public class TransferEngineBenchmark {
+
+    /**
+     * The number of jobs in the generated workflow.
+     */
+    @Param( { "1000", "10000", "100000", "1000000" } )
+    public int jobs;
+
+    /**
+     * The transfer refiner.
+     */
+    @Param( { "BalancedCluster", "SizeBalancedCluster" } )
+    public String refiner;
+
+    private WorkflowGenerator mGenerator;
+
+    private File mDirectory;
+
+    private PlannerSetup mSetup;
+
+    private PegasusBag mBag;
+
+    private ADag mDAG;
+
+    private ReplicaCatalogBridge mRCB;
+
+    private PlannerCache mPlannerCache;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException{
+        mGenerator = new WorkflowGenerator( jobs );
+        mDirectory = BenchmarkSupport.createDirectory( "pegasus-benchmark-transfer" );
+        mSetup = new PlannerSetup( mDirectory, mGenerator );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown(){
+        BenchmarkSupport.delete( mDirectory );
+    }
+
+    @Setup( Level.Invocation )
+    public void generate() throws IOException{
+        mBag = mSetup.loadBag( null );
+        mBag.getPegasusProperties().setProperty( "pegasus.transfer.refiner", refiner );
+        mDAG = mGenerator.toADag();
+        mRCB = new ReplicaCatalogBridge( mDAG, mBag );
+        mSetup.selectSites( mDAG, mBag );
+        mPlannerCache = new PlannerCache();
+        mPlannerCache.initialize( mBag, mDAG );
+    }
+
+    @TearDown( Level.Invocation )
+    public void close(){
+        mRCB.closeConnection();
+        mPlannerCache.close();
+    }
+
+    @Benchmark
+    public ADag addTransferNodes(){
+        new TransferEngine( mDAG, mBag, new LinkedList<Job>(), new LinkedList<Job>() ).
+            addTransferNodes( mRCB, mPlannerCache );
+        return mDAG;
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.benchmark;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.dax.ADAG;
+import edu.isi.pegasus.planner.dax.File;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Generates synthetic layered workflows for the benchmarks.
+ *
+ * The workflow has roughly sqrt(n) levels each of sqrt(n) jobs. Every job
+ * writes out a single file, and reads the files of two jobs in the level
+ * above it. Jobs that are at least two levels deep additionally have a
+ * redundant edge to a job two levels up, so that there are edges for the
+ * transitive reduction to remove. The jobs in the first level read a raw
+ * input file each.
+ *
+ * The generated workflows are deterministic for a given number of jobs.
+ *
+ * @author Karan Vahi
+ * @version $Revision$
+ */
+public class WorkflowGenerator {
+
+    /**
+     * The namespace of the transformation for all the jobs.
+     */
+    public static final String TRANSFORMATION_NAMESPACE = "pegasus";
+
+    /**
+     * The name of the transformation for all the jobs.
+     */
+    public static final String TRANSFORMATION_NAME = "synthetic";
+
+    /**
+     * The version of the transformation for all the jobs.
+     */
+    public static final String TRANSFORMATION_VERSION = "1.0";
+
+    /**
+     * The number of jobs in the workflow.
+     */
+    private final int mJobs;
+
+    /**
+     * The number of jobs in each level.
+     */
+    private final int mWidth;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param jobs  the number of jobs in the workflow.
+     */
+    public WorkflowGenerator( int jobs ){
+        if( jobs < 1 ){
+            throw new IllegalArgumentException( "Invalid number of jobs " + jobs );
+        }
+        mJobs  = jobs;
+        mWidth = Math.max( 1, (int)Math.sqrt( jobs ) );
+    }
+
+    /**
+     * Returns the number of jobs in the workflow.
+     *
+     * @return the number of jobs
+     */
+    public int getJobs(){
+        return mJobs;
+    }
+
+    /**
+     * Returns the id of a job.
+     *
+     * @param index  the index of the job
+     *
+     * @return the id
+     */
+    public String getID( int index ){
+        return "ID" + index;
+    }
+
+    /**
+     * Returns the raw input file read by a job in the first level.
+     *
+     * @param index  the index of the job
+     *
+     * @return the lfn
+     */
+    public String getInputFile( int index ){
+        return "f.in." + index;
+    }
+
+    /**
+     * Returns the output file written by a job.
+     *
+     * @param index  the index of the job
+     *
+     * @return the lfn
+     */
+    public String getOutputFile( int index ){
+        return "f.out." + index;
+    }
+
+    /**
+     * Returns all the files referred to in the workflow.
+     *
+     * @return the lfns
+     */
+    public Set<String> getFiles(){
+        Set<String> result = new LinkedHashSet<String>();
+        for( int i = 0; i < mJobs; i++ ){
+            if( i < mWidth ){
+                result.add( this.getInputFile( i ) );
+            }
+            result.add( this.getOutputFile( i ) );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the level of a job, with the jobs in the first level at 0.
+     *
+     * @param index  the index of the job
+     *
+     * @return the level
+     */
+    public int getLevel( int index ){
+        return index / mWidth;
+    }
+
+    /**
+     * Returns the indices of the parents of a job, including the redundant
+     * parent two levels up. The entries may repeat for narrow workflows.
+     *
+     * @param index  the index of the job
+     *
+     * @return the parents, empty for the jobs in the first level
+     */
+    public int[] getParents( int index ){
+        if( index < mWidth ){
+            return new int[0];
+        }
+        int column = index % mWidth;
+        int above  = index - mWidth - column;
+        int first  = above + column;
+        int second = above + ( column + 1 ) % mWidth;
+        return ( index < 2 * mWidth ) ?
+               new int[]{ first, second } :
+               new int[]{ first, second, first - mWidth };
+    }
+
+    /**
+     * Generates the workflow as it would be after parsing of the DAX.
+     *
+     * @return the workflow
+     */
+    public ADag toADag(){
+        ADag dag = new ADag();
+        dag.setLabel( "synthetic" );
+        dag.setIndex( "0" );
+        for( int i = 0; i < mJobs; i++ ){
+            Job job = new Job();
+            job.setName( this.getID( i ) );
+            job.setLogicalID( this.getID( i ) );
+            job.setTransformation( TRANSFORMATION_NAMESPACE, TRANSFORMATION_NAME, TRANSFORMATION_VERSION );
+            job.setJobType( Job.COMPUTE_JOB );
+            int[] parents = this.getParents( i );
+            if( parents.length == 0 ){
+                job.addInputFile( this.file( dag, this.getInputFile( i ), PegasusFile.LINKAGE.input ) );
+            }
+            for( int j = 0; j < parents.length && j < 2; j++ ){
+                job.addInputFile( this.file( dag, this.getOutputFile( parents[j] ), PegasusFile.LINKAGE.input ) );
+            }
+            job.addOutputFile( this.file( dag, this.getOutputFile( i ), PegasusFile.LINKAGE.output ) );
+            dag.add( job );
+        }
+        for( int i = 0; i < mJobs; i++ ){
+            for( int parent : this.distinct( this.getParents( i ) ) ){
+                dag.addEdge( this.getID( parent ), this.getID( i ) );
+            }
+        }
+        return dag;
+    }
+
+    /**
+     * Writes out the workflow as a DAX 3 file.
+     *
+     * @param daxfile  the path to the file
+     */
+    public void writeDAX( String daxfile ){
+        ADAG dax = new ADAG( "synthetic" );
+        for( int i = 0; i < mJobs; i++ ){
+            edu.isi.pegasus.planner.dax.Job job = new edu.isi.pegasus.planner.dax.Job(
+                                                         this.getID( i ),
+                                                         TRANSFORMATION_NAMESPACE,
+                                                         TRANSFORMATION_NAME,
+                                                         TRANSFORMATION_VERSION );
+            int[] parents = this.getParents( i );
+            if( parents.length == 0 ){
+                job.uses( this.getInputFile( i ), File.LINK.INPUT );
+            }
+            for( int j = 0; j < parents.length && j < 2; j++ ){
+                job.uses( this.getOutputFile( parents[j] ), File.LINK.INPUT );
+            }
+            job.uses( this.getOutputFile( i ), File.LINK.OUTPUT );
+            dax.addJob( job );
+        }
+        for( int i = 0; i < mJobs; i++ ){
+            for( int parent : this.distinct( this.getParents( i ) ) ){
+                dax.addDependency( this.getID( parent ), this.getID( i ) );
+            }
+        }
+        dax.writeToFile( daxfile );
+    }
+
+    /**
+     * Returns a file with the linkage set, and records the file in the
+     * workflow as the DAX parser does.
+     *
+     * @param dag   the workflow
+     * @param lfn   the lfn
+     * @param link  the linkage
+     *
+     * @return the file
+     */
+    private PegasusFile file( ADag dag, String lfn, PegasusFile.LINKAGE link ){
+        PegasusFile pf = new PegasusFile( lfn );
+        pf.setLinkage( link );
+        dag.getDAGInfo().updateLFNMap( lfn, ( link == PegasusFile.LINKAGE.input ) ? "i" : "o" );
+        return pf;
+    }
+
+    /**
+     * Returns the distinct entries of an array, preserving the order.
+     *
+     * @param values  the values
+     *
+     * @return the distinct values
+     */
+    private Set<Integer> distinct( int[] values ){
+        Set<Integer> result = new LinkedHashSet<Integer>();
+        for( int value : values ){
+            result.add( value );
+        }
+        return result;
+    }
+}
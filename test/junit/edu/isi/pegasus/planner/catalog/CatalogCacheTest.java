@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.catalog;
+
+import java.io.File;
+import java.io.PrintWriter;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the cache of the parsed catalog files.
+ *
+ * @author Karan Vahi
+ */
+public class CatalogCacheTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile( "catalog", ".txt" );
+        write( "tr keg" );
+    }
+
+    @After
+    public void tearDown() {
+        CatalogCache.disable();
+        mFile.delete();
+    }
+
+    /**
+     * The cache is enabled only on request.
+     */
+    @Test
+    public void testEnable() {
+        assertNull( CatalogCache.getInstance() );
+        CatalogCache cache = CatalogCache.enable();
+        assertSame( cache, CatalogCache.getInstance() );
+        assertSame( cache, CatalogCache.enable() );
+    }
+
+    /**
+     * The cached contents are returned till the file changes, even if it is
+     * rewritten with the same size.
+     */
+    @Test
+    public void testContentsInvalidated() throws Exception {
+        CatalogCache cache = CatalogCache.enable();
+        Object contents = new Object();
+        String digest = CatalogCache.digest( mFile );
+        cache.put( "tc", mFile, digest, contents );
+
+        assertSame( contents, cache.get( "tc", mFile, CatalogCache.digest( mFile ) ) );
+        assertNull( cache.get( "sites", mFile, digest ) );
+
+        long modified = mFile.lastModified();
+        write( "tr gek" );
+        mFile.setLastModified( modified );
+        String changed = CatalogCache.digest( mFile );
+        assertEquals( "tr keg".length(), mFile.length() );
+        assertNull( cache.get( "tc", mFile, changed ) );
+    }
+
+    private void write( String contents ) throws Exception {
+        PrintWriter pw = new PrintWriter( mFile );
+        pw.print( contents );
+        pw.close();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2007-2014 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.replica.impl;
+
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogException;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the Directory based replica catalog.
+ *
+ * @author Karan Vahi
+ */
+public class DirectoryTest {
+
+    private File mInput;
+
+    private File mIndexDir;
+
+    public DirectoryTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mInput = Files.createTempDirectory( "input" ).toFile();
+        mIndexDir = Files.createTempDirectory( "index" ).toFile();
+        createFile( "f.a" );
+        createFile( "sub" + File.separator + "f.b" );
+        createFile( "sub" + File.separator + "deep" + File.separator + "f.c" );
+    }
+
+    @Test
+    public void testDeepLookup() {
+        Directory catalog = connect( false, null );
+        Map<String,Collection<ReplicaCatalogEntry>> result =
+            catalog.lookup( set( "f.a", "sub/deep/f.c", "f.b", "sub/../f.a", "missing" ) );
+
+        assertEquals( 5, result.size() );
+        assertPFN( result.get( "f.a" ), "f.a" );
+        assertPFN( result.get( "sub/deep/f.c" ), "sub/deep/f.c" );
+        assertTrue( result.get( "f.b" ).isEmpty() );
+        assertTrue( result.get( "sub/../f.a" ).isEmpty() );
+        assertTrue( result.get( "missing" ).isEmpty() );
+
+        assertEquals( set( "f.a", "sub/f.b", "sub/deep/f.c" ), catalog.list() );
+        catalog.close();
+    }
+
+    @Test
+    public void testFlatLookup() {
+        Directory catalog = connect( true, null );
+        Map<String,Collection<ReplicaCatalogEntry>> result =
+            catalog.lookup( set( "f.b", "f.c", "sub/f.b" ) );
+
+        assertPFN( result.get( "f.b" ), "sub/f.b" );
+        assertPFN( result.get( "f.c" ), "sub/deep/f.c" );
+        assertTrue( result.get( "sub/f.b" ).isEmpty() );
+
+        assertEquals( set( "f.a", "f.b", "f.c" ), catalog.list() );
+        catalog.close();
+    }
+
+    @Test
+    public void testFlatDuplicates() throws IOException {
+        //a file with the same name deeper in the directory, that a lookup
+        //stopping at the first match would not see
+        createFile( "sub" + File.separator + "deep" + File.separator + "f.a" );
+        for( File indexDir : new File[]{ null, mIndexDir } ){
+            Directory catalog = null;
+            try{
+                catalog = connect( true, indexDir );
+                catalog.lookup( set( "f.a" ) );
+                fail( "Expected duplicate flat lfn f.a to be detected" );
+            }
+            catch( RuntimeException e ){
+                //the exception is wrapped when the index is loaded on connect
+                Throwable cause = ( e.getCause() == null ) ? e : e.getCause();
+                assertTrue( cause.toString(), cause instanceof ReplicaCatalogException );
+            }
+            finally{
+                if( catalog != null ){
+                    catalog.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        Directory catalog = connect( false, mIndexDir );
+        assertEquals( set( "f.a", "sub/f.b", "sub/deep/f.c" ), catalog.list() );
+        catalog.close();
+        assertEquals( 1, mIndexDir.list().length );
+
+        //index is used as long as the directories are not modified.
+        //a file removed behind the back of the index is still listed
+        File removed = new File( mInput, "f.a" );
+        long modified = mInput.lastModified();
+        assertTrue( removed.delete() );
+        assertTrue( mInput.setLastModified( modified ) );
+        catalog = connect( false, mIndexDir );
+        assertEquals( set( "f.a", "sub/f.b", "sub/deep/f.c" ), catalog.list() );
+        catalog.close();
+
+        //a new file updates the modification time and the index is stale
+        createFile( "sub" + File.separator + "deep" + File.separator + "f.d" );
+        File deep = new File( mInput, "sub" + File.separator + "deep" );
+        assertTrue( deep.setLastModified( deep.lastModified() + 2000 ) );
+        catalog = connect( false, mIndexDir );
+        assertEquals( set( "sub/f.b", "sub/deep/f.c", "sub/deep/f.d" ), catalog.list() );
+        catalog.close();
+    }
+
+    @After
+    public void tearDown() {
+        delete( mInput );
+        delete( mIndexDir );
+    }
+
+    private Directory connect( boolean flat, File indexDir ) {
+        Properties props = new Properties();
+        props.setProperty( Directory.DIRECTORY_PROPERTY_KEY, mInput.getAbsolutePath() );
+        props.setProperty( Directory.FLAT_LFN_PROPERTY_KEY, Boolean.toString( flat ) );
+        props.setProperty( Directory.THREADS_PROPERTY_KEY, "2" );
+        if( indexDir != null ){
+            props.setProperty( Directory.INDEX_DIRECTORY_PROPERTY_KEY, indexDir.getAbsolutePath() );
+        }
+        Directory catalog = new Directory();
+        assertTrue( catalog.connect( props ) );
+        return catalog;
+    }
+
+    private void assertPFN( Collection<ReplicaCatalogEntry> c, String path ) {
+        assertEquals( 1, c.size() );
+        ReplicaCatalogEntry rce = c.iterator().next();
+        assertEquals( Directory.DEFAULT_URL_PREFIX + new File( mInput, path ).getAbsolutePath(), rce.getPFN() );
+        assertEquals( Directory.DEFAULT_SITE_HANDLE, rce.getResourceHandle() );
+    }
+
+    private void createFile( String path ) throws IOException {
+        File f = new File( mInput, path );
+        f.getParentFile().mkdirs();
+        assertTrue( f.createNewFile() );
+    }
+
+    private Set<String> set( String... values ) {
+        Set<String> result = new HashSet<String>();
+        for( String value : values ){
+            result.add( value );
+        }
+        return result;
+    }
+
+    private void delete( File f ) {
+        File[] children = f.listFiles();
+        if( children != null ){
+            for( File child : children ){
+                delete( child );
+            }
+        }
+        f.delete();
+    }
+}
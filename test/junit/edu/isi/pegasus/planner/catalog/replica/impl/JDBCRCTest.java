@@ -247,11 +247,50 @@ public class JDBCRCTest {
         assertEquals(1, map.size());
     }
 
+    @Test
+    public void bulkInsert() {
+        jdbcrc.insert("a", new ReplicaCatalogEntry("b"));
+
+        Map<String,Collection<ReplicaCatalogEntry>> x = new LinkedHashMap<String,Collection<ReplicaCatalogEntry>>();
+        //replaces the existing mapping for a, as the single insert would
+        x.put("a", Arrays.asList(new ReplicaCatalogEntry("b"),
+                                 new ReplicaCatalogEntry("c", "handle"),
+                                 new ReplicaCatalogEntry("c", "handle")));
+        HashMap attr = new HashMap();
+        attr.put("size", "10");
+        x.put("d", Arrays.asList(new ReplicaCatalogEntry("e", attr)));
+        assertEquals(3, jdbcrc.insert(x));
+
+        Collection<ReplicaCatalogEntry> c = jdbcrc.lookup("a");
+        assertEquals(2, c.size());
+        assertTrue(c.contains(new ReplicaCatalogEntry("b")));
+        assertTrue(c.contains(new ReplicaCatalogEntry("c", "handle")));
+        assertTrue(jdbcrc.lookup("d").contains(new ReplicaCatalogEntry("e", attr)));
+    }
+
+    @Test
+    public void bulkInsertChunks() {
+        //more lfns than fit in a single chunk
+        Map<String,Collection<ReplicaCatalogEntry>> x = new LinkedHashMap<String,Collection<ReplicaCatalogEntry>>();
+        Set<String> lfns = new HashSet<String>();
+        for (int i = 0; i < 1234; i++) {
+            x.put("f." + i, Arrays.asList(new ReplicaCatalogEntry("file:///f." + i, "local")));
+            lfns.add("f." + i);
+        }
+        assertEquals(1234, jdbcrc.insert(x));
+
+        Map result = jdbcrc.lookup(lfns, "local");
+        assertEquals(1234, result.size());
+        assertTrue(((Collection) result.get("f.1233")).contains(new ReplicaCatalogEntry("file:///f.1233", "local")));
+        assertEquals(1234, jdbcrc.remove(lfns));
+    }
+
     @After
     public void tearDown() {
         jdbcrc.delete("a", "b");
         jdbcrc.delete("a", "c");
         jdbcrc.delete("a", "d");
+        jdbcrc.delete("d", "e");
         jdbcrc.close();
         new File("jdbcrc_test.db").delete();
     }
@@ -24,6 +24,8 @@ import org.junit.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -104,6 +106,67 @@ public class SimpleFileTest {
         assertTrue(c.contains(new ReplicaCatalogEntry("c", "handle")));
     }
 
+    @Test
+    public void journalInsert() throws IOException {
+        System.out.println( "journalInsert" );
+        File journal = File.createTempFile( "replica", ".journal" );
+        journal.delete();
+        try{
+            setupJournal( journal.getAbsolutePath() );
+            mCatalog.insert("a", new ReplicaCatalogEntry("b", "handle"));
+            mCatalog.insert("a", new ReplicaCatalogEntry("c", "handle"));
+            ReplicaCatalogEntry replaced = new ReplicaCatalogEntry("b", "handle");
+            replaced.addAttribute( "checksum.value", "123" );
+            mCatalog.insert("a", replaced );
+            mCatalog.close();
+
+            //each insert is appended to the journal after the header
+            assertEquals( 4, Files.readAllLines( journal.toPath(), Charset.defaultCharset() ).size() );
+
+            //later records replace earlier ones on reading back
+            setupCatalog( journal.getAbsolutePath(), true );
+            Collection<ReplicaCatalogEntry> c = mCatalog.lookup("a");
+            assertEquals( 2, c.size() );
+            for (ReplicaCatalogEntry x : c) {
+                if( x.getPFN().equals( "b" ) ){
+                    assertEquals( "123", x.getAttribute( "checksum.value" ) );
+                }
+            }
+        }
+        finally{
+            journal.delete();
+        }
+    }
+
+    @Test
+    public void journalRemove() throws IOException {
+        System.out.println( "journalRemove" );
+        File journal = File.createTempFile( "replica", ".journal" );
+        journal.delete();
+        try{
+            setupJournal( journal.getAbsolutePath() );
+            mCatalog.insert("a", new ReplicaCatalogEntry("file:///tmp/b", "handle"));
+            mCatalog.insert("d", new ReplicaCatalogEntry("file:///tmp/e", "handle"));
+            mCatalog.close();
+
+            //appends to existing journal
+            setupJournal( journal.getAbsolutePath() );
+            mCatalog.insert("f", new ReplicaCatalogEntry("file:///tmp/g", "handle"));
+            assertEquals( 1, mCatalog.remove( "a" ) );
+            mCatalog.close();
+
+            //deletes compact the journal on close
+            assertEquals( 3, Files.readAllLines( journal.toPath(), Charset.defaultCharset() ).size() );
+            setupCatalog( journal.getAbsolutePath(), true );
+            assertTrue( mCatalog.lookup( "a" ).isEmpty() );
+            assertEquals( "file:///tmp/e", mCatalog.lookup( "d", "handle" ) );
+            assertEquals( "file:///tmp/g", mCatalog.lookup( "f", "handle" ) );
+        }
+        finally{
+            journal.delete();
+        }
+    }
+
     @Test
     public void lookupWithSubstitutionsTest() {
         System.out.println( "lookupWithSubstitutionsTest" );
@@ -150,4 +213,12 @@ public class SimpleFileTest {
         props.setProperty( "file", file );
         mCatalog.connect( props );
     }
+
+    private void setupJournal( String file ) {
+        mCatalog = new SimpleFile();
+        Properties props = new Properties();
+        props.setProperty( SimpleFile.JOURNAL_KEY, "true" );
+        props.setProperty( "file", file );
+        mCatalog.connect( props );
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2007-2014 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.catalog.site.classes;
+
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class to test the compiled site layouts of the SiteStore.
+ *
+ * @author Karan Vahi
+ */
+public class SiteStoreTest {
+
+    private SiteStore mStore;
+
+    private PlannerOptions mOptions;
+
+    public SiteStoreTest() {
+    }
+
+    @Before
+    public void setUp() {
+        SiteCatalogEntry entry = new SiteCatalogEntry( "cluster" );
+
+        Directory scratch = new Directory();
+        scratch.setType( Directory.TYPE.shared_scratch );
+        scratch.setInternalMountPoint( new InternalMountPoint( "/scratch" ) );
+        FileServer all = new FileServer( "gsiftp", "gsiftp://all.cluster", "/scratch" );
+        all.setSupportedOperation( FileServer.OPERATION.all );
+        scratch.addFileServer( all );
+        for( String host : new String[]{ "put1", "put2" } ){
+            FileServer put = new FileServer( "gsiftp", "gsiftp://" + host + ".cluster", "/ext/scratch/" );
+            put.setSupportedOperation( FileServer.OPERATION.put );
+            scratch.addFileServer( put );
+        }
+        entry.addDirectory( scratch );
+
+        Directory storage = new Directory();
+        storage.setType( Directory.TYPE.shared_storage );
+        storage.setInternalMountPoint( new InternalMountPoint( "/storage" ) );
+        FileServer get = new FileServer( "file", "file://", "/storage" );
+        get.setSupportedOperation( FileServer.OPERATION.get );
+        storage.addFileServer( get );
+        entry.addDirectory( storage );
+
+        mStore = new SiteStore();
+        mStore.addEntry( entry );
+        mOptions = new PlannerOptions();
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty( "pegasus.dir.exec", "work" );
+        mStore.setForPlannerUse( props, mOptions );
+    }
+
+    @Test
+    public void testWorkDirectories() {
+        assertEquals( "/scratch/work", mStore.getInternalWorkDirectory( "cluster" ) );
+        assertEquals( "/scratch/work/a/b", mStore.getInternalWorkDirectory( "cluster", "a/b" ) );
+        assertEquals( "/abs", mStore.getInternalWorkDirectory( "cluster", "/abs" ) );
+        assertEquals( "/tmp", mStore.getInternalWorkDirectory( "cluster", null, Job.CREATE_DIR_JOB ) );
+        assertEquals( "gsiftp://all.cluster/scratch/work",
+                      mStore.getExternalWorkDirectoryURL( "cluster", FileServer.OPERATION.get ) );
+
+        //the random directory is set after the store is set for planner use
+        mOptions.setRandomDir( "run0001" );
+        assertEquals( "/scratch/work/run0001", mStore.getInternalWorkDirectory( "cluster" ) );
+        assertEquals( "gsiftp://all.cluster/scratch/work/run0001",
+                      mStore.getExternalWorkDirectoryURL( "cluster", FileServer.OPERATION.get ) );
+
+        //a server that is not part of the layout
+        FileServer other = new FileServer( "http", "http://other", "/web" );
+        assertEquals( "http://other/web/work/run0001", mStore.getExternalWorkDirectoryURL( other, "cluster" ) );
+
+        try{
+            mStore.getInternalWorkDirectory( "unknown" );
+            fail( "Expected exception for unknown site" );
+        }
+        catch( RuntimeException e ){
+            //expected
+        }
+    }
+
+    @Test
+    public void testFileServerSelection() {
+        //put servers are picked at random between the two put servers
+        Set<String> selected = new HashSet<String>();
+        for( int i = 0; i < 200; i++ ){
+            selected.add( mStore.selectHeadNodeScratchSharedFileServer( "cluster", FileServer.OPERATION.put ).getURLPrefix() );
+        }
+        assertEquals( 2, selected.size() );
+        assertTrue( selected.contains( "gsiftp://put1.cluster" ) );
+        assertEquals( "gsiftp://put1.cluster/ext/scratch/work",
+                      mStore.getExternalWorkDirectoryURL( mStore.lookup( "cluster" ).getDirectory( Directory.TYPE.shared_scratch ).getFileServers( FileServer.OPERATION.put ).get( 0 ), "cluster" ) );
+
+        //get falls back to the all server
+        assertEquals( "gsiftp://all.cluster",
+                      mStore.selectHeadNodeScratchSharedFileServer( "cluster", FileServer.OPERATION.get ).getURLPrefix() );
+
+        //storage has no put or all server
+        assertEquals( "file://",
+                      mStore.selectStorageFileServerForStageout( "cluster", FileServer.OPERATION.get ).getURLPrefix() );
+        assertNull( mStore.selectStorageFileServerForStageout( "cluster", FileServer.OPERATION.put ) );
+        assertNull( mStore.selectHeadNodeScratchSharedFileServer( "unknown", FileServer.OPERATION.put ) );
+    }
+
+    @Test
+    public void testClearLayouts() {
+        assertEquals( "/scratch/work", mStore.getInternalWorkDirectory( "cluster" ) );
+
+        //modifying an entry requires the layouts to be cleared
+        mStore.lookup( "cluster" ).getDirectory( Directory.TYPE.shared_scratch ).
+            setInternalMountPoint( new InternalMountPoint( "/newscratch" ) );
+        assertEquals( "/scratch/work", mStore.getInternalWorkDirectory( "cluster" ) );
+        mStore.clearLayouts();
+        assertEquals( "/newscratch/work", mStore.getInternalWorkDirectory( "cluster" ) );
+    }
+}
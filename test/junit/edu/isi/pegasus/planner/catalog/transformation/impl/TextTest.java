@@ -187,6 +187,90 @@ public class TextTest {
         
     }
 
+    @Test
+    public void testIndexedLookup() throws Exception {
+        mLogger.logEventStart( "test.catalog.transformation.impl.Text", "indexed-lookup", Integer.toString(mTestNumber++) );
+        File tc = this.copyToTempDirectory( "tc.indexed.text" );
+        Text catalog = this.loadIndexedCatalog( tc );
+        assertTrue( "Index not written", TextIndex.indexFile( tc ).exists() );
+
+        List<TransformationCatalogEntry> kegEntries = catalog.lookup( "example", "keg", "1.0", (String)null, null );
+        assertEquals( "Expected total number of keg entries", 3 , kegEntries.size() );
+        TransformationCatalogEntry isi = catalog.lookup( "example", "keg", "1.0", "isi", null ).get( 0 );
+        assertEquals( "Expected container ", "centos-pegasus" , isi.getContainer().getName() );
+        TransformationCatalogEntry wind = catalog.lookup( "example", "keg", "1.0", "wind", null ).get( 0 );
+        testProfile( wind, Profile.ENV, "BRACES", "{ \"}\" }" );
+        testProfile( wind, Profile.ENV, "APP_HOME", "/tmp/karan" );
+        assertEquals( null, catalog.lookup( "example", "missing", null, (String)null, null ) );
+
+        //the whole catalog has the same contents as a complete parse
+        List<TransformationCatalogEntry> entries = catalog.getContents();
+        assertEquals( "Expected total number of entries", 4, entries.size() );
+        this.deleteTempDirectory( tc );
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testIndexReusedUntilModified() throws Exception {
+        mLogger.logEventStart( "test.catalog.transformation.impl.Text", "index-reuse", Integer.toString(mTestNumber++) );
+        File tc = this.copyToTempDirectory( "tc.indexed.text" );
+        this.loadIndexedCatalog( tc );
+        File index = TextIndex.indexFile( tc );
+        long written = index.lastModified();
+
+        Text catalog = this.loadIndexedCatalog( tc );
+        assertEquals( "Index rewritten", written, index.lastModified() );
+        assertEquals( 1, catalog.lookup( null, "myxform", null, (String)null, null ).size() );
+
+        //a modified catalog is indexed again
+        java.nio.file.Files.write( tc.toPath(),
+                                   "\ntr newxform { site local { pfn \"/bin/date\" type \"INSTALLED\" } }\n".getBytes(),
+                                   java.nio.file.StandardOpenOption.APPEND );
+        assertTrue( tc.setLastModified( tc.lastModified() + 10000 ) );
+        catalog = this.loadIndexedCatalog( tc );
+        assertEquals( 1, catalog.lookup( null, "newxform", null, (String)null, null ).size() );
+        this.deleteTempDirectory( tc );
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testUnindexableCatalogParsed() throws Exception {
+        mLogger.logEventStart( "test.catalog.transformation.impl.Text", "unindexable", Integer.toString(mTestNumber++) );
+        //transformation names with variables cannot be indexed
+        File tc = this.copyToTempDirectory( "tc.text" );
+        Text catalog = this.loadIndexedCatalog( tc );
+        assertFalse( "Index written", TextIndex.indexFile( tc ).exists() );
+        assertEquals( "Expected total number of entries", 4, catalog.getContents().size() );
+        this.deleteTempDirectory( tc );
+        mLogger.logEventCompletion();
+    }
+
+    private File copyToTempDirectory( String basename ) throws Exception {
+        File dir = java.nio.file.Files.createTempDirectory( "pegasus-tc" ).toFile();
+        File tc = new File( dir, basename );
+        java.nio.file.Files.copy( new File( mTestSetup.getInputDirectory(), basename ).toPath(), tc.toPath() );
+        return tc;
+    }
+
+    private void deleteTempDirectory( File tc ){
+        for( File f : tc.getParentFile().listFiles() ){
+            f.delete();
+        }
+        tc.getParentFile().delete();
+    }
+
+    private Text loadIndexedCatalog( File tc ){
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty( PegasusProperties.PEGASUS_TRANSFORMATION_CATALOG_FILE_PROPERTY, tc.getAbsolutePath() );
+        props.setProperty( Text.INDEX_KEY, "true" );
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+        Text catalog = new Text();
+        catalog.initialize( bag );
+        return catalog;
+    }
+
     private void testProfile(TransformationCatalogEntry entry, String namespace, String key, String value) {
         Profile p = new Profile( namespace, key, value );
         List profiles = entry.getProfiles( namespace );
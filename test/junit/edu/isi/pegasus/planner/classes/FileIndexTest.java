@@ -0,0 +1,93 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit tests for the index of the files in a workflow.
+ *
+ * @author Karan Vahi
+ */
+public class FileIndexTest {
+
+    @Test
+    public void testIDsAssignedInOrder() {
+        FileIndex index = new FileIndex();
+        assertEquals( 0, index.add( "f.b" ) );
+        assertEquals( 1, index.add( "f.a" ) );
+        assertEquals( 0, index.add( "f.b" ) );
+        assertEquals( 1, index.getID( "f.a" ) );
+        assertEquals( -1, index.getID( "f.c" ) );
+        assertEquals( "f.a", index.getLFN( 1 ) );
+        assertEquals( 2, index.size() );
+    }
+
+    @Test
+    public void testIndexSortsAndRemovesDuplicates() {
+        FileIndex index = new FileIndex();
+        index.add( "f.c" );
+        PegasusFile first = new PegasusFile( "f.a" );
+        PegasusFile duplicate = new PegasusFile( "f.a" );
+        FileIndex.Files files = index.index( Arrays.asList(
+                                    new PegasusFile( "f.b" ), first, new PegasusFile( "f.c" ), duplicate ) );
+
+        assertEquals( 3, files.size() );
+        assertEquals( "f.c", files.getFile( 0 ).getLFN() );
+        assertEquals( "f.b", files.getFile( 1 ).getLFN() );
+        assertSame( first, files.getFile( 2 ) );
+        for( int i = 1; i < files.size(); i++ ){
+            assertTrue( files.getID( i - 1 ) < files.getID( i ) );
+        }
+        assertTrue( files.contains( index.getID( "f.b" ) ) );
+        assertFalse( files.contains( index.add( "f.d" ) ) );
+    }
+
+    @Test
+    public void testCommonFiles() {
+        FileIndex index = new FileIndex();
+        FileIndex.Files outputs = index.index( files( "f.a", "f.b", "f.c", "f.d" ) );
+        FileIndex.Files inputs  = index.index( files( "f.e", "f.d", "f.b" ) );
+
+        List<String> common = new LinkedList<String>();
+        for( PegasusFile pf : outputs.getCommonFiles( inputs ) ){
+            common.add( pf.getLFN() );
+        }
+        assertEquals( Arrays.asList( "f.b", "f.d" ), common );
+
+        boolean[] marks = new boolean[ inputs.size() ];
+        inputs.markCommonFiles( outputs, marks );
+        for( int i = 0; i < inputs.size(); i++ ){
+            assertEquals( inputs.getFile( i ).getLFN(), !inputs.getFile( i ).getLFN().equals( "f.e" ), marks[i] );
+        }
+    }
+
+    private List<PegasusFile> files( String... lfns ){
+        List<PegasusFile> result = new LinkedList<PegasusFile>();
+        for( String lfn : lfns ){
+            result.add( new PegasusFile( lfn ) );
+        }
+        return result;
+    }
+}
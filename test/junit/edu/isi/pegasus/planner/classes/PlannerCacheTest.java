@@ -0,0 +1,155 @@
+/*
+ * Copyright 2007-2016 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.FileServerType.OPERATION;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import edu.isi.pegasus.planner.test.TestSetup;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test class for the planner cache and the replica store
+ *
+ * @author Karan Vahi
+ */
+public class PlannerCacheTest {
+    
+    private static final int THREADS = 8;
+    
+    private static final int LFNS_PER_THREAD = 500;
+    
+    private LogManager mLogger;
+    
+    private TestSetup mTestSetup;
+    
+    private PlannerCache mCache;
+    
+    @Before
+    public void setUp() {
+        mTestSetup = new DefaultTestSetup();
+       
+        mTestSetup.setInputDirectory( this.getClass() );
+        mLogger  = mTestSetup.loadLogger( mTestSetup.loadPropertiesFromFile( ".properties", new LinkedList() )); 
+        mLogger.logEventStart( "test.planner.classes.PlannerCache", "setup", "0" );
+        
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
+        mCache = new PlannerCache();
+        mCache.initialize( bag, new ADag() );
+        mLogger.logEventCompletion();
+    }
+    
+    @Test
+    public void testInsertReplacesSamePFNAndSite() {
+        mCache.insert( "f.a", "file:///scratch/f.a", "isi", OPERATION.put );
+        mCache.insert( "f.a", "file:///scratch/f.a", "isi", OPERATION.put );
+        mCache.insert( "f.a", "file:///other/f.a", "isi", OPERATION.put );
+        mCache.insert( "f.a", "file:///scratch/f.a", "local", OPERATION.put );
+        
+        assertEquals( 2, mCache.lookupAllEntries( "f.a", "isi", OPERATION.put ).size() );
+        assertEquals( "file:///scratch/f.a", mCache.lookup( "f.a", "local", OPERATION.put ) );
+        assertNull( mCache.lookup( "f.a", "isi", OPERATION.get ) );
+        assertNull( mCache.lookup( "f.b", OPERATION.put ) );
+    }
+    
+    @Test
+    public void testConcurrentInserts() throws Exception {
+        final ReplicaStore store = new ReplicaStore();
+        List<Thread> threads = new LinkedList();
+        for( int t = 0; t < THREADS; t++ ){
+            final String site = "site" + t;
+            Thread thread = new Thread(){
+                public void run(){
+                    for( int i = 0; i < LFNS_PER_THREAD; i++ ){
+                        String lfn = "f." + i;
+                        String pfn = "gsiftp://" + site + "/scratch/" + lfn;
+                        mCache.insert( lfn, pfn, site, OPERATION.get );
+                        List rces = new LinkedList();
+                        rces.add( new ReplicaCatalogEntry( pfn, site ) );
+                        store.add( lfn, rces );
+                    }
+                }
+            };
+            threads.add( thread );
+            thread.start();
+        }
+        for( Thread thread : threads ){
+            thread.join();
+        }
+        
+        for( int i = 0; i < LFNS_PER_THREAD; i++ ){
+            String lfn = "f." + i;
+            assertEquals( "gsiftp://site3/scratch/" + lfn, mCache.lookup( lfn, "site3", OPERATION.get ) );
+            assertEquals( "Entries for " + lfn, THREADS, store.getReplicaLocation( lfn ).getPFNCount() );
+        }
+        assertEquals( LFNS_PER_THREAD, store.getLFNCount() );
+    }
+    
+    @Test
+    public void testReplicaStoreCopyOnWrite() {
+        ReplicaStore store = new ReplicaStore();
+        store.add( "f.a", rces( "file:///scratch/f.a", "isi" ) );
+        ReplicaLocation seen = store.getReplicaLocation( "f.a" );
+
+        //a reader holding the location does not see the merged entries
+        store.add( "f.a", rces( "file:///other/f.a", "isi" ) );
+        assertEquals( 1, seen.getPFNCount() );
+        assertEquals( 2, store.getReplicaLocation( "f.a" ).getPFNCount() );
+
+        //storing replaces the existing entries
+        Map<String,List<ReplicaCatalogEntry>> m = new HashMap<String,List<ReplicaCatalogEntry>>();
+        m.put( "f.a", rces( "file:///new/f.a", "local" ) );
+        store.store( m );
+        assertEquals( 1, store.getReplicaLocation( "f.a" ).getPFNCount() );
+        assertEquals( "file:///new/f.a", store.getReplicaLocation( "f.a" ).getPFN( 0 ).getPFN() );
+    }
+
+    @Test
+    public void testReplicaStoreRejectsNullLFN() {
+        ReplicaStore store = new ReplicaStore();
+        try{
+            store.add( null, rces( "file:///scratch/f.a", "isi" ) );
+            fail( "Expected a null LFN to be rejected" );
+        }
+        catch( IllegalArgumentException e ){
+            //expected
+        }
+        assertTrue( store.isEmpty() );
+    }
+
+    private List<ReplicaCatalogEntry> rces( String pfn, String site ){
+        List<ReplicaCatalogEntry> rces = new LinkedList<ReplicaCatalogEntry>();
+        rces.add( new ReplicaCatalogEntry( pfn, site ) );
+        return rces;
+    }
+
+    @After
+    public void tearDown() {
+        mCache.close();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2007-2016 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit test class for the profile of the planner phases
+ *
+ * @author Karan Vahi
+ */
+public class PlannerProfileTest {
+
+    @Test
+    public void testPhases() {
+        PlannerProfile profile = new PlannerProfile();
+        profile.startPhase( PlannerProfile.PARSE_PHASE );
+        byte[][] garbage = new byte[16][];
+        for( int i = 0; i < garbage.length; i++ ){
+            garbage[i] = new byte[ 64 * 1024 ];
+        }
+        //starting a phase ends the previous one
+        profile.startPhase( PlannerProfile.REDUCE_PHASE );
+        profile.endPhase();
+        //ending without a current phase is a no op
+        profile.endPhase();
+
+        List<PlannerProfile.Phase> phases = profile.getPhases();
+        assertEquals( 2, phases.size() );
+        assertEquals( PlannerProfile.PARSE_PHASE, phases.get( 0 ).getName() );
+        assertEquals( PlannerProfile.REDUCE_PHASE, phases.get( 1 ).getName() );
+        assertTrue( phases.get( 0 ).getWallTime() >= 0 );
+
+        long allocated = phases.get( 0 ).getAllocatedBytes();
+        assertTrue( "allocated " + allocated + " with " + garbage.length + " arrays",
+                    allocated == -1 || allocated >= garbage.length * 64 * 1024 );
+    }
+
+    @Test
+    public void testWriteOut() throws IOException {
+        PlannerProfile profile = new PlannerProfile();
+        profile.setWorkflowUUID( "wf-uuid" );
+        profile.startPhase( PlannerProfile.CODE_GENERATION_PHASE );
+
+        File f = File.createTempFile( "planner", PlannerProfile.PROFILE_FILE_SUFFIX );
+        try{
+            profile.setProfileFileLocationInSubmitDirectory( f );
+            profile.writeOut();
+            String json = new String( Files.readAllBytes( f.toPath() ), "UTF-8" );
+            assertTrue( json, json.contains( "\"wf_uuid\": \"wf-uuid\"" ) );
+            assertTrue( json, json.contains( "\"name\": \"code_generation\"" ) );
+            assertTrue( json, json.contains( "\"allocated_bytes\"" ) );
+            assertTrue( json, json.contains( "\"heap_live\"" ) );
+        }
+        finally{
+            f.delete();
+        }
+    }
+}
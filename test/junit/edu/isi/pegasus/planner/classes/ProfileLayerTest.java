@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.classes;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.classes.Profiles;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import edu.isi.pegasus.planner.test.TestSetup;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the profile layers shared by the jobs mapped to a site.
+ *
+ * @author Karan Vahi
+ */
+public class ProfileLayerTest {
+
+    private static final String SITE = "compute";
+
+    private LogManager mLogger;
+
+    private PegasusProperties mProps;
+
+    private Profiles mSiteProfiles;
+
+    private TransformationCatalogEntry mEntry;
+
+    @Before
+    public void setUp() {
+        TestSetup testSetup = new DefaultTestSetup();
+        mProps  = PegasusProperties.nonSingletonInstance();
+        mLogger = testSetup.loadLogger( mProps );
+        mLogger.logEventStart( "test.planner.classes.ProfileLayer", "setup", "0" );
+
+        mProps.setProperty( "env.PROPERTY", "properties" );
+        mProps.setProperty( "env.SOURCE", "properties" );
+        mProps.setProperty( "condor.priority", "5" );
+
+        mSiteProfiles = new Profiles();
+        mSiteProfiles.addProfile( Profiles.NAMESPACES.env, "SITE", "site" );
+        mSiteProfiles.addProfile( Profiles.NAMESPACES.env, "SOURCE", "site" );
+        mSiteProfiles.addProfile( Profiles.NAMESPACES.globus, "maxwalltime", "10" );
+
+        mEntry = new TransformationCatalogEntry( "pegasus", "keg", "1.0" );
+        mEntry.setResourceId( SITE );
+        mEntry.addProfile( new Profile( Profile.ENV, "SOURCE", "tc" ) );
+        mEntry.addProfile( new Profile( Profile.GLOBUS, "maxwalltime", "20" ) );
+    }
+
+    /**
+     * A job without profiles gets the same profiles as when the sources are
+     * incorporated one after the other.
+     */
+    @Test
+    public void testEmptyJob() {
+        ProfileLayer layer = new ProfileLayer( SITE, mSiteProfiles, mEntry, mProps );
+        Job job = constructJob();
+        layer.apply( job );
+
+        Job expected = constructJob();
+        incorporate( expected );
+        assertProfiles( expected, job );
+        assertEquals( "tc", job.envVariables.get( "SOURCE" ) );
+        assertEquals( "20", job.globusRSL.get( "maxwalltime" ) );
+        assertEquals( "5", job.condorVariables.get( "priority" ) );
+
+        //the layer is reused for other jobs without being modified
+        Job other = constructJob();
+        layer.apply( other );
+        job.envVariables.construct( "MODIFIED", "true" );
+        assertProfiles( expected, other );
+        assertNull( other.envVariables.get( "MODIFIED" ) );
+    }
+
+    /**
+     * The profiles a job already has are overridden by the site and
+     * transformation catalog, but not by the properties.
+     */
+    @Test
+    public void testJobWithProfiles() {
+        ProfileLayer layer = new ProfileLayer( SITE, mSiteProfiles, mEntry, mProps );
+        Job job = constructJob();
+        job.envVariables.construct( "PROPERTY", "dax" );
+        job.envVariables.construct( "SITE", "dax" );
+        job.condorVariables.construct( "priority", "10" );
+        layer.apply( job );
+
+        Job expected = constructJob();
+        expected.envVariables.construct( "PROPERTY", "dax" );
+        expected.envVariables.construct( "SITE", "dax" );
+        expected.condorVariables.construct( "priority", "10" );
+        incorporate( expected );
+        assertProfiles( expected, job );
+        assertEquals( "dax", job.envVariables.get( "PROPERTY" ) );
+        assertEquals( "site", job.envVariables.get( "SITE" ) );
+        assertEquals( "10", job.condorVariables.get( "priority" ) );
+    }
+
+    /**
+     * The Condor and ENV profiles set or removed for a job that reads through
+     * to the layer do not show up in the other jobs sharing the layer.
+     */
+    @Test
+    public void testReadThrough() {
+        ProfileLayer layer = new ProfileLayer( SITE, mSiteProfiles, mEntry, mProps );
+        Job job = constructJob();
+        layer.apply( job );
+        Job other = constructJob();
+        layer.apply( other );
+
+        job.condorVariables.construct( "universe", "vanilla" );
+        job.condorVariables.removeKey( "priority" );
+        job.envVariables.construct( "SOURCE", "job" );
+        job.envVariables.removeKey( "SITE" );
+
+        assertEquals( "universe = vanilla\n", job.condorVariables.toCondor() );
+        assertNull( job.envVariables.get( "SITE" ) );
+        assertEquals( "job", job.envVariables.get( "SOURCE" ) );
+        assertEquals( "5", other.condorVariables.get( "priority" ) );
+        assertNull( other.condorVariables.get( "universe" ) );
+        assertEquals( "site", other.envVariables.get( "SITE" ) );
+        assertEquals( "tc", other.envVariables.get( "SOURCE" ) );
+
+        //a clone keeps the profiles of the job, and is modified separately
+        Job clone = (Job) job.clone();
+        clone.envVariables.construct( "SITE", "clone" );
+        assertEquals( job.condorVariables.toString(), clone.condorVariables.toString() );
+        assertEquals( "job", clone.envVariables.get( "SOURCE" ) );
+        assertNull( job.envVariables.get( "SITE" ) );
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    private Job constructJob(){
+        Job job = new Job();
+        job.setName( "keg_ID1" );
+        job.setSiteHandle( SITE );
+        return job;
+    }
+
+    private void incorporate( Job job ){
+        job.updateProfiles( mSiteProfiles );
+        job.updateProfiles( mEntry );
+        job.updateProfiles( mProps );
+    }
+
+    private void assertProfiles( Job expected, Job actual ){
+        assertEquals( expected.condorVariables.toString(), actual.condorVariables.toString() );
+        assertEquals( expected.dagmanVariables.toString(), actual.dagmanVariables.toString() );
+        assertEquals( expected.globusRSL.toString(), actual.globusRSL.toString() );
+        assertEquals( expected.envVariables.toString(), actual.envVariables.toString() );
+        assertEquals( expected.vdsNS.toString(), actual.vdsNS.toString() );
+        assertEquals( expected.hints.toString(), actual.hints.toString() );
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.client;
+
+import edu.isi.pegasus.common.util.Environment;
+import edu.isi.pegasus.common.util.ThreadScope;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Unit tests for the isolation of the requests planned by the
+ * pegasus-plan-server.
+ *
+ * @author Karan Vahi
+ */
+public class PlannerServerTest {
+
+    private static final String CWD = "/home/user/run";
+
+    /**
+     * The paths in the arguments are resolved against the working directory
+     * of the client, and the -D and -X options are not passed to the planner.
+     */
+    @Test
+    public void testPlannerArguments() {
+        Properties properties = new Properties();
+        List<String> args = PlannerServer.plannerArguments( CWD,
+                Arrays.asList( "-Dpegasus.catalog.site.file=sites.xml", "-Xmx1g",
+                               "--dax", "sub/wf.dax", "--conf=pegasus.properties", "--pdax", "wf.pdax",
+                               "--input-dir", "in1,/data/in2", "--output-dir", "gsiftp://host/out",
+                               "--relative-dir", "run0001", "-s", "condorpool", "-v" ),
+                properties );
+
+        assertEquals( CWD + "/sites.xml", properties.getProperty( "pegasus.catalog.site.file" ) );
+        assertEquals( Arrays.asList( "--dax", CWD + "/sub/wf.dax",
+                                     "--conf", CWD + "/pegasus.properties",
+                                     "--pdax", CWD + "/wf.pdax",
+                                     "--input-dir", CWD + "/in1,/data/in2",
+                                     "--output-dir", "gsiftp://host/out",
+                                     "--relative-dir", "run0001",
+                                     "--sites", "condorpool",
+                                     "--verbose",
+                                     "--dir", CWD ),
+                      args );
+    }
+
+    /**
+     * A submit directory passed by the client is resolved, and not defaulted.
+     */
+    @Test
+    public void testSubmitDirectory() {
+        List<String> args = PlannerServer.plannerArguments( CWD,
+                Arrays.asList( "--dir", "submit", "-r" ), new Properties() );
+        assertEquals( Arrays.asList( "--dir", CWD + "/submit", "--randomdir" ), args );
+    }
+
+    /**
+     * Options that cannot be honored by the server are rejected.
+     */
+    @Test
+    public void testUnsupportedOptions() {
+        for( String option : new String[]{ "--version", "--nosuchoption" } ){
+            try{
+                PlannerServer.plannerArguments( CWD, Arrays.asList( option ), new Properties() );
+                fail( "Expected " + option + " to be rejected" );
+            }
+            catch( IllegalArgumentException e ){
+                //expected
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int result = new PlannerServer().plan( CWD, null, Arrays.asList( "-V" ), new PrintStream( out ) );
+        assertEquals( 1, result );
+        assertTrue( out.toString().startsWith( "ERROR:" ) );
+    }
+
+    /**
+     * Concurrent threads in different scopes see the properties, environment
+     * and write to the streams of their own scope, while the other threads
+     * see the base. Threads started in a scope only get the scope if their
+     * task is propagated.
+     */
+    @Test
+    public void testScopes() throws Exception {
+        Properties base = new Properties();
+        base.setProperty( "user.dir", "/base" );
+        final ScopedProperties properties = new ScopedProperties( base );
+        ByteArrayOutputStream baseOut = new ByteArrayOutputStream();
+        final ScopedOutputStream stream = new ScopedOutputStream( baseOut );
+        final PrintStream out = new PrintStream( stream, true );
+
+        final int threads = 4;
+        final CyclicBarrier barrier = new CyclicBarrier( threads );
+        final ByteArrayOutputStream[] outs = new ByteArrayOutputStream[ threads ];
+        final String[] seen = new String[ threads ];
+        final String[] child = new String[ threads ];
+        final String[] propagated = new String[ threads ];
+        Thread[] workers = new Thread[ threads ];
+        for( int i = 0; i < threads; i++ ){
+            final int id = i;
+            outs[i] = new ByteArrayOutputStream();
+            workers[i] = new Thread(){
+                public void run(){
+                    Properties p = new Properties();
+                    p.setProperty( "user.dir", "/request" + id );
+                    properties.beginScope( p );
+                    Environment.beginScope( Collections.singletonMap( "PEGASUS_REQUEST", Integer.toString( id ) ) );
+                    stream.beginScope( outs[id] );
+                    try{
+                        barrier.await();
+                        properties.setProperty( "request", Integer.toString( id ) );
+                        barrier.await();
+                        seen[id] = properties.getProperty( "user.dir" ) + " " +
+                                   properties.getProperty( "request" ) + " " +
+                                   Environment.getenv( "PEGASUS_REQUEST" );
+                        out.print( "request" + id );
+
+                        //threads started in a scope don't inherit it
+                        Thread t = new Thread(){
+                            public void run(){
+                                child[id] = properties.getProperty( "user.dir" );
+                            }
+                        };
+                        t.start();
+                        t.join();
+
+                        //unless the scope is propagated to the task
+                        t = new Thread( ThreadScope.propagate( new Runnable(){
+                            public void run(){
+                                propagated[id] = properties.getProperty( "user.dir" ) + " " +
+                                                 Environment.getenv( "PEGASUS_REQUEST" );
+                            }
+                        }));
+                        t.start();
+                        t.join();
+                    }
+                    catch( Exception e ){
+                        throw new RuntimeException( e );
+                    }
+                    finally{
+                        stream.endScope();
+                        Environment.endScope();
+                        properties.endScope();
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for( Thread t : workers ){
+            t.join();
+        }
+
+        for( int i = 0; i < threads; i++ ){
+            assertEquals( "/request" + i + " " + i + " " + i, seen[i] );
+            assertEquals( "/base", child[i] );
+            assertEquals( "/request" + i + " " + i, propagated[i] );
+            assertEquals( "request" + i, outs[i].toString() );
+        }
+        assertEquals( "/base", properties.getProperty( "user.dir" ) );
+        assertNull( properties.getProperty( "request" ) );
+        out.print( "server" );
+        assertEquals( "server", baseOut.toString() );
+    }
+
+    /**
+     * An unreadable property file results in an exception, instead of the
+     * jvm exiting.
+     */
+    @Test
+    public void testUnreadablePropertyFile() throws Exception {
+        File dir = Files.createTempDirectory( "plan-server" ).toFile();
+        try{
+            PegasusProperties.getInstance( dir.getAbsolutePath() );
+            fail( "Expected an exception for an unreadable property file" );
+        }
+        catch( RuntimeException e ){
+            assertTrue( e.getMessage(), e.getMessage().startsWith( "Unable to read property file" ) );
+        }
+        finally{
+            dir.delete();
+        }
+    }
+
+    /**
+     * A request is planned with the output routed to the response, and the
+     * system properties of the jvm restored afterwards.
+     */
+    @Test
+    public void testPlanRequest() throws Exception {
+        File cwd = Files.createTempDirectory( "plan-server" ).toFile();
+        String userDir = System.getProperty( "user.dir" );
+        try{
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int result = new PlannerServer().plan( cwd.getAbsolutePath(),
+                                                   Collections.singletonMap( "PEGASUS_REQUEST", "1" ),
+                                                   Arrays.asList( "-Dpegasus.server.test=true",
+                                                                  "-Dpegasus.home.sharedstatedir=" + cwd,
+                                                                  "-Dpegasus.home.sysconfdir=" + cwd,
+                                                                  "--help" ),
+                                                   new PrintStream( out, true ) );
+            assertEquals( out.toString(), 0, result );
+            assertTrue( out.toString(), out.toString().contains( "pegasus-plan" ) );
+            assertEquals( userDir, System.getProperty( "user.dir" ) );
+            assertNull( System.getProperty( "pegasus.server.test" ) );
+            assertFalse( new File( cwd, Executable.DEFAULT_PROPERTIES_FILE ).exists() );
+        }
+        finally{
+            cwd.delete();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2007-2016 University Of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.isi.pegasus.planner.code.generator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for the metrics spool, that sends the spooled metrics to a
+ * local stub metrics server.
+ *
+ * @author Karan Vahi
+ */
+public class MetricsSpoolTest {
+
+    private HttpServer mServer;
+
+    private List<String> mReceived;
+
+    private CountDownLatch mRelease;
+
+    private CountDownLatch mArrived;
+
+    private File mDirectory;
+
+    private MetricsSpool mSpool;
+
+    @Before
+    public void setUp() throws IOException {
+        mReceived = Collections.synchronizedList( new LinkedList<String>() );
+        mRelease  = new CountDownLatch( 0 );
+        mArrived  = new CountDownLatch( 1 );
+        mServer = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ), 0 );
+        mServer.createContext( "/metrics", new HttpHandler() {
+            public void handle( HttpExchange exchange ) throws IOException {
+                mArrived.countDown();
+                try{
+                    mRelease.await( 10, TimeUnit.SECONDS );
+                }
+                catch( InterruptedException e ){
+                }
+                InputStream in = exchange.getRequestBody();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[ 1024 ];
+                int n;
+                while( (n = in.read( buffer )) != -1 ){
+                    out.write( buffer, 0, n );
+                }
+                assertEquals( "application/json", exchange.getRequestHeaders().getFirst( "Content-Type" ) );
+                mReceived.add( new String( out.toByteArray(), "UTF-8" ) );
+                exchange.sendResponseHeaders( MetricsSpool.ACCEPTED, -1 );
+                exchange.close();
+            }
+        });
+        mServer.start();
+
+        mDirectory = Files.createTempDirectory( "metrics-spool" ).toFile();
+        mSpool = new MetricsSpool( mDirectory, LogManagerFactory.loadSingletonInstance() );
+    }
+
+    @Test
+    public void testDrain() throws IOException {
+        String url = "http://localhost:" + mServer.getAddress().getPort() + "/metrics";
+        String unreachable = "http://localhost:" + freePort() + "/metrics";
+
+        mSpool.append( url, "{\"a\":1}" );
+        mSpool.append( unreachable, "{\"b\":2}" );
+        mSpool.append( url, "{\"c\":\n3}" );
+
+        assertEquals( 2, mSpool.drain() );
+        assertEquals( 2, mReceived.size() );
+        assertEquals( "{\"a\":1}", mReceived.get( 0 ) );
+        assertEquals( "{\"c\": 3}", mReceived.get( 1 ) );
+
+        //the entry for the unreachable server remains in the spool
+        List<String> remaining = Files.readAllLines( mSpool.getSpoolFile().toPath() );
+        assertEquals( 1, remaining.size() );
+        assertEquals( unreachable + " {\"b\":2}", remaining.get( 0 ) );
+    }
+
+    @Test
+    public void testDrainInBackground() throws Exception {
+        String url = "http://localhost:" + mServer.getAddress().getPort() + "/metrics";
+
+        //the server does not respond till released
+        mRelease = new CountDownLatch( 1 );
+        mSpool.append( url, "{\"a\":1}" );
+        long start = System.currentTimeMillis();
+        Thread t = mSpool.drainInBackground();
+        assertTrue( t.isDaemon() );
+        assertTrue( System.currentTimeMillis() - start < 1000 );
+
+        //a second drain while one is in progress returns immediately
+        assertTrue( mArrived.await( 10, TimeUnit.SECONDS ) );
+        assertEquals( 0, mSpool.drain() );
+
+        mRelease.countDown();
+        t.join( 10000 );
+        assertFalse( t.isAlive() );
+        assertEquals( 1, mReceived.size() );
+        assertFalse( mSpool.getSpoolFile().exists() );
+    }
+
+    @Test
+    public void testUnreachableServerDoesNotBlockOthers() throws IOException {
+        String url = "http://localhost:" + mServer.getAddress().getPort() + "/metrics";
+        String unreachable = "http://localhost:" + freePort() + "/metrics";
+
+        //more entries for the unreachable server than are attempted in a drain
+        for( int i = 0; i < MetricsSpool.MAX_ENTRIES_PER_DRAIN + 10; i++ ){
+            mSpool.append( unreachable, "{\"b\":" + i + "}" );
+        }
+        mSpool.append( url, "{\"a\":1}" );
+
+        assertEquals( 1, mSpool.drain() );
+        assertEquals( 1, mReceived.size() );
+        List<String> remaining = Files.readAllLines( mSpool.getSpoolFile().toPath() );
+        assertEquals( MetricsSpool.MAX_ENTRIES_PER_DRAIN + 10, remaining.size() );
+        assertEquals( unreachable + " {\"b\":0}", remaining.get( 0 ) );
+    }
+
+    @Test
+    public void testInterruptedDrainNotResent() throws IOException {
+        String url = "http://localhost:" + mServer.getAddress().getPort() + "/metrics";
+
+        mSpool.append( url, "{\"a\":1}" );
+        mSpool.append( url, "{\"b\":2}" );
+        mSpool.append( url, "{\"c\":3}" );
+
+        //a drain that exited after sending the first two entries
+        File sent = new File( mDirectory, MetricsSpool.SPOOL_FILE_BASENAME + MetricsSpool.SENT_FILE_SUFFIX );
+        Files.write( sent.toPath(), "0\n1\n".getBytes( "UTF-8" ) );
+
+        assertEquals( 1, mSpool.drain() );
+        assertEquals( 1, mReceived.size() );
+        assertEquals( "{\"c\":3}", mReceived.get( 0 ) );
+        assertFalse( sent.exists() );
+        assertFalse( mSpool.getSpoolFile().exists() );
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mServer.stop( 0 );
+        for( File f : mDirectory.listFiles() ){
+            f.delete();
+        }
+        mDirectory.delete();
+    }
+
+    private int freePort() throws IOException {
+        ServerSocket s = new ServerSocket( 0 );
+        int port = s.getLocalPort();
+        s.close();
+        return port;
+    }
+}
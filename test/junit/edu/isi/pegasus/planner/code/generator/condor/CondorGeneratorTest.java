@@ -0,0 +1,156 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.code.generator.condor;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Pegasus;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the .dag files written out by the Condor code generator.
+ *
+ * @author Karan Vahi
+ */
+public class CondorGeneratorTest {
+
+    private CondorGenerator mGenerator;
+
+    private ADag mDAG;
+
+    private LogManager mLogger;
+
+    @Before
+    public void setUp() {
+        final PegasusProperties properties = PegasusProperties.nonSingletonInstance();
+        mLogger = new DefaultTestSetup().loadLogger( properties );
+        mLogger.logEventStart( "test.planner.code.generator.condor.CondorGenerator", "setup", "0" );
+        final PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, properties );
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
+        mGenerator = new CondorGenerator(){
+            {
+                mBag    = bag;
+                mProps  = properties;
+                mLogger = bag.getLogger();
+            }
+        };
+
+        //a -> b, a -> c, b -> d, c -> d
+        mDAG = new ADag();
+        mDAG.setLabel( "test" );
+        mDAG.setIndex( "0" );
+        for( String name : new String[]{ "a", "b", "c", "d" } ){
+            mDAG.add( job( name ) );
+        }
+        mDAG.addEdge( "a", "b" );
+        mDAG.addEdge( "a", "c" );
+        mDAG.addEdge( "b", "d" );
+        mDAG.addEdge( "c", "d" );
+    }
+
+    /**
+     * The edges of a workflow are grouped into complete bipartite sets.
+     */
+    @Test
+    public void testEdges() throws Exception {
+        assertEquals( "PARENT  a CHILD b c\n" +
+                      "PARENT  b c CHILD d\n",
+                      edges() );
+    }
+
+    /**
+     * The bottom levels include the runtimes of the auxiliary jobs, so that
+     * the priorities of the auxiliary and compute jobs are on the same scale.
+     */
+    @Test
+    public void testCriticalPathPriorities() {
+        runtime( "a", 10 );
+        runtime( "b", 100 );
+        runtime( "c", 20 );
+        runtime( "d", 5 );
+        //the auxiliary jobs are added after the task metrics are locked
+        mDAG.getWorkflowMetrics().lockTaskMetrics( true );
+        Job stageIn = job( "stage_in_a" );
+        stageIn.setJobType( Job.STAGE_IN_JOB );
+        mDAG.add( stageIn );
+        mDAG.addEdge( "stage_in_a", "a" );
+        Job cleanup = job( "cleanup_d" );
+        cleanup.setJobType( Job.CLEANUP_JOB );
+        mDAG.add( cleanup );
+        mDAG.addEdge( "d", "cleanup_d" );
+
+        Map<String,Long> levels = mGenerator.computeBottomLevels( mDAG );
+
+        long cleanupLevel = CondorGenerator.DEFAULT_AUXILLARY_JOB_RUNTIME;
+        assertEquals( cleanupLevel, (long)levels.get( "cleanup_d" ) );
+        assertEquals( cleanupLevel + 5, (long)levels.get( "d" ) );
+        assertEquals( cleanupLevel + 105, (long)levels.get( "b" ) );
+        assertEquals( cleanupLevel + 25, (long)levels.get( "c" ) );
+        assertEquals( cleanupLevel + 115, (long)levels.get( "a" ) );
+        assertEquals( cleanupLevel * 2 + 115, (long)levels.get( "stage_in_a" ) );
+
+        //the stage in job is on the critical path and is released first,
+        //and the cleanup job is released after the compute jobs
+        assertEquals( cleanupLevel * 2 + 115,
+                      mGenerator.getJobPriority( stageIn, 0, levels.get( "stage_in_a" ) ) );
+        assertEquals( cleanupLevel + 105,
+                      mGenerator.getJobPriority( (Job)mDAG.getNode( "b" ).getContent(), 2, levels.get( "b" ) ) );
+        assertEquals( cleanupLevel, mGenerator.getJobPriority( cleanup, 4, levels.get( "cleanup_d" ) ) );
+
+        //without the bottom levels the priorities are by type and depth
+        assertEquals( CondorGenerator.DEFAULT_STAGE_IN_PRIORITY_KEY, mGenerator.getJobPriority( stageIn, 0 ) );
+        assertEquals( CondorGenerator.DEFAULT_CLEANUP_PRIORITY_KEY, mGenerator.getJobPriority( cleanup, 4 ) );
+        assertEquals( 20, mGenerator.getJobPriority( (Job)mDAG.getNode( "b" ).getContent(), 2 ) );
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    private void runtime( String id, long runtime ){
+        ((Job)mDAG.getNode( id ).getContent()).vdsNS.construct( Pegasus.RUNTIME_KEY,
+                                                                Long.toString( runtime ) );
+    }
+
+    private String edges() throws Exception{
+        StringWriter sw = new StringWriter();
+        PrintWriter writer = new PrintWriter( sw );
+        mGenerator.writeEdges( writer, mDAG.jobIterator() );
+        writer.close();
+        return sw.toString().replace( System.getProperty( "line.separator" ), "\n" );
+    }
+
+    private Job job( String name ){
+        Job job = new Job();
+        job.setName( name );
+        job.setJobType( Job.COMPUTE_JOB );
+        return job;
+    }
+}
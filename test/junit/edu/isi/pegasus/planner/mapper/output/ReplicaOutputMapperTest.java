@@ -22,7 +22,10 @@ import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.catalog.site.classes.FileServer;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
 import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
 import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+import edu.isi.pegasus.planner.mapper.MapperException;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.planner.test.TestSetup;
 import java.util.LinkedList;
@@ -134,6 +137,94 @@ public class ReplicaOutputMapperTest  {
         
     }
 
+    /**
+     * Test the prefetch of the locations of the workflow outputs.
+     */
+    @Test
+    public void testPrefetch() {
+        mLogger.logEventStart( "test.output.mapper.Replica", "set", "3" );
+        mProps.setProperty( OutputMapperFactory.PROPERTY_KEY, "Replica" );
+        //small batches, so that the outputs are looked up in more than one go
+        mProps.setProperty( Replica.PROPERTY_PREFIX + "." + Replica.PREFETCH_BATCH_KEY, "2" );
+        Replica mapper = (Replica)OutputMapperFactory.loadInstance( this.workflow( 5 ), mBag );
+
+        //the outputs and the missing file are not looked up in the backend again
+        mapper.mRCCatalog = null;
+        assertEquals( 6, mapper.mPrefetched.size() );
+        for( int i = 1; i <= 5; i++ ){
+            String lfn = "f.a" + i;
+            String expected = ( i == 1 )?
+                              "gsiftp://corbusier.isi.edu/Volumes/data/output/nonregex/" + lfn:
+                              "gsiftp://corbusier.isi.edu/Volumes/data/output/" + lfn;
+            assertEquals( lfn + " not mapped to right location ", expected, mapper.map( lfn, "local", FileServer.OPERATION.put ) );
+        }
+        try{
+            mapper.map( "missing.out", "local", FileServer.OPERATION.put );
+            fail( "Expected exception for an output not in the replica backend" );
+        }
+        catch( MapperException e ){
+            //expected
+        }
+        mLogger.logEventCompletion();
+    }
+
+    /**
+     * Test that the outputs beyond the prefetch limit are looked up when mapped.
+     */
+    @Test
+    public void testPrefetchLimit() {
+        mLogger.logEventStart( "test.output.mapper.Replica", "set", "4" );
+        mProps.setProperty( OutputMapperFactory.PROPERTY_KEY, "Replica" );
+        mProps.setProperty( Replica.PROPERTY_PREFIX + "." + Replica.PREFETCH_LIMIT_KEY, "3" );
+        Replica mapper = (Replica)OutputMapperFactory.loadInstance( this.workflow( 5 ), mBag );
+
+        assertEquals( 3, mapper.mPrefetched.size() );
+        for( int i = 1; i <= 5; i++ ){
+            String lfn = "f.a" + i;
+            assertEquals( lfn + " not mapped to right location ",
+                          mapper.mRCCatalog.lookup( lfn, "local" ),
+                          mapper.map( lfn, "local", FileServer.OPERATION.get ) );
+        }
+        mLogger.logEventCompletion();
+    }
+
+    /**
+     * Test that nothing is prefetched without an output site.
+     */
+    @Test
+    public void testPrefetchWithoutOutputSite() {
+        mLogger.logEventStart( "test.output.mapper.Replica", "set", "5" );
+        mProps.setProperty( OutputMapperFactory.PROPERTY_KEY, "Replica" );
+        Replica mapper = (Replica)OutputMapperFactory.loadInstance( new ADag(), mBag );
+
+        mapper.mOutputSite = null;
+        mapper.prefetch( this.workflow( 5 ), 2, Replica.DEFAULT_PREFETCH_LIMIT );
+        assertTrue( mapper.mPrefetched.isEmpty() );
+        mLogger.logEventCompletion();
+    }
+
+    /**
+     * Returns a workflow with a job per output file f.a1 .. f.an, and a job
+     * with an output that is not in the replica backend.
+     *
+     * @param n  the number of outputs
+     *
+     * @return the workflow
+     */
+    private ADag workflow( int n ){
+        ADag dag = new ADag();
+        for( int i = 0; i <= n; i++ ){
+            Job job = new Job();
+            job.setName( "job" + i );
+            job.setJobType( Job.COMPUTE_JOB );
+            PegasusFile pf = new PegasusFile( i == 0 ? "missing.out" : "f.a" + i );
+            pf.setLinkage( PegasusFile.LINKAGE.output );
+            job.addOutputFile( pf );
+            dag.add( job );
+        }
+        return dag;
+    }
+
      @After
     public void tearDown() {
         mLogger = null;
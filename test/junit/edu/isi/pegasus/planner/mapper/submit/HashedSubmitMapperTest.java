@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.mapper.submit;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.mapper.SubmitMapper;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import edu.isi.pegasus.planner.test.TestSetup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit Test to test the Hashed Submit Mapper.
+ *
+ * @author Karan Vahi
+ */
+public class HashedSubmitMapperTest {
+
+    private PegasusBag mBag;
+
+    private LogManager mLogger;
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        TestSetup testSetup = new DefaultTestSetup();
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        mLogger = testSetup.loadLogger( props );
+        mLogger.logEventStart( "test.planner.mapper.submit.Hashed", "setup", "0" );
+
+        mDirectory = File.createTempFile( "pegasus-submit", "" );
+        mDirectory.delete();
+        mDirectory.mkdirs();
+
+        PlannerOptions options = new PlannerOptions();
+        options.setSubmitDirectory( mDirectory );
+
+        mBag = new PegasusBag();
+        mBag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+        mBag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
+        mBag.add( PegasusBag.PLANNER_OPTIONS, options );
+    }
+
+    /**
+     * The levels are sized from the workflow and the directories are only
+     * created as the jobs are mapped to them.
+     */
+    @Test
+    public void testLevelsFromWorkflow() {
+        SubmitMapper mapper = new Hashed();
+        mapper.initialize( mBag, constructTestWorkflow( 600 ), new Properties(), mDirectory );
+
+        //nothing is created before a job is mapped
+        assertEquals( 0, mDirectory.list().length );
+
+        //600 jobs scaled up for auxiliary jobs fit in one level
+        //with 50 jobs per directory
+        Job job = new Job();
+        assertEquals( "00", mapper.getRelativeDir( job ).getPath() );
+        assertEquals( 1, mDirectory.list().length );
+        for( int i = 1; i < 600; i++ ){
+            mapper.getRelativeDir( job );
+        }
+        assertEquals( "0B", mapper.getRelativeDir( job ).getPath() );
+
+        //only the directories used so far exist
+        String[] dirs = mDirectory.list();
+        assertEquals( 12, dirs.length );
+        for( int i = 0; i < dirs.length; i++ ){
+            assertTrue( new File( mDirectory, String.format( "%02X", i ) ).isDirectory() );
+        }
+        for( int i = 602; i < 3100; i++ ){
+            mapper.getRelativeDir( job );
+        }
+        assertEquals( "3D", mapper.getDir( job ).getName() );
+        assertTrue( mapper.getDir( job ).isDirectory() );
+        assertEquals( 62, mDirectory.list().length );
+    }
+
+    /**
+     * Explicitly configured levels are honored.
+     */
+    @Test
+    public void testConfiguredLevels() {
+        Properties properties = new Properties();
+        properties.setProperty( Hashed.LEVELS_PROPERTY_KEY, "2" );
+        SubmitMapper mapper = new Hashed();
+        mapper.initialize( mBag, constructTestWorkflow( 10 ), properties, mDirectory );
+
+        assertEquals( "00" + File.separator + "00", mapper.getRelativeDir( new Job() ).getPath() );
+        assertTrue( new File( mDirectory, "00" + File.separator + "00" ).isDirectory() );
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+        delete( mDirectory );
+    }
+
+    private ADag constructTestWorkflow( int size ){
+        ADag dag = new ADag();
+        for( int i = 0; i < size; i++ ){
+            Job job = new Job();
+            job.setName( "job_" + i );
+            job.setJobType( Job.COMPUTE_JOB );
+            dag.add( job );
+        }
+        return dag;
+    }
+
+    private void delete( File file ){
+        File[] files = file.listFiles();
+        if( files != null ){
+            for( File f : files ){
+                delete( f );
+            }
+        }
+        file.delete();
+    }
+}
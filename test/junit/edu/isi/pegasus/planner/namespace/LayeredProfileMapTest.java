@@ -0,0 +1,101 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.namespace;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the profiles that read through to a shared layer.
+ *
+ * @author Karan Vahi
+ */
+public class LayeredProfileMapTest {
+
+    private Map<Object,Object> mLayer;
+
+    @Before
+    public void setUp() {
+        mLayer = new LinkedHashMap<Object,Object>();
+        mLayer.put( "c", "3" );
+        mLayer.put( "a", "1" );
+    }
+
+    /**
+     * The overrides and removals are seen through the map, and are only
+     * stored in the map.
+     */
+    @Test
+    public void testOverrides() {
+        LayeredProfileMap map = new LayeredProfileMap( mLayer, new LinkedHashMap<Object,Object>() );
+        assertEquals( 2, map.size() );
+        assertEquals( "1", map.put( "a", "one" ) );
+        assertNull( map.put( "b", "2" ) );
+        assertEquals( "3", map.remove( "c" ) );
+
+        assertEquals( 2, map.size() );
+        assertEquals( "one", map.get( "a" ) );
+        assertFalse( map.containsKey( "c" ) );
+        assertEquals( Arrays.asList( "a", "b" ), new ArrayList<Object>( map.keySet() ) );
+        assertEquals( "1", mLayer.get( "a" ) );
+        assertEquals( "3", mLayer.get( "c" ) );
+
+        //a removed key can be set again
+        map.put( "c", "three" );
+        assertEquals( "three", map.get( "c" ) );
+
+        map.clear();
+        assertTrue( map.isEmpty() );
+        assertEquals( 2, mLayer.size() );
+    }
+
+    /**
+     * A map with sorted overrides iterates over all the keys in sorted
+     * order, and removes through the iterator.
+     */
+    @Test
+    public void testSortedIteration() {
+        LayeredProfileMap map = new LayeredProfileMap( mLayer, new TreeMap<Object,Object>() );
+        map.put( "b", "2" );
+        assertEquals( Arrays.asList( "a", "b", "c" ), new ArrayList<Object>( map.keySet() ) );
+
+        for( Iterator<Object> it = map.keySet().iterator(); it.hasNext(); ){
+            if( it.next().equals( "a" ) ){
+                it.remove();
+            }
+        }
+        for( Map.Entry<Object,Object> entry : map.entrySet() ){
+            entry.setValue( entry.getValue() + "0" );
+        }
+        assertEquals( "{b=20, c=30}", map.toString() );
+
+        LayeredProfileMap copy = map.copy();
+        copy.put( "a", "1" );
+        assertFalse( map.containsKey( "a" ) );
+        assertEquals( "{a=1, b=20, c=30}", copy.toString() );
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.parser.dax;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.parser.DAXParserFactory;
+import edu.isi.pegasus.planner.parser.Parser;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import edu.isi.pegasus.planner.test.TestSetup;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the binary snapshot of a parsed DAX.
+ *
+ * @author Karan Vahi
+ */
+public class DAXSnapshotTest {
+
+    /**
+     * The properties used for this test.
+     */
+    private static final String PROPERTIES_BASENAME="properties";
+
+    private PegasusBag mBag;
+
+    private LogManager mLogger;
+
+    private TestSetup mTestSetup;
+
+    /**
+     * The copy of the DAX the snapshots are written next to.
+     */
+    private File mDAX;
+
+    /**
+     * Setup the logger and properties that all test functions require
+     */
+    @Before
+    public final void setUp() throws Exception{
+        mTestSetup = new DefaultTestSetup();
+        mBag = new PegasusBag();
+
+        mTestSetup.setInputDirectory( this.getClass() );
+        PegasusProperties props = mTestSetup.loadPropertiesFromFile( PROPERTIES_BASENAME, new LinkedList() );
+        mBag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+
+        mLogger  = mTestSetup.loadLogger( props );
+        mLogger.logEventStart( "test.planner.parser.dax", "setup", "0" );
+        mBag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
+
+        File dir = Files.createTempDirectory( "pegasus-dax-snapshot" ).toFile();
+        mDAX = new File( dir, "blackdiamond.dax" );
+        Files.copy( new File( mTestSetup.getInputDirectory(), "blackdiamond.dax" ).toPath(), mDAX.toPath() );
+        mLogger.logEventCompletion();
+    }
+
+    @After
+    public void tearDown(){
+        new File( mDAX.getPath() + DAXSnapshot.SNAPSHOT_FILE_SUFFIX ).delete();
+        mDAX.delete();
+        mDAX.getParentFile().delete();
+    }
+
+    @Test
+    public void testReplayMatchesParse() {
+        mLogger.logEventStart( "test.planner.parser.dax", "set", "1" );
+        ADag parsed = this.parseAndRecord();
+        ADag replayed = this.replay();
+        assertNotNull( "snapshot not replayed", replayed );
+
+        assertEquals( parsed.getNoOfJobs(), replayed.getNoOfJobs() );
+        assertEquals( parsed.getLabel(), replayed.getLabel() );
+        assertEquals( parsed.getNotifications().toString(), replayed.getNotifications().toString() );
+        for( Iterator<GraphNode> it = parsed.nodeIterator(); it.hasNext(); ){
+            GraphNode expected = it.next();
+            GraphNode actual   = replayed.getNode( expected.getID() );
+            assertNotNull( "job missing " + expected.getID(), actual );
+            assertEquals( ((Job)expected.getContent()).toString(), ((Job)actual.getContent()).toString() );
+            assertEquals( ids( expected.getParents() ), ids( actual.getParents() ) );
+            assertEquals( ids( expected.getChildren() ), ids( actual.getChildren() ) );
+        }
+        assertEquals( parsed.getReplicaStore().toString(), replayed.getReplicaStore().toString() );
+        assertEquals( parsed.getTransformationStore().getAllEntries().toString(),
+                      replayed.getTransformationStore().getAllEntries().toString() );
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testStaleSnapshotIgnored() {
+        mLogger.logEventStart( "test.planner.parser.dax", "set", "2" );
+        this.parseAndRecord();
+        assertTrue( mDAX.setLastModified( mDAX.lastModified() + 10000 ) );
+        assertEquals( null, this.replay() );
+        mLogger.logEventCompletion();
+    }
+
+    /**
+     * A DAX rewritten with the same size and modification time is detected
+     * by its contents.
+     */
+    @Test
+    public void testRewrittenDAXIgnored() throws Exception{
+        mLogger.logEventStart( "test.planner.parser.dax", "set", "4" );
+        this.parseAndRecord();
+        long modified = mDAX.lastModified();
+        long length = mDAX.length();
+        String contents = new String( Files.readAllBytes( mDAX.toPath() ), "UTF-8" );
+        Files.write( mDAX.toPath(), contents.replace( "findrange", "findrangE" ).getBytes( "UTF-8" ) );
+        assertTrue( mDAX.setLastModified( modified ) );
+        assertEquals( length, mDAX.length() );
+        assertEquals( null, this.replay() );
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testTruncatedSnapshotIgnored() throws Exception{
+        mLogger.logEventStart( "test.planner.parser.dax", "set", "3" );
+        this.parseAndRecord();
+        File f = new File( mDAX.getPath() + DAXSnapshot.SNAPSHOT_FILE_SUFFIX );
+        RandomAccessFile raf = new RandomAccessFile( f, "rw" );
+        raf.setLength( raf.length() / 2 );
+        raf.close();
+        assertEquals( null, this.replay() );
+        mLogger.logEventCompletion();
+    }
+
+    /**
+     * Parses the DAX and writes out the snapshot.
+     *
+     * @return the parsed workflow
+     */
+    private ADag parseAndRecord(){
+        String dax = mDAX.getAbsolutePath();
+        DAXSnapshot snapshot = new DAXSnapshot( mBag, dax );
+        Callback cb = snapshot.record( DAXParserFactory.loadDAXParserCallback( mBag, dax, "DAX2CDAG" ) );
+        Parser p = (Parser)DAXParserFactory.loadDAXParser( mBag, cb, dax );
+        p.startParser( dax );
+        assertTrue( "snapshot not written", snapshot.write() );
+        assertTrue( snapshot.getFile().length() > 0 );
+        return (ADag)cb.getConstructedObject();
+    }
+
+    /**
+     * Replays the snapshot of the DAX.
+     *
+     * @return the workflow, else null if the snapshot was not replayed
+     */
+    private ADag replay(){
+        String dax = mDAX.getAbsolutePath();
+        Callback cb = DAXParserFactory.loadDAXParserCallback( mBag, dax, "DAX2CDAG" );
+        return new DAXSnapshot( mBag, dax ).replay( cb ) ? (ADag)cb.getConstructedObject() : null;
+    }
+
+    /**
+     * Returns the ids of the nodes.
+     *
+     * @param nodes  the nodes
+     *
+     * @return the sorted ids
+     */
+    private Set<String> ids( Collection<GraphNode> nodes ){
+        Set<String> result = new TreeSet<String>();
+        for( GraphNode n : nodes ){
+            result.add( n.getID() );
+        }
+        return result;
+    }
+}
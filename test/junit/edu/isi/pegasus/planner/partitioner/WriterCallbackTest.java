@@ -0,0 +1,154 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.partitioner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.parser.dax.DAX2Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the writing out of the partitioned daxes by the WriterCallback.
+ *
+ * @author Karan Vahi
+ */
+public class WriterCallbackTest {
+
+    private DefaultTestSetup mTestSetup;
+
+    private LogManager mLogger;
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws Exception{
+        mTestSetup = new DefaultTestSetup();
+        mTestSetup.setInputDirectory( this.getClass() );
+        mLogger = mTestSetup.loadLogger( PegasusProperties.nonSingletonInstance() );
+        mLogger.logEventStart( "test.planner.partitioner", "setup", "0" );
+        mDirectory = Files.createTempDirectory( "pegasus-partition" ).toFile();
+    }
+
+    @After
+    public void tearDown(){
+        mLogger.logEventCompletion();
+        delete( mDirectory );
+    }
+
+    @Test
+    public void testConcurrentWritesMatchSequential() throws Exception{
+        File sequential = this.partition( "sequential", 1 );
+        File concurrent = this.partition( "concurrent", 4 );
+
+        String[] expected = sequential.list();
+        String[] actual   = concurrent.list();
+        Arrays.sort( expected );
+        Arrays.sort( actual );
+        assertArrayEquals( expected, actual );
+        //pdax and one dax per level of the diamond
+        assertEquals( 4, actual.length );
+        for( String name : expected ){
+            assertEquals( "Content differs for " + name,
+                          contents( new File( sequential, name ) ),
+                          contents( new File( concurrent, name ) ) );
+        }
+    }
+
+    /**
+     * Partitions the blackdiamond dax level by level, and writes out the
+     * partitioned daxes.
+     *
+     * @param name     the name of the directory to write the daxes to.
+     * @param threads  the number of writer threads to use.
+     *
+     * @return the directory containing the partitioned daxes
+     */
+    private File partition( String name, int threads ){
+        File dir = new File( mDirectory, name );
+        dir.mkdirs();
+        String dax = new File( mTestSetup.getInputDirectory(), "blackdiamond.dax" ).getAbsolutePath();
+
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        props.setProperty( "pegasus.partition.writer.threads", Integer.toString( threads ) );
+
+        //the graph of the diamond
+        Map<String,GraphNode> graph = new HashMap<String,GraphNode>();
+        GraphNode root = node( graph, DAX2Graph.DUMMY_NODE_ID );
+        edge( root, node( graph, "ID000001" ) );
+        edge( graph.get( "ID000001" ), node( graph, "ID000002" ) );
+        edge( graph.get( "ID000001" ), node( graph, "ID000003" ) );
+        edge( graph.get( "ID000002" ), node( graph, "ID000004" ) );
+        edge( graph.get( "ID000003" ), graph.get( "ID000004" ) );
+
+        WriterCallback cb = new WriterCallback();
+        cb.initialize( props, dax, "blackdiamond", dir.getAbsolutePath() );
+        new BFS( root, graph, props ).determinePartitions( cb );
+        return dir;
+    }
+
+    private GraphNode node( Map<String,GraphNode> graph, String id ){
+        GraphNode node = new GraphNode( id, id );
+        graph.put( id, node );
+        return node;
+    }
+
+    private void edge( GraphNode parent, GraphNode child ){
+        parent.addChild( child );
+        child.addParent( parent );
+    }
+
+    /**
+     * Returns the lines of a file, without the generated timestamp comments.
+     *
+     * @param f  the file
+     *
+     * @return the lines
+     */
+    private List<String> contents( File f ) throws Exception{
+        List<String> result = new LinkedList<String>();
+        for( String line : Files.readAllLines( f.toPath() ) ){
+            if( !line.startsWith( "<!-- generated:" ) ){
+                result.add( line );
+            }
+        }
+        return result;
+    }
+
+    private void delete( File f ){
+        File[] children = f.listFiles();
+        if( children != null ){
+            for( File child : children ){
+                delete( child );
+            }
+        }
+        f.delete();
+    }
+}
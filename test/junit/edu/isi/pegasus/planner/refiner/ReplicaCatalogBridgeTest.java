@@ -0,0 +1,200 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.ReplicaCatalog;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.classes.ReplicaLocation;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import edu.isi.pegasus.planner.test.TestSetup;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A JUnit Test to test the lookups done by the ReplicaCatalogBridge.
+ *
+ * @author Karan Vahi
+ */
+public class ReplicaCatalogBridgeTest {
+
+    private PegasusBag mBag;
+
+    private PegasusProperties mProps;
+
+    private LogManager mLogger;
+
+    private PlannerOptions mOptions;
+
+    private File mDirectory;
+
+    private File mRC;
+
+    @Before
+    public void setUp() throws IOException {
+        TestSetup testSetup = new DefaultTestSetup();
+        mProps  = PegasusProperties.nonSingletonInstance();
+        mLogger = testSetup.loadLogger( mProps );
+        mLogger.logEventStart( "test.planner.refiner.ReplicaCatalogBridge", "setup", "0" );
+
+        mDirectory = Files.createTempDirectory( "pegasus-rcb" ).toFile();
+        mRC = new File( mDirectory, "rc.txt" );
+        write( mRC, "f.a file:///rc/f.a site=\"rc\"",
+                    "f.b file:///rc/f.b site=\"rc\"",
+                    "f.c file:///rc/f.c site=\"rc\"" );
+        mProps.setProperty( ReplicaCatalog.c_prefix, "File" );
+        mProps.setProperty( ReplicaCatalog.c_prefix + ".file", mRC.getAbsolutePath() );
+        mProps.writeOutProperties( mDirectory.getAbsolutePath() );
+
+        File input = new File( mDirectory, "input" );
+        input.mkdirs();
+        new File( input, "f.b" ).createNewFile();
+
+        mOptions = new PlannerOptions();
+        mOptions.setForce( true );
+        mOptions.setInputDirectories( input.getAbsolutePath() );
+
+        mBag = new PegasusBag();
+        mBag.add( PegasusBag.PEGASUS_PROPERTIES, mProps );
+        mBag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
+        mBag.add( PegasusBag.PLANNER_OPTIONS, mOptions );
+        mBag.add( PegasusBag.SITE_STORE, new SiteStore() );
+    }
+
+    /**
+     * Only the raw input files not resolved by the cache files or the input
+     * directories are looked up in the replica catalog.
+     */
+    @Test
+    public void testReplicaCatalogLookedUpForUnresolvedFiles() throws IOException {
+        File cache = new File( mDirectory, "parent.cache" );
+        write( cache, "f.a file:///cache/f.a site=\"cache\"" );
+        mOptions.setCacheFiles( cache.getAbsolutePath() );
+
+        ReplicaCatalogBridge rcb = new ReplicaCatalogBridge( constructTestWorkflow( "f.a", "f.b", "f.c" ), mBag );
+
+        assertEquals( set( "f.a", "f.b", "f.c" ), rcb.getFilesInReplica() );
+        assertEquals( "file:///cache/f.a", rcb.getFileLocs( "f.a" ).getPFN( 0 ).getPFN() );
+        assertTrue( rcb.getFileLocs( "f.b" ).getPFN( 0 ).getPFN().endsWith( "/input/f.b" ) );
+        assertEquals( "file:///rc/f.c", rcb.getFileLocs( "f.c" ).getPFN( 0 ).getPFN() );
+        //the output file is not searched for with force
+        assertEquals( null, rcb.getFileLocs( "f.d" ) );
+        assertTrue( rcb.getReplicaFileSources().contains( mRC ) );
+        rcb.closeConnection();
+    }
+
+    /**
+     * The replica catalog is not loaded if the other sources resolve all the
+     * raw input files, but is still recorded as a source and configured for
+     * the registration jobs.
+     */
+    @Test
+    public void testReplicaCatalogSkipped() throws IOException {
+        File cache = new File( mDirectory, "parent.cache" );
+        write( cache, "f.a file:///cache/f.a site=\"cache\"" );
+        mOptions.setCacheFiles( cache.getAbsolutePath() );
+
+        ReplicaCatalogBridge rcb = new ReplicaCatalogBridge( constructTestWorkflow( "f.a", "f.b" ), mBag );
+
+        assertEquals( set( "f.a", "f.b" ), rcb.getFilesInReplica() );
+        assertEquals( "file:///cache/f.a", rcb.getFileLocs( "f.a" ).getPFN( 0 ).getPFN() );
+        //the registration jobs still write to the replica catalog
+        assertTrue( rcb.getReplicaFileSources().contains( mRC ) );
+        assertTrue( rcb.getReplicaFileSources().contains( cache ) );
+        assertEquals( "1", mProps.getProperty( rcb.getDefaultRegistrationMaxJobsPropertyKey() ) );
+        rcb.closeConnection();
+    }
+
+    /**
+     * The locations in the DAX are merged with the replica catalog into a
+     * copy, leaving the entries in the replica store of the workflow as they
+     * are.
+     */
+    @Test
+    public void testDAXLocationsNotModified() throws IOException {
+        mProps.setProperty( "pegasus.catalog.replica.dax.asrc", "true" );
+        ADag dag = constructTestWorkflow( "f.a", "f.b", "f.c" );
+        ReplicaLocation rl = new ReplicaLocation( "f.c",
+                new ArrayList<ReplicaCatalogEntry>( Arrays.asList( new ReplicaCatalogEntry( "file:///dax/f.c", "dax" ) ) ) );
+        dag.getReplicaStore().add( rl );
+        //the store keeps its own copy
+        rl.addPFN( new ReplicaCatalogEntry( "file:///other/f.c", "other" ) );
+        assertEquals( 1, dag.getReplicaStore().getReplicaLocation( "f.c" ).getPFNCount() );
+
+        ReplicaCatalogBridge rcb = new ReplicaCatalogBridge( dag, mBag );
+        for( int i = 0; i < 2; i++ ){
+            assertEquals( 2, rcb.getFileLocs( "f.c" ).getPFNCount() );
+        }
+        assertEquals( 1, dag.getReplicaStore().getReplicaLocation( "f.c" ).getPFNCount() );
+        rcb.closeConnection();
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+        delete( mDirectory );
+    }
+
+    private ADag constructTestWorkflow( String... inputs ){
+        ADag dag = new ADag();
+        for( String lfn : inputs ){
+            dag.getDAGInfo().updateLFNMap( lfn, "i" );
+        }
+        dag.getDAGInfo().updateLFNMap( "f.d", "o" );
+        return dag;
+    }
+
+    private Set<String> set( String... lfns ){
+        return new HashSet<String>( Arrays.asList( lfns ) );
+    }
+
+    private void write( File file, String... lines ) throws IOException {
+        PrintWriter pw = new PrintWriter( new FileWriter( file ) );
+        for( String line : lines ){
+            pw.println( line );
+        }
+        pw.close();
+    }
+
+    private void delete( File file ){
+        File[] files = file.listFiles();
+        if( files != null ){
+            for( File f : files ){
+                delete( f );
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.refiner.createdir;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.site.classes.Directory;
+import edu.isi.pegasus.planner.catalog.site.classes.FileServer;
+import edu.isi.pegasus.planner.catalog.site.classes.InternalMountPoint;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class to test the edges added by the Minimal create dir strategy.
+ *
+ * @author Karan Vahi
+ */
+public class MinimalTest {
+
+    private PegasusBag mBag;
+
+    private LogManager mLogger;
+
+    private Minimal mStrategy;
+
+    @Before
+    public void setUp() {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        mLogger = new DefaultTestSetup().loadLogger( props );
+        mLogger.logEventStart( "test.planner.refiner.createdir", "setup", "0" );
+
+        SiteStore store = new SiteStore();
+        for( String site : new String[]{ "A", "B" } ){
+            SiteCatalogEntry entry = new SiteCatalogEntry( site );
+            Directory scratch = new Directory();
+            scratch.setType( Directory.TYPE.shared_scratch );
+            scratch.setInternalMountPoint( new InternalMountPoint( "/scratch" ) );
+            FileServer all = new FileServer( "file", "file://", "/scratch" );
+            all.setSupportedOperation( FileServer.OPERATION.all );
+            scratch.addFileServer( all );
+            entry.addDirectory( scratch );
+            store.addEntry( entry );
+        }
+        PlannerOptions options = new PlannerOptions();
+        store.setForPlannerUse( props, options );
+
+        mBag = new PegasusBag();
+        mBag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+        mBag.add( PegasusBag.PLANNER_OPTIONS, options );
+        mBag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
+        mBag.add( PegasusBag.SITE_STORE, store );
+
+        mStrategy = new Minimal();
+        mStrategy.initialize( mBag, new Implementation(){
+            public void initialize( PegasusBag bag ){
+            }
+
+            public Job makeCreateDirJob( String site, String name, String directoryURL ){
+                Job job = new Job();
+                job.setName( name );
+                job.setJobType( Job.CREATE_DIR_JOB );
+                return job;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    @Test
+    public void testMinimalEdges() {
+        //j1 -> j2, j1 -> j3, j2 -> j4, j3 -> j4 and j5 on its own
+        ADag dag = new ADag();
+        dag.setLabel( "test" );
+        dag.setIndex( "0" );
+        dag.add( job( "j1", "A" ) );
+        dag.add( job( "j2", "A" ) );
+        dag.add( job( "j3", "B" ) );
+        dag.add( job( "j4", "A" ) );
+        dag.add( job( "j5", "B" ) );
+        dag.addEdge( "j1", "j2" );
+        dag.addEdge( "j1", "j3" );
+        dag.addEdge( "j2", "j4" );
+        dag.addEdge( "j3", "j4" );
+        dag.getWorkflowMetrics().lockTaskMetrics( true );
+
+        mStrategy.addCreateDirectoryNodes( dag, new LinkedHashSet<String>( Arrays.asList( "A", "B" ) ) );
+
+        assertEquals( 7, dag.size() );
+        assertEquals( set( "j1" ), children( dag, "create_dir_test_0_A" ) );
+        assertEquals( set( "j3", "j5" ), children( dag, "create_dir_test_0_B" ) );
+        assertEquals( set( "create_dir_test_0_A" ), parents( dag, "j1" ) );
+        assertEquals( set( "j2", "j3" ), parents( dag, "j4" ) );
+    }
+
+    @Test
+    public void testWideWorkflowWithManySites() {
+        //more sites than fit in a single word of the mask
+        int sites = 70;
+        int width = 20000;
+        Set<String> handles = new LinkedHashSet<String>();
+        for( int i = 0; i < sites; i++ ){
+            handles.add( "s" + i );
+        }
+
+        ADag dag = new ADag();
+        dag.setLabel( "wide" );
+        dag.setIndex( "0" );
+        dag.add( job( "sink", "s" + ( sites - 1 ) ) );
+        for( int i = 0; i < width; i++ ){
+            dag.add( job( "j" + i, "s" + ( i % sites ) ) );
+            dag.addEdge( "j" + i, "sink" );
+        }
+        dag.getWorkflowMetrics().lockTaskMetrics( true );
+
+        mStrategy.addCreateDirectoryNodes( dag, handles );
+
+        assertEquals( width + 1 + sites, dag.size() );
+        //each create dir job is a parent of the roots on its site only
+        assertEquals( width / sites + 1, children( dag, "create_dir_wide_0_s0" ).size() );
+        assertEquals( set( "create_dir_wide_0_s0" ), parents( dag, "j0" ) );
+        //all the sites are covered by the ancestors of the sink
+        assertEquals( width, parents( dag, "sink" ).size() );
+    }
+
+    private Job job( String name, String site ){
+        Job job = new Job();
+        job.setName( name );
+        job.setJobType( Job.COMPUTE_JOB );
+        job.setSiteHandle( site );
+        job.setStagingSiteHandle( site );
+        return job;
+    }
+
+    private Set<String> children( ADag dag, String id ){
+        Set<String> result = new TreeSet<String>();
+        for( GraphNode n : dag.getNode( id ).getChildren() ){
+            result.add( n.getID() );
+        }
+        return result;
+    }
+
+    private Set<String> parents( ADag dag, String id ){
+        Set<String> result = new TreeSet<String>();
+        for( GraphNode n : dag.getNode( id ).getParents() ){
+            result.add( n.getID() );
+        }
+        return result;
+    }
+
+    private Set<String> set( String... ids ){
+        return new TreeSet<String>( new HashSet<String>( Arrays.asList( ids ) ) );
+    }
+}
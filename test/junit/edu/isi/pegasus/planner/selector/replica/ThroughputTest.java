@@ -0,0 +1,206 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.selector.replica;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.catalog.replica.ReplicaCatalogEntry;
+import edu.isi.pegasus.planner.classes.ReplicaLocation;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Metadata;
+import edu.isi.pegasus.planner.selector.ReplicaSelector;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+import edu.isi.pegasus.planner.test.TestSetup;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the throughput aware replica selector and the transfer
+ * statistics it uses.
+ *
+ * @author Karan Vahi
+ */
+public class ThroughputTest {
+
+    private static final double HALF_LIFE = 7 * 24 * 3600;
+
+    private LogManager mLogger;
+
+    private PegasusProperties mProps;
+
+    private File mDirectory;
+
+    private long mNow;
+
+    @Before
+    public void setUp() throws IOException {
+        TestSetup testSetup = new DefaultTestSetup();
+        mProps  = PegasusProperties.nonSingletonInstance();
+        mLogger = testSetup.loadLogger( mProps );
+        mLogger.logEventStart( "test.planner.selector.replica.Throughput", "setup", "0" );
+
+        mDirectory = File.createTempFile( "pegasus-throughput", "" );
+        mDirectory.delete();
+        mDirectory.mkdirs();
+        mNow = System.currentTimeMillis() / 1000;
+    }
+
+    @Test
+    public void testIngestRecords() throws IOException {
+        File records = new File( mDirectory, "transfer.err" );
+        PrintWriter pw = new PrintWriter( new FileWriter( records ) );
+        pw.println( "2017-01-01 10:00:00,000    INFO:  Stats: no local files in the transfer set" );
+        pw.println( record( "gsiftp://fast.org/data/f.a", 0, mNow - 100, 10, 100000000 ) );
+        //the same record as reported to a monitoring endpoint
+        pw.println( record( "gsiftp://fast.org/data/f.a", 0, mNow - 100, 10, 100000000 ).
+                    replace( "    INFO:  ", "   DEBUG:  " ).
+                    replace( " src_url=", " wf_uuid=1 dag_job_id=stage_in_0 hostname=node condor_job_id=1.0 src_url=" ) );
+        pw.println( record( "gsiftp://fast.org/data/f.b", 0, mNow - 50, 10, 100000000 ) );
+        pw.println( record( "gsiftp://slow.org/data/f.a", 1, mNow - 90, 20, -1 ) );
+        pw.println( record( "gsiftp://slow.org/data/f.b", 0, mNow - 80, 20, 20000000 ) );
+        pw.println( record( "file:///data/f.a", 0, mNow - 70, 1, 1000 ) );
+        pw.close();
+
+        TransferStatistics stats = new TransferStatistics( HALF_LIFE );
+        assertEquals( 4, stats.ingest( records ) );
+        assertEquals( 2, stats.size() );
+        assertEquals( 1e7, stats.getThroughput( "gsiftp://fast.org" ), 1e4 );
+        assertEquals( 1e6, stats.getThroughput( "gsiftp://slow.org" ), 1e3 );
+        assertEquals( 0.5, stats.getFailureRate( "gsiftp://slow.org" ), 1e-3 );
+        assertTrue( stats.isKnown( "gsiftp://fast.org", mNow ) );
+        assertFalse( stats.isKnown( "gsiftp://unknown.org", mNow ) );
+
+        //records already seen are not added again
+        assertEquals( 0, stats.ingest( mDirectory ) );
+
+        //the store round trips through a file
+        File file = new File( mDirectory, "stats.txt" );
+        stats.store( file );
+        TransferStatistics loaded = new TransferStatistics( HALF_LIFE );
+        loaded.load( file );
+        assertEquals( stats.getThroughput( "gsiftp://fast.org" ), loaded.getThroughput( "gsiftp://fast.org" ), 1e-6 );
+        assertEquals( 2, loaded.getAttempts( "gsiftp://slow.org", mNow ), 1e-3 );
+        assertEquals( 0, loaded.ingest( records ) );
+    }
+
+    @Test
+    public void testObservationsDecay() {
+        TransferStatistics stats = new TransferStatistics( 3600 );
+        stats.record( "gsiftp://a.org", mNow - 3600, 10, 1000, true );
+        assertEquals( 0.5, stats.getAttempts( "gsiftp://a.org", mNow ), 1e-6 );
+        assertTrue( stats.isKnown( "gsiftp://a.org", mNow ) );
+        assertFalse( stats.isKnown( "gsiftp://a.org", mNow + 3600 ) );
+
+        //a newer observation outweighs the older one
+        stats.record( "gsiftp://a.org", mNow, 10, 10000, true );
+        assertEquals( ( 500 + 10000 ) / 15.0, stats.getThroughput( "gsiftp://a.org" ), 1e-6 );
+    }
+
+    /**
+     * The transfer records are only requested from pegasus-transfer, when
+     * this selector is configured.
+     */
+    @Test
+    public void testIsSelected() {
+        assertFalse( Throughput.isSelected( mProps ) );
+        mProps.setProperty( "pegasus.selector.replica", "Throughput" );
+        assertTrue( Throughput.isSelected( mProps ) );
+        mProps.setProperty( "pegasus.selector.replica", Throughput.class.getName() );
+        assertTrue( Throughput.isSelected( mProps ) );
+        mProps.setProperty( "pegasus.selector.replica", "Regex" );
+        assertFalse( Throughput.isSelected( mProps ) );
+    }
+
+    @Test
+    public void testOrderByExpectedTransferTime() {
+        TransferStatistics stats = new TransferStatistics( HALF_LIFE );
+        stats.record( "gsiftp://slow.org", mNow, 10, 1e7, true );
+        stats.record( "gsiftp://fast.org", mNow, 10, 1e8, true );
+        stats.record( "gsiftp://flaky.org", mNow - 1, 10, 5e7, true );
+        stats.record( "gsiftp://flaky.org", mNow, 10, -1, false );
+
+        List<ReplicaCatalogEntry> rces = new LinkedList<ReplicaCatalogEntry>();
+        rces.add( new ReplicaCatalogEntry( "gsiftp://slow.org/data/f.a", "slow" ) );
+        rces.add( new ReplicaCatalogEntry( "gsiftp://flaky.org/data/f.a", "flaky" ) );
+        rces.add( new ReplicaCatalogEntry( "gsiftp://fast.org/data/f.a", "fast" ) );
+        rces.add( new ReplicaCatalogEntry( "gsiftp://new.org/data/f.a", "new" ) );
+        rces.add( new ReplicaCatalogEntry( "file:///data/f.a", "new" ) );
+        rces.add( new ReplicaCatalogEntry( "file:///data/f.a", "other" ) );
+        ReplicaLocation rl = new ReplicaLocation( "f.a", rces );
+        rl.addMetadata( Metadata.SIZE_KEY, "1000000" );
+
+        ReplicaSelector selector = new Throughput( mProps, stats, 0 );
+        ReplicaLocation result = selector.selectAndOrderReplicas( rl, "new", false );
+
+        //the unknown source is assumed to be as fast as the fastest, and
+        //wins the tie as it is on the preferred site
+        String[] expected = { "file:///data/f.a",
+                              "gsiftp://new.org/data/f.a",
+                              "gsiftp://fast.org/data/f.a",
+                              "gsiftp://flaky.org/data/f.a",
+                              "gsiftp://slow.org/data/f.a" };
+        assertEquals( expected.length, result.getPFNCount() );
+        for( int i = 0; i < expected.length; i++ ){
+            assertEquals( expected[i], result.getPFN( i ).getPFN() );
+        }
+        assertEquals( "100", result.getPFN( 0 ).getAttribute( ReplicaSelector.PRIORITY_KEY ) );
+        assertEquals( "50", result.getPFN( 1 ).getAttribute( ReplicaSelector.PRIORITY_KEY ) );
+        assertEquals( "47", result.getPFN( 4 ).getAttribute( ReplicaSelector.PRIORITY_KEY ) );
+
+        assertEquals( "gsiftp://fast.org/data/f.a", selector.selectReplica( rl, "fast", false ).getPFN() );
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+        delete( mDirectory );
+    }
+
+    private String record( String url, int status, long start, int duration, long bytes ){
+        StringBuilder sb = new StringBuilder();
+        sb.append( "2017-01-01 10:00:00,000    INFO:  ts=" ).append( start + duration ).
+           append( " event=data_transfer level=INFO status=" ).append( status ).
+           append( " src_url=" ).append( url ).append( " src_site_name=remote" ).
+           append( " dst_url=file:///scratch/f dst_site_name=compute" ).
+           append( " transfer_start_ts=" ).append( start ).
+           append( " transfer_duration=" ).append( duration );
+        if( bytes > 0 ){
+            sb.append( " bytes_transferred=" ).append( bytes );
+        }
+        return sb.toString();
+    }
+
+    private void delete( File file ){
+        File[] files = file.listFiles();
+        if( files != null ){
+            for( File f : files ){
+                delete( f );
+            }
+        }
+        file.delete();
+    }
+}
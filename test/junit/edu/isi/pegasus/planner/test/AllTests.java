@@ -24,13 +24,18 @@ import org.junit.runners.Suite.SuiteClasses;
     edu.isi.pegasus.common.util.VersionTest.class,
     edu.isi.pegasus.common.util.PegasusURLTest.class,
     edu.isi.pegasus.planner.namespace.PegasusTest.class,
+    edu.isi.pegasus.planner.namespace.LayeredProfileMapTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.RegexRCTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.JDBCRCTest.class,
     edu.isi.pegasus.planner.catalog.replica.impl.SimpleFileTest.class,
+    edu.isi.pegasus.planner.catalog.replica.impl.DirectoryTest.class,
     edu.isi.pegasus.planner.catalog.site.impl.XMLTest.class,
+    edu.isi.pegasus.planner.catalog.site.classes.SiteStoreTest.class,
     edu.isi.pegasus.planner.catalog.transformation.impl.TextTest.class,
     edu.isi.pegasus.planner.cluster.RuntimeClusteringTest.class,
     edu.isi.pegasus.planner.code.generator.condor.CondorEnvironmentEscapeTest.class,
+    edu.isi.pegasus.planner.code.generator.condor.CondorGeneratorTest.class,
+    edu.isi.pegasus.planner.code.generator.MetricsSpoolTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.GliteTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.CondorTest.class,
     edu.isi.pegasus.planner.code.generator.condor.style.CondorGTest.class,
@@ -38,11 +43,26 @@ import org.junit.runners.Suite.SuiteClasses;
     edu.isi.pegasus.planner.mapper.output.HashedOutputMapperTest.class,
     edu.isi.pegasus.planner.mapper.output.ReplicaOutputMapperTest.class,
     edu.isi.pegasus.planner.mapper.output.FixedOutputMapperTest.class,
+    edu.isi.pegasus.planner.mapper.submit.HashedSubmitMapperTest.class,
     edu.isi.pegasus.planner.refiner.DataReuseEngineTest.class,
+    edu.isi.pegasus.planner.refiner.ReplicaCatalogBridgeTest.class,
     edu.isi.pegasus.common.util.GLiteEscapeTest.class,
     edu.isi.pegasus.common.util.VariableExpanderTest.class,
     edu.isi.pegasus.planner.partitioner.graph.CycleCheckerTest.class,
-    edu.isi.pegasus.planner.parser.dax.DAXParser3Test.class 
+    edu.isi.pegasus.planner.partitioner.WriterCallbackTest.class,
+    edu.isi.pegasus.planner.parser.dax.DAXParser3Test.class,
+    edu.isi.pegasus.planner.parser.dax.DAXSnapshotTest.class,
+    edu.isi.pegasus.planner.refiner.createdir.MinimalTest.class,
+    edu.isi.pegasus.planner.transfer.refiner.SizeBalancedClusterTest.class,
+    edu.isi.pegasus.planner.classes.PlannerCacheTest.class,
+    edu.isi.pegasus.planner.classes.PlannerProfileTest.class,
+    edu.isi.pegasus.planner.classes.FileIndexTest.class,
+    edu.isi.pegasus.planner.classes.ProfileLayerTest.class,
+    edu.isi.pegasus.planner.selector.replica.ThroughputTest.class,
+    edu.isi.pegasus.planner.catalog.CatalogCacheTest.class,
+    edu.isi.pegasus.planner.client.PlannerServerTest.class,
+    org.griphyn.vdl.router.CacheTest.class,
+    org.griphyn.vdl.router.RouteTest.class
 })
 public class AllTests {
 }
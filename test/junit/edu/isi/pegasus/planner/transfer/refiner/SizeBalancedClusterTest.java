@@ -0,0 +1,156 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package edu.isi.pegasus.planner.transfer.refiner;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.FileTransfer;
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+import edu.isi.pegasus.planner.common.PegasusProperties;
+import edu.isi.pegasus.planner.namespace.Metadata;
+import edu.isi.pegasus.planner.test.DefaultTestSetup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the distribution of the files amongst the transfer jobs
+ * by size, in the SizeBalancedCluster refiner.
+ *
+ * @author Karan Vahi
+ */
+public class SizeBalancedClusterTest {
+
+    private SizeBalancedCluster mRefiner;
+
+    private LogManager mLogger;
+
+    private int mFiles;
+
+    @Before
+    public void setUp() {
+        PegasusProperties props = PegasusProperties.nonSingletonInstance();
+        mLogger = new DefaultTestSetup().loadLogger( props );
+        mLogger.logEventStart( "test.planner.transfer.refiner.SizeBalancedCluster", "setup", "0" );
+        PegasusBag bag = new PegasusBag();
+        bag.add( PegasusBag.PEGASUS_PROPERTIES, props );
+        bag.add( PegasusBag.PLANNER_OPTIONS, new PlannerOptions() );
+        bag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
+        mRefiner = new SizeBalancedCluster( new ADag(), bag );
+        mFiles = 0;
+    }
+
+    @After
+    public void tearDown() {
+        mLogger.logEventCompletion();
+    }
+
+    /**
+     * The files are assigned largest first, each to the transfer job with the
+     * least bytes so far, so that a few large files do not end up in the same
+     * transfer job.
+     */
+    @Test
+    public void testSkewedSizes() {
+        List<FileTransfer> files = new ArrayList<FileTransfer>();
+        for( double size : new double[]{ 100, 100, 700, 100, 200, 100, 300, 100, 200, 100 } ){
+            files.add( file( size ) );
+        }
+        //the size of a file may only be known from the metadata
+        files.get( 6 ).setSize( -1 );
+        files.get( 6 ).addMetadata( Metadata.SIZE_KEY, "300" );
+
+        BalancedCluster.PoolTransfer pt = distribute( files, 3 );
+
+        assertEquals( Arrays.asList( 700.0, 700.0, 600.0 ), bytes( pt ) );
+        assertEquals( Arrays.asList( 1, 5, 4 ), counts( pt ) );
+    }
+
+    /**
+     * A file with an unknown size is charged the average of the known sizes,
+     * and not a single byte.
+     */
+    @Test
+    public void testUnknownSizes() {
+        FileTransfer first = file( -1 );
+        FileTransfer second = file( -1 );
+        BalancedCluster.PoolTransfer pt = distribute(
+                new ArrayList<FileTransfer>( Arrays.asList( first, file( 200 ), second, file( 600 ), file( 100 ) ) ), 2 );
+
+        //the first unknown file is charged 300 bytes, and fills up the
+        //second job to 600 bytes, so the second unknown file goes to the first job
+        assertEquals( Arrays.asList( 600.0, 300.0 ), bytes( pt ) );
+        List<BalancedCluster.TransferContainer> containers = containers( pt );
+        assertTrue( containers.get( 1 ).getFileTransfers().contains( first ) );
+        assertTrue( containers.get( 0 ).getFileTransfers().contains( second ) );
+    }
+
+    private BalancedCluster.PoolTransfer distribute( List<FileTransfer> files, int bundle ){
+        BalancedCluster.PoolTransfer pt = mRefiner.new PoolTransfer( "compute", true, bundle );
+        mRefiner.sortBySize( files );
+        for( FileTransfer ft : files ){
+            mRefiner.addTransfer( pt, ft, 0, Job.STAGE_IN_JOB );
+        }
+        return pt;
+    }
+
+    /**
+     * Returns the total of the known sizes of the files in each transfer job.
+     */
+    private List<Double> bytes( BalancedCluster.PoolTransfer pt ){
+        List<Double> result = new ArrayList<Double>();
+        for( BalancedCluster.TransferContainer tc : containers( pt ) ){
+            double total = 0;
+            for( Iterator it = tc.getFileTransfers().iterator(); it.hasNext(); ){
+                total += Math.max( 0, mRefiner.getSize( (FileTransfer)it.next() ) );
+            }
+            result.add( total );
+        }
+        return result;
+    }
+
+    private List<Integer> counts( BalancedCluster.PoolTransfer pt ){
+        List<Integer> result = new ArrayList<Integer>();
+        for( BalancedCluster.TransferContainer tc : containers( pt ) ){
+            result.add( tc.getFileTransfers().size() );
+        }
+        return result;
+    }
+
+    private List<BalancedCluster.TransferContainer> containers( BalancedCluster.PoolTransfer pt ){
+        List<BalancedCluster.TransferContainer> result = new ArrayList<BalancedCluster.TransferContainer>();
+        for( Iterator it = pt.getTransferContainerIterator(); it.hasNext(); ){
+            result.add( (BalancedCluster.TransferContainer)it.next() );
+        }
+        return result;
+    }
+
+    private FileTransfer file( double size ){
+        FileTransfer ft = new FileTransfer( "f" + mFiles++, "job" );
+        ft.setSize( size );
+        return ft;
+    }
+}
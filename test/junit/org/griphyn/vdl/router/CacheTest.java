@@ -0,0 +1,84 @@
+/*
+ * This file or a portion of this file is licensed under the terms of
+ * the Globus Toolkit Public License, found in file GTPL, or at
+ * http://www.globus.org/toolkit/download/license.html. This notice must
+ * appear in redistributions of this file, with or without modification.
+ *
+ * Redistributions of this Software, with or without modification, must
+ * reproduce the GTPL in: (1) the Software, or (2) the Documentation or
+ * some other similar material which is provided with the Software (if
+ * any).
+ *
+ * Copyright 1999-2004 University of Chicago and The University of
+ * Southern California. All rights reserved.
+ */
+package org.griphyn.vdl.router;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * Unit tests for the size bound and the negative entries of the router
+ * cache.
+ *
+ * @author Karan Vahi
+ */
+public class CacheTest {
+
+    /**
+     * The least recently used entry is evicted, once the cache is full.
+     */
+    @Test
+    public void testLRUBound() {
+        Cache cache = new Cache( "test", 600, 3 );
+        cache.set( "f.a", "a" );
+        cache.set( "f.b", "b" );
+        cache.set( "f.c", "c" );
+        assertEquals( "a", cache.get( "f.a" ) );
+        cache.set( "f.d", "d" );
+
+        assertEquals( 3, cache.size() );
+        assertNull( cache.get( "f.b" ) );
+        assertEquals( "a", cache.get( "f.a" ) );
+        assertEquals( "c", cache.get( "f.c" ) );
+        assertEquals( "d", cache.get( "f.d" ) );
+        assertEquals( 1, cache.getStatistics()[ Cache.EVICT ] );
+    }
+
+    /**
+     * Negative entries are returned as such, are counted separately, and
+     * expire with their own lifetime.
+     */
+    @Test
+    public void testNegativeEntries() throws Exception {
+        Cache cache = new Cache( "test", 600, 0, 10 );
+        cache.set( "f.a", "a" );
+        cache.setNegative( "f.b" );
+        assertSame( Cache.NEGATIVE, cache.get( "f.b" ) );
+        long[] stats = cache.getStatistics();
+        assertEquals( 1, stats[ Cache.HIT ] );
+        assertEquals( 1, stats[ Cache.NEGATIVE_HIT ] );
+
+        Thread.sleep( 10 );
+        assertNull( cache.get( "f.b" ) );
+        assertEquals( "a", cache.get( "f.a" ) );
+        assertEquals( 1, cache.getStatistics()[ Cache.EXPIRED ] );
+    }
+
+    /**
+     * Peeking into the cache is not counted in the statistics.
+     */
+    @Test
+    public void testPeek() {
+        Cache cache = new Cache( "test", 600, 10 );
+        cache.setNegative( "f.a" );
+        assertSame( Cache.NEGATIVE, cache.peek( "f.a" ) );
+        assertNull( cache.peek( "f.b" ) );
+
+        long[] stats = cache.getStatistics();
+        assertEquals( 0, stats[ Cache.HIT ] );
+        assertEquals( 0, stats[ Cache.MISS ] );
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * This file or a portion of this file is licensed under the terms of
+ * the Globus Toolkit Public License, found in file GTPL, or at
+ * http://www.globus.org/toolkit/download/license.html. This notice must
+ * appear in redistributions of this file, with or without modification.
+ *
+ * Redistributions of this Software, with or without modification, must
+ * reproduce the GTPL in: (1) the Software, or (2) the Documentation or
+ * some other similar material which is provided with the Software (if
+ * any).
+ *
+ * Copyright 1999-2004 University of Chicago and The University of
+ * Southern California. All rights reserved.
+ */
+package org.griphyn.vdl.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.griphyn.vdl.classes.Definitions;
+import org.griphyn.vdl.classes.Derivation;
+import org.griphyn.vdl.classes.LFN;
+import org.griphyn.vdl.classes.Pass;
+import org.griphyn.vdl.classes.Scalar;
+import org.griphyn.vdl.dbschema.InMemorySchema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the lookups of the producers of files through the stack
+ * of definitions of the router.
+ *
+ * @author Karan Vahi
+ */
+public class RouteTest {
+
+    private CountingSchema mBottom;
+
+    private CountingSchema mTop;
+
+    private Route.DatabaseSchemaStack mStack;
+
+    @Before
+    public void setUp() throws Exception {
+        //f.a is produced on both levels, f.b only on the bottom level
+        mBottom = new CountingSchema( "bottom", "f.a", "f.b" );
+        mTop = new CountingSchema( "top", "f.a" );
+        mStack = new Route( mBottom ).new DatabaseSchemaStack( mBottom );
+        mStack.push( mTop );
+    }
+
+    /**
+     * The filenames resolved on a level are not looked up on the lower
+     * levels, and the lookups after the prefetch are answered from the
+     * caches.
+     */
+    @Test
+    public void testPrefetchOutputs() {
+        mStack.prefetchOutputs( Arrays.asList( "f.a", "f.b", "f.c" ) );
+        assertEquals( Arrays.asList( Arrays.asList( "f.a", "f.b", "f.c" ) ), mTop.mQueries );
+        assertEquals( Arrays.asList( Arrays.asList( "f.b", "f.c" ) ), mBottom.mQueries );
+        for( StackElement element : elements() ){
+            assertEquals( 0, element.getLFNCache().getStatistics()[ Cache.MISS ] );
+        }
+
+        assertEquals( "top", producer( "f.a" ) );
+        assertEquals( "bottom", producer( "f.b" ) );
+        assertTrue( mStack.derivationsWithOutput( "f.c" ).isEmpty() );
+        assertEquals( 2, mTop.mQueries.size() + mBottom.mQueries.size() );
+
+        //everything is cached, so nothing is looked up again
+        mStack.prefetchOutputs( Arrays.asList( "f.a", "f.b", "f.c" ) );
+        assertEquals( 2, mTop.mQueries.size() + mBottom.mQueries.size() );
+    }
+
+    /**
+     * A filename that is not produced is cached as negative on every level,
+     * while a filename produced on a level is cached there only.
+     */
+    @Test
+    public void testNegativeCaching() {
+        assertTrue( mStack.derivationsWithOutput( "f.c" ).isEmpty() );
+        assertEquals( "bottom", producer( "f.b" ) );
+        List<StackElement> elements = elements();
+        Cache bottom = elements.get( 0 ).getLFNCache();
+        Cache top = elements.get( 1 ).getLFNCache();
+        assertSame( Cache.NEGATIVE, top.peek( "f.c" ) );
+        assertSame( Cache.NEGATIVE, bottom.peek( "f.c" ) );
+        assertSame( Cache.NEGATIVE, top.peek( "f.b" ) );
+        assertEquals( 1, ((List)bottom.peek( "f.b" )).size() );
+        assertEquals( 4, mTop.mQueries.size() + mBottom.mQueries.size() );
+
+        assertTrue( mStack.derivationsWithOutput( "f.c" ).isEmpty() );
+        assertEquals( "bottom", producer( "f.b" ) );
+        assertEquals( 4, mTop.mQueries.size() + mBottom.mQueries.size() );
+        assertEquals( 2, top.getStatistics()[ Cache.NEGATIVE_HIT ] );
+    }
+
+    private String producer( String lfn ){
+        List producers = mStack.derivationsWithOutput( lfn );
+        assertEquals( 1, producers.size() );
+        return ((Derivation)producers.get( 0 )).getName();
+    }
+
+    private List<StackElement> elements(){
+        List<StackElement> result = new ArrayList<StackElement>();
+        for( Object element : mStack.m_stack ){
+            result.add( (StackElement)element );
+        }
+        return result;
+    }
+
+    /**
+     * An in-memory schema whose lookups are cached, and that records the
+     * filenames looked up.
+     */
+    private static class CountingSchema extends InMemorySchema {
+
+        private final List<List<String>> mQueries;
+
+        public CountingSchema( String name, String... outputs ) throws Exception {
+            super( new Definitions() );
+            mQueries = new ArrayList<List<String>>();
+            Derivation dv = new Derivation( name, "generate" );
+            for( int i = 0; i < outputs.length; i++ ){
+                dv.addPass( new Pass( "o" + i, new Scalar( new LFN( outputs[i], LFN.OUTPUT ) ) ) );
+            }
+            this.backdoor().addDefinition( dv );
+        }
+
+        public boolean cachingMakesSense(){
+            return true;
+        }
+
+        public List searchFilename( String lfn, int link ) throws java.sql.SQLException {
+            mQueries.add( Arrays.asList( lfn ) );
+            return super.searchFilename( lfn, link );
+        }
+
+        public Map searchFilenames( Collection lfns, int link ) throws java.sql.SQLException {
+            List<String> query = new ArrayList<String>( lfns );
+            java.util.Collections.sort( query );
+            mQueries.add( query );
+            return super.searchFilenames( lfns, link );
+        }
+    }
+}